@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2;
+
+/**
+ * This interface may be implemented by an object pool to allow clients
+ * (primarily those clients that wrap pools to provide pools with extended
+ * features) to defer the activation of a borrowed object until the object is
+ * first used. Objects that are borrowed and returned without being used are
+ * then neither activated nor passivated.
+ *
+ * @param <T>   The type of object provided by the pool.
+ *
+ * @since 2.4.3
+ */
+public interface LazyActivation<T> {
+
+    /**
+     * Borrow an object from the pool without activating or validating it.
+     * The object must be passed to {@link #activateBorrowedObject(Object)}
+     * before it is used. If it is returned to the pool without having been
+     * activated, it is not validated or passivated on return.
+     *
+     * @return an instance from the pool that has not been activated
+     *
+     * @throws Exception if an instance cannot be obtained from the pool
+     */
+    T borrowInactiveObject() throws Exception;
+
+    /**
+     * Activate, and validate if the pool is configured to validate objects on
+     * borrow, an object obtained from {@link #borrowInactiveObject()}. If the
+     * object cannot be activated or fails validation it is destroyed and a
+     * fully activated replacement is borrowed from the pool in its place.
+     *
+     * @param obj   The object to activate
+     *
+     * @return {@code obj} if it was activated successfully, otherwise the
+     *         replacement borrowed from the pool. The caller is responsible
+     *         for returning the result to the pool.
+     *
+     * @throws Exception if {@code obj} could not be activated and a
+     *                   replacement cannot be obtained from the pool
+     */
+    T activateBorrowedObject(T obj) throws Exception;
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2;
+
+/**
+ * This interface may be implemented by an object pool that implements
+ * {@link UsageTracking} to allow clients that report every use of a borrowed
+ * object (such as the proxies of a proxied pool) to look up the object once
+ * per borrow rather than once per use.
+ *
+ * @param <T>   The type of object provided by the pool.
+ *
+ * @since 2.4.3
+ */
+public interface UsageTrackingHandles<T> extends UsageTracking<T> {
+
+    /**
+     * Obtain a handle through which uses of the given borrowed object may be
+     * reported. The handle must not be used once the object has been returned
+     * to the pool.
+     *
+     * @param pooledObject  The borrowed object
+     *
+     * @return the handle or {@code null} if the object is not currently part
+     *         of the pool, in which case uses should be reported via
+     *         {@link #use(Object)}
+     */
+    Handle getUsageTrackingHandle(T pooledObject);
+
+    /**
+     * A handle for a borrowed object through which uses of that object are
+     * reported.
+     */
+    interface Handle {
+
+        /**
+         * Equivalent to calling {@link UsageTracking#use(Object)} for the
+         * object for which the handle was obtained.
+         */
+        void use();
+    }
+}
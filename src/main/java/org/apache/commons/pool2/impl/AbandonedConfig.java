@@ -149,7 +149,9 @@ public class AbandonedConfig {
      *
      * Defaults to false.
      * Logging of abandoned objects adds overhead for every object created
-     * because a stack trace has to be generated.
+     * because a stack trace has to be generated. See
+     * {@link #setRequireFullStackTrace(boolean)} and
+     * {@link #setStackTraceSamplingInterval(int)} to reduce this overhead.
      *
      * @return boolean true if stack trace logging is turned on for abandoned
      * objects
@@ -230,6 +232,115 @@ public class AbandonedConfig {
         this.useUsageTracking = useUsageTracking;
     }
 
+    /**
+     * Determines whether the recorded call stacks include method names and
+     * line numbers or only the classes on the call stack.
+     */
+    private boolean requireFullStackTrace = true;
+
+    /**
+     * Indicates if full stack traces are required when
+     * {@link #getLogAbandoned() logAbandoned} or
+     * {@link #getUseUsageTracking() useUsageTracking} is enabled. If
+     * {@code false}, only the classes on the call stack are recorded which is
+     * considerably cheaper than generating a full stack trace.
+     *
+     * Defaults to true.
+     *
+     * @return whether or not full stack traces are required
+     * @since 2.4.3
+     */
+    public boolean getRequireFullStackTrace() {
+        return requireFullStackTrace;
+    }
+
+    /**
+     * Sets the flag to record full stack traces, rather than just the classes
+     * on the call stack, when {@link #getLogAbandoned() logAbandoned} or
+     * {@link #getUseUsageTracking() useUsageTracking} is enabled.
+     *
+     * @param requireFullStackTrace true to record full stack traces
+     * @see #getRequireFullStackTrace()
+     * @since 2.4.3
+     */
+    public void setRequireFullStackTrace(final boolean requireFullStackTrace) {
+        this.requireFullStackTrace = requireFullStackTrace;
+    }
+
+    /**
+     * How often a call stack is recorded for a borrow or use of an object.
+     */
+    private int stackTraceSamplingInterval = 1;
+
+    /**
+     * The interval at which call stacks are sampled when
+     * {@link #getLogAbandoned() logAbandoned} or
+     * {@link #getUseUsageTracking() useUsageTracking} is enabled. A value of
+     * {@code n} records a call stack for one in every {@code n} borrows (and
+     * uses) of each pooled object. An abandoned object whose last borrow was
+     * not sampled is reported without a call stack.
+     *
+     * Defaults to 1, i.e. every borrow and use is recorded.
+     *
+     * @return the stack trace sampling interval
+     * @since 2.4.3
+     */
+    public int getStackTraceSamplingInterval() {
+        return stackTraceSamplingInterval;
+    }
+
+    /**
+     * Sets the interval at which call stacks are sampled.
+     *
+     * @param stackTraceSamplingInterval the new sampling interval. Values less
+     *   than 1 are treated as 1.
+     * @see #getStackTraceSamplingInterval()
+     * @since 2.4.3
+     */
+    public void setStackTraceSamplingInterval(final int stackTraceSamplingInterval) {
+        this.stackTraceSamplingInterval = stackTraceSamplingInterval;
+    }
+
+    /**
+     * The minimum time between recorded uses of an object.
+     */
+    private long usageTrackingGranularityMillis = 0;
+
+    /**
+     * The minimum time in milliseconds between two uses of a pooled object
+     * that are recorded when {@link #getUseUsageTracking() useUsageTracking}
+     * is enabled. Uses within this time of the last recorded use neither
+     * update the last used time of the object nor record a call stack, so
+     * the last used time seen by abandoned object removal may be up to this
+     * long out of date. It should therefore be much smaller than the
+     * {@link #getRemoveAbandonedTimeout() removeAbandonedTimeout}. When uses
+     * are reported through a {@link org.apache.commons.pool2.UsageTrackingHandles.Handle
+     * Handle}, as they are by proxied pools, the time of the last recorded
+     * use is tracked per handle without synchronization and so uses may be
+     * recorded up to once per granularity per thread.
+     *
+     * Defaults to 0, i.e. every use is recorded.
+     *
+     * @return the usage tracking granularity in milliseconds
+     * @since 2.4.3
+     */
+    public long getUsageTrackingGranularityMillis() {
+        return usageTrackingGranularityMillis;
+    }
+
+    /**
+     * Sets the minimum time in milliseconds between two recorded uses of a
+     * pooled object.
+     *
+     * @param usageTrackingGranularityMillis the new granularity. Values less
+     *   than or equal to 0 record every use.
+     * @see #getUsageTrackingGranularityMillis()
+     * @since 2.4.3
+     */
+    public void setUsageTrackingGranularityMillis(final long usageTrackingGranularityMillis) {
+        this.usageTrackingGranularityMillis = usageTrackingGranularityMillis;
+    }
+
     /**
      * @since 2.4.3
      */
@@ -248,6 +359,12 @@ public class AbandonedConfig {
         builder.append(logWriter);
         builder.append(", useUsageTracking=");
         builder.append(useUsageTracking);
+        builder.append(", requireFullStackTrace=");
+        builder.append(requireFullStackTrace);
+        builder.append(", stackTraceSamplingInterval=");
+        builder.append(stackTraceSamplingInterval);
+        builder.append(", usageTrackingGranularityMillis=");
+        builder.append(usageTrackingGranularityMillis);
         builder.append("]");
         return builder.toString();
     }
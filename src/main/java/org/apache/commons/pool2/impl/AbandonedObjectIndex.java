@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectState;
+
+/**
+ * An index of the allocated objects in a pool ordered by the time they were
+ * last used so that abandoned objects can be found without examining every
+ * object in the pool.
+ * <p>
+ * An object is indexed by its last used time when it is allocated. Calls to
+ * {@link PooledObject#use()} and updates reported via
+ * {@link org.apache.commons.pool2.TrackedUse} are not tracked as they happen.
+ * Since the last used time never goes backwards the indexed time is a lower
+ * bound and only objects whose indexed time has passed the abandoned timeout
+ * need to be examined. Any of those that turn out to have been used more
+ * recently are re-indexed with their current last used time.
+ * <p>
+ * This class is intended to be thread-safe.
+ *
+ * @param <T> the type of object in the pool
+ *
+ * @since 2.4.3
+ */
+class AbandonedObjectIndex<T> {
+
+    private final ConcurrentSkipListSet<Entry<T>> entries =
+            new ConcurrentSkipListSet<Entry<T>>();
+    private final ConcurrentHashMap<PooledObject<T>, Entry<T>> entryMap =
+            new ConcurrentHashMap<PooledObject<T>, Entry<T>>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Indexes an object that has just been allocated, replacing any previous
+     * entry for the object.
+     *
+     * @param p the allocated object
+     */
+    void allocated(final PooledObject<T> p) {
+        final Entry<T> entry = new Entry<T>(p, p.getLastUsedTime(),
+                sequence.getAndIncrement());
+        final Entry<T> previous = entryMap.put(p, entry);
+        if (previous != null) {
+            entries.remove(previous);
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Indexes an object if it is allocated and not already indexed.
+     *
+     * @param p the object
+     */
+    void addIfAllocated(final PooledObject<T> p) {
+        synchronized (p) {
+            if (p.getState() != PooledObjectState.ALLOCATED) {
+                return;
+            }
+            final Entry<T> entry = new Entry<T>(p, p.getLastUsedTime(),
+                    sequence.getAndIncrement());
+            if (entryMap.putIfAbsent(p, entry) == null) {
+                entries.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes an object that is being returned to the pool or destroyed.
+     *
+     * @param p the object
+     */
+    void deallocated(final PooledObject<T> p) {
+        final Entry<T> entry = entryMap.remove(p);
+        if (entry != null) {
+            entries.remove(entry);
+        }
+    }
+
+    /**
+     * Finds the allocated objects that have not been used since the given
+     * time, marks them as abandoned and removes them from the index.
+     *
+     * @param timeout objects last used at or before this time are abandoned
+     * @return the objects that were marked as abandoned
+     */
+    List<PooledObject<T>> markAbandoned(final long timeout) {
+        final List<PooledObject<T>> abandoned = new ArrayList<PooledObject<T>>();
+        final Iterator<Entry<T>> iter = entries.iterator();
+        while (iter.hasNext()) {
+            final Entry<T> entry = iter.next();
+            if (entry.lastUsedTime > timeout) {
+                break;
+            }
+            if (!entries.remove(entry)) {
+                // Already handled by another thread
+                continue;
+            }
+            final PooledObject<T> p = entry.pooledObject;
+            synchronized (p) {
+                if (p.getState() != PooledObjectState.ALLOCATED) {
+                    entryMap.remove(p, entry);
+                    continue;
+                }
+                final long lastUsedTime = p.getLastUsedTime();
+                if (lastUsedTime <= timeout) {
+                    p.markAbandoned();
+                    entryMap.remove(p, entry);
+                    abandoned.add(p);
+                } else {
+                    final Entry<T> updated = new Entry<T>(p, lastUsedTime,
+                            sequence.getAndIncrement());
+                    if (entryMap.replace(p, entry, updated)) {
+                        entries.add(updated);
+                    }
+                }
+            }
+        }
+        return abandoned;
+    }
+
+    /**
+     * Returns the number of indexed objects.
+     *
+     * @return the number of indexed objects
+     */
+    int size() {
+        return entryMap.size();
+    }
+
+    /**
+     * An indexed object. Entries are ordered by the last used time recorded
+     * when the entry was created.
+     */
+    private static class Entry<T> implements Comparable<Entry<T>> {
+
+        private final PooledObject<T> pooledObject;
+        private final long lastUsedTime;
+        private final long sequence;
+
+        Entry(final PooledObject<T> pooledObject, final long lastUsedTime,
+                final long sequence) {
+            this.pooledObject = pooledObject;
+            this.lastUsedTime = lastUsedTime;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final Entry<T> other) {
+            if (lastUsedTime != other.lastUsedTime) {
+                return lastUsedTime < other.lastUsedTime ? -1 : 1;
+            }
+            if (sequence != other.sequence) {
+                return sequence < other.sequence ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+}
@@ -23,10 +23,17 @@ import java.lang.management.ManagementFactory;
 import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -62,6 +69,15 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
      */
     public static final int MEAN_TIMING_STATS_CACHE_SIZE = 100;
 
+    /**
+     * The minimum time between two captures of the events held by the flight
+     * recorder when borrowers time out, so that many borrowers timing out
+     * together do not each copy the events.
+     *
+     * @since 2.4.3
+     */
+    public static final long EVENTS_CAPTURE_INTERVAL_MILLIS = 1000L;
+
     // Configuration attributes
     private volatile int maxTotal =
             GenericKeyedObjectPoolConfig.DEFAULT_MAX_TOTAL;
@@ -70,6 +86,9 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
     private volatile long maxWaitMillis =
             BaseObjectPoolConfig.DEFAULT_MAX_WAIT_MILLIS;
     private volatile boolean lifo = BaseObjectPoolConfig.DEFAULT_LIFO;
+    private volatile boolean softReferenceIdleObjects =
+            BaseObjectPoolConfig.DEFAULT_SOFT_REFERENCE_IDLE_OBJECTS;
+    private volatile boolean memoryPressure = false;
     private final boolean fairness;
     private volatile boolean testOnCreate =
             BaseObjectPoolConfig.DEFAULT_TEST_ON_CREATE;
@@ -90,12 +109,27 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
     private volatile EvictionPolicy<T> evictionPolicy;
     private volatile long evictorShutdownTimeoutMillis =
             BaseObjectPoolConfig.DEFAULT_EVICTOR_SHUTDOWN_TIMEOUT_MILLIS;
+    private volatile int lockStatisticsSamplingInterval =
+            BaseObjectPoolConfig.DEFAULT_LOCK_STATISTICS_SAMPLING_INTERVAL;
+    private volatile FlightRecorder flightRecorder = null;
+    private volatile CallSiteRecorder callSiteRecorder = null;
 
 
     // Internal (primarily state) attributes
-    final Object closeLock = new Object();
+    private final List<LockRecorder> lockRecorders =
+            new CopyOnWriteArrayList<LockRecorder>();
+    final LockRecorder closeLockRecorder = createLockRecorder("closeLock");
+    final LockRecorder evictionLockRecorder =
+            createLockRecorder("evictionLock");
+    final LockRecorder makeObjectCountLockRecorder =
+            createLockRecorder("makeObjectCountLock");
+    final LockRecorder idleObjectsLockRecorder =
+            createLockRecorder("idleObjects");
+    final Lock closeLock =
+            new InterruptibleReentrantLock(false, closeLockRecorder);
     volatile boolean closed = false;
-    final Object evictionLock = new Object();
+    final Lock evictionLock =
+            new InterruptibleReentrantLock(false, evictionLockRecorder);
     private Evictor evictor = null; // @GuardedBy("evictionLock")
     EvictionIterator evictionIterator = null; // @GuardedBy("evictionLock")
     /*
@@ -120,6 +154,18 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
     private final StatsStore idleTimes = new StatsStore(MEAN_TIMING_STATS_CACHE_SIZE);
     private final StatsStore waitTimes = new StatsStore(MEAN_TIMING_STATS_CACHE_SIZE);
     private final AtomicLong maxBorrowWaitTimeMillis = new AtomicLong(0L);
+    private final LatencyHistogram borrowWaitTimeHistogram =
+            new LatencyHistogram();
+    /* Number of PoolCountersExporters publishing the statistics */
+    private final AtomicInteger countersExporters = new AtomicInteger(0);
+    private final Object statisticsBaselineLock = new Object();
+    private PoolStatistics statisticsBaseline = new PoolStatistics(
+            System.currentTimeMillis(), 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0); // @GuardedBy("statisticsBaselineLock")
+    private final AtomicLong lastEventsCaptureTime = new AtomicLong(0L);
+    private final AtomicReference<List<PoolEvent>> eventsBeforeLastTimeout =
+            new AtomicReference<List<PoolEvent>>(
+                    Collections.<PoolEvent>emptyList());
     private volatile SwallowedExceptionListener swallowedExceptionListener = null;
 
 
@@ -292,6 +338,44 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
         this.lifo = lifo;
     }
 
+    /**
+     * Returns whether idle objects in excess of the minimum number of idle
+     * objects are held through {@link java.lang.ref.SoftReference soft
+     * references}. If <code>true</code>, the garbage collector may reclaim
+     * surplus idle objects when memory is low. Reclaimed objects are removed
+     * from the pool, without being passed to the factory's
+     * <code>destroyObject()</code> method, when they are next encountered by
+     * a borrower, the idle object evictor or <code>clear()</code>. Until then
+     * they are included in the number of idle objects. Reclaimed objects are
+     * included in the number of destroyed objects.
+     * <p>
+     * Idle objects are only held through soft references if they are wrapped
+     * in {@link DefaultPooledObject} instances.
+     *
+     * @return <code>true</code> if surplus idle objects are softly held
+     *
+     * @see #setSoftReferenceIdleObjects
+     * @since 2.4.3
+     */
+    public final boolean getSoftReferenceIdleObjects() {
+        return softReferenceIdleObjects;
+    }
+
+    /**
+     * Sets whether idle objects in excess of the minimum number of idle
+     * objects are held through soft references. The setting applies to
+     * objects as they become idle.
+     *
+     * @param softReferenceIdleObjects <code>true</code> to softly hold
+     *                                 surplus idle objects
+     *
+     * @see #getSoftReferenceIdleObjects
+     * @since 2.4.3
+     */
+    public final void setSoftReferenceIdleObjects(final boolean softReferenceIdleObjects) {
+        this.softReferenceIdleObjects = softReferenceIdleObjects;
+    }
+
     /**
      * Returns whether objects created for the pool will be validated before
      * being returned from the <code>borrowObject()</code> method. Validation is
@@ -661,6 +745,127 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
         this.evictorShutdownTimeoutMillis = evictorShutdownTimeoutMillis;
     }
 
+    /**
+     * Returns the sampling interval used to record statistics for the locks
+     * used internally by this pool. Only one in every
+     * {@code lockStatisticsSamplingInterval} acquisitions of each lock is
+     * timed and checked for contention. A value of zero means lock statistics
+     * are not recorded.
+     *
+     * @return the number of lock acquisitions per sampled acquisition
+     *
+     * @see #setLockStatisticsSamplingInterval(int)
+     * @see #getLockStatistics()
+     * @since 2.4.3
+     */
+    public final int getLockStatisticsSamplingInterval() {
+        return lockStatisticsSamplingInterval;
+    }
+
+    /**
+     * Sets the sampling interval used to record statistics for the locks used
+     * internally by this pool. A value of one records every acquisition,
+     * larger values reduce the overhead of recording and zero or a negative
+     * value stops recording. Statistics recorded so far are retained.
+     *
+     * @param lockStatisticsSamplingInterval    the number of lock acquisitions
+     *                                          per sampled acquisition
+     *
+     * @see #getLockStatisticsSamplingInterval()
+     * @since 2.4.3
+     */
+    public final void setLockStatisticsSamplingInterval(
+            final int lockStatisticsSamplingInterval) {
+        this.lockStatisticsSamplingInterval =
+                Math.max(0, lockStatisticsSamplingInterval);
+        for (final LockRecorder recorder : lockRecorders) {
+            recorder.setSamplingInterval(this.lockStatisticsSamplingInterval);
+        }
+    }
+
+    /**
+     * Returns the number of recent events retained by the flight recorder of
+     * this pool. The flight recorder keeps the most recent borrow, return,
+     * create, destroy, evict and timeout events so that the activity of the
+     * pool leading up to an incident can be reconstructed. A value of zero
+     * means events are not recorded.
+     *
+     * @return the number of events retained
+     *
+     * @see #setFlightRecorderSize(int)
+     * @see #listRecentEvents()
+     * @since 2.4.3
+     */
+    public final int getFlightRecorderSize() {
+        final FlightRecorder recorder = flightRecorder;
+        return recorder == null ? 0 : recorder.getCapacity();
+    }
+
+    /**
+     * Sets the number of recent events retained by the flight recorder of
+     * this pool. Changing the size discards the events recorded so far. Zero
+     * or a negative value stops recording.
+     *
+     * @param flightRecorderSize    the number of events to retain
+     *
+     * @see #getFlightRecorderSize()
+     * @since 2.4.3
+     */
+    public final void setFlightRecorderSize(final int flightRecorderSize) {
+        if (flightRecorderSize == getFlightRecorderSize()) {
+            return;
+        }
+        if (flightRecorderSize > 0) {
+            this.flightRecorder = new FlightRecorder(flightRecorderSize);
+        } else {
+            this.flightRecorder = null;
+        }
+    }
+
+    /**
+     * Returns the sampling interval used to attribute borrow wait times and
+     * hold times to call sites. Borrows that pass a call site tag to the pool
+     * are always attributed to the tag. For other borrows, the call stack is
+     * captured for one in every {@code callSiteSamplingInterval} borrows and
+     * the remaining borrows are not attributed. A value of zero means call
+     * sites are not recorded.
+     *
+     * @return the number of untagged borrows per captured call stack
+     *
+     * @see #setCallSiteSamplingInterval(int)
+     * @see #listTopCallSitesByHoldTime(int)
+     * @see #listTopCallSitesByWaitTime(int)
+     * @since 2.4.3
+     */
+    public final int getCallSiteSamplingInterval() {
+        final CallSiteRecorder recorder = callSiteRecorder;
+        return recorder == null ? 0 : recorder.getSamplingInterval();
+    }
+
+    /**
+     * Sets the sampling interval used to attribute borrow wait times and hold
+     * times to call sites. Changing the interval discards the times recorded
+     * so far. Zero or a negative value stops recording.
+     *
+     * @param callSiteSamplingInterval  the number of untagged borrows per
+     *                                  captured call stack
+     *
+     * @see #getCallSiteSamplingInterval()
+     * @since 2.4.3
+     */
+    public final void setCallSiteSamplingInterval(
+            final int callSiteSamplingInterval) {
+        if (callSiteSamplingInterval == getCallSiteSamplingInterval()) {
+            return;
+        }
+        if (callSiteSamplingInterval > 0) {
+            this.callSiteRecorder =
+                    new CallSiteRecorder(getClass(), callSiteSamplingInterval);
+        } else {
+            this.callSiteRecorder = null;
+        }
+    }
+
     /**
      * Closes the pool, destroys the remaining idle objects and, if registered
      * in JMX, deregisters it.
@@ -718,7 +923,8 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
      * @param delay time in milliseconds before start and between eviction runs
      */
     final void startEvictor(final long delay) {
-        synchronized (evictionLock) {
+        evictionLock.lock();
+        try {
             if (null != evictor) {
                 EvictionTimer.cancel(evictor, evictorShutdownTimeoutMillis, TimeUnit.MILLISECONDS);
                 evictor = null;
@@ -728,6 +934,8 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
                 evictor = new Evictor();
                 EvictionTimer.schedule(evictor, delay, delay);
             }
+        } finally {
+            evictionLock.unlock();
         }
     }
 
@@ -738,6 +946,36 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
      */
     abstract void ensureMinIdle() throws Exception;
 
+    /**
+     * Destroys idle instances in excess of the configured minimum number of
+     * idle instances, least recently used first.
+     *
+     * @return the number of instances destroyed
+     */
+    abstract int trimIdle();
+
+    /**
+     * Sets whether the heap is under pressure. While it is, instances
+     * returned to the pool are only kept idle up to the configured minimum
+     * number of idle instances rather than the maximum.
+     *
+     * @param memoryPressure <code>true</code> if the heap is under pressure
+     *
+     * @see MemoryPressureTrimmer
+     */
+    final void setMemoryPressure(final boolean memoryPressure) {
+        this.memoryPressure = memoryPressure;
+    }
+
+    /**
+     * @return <code>true</code> if the heap is under pressure
+     *
+     * @see #setMemoryPressure(boolean)
+     */
+    final boolean isMemoryPressure() {
+        return memoryPressure;
+    }
+
 
     // Monitoring (primarily JMX) related methods
 
@@ -863,6 +1101,331 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
      */
     public abstract int getNumIdle();
 
+    /**
+     * Obtain the statistics of this pool in a single operation.
+     *
+     * @return the current statistics
+     *
+     * @see #getStatisticsSnapshot(boolean)
+     * @since 2.4.3
+     */
+    public final PoolStatistics getStatisticsSnapshot() {
+        return getStatisticsSnapshot(false);
+    }
+
+    /**
+     * Obtain the statistics of this pool in a single operation. The pool
+     * sizes are read once and each timing statistic is calculated once, so
+     * the values are cheaper to obtain and more consistent than when they are
+     * read individually.
+     *
+     * @param delta if {@code true}, the counts are those accumulated since the
+     *              previous call with this parameter set, or since the pool
+     *              was created, rather than over the lifetime of the pool
+     *
+     * @return the statistics
+     *
+     * @since 2.4.3
+     */
+    public final PoolStatistics getStatisticsSnapshot(final boolean delta) {
+        if (!delta) {
+            return createStatisticsSnapshot();
+        }
+        // The snapshot is taken under the lock so that concurrent callers
+        // replace the baseline in the order their snapshots were taken
+        synchronized (statisticsBaselineLock) {
+            final PoolStatistics current = createStatisticsSnapshot();
+            final PoolStatistics previous = statisticsBaseline;
+            statisticsBaseline = current;
+            return current.since(previous);
+        }
+    }
+
+    /**
+     * Obtain the current statistics of this pool. Implementations obtain the
+     * pool sizes once and then call
+     * {@link #createStatisticsSnapshot(int, int, int)}.
+     *
+     * @return the current statistics
+     */
+    abstract PoolStatistics createStatisticsSnapshot();
+
+    /**
+     * Create a snapshot of the current statistics of this pool.
+     *
+     * @param numActive     the number of active objects
+     * @param numIdle       the number of idle objects
+     * @param numWaiters    the number of threads waiting to borrow an object
+     *
+     * @return the current statistics
+     */
+    final PoolStatistics createStatisticsSnapshot(final int numActive,
+            final int numIdle, final int numWaiters) {
+        return new PoolStatistics(System.currentTimeMillis(), 0, numActive,
+                numIdle, numWaiters, borrowedCount.get(), returnedCount.get(),
+                createdCount.get(), destroyedCount.get(),
+                destroyedByEvictorCount.get(),
+                destroyedByBorrowValidationCount.get(), activeTimes.getMean(),
+                idleTimes.getMean(), waitTimes.getMean(),
+                maxBorrowWaitTimeMillis.get());
+    }
+
+    /**
+     * Obtain the statistics recorded for the locks used internally by this
+     * pool: the pool close and eviction locks, the lock that coordinates
+     * object creation, the lock of the idle object queue(s) and any locks
+     * specific to the pool implementation. Statistics are only recorded while
+     * {@link #getLockStatisticsSamplingInterval()} is positive.
+     *
+     * @return the statistics for each lock
+     *
+     * @since 2.4.3
+     */
+    public final List<LockStatistics> getLockStatistics() {
+        final List<LockStatistics> result =
+                new ArrayList<LockStatistics>(lockRecorders.size());
+        for (final LockRecorder recorder : lockRecorders) {
+            result.add(recorder.getStatistics());
+        }
+        return result;
+    }
+
+    /**
+     * Obtain the events currently held by the flight recorder of this pool,
+     * oldest first.
+     *
+     * @return the recent events or an empty list if events are not recorded
+     *
+     * @see #getFlightRecorderSize()
+     * @since 2.4.3
+     */
+    public final List<PoolEvent> listRecentEvents() {
+        final FlightRecorder recorder = flightRecorder;
+        if (recorder == null) {
+            return Collections.emptyList();
+        }
+        return recorder.getEvents();
+    }
+
+    /**
+     * Obtain the events that were held by the flight recorder of this pool
+     * when a borrower last gave up waiting for an object, oldest first. The
+     * events are captured automatically when the timeout occurs, at most once
+     * per {@link #EVENTS_CAPTURE_INTERVAL_MILLIS}, so they remain available
+     * for diagnosis after the flight recorder has moved on.
+     *
+     * @return the events before the last timeout or an empty list if there
+     *         has been no timeout while events were recorded
+     *
+     * @since 2.4.3
+     */
+    public final List<PoolEvent> listEventsBeforeLastTimeout() {
+        return eventsBeforeLastTimeout.get();
+    }
+
+    /**
+     * Obtain the call sites that have held objects borrowed from this pool
+     * for the longest in total.
+     *
+     * @param limit the maximum number of call sites to return
+     *
+     * @return the call sites, longest total hold time first, or an empty list
+     *         if call sites are not recorded
+     *
+     * @see #getCallSiteSamplingInterval()
+     * @since 2.4.3
+     */
+    public final List<CallSiteStatistics> listTopCallSitesByHoldTime(
+            final int limit) {
+        final CallSiteRecorder recorder = callSiteRecorder;
+        if (recorder == null) {
+            return Collections.emptyList();
+        }
+        return recorder.getTopByHoldTime(limit);
+    }
+
+    /**
+     * Obtain the call sites that have waited for objects from this pool for
+     * the longest in total.
+     *
+     * @param limit the maximum number of call sites to return
+     *
+     * @return the call sites, longest total wait time first, or an empty list
+     *         if call sites are not recorded
+     *
+     * @see #getCallSiteSamplingInterval()
+     * @since 2.4.3
+     */
+    public final List<CallSiteStatistics> listTopCallSitesByWaitTime(
+            final int limit) {
+        final CallSiteRecorder recorder = callSiteRecorder;
+        if (recorder == null) {
+            return Collections.emptyList();
+        }
+        return recorder.getTopByWaitTime(limit);
+    }
+
+    /**
+     * Obtain the total hold time of each recorded call site in the collapsed
+     * stack format used to generate flame graphs: one line per call site,
+     * the frames outermost first separated by semicolons, followed by a space
+     * and the total hold time in milliseconds.
+     *
+     * @return the collapsed call stacks or an empty list if call sites are
+     *         not recorded
+     *
+     * @see #getCallSiteSamplingInterval()
+     * @since 2.4.3
+     */
+    public final List<String> listCallSiteHoldTimeStacks() {
+        final CallSiteRecorder recorder = callSiteRecorder;
+        if (recorder == null) {
+            return Collections.emptyList();
+        }
+        return recorder.getCollapsedStacks(false);
+    }
+
+    /**
+     * Obtain the total borrow wait time of each recorded call site in the
+     * collapsed stack format used to generate flame graphs.
+     *
+     * @return the collapsed call stacks or an empty list if call sites are
+     *         not recorded
+     *
+     * @see #listCallSiteHoldTimeStacks()
+     * @since 2.4.3
+     */
+    public final List<String> listCallSiteWaitTimeStacks() {
+        final CallSiteRecorder recorder = callSiteRecorder;
+        if (recorder == null) {
+            return Collections.emptyList();
+        }
+        return recorder.getCollapsedStacks(true);
+    }
+
+    /**
+     * Determine the call site of a borrow that is starting.
+     *
+     * @param tag   the call site passed by the borrower or {@code null}
+     *
+     * @return the call site or {@code null} if the borrow is not attributed
+     */
+    final CallSiteRecorder.CallSite getBorrowCallSite(final String tag) {
+        final CallSiteRecorder recorder = callSiteRecorder;
+        return recorder == null ? null : recorder.getCallSite(tag);
+    }
+
+    /**
+     * Attribute a completed borrow to its call site.
+     *
+     * @param callSite  the call site or {@code null} if the borrow is not
+     *                  attributed
+     * @param p         the borrowed object
+     * @param waitTime  the time (in milliseconds) the borrower waited
+     */
+    final void recordCallSiteBorrow(final CallSiteRecorder.CallSite callSite,
+            final PooledObject<T> p, final long waitTime) {
+        final CallSiteRecorder recorder = callSiteRecorder;
+        if (callSite != null && recorder != null) {
+            recorder.borrowed(callSite, p, waitTime);
+        }
+    }
+
+    /**
+     * Attribute the time an object was held to the call site that borrowed
+     * it, if the borrow was attributed. Called when the object is returned
+     * or destroyed.
+     *
+     * @param p the object
+     */
+    final void recordCallSiteReturn(final PooledObject<T> p) {
+        final CallSiteRecorder recorder = callSiteRecorder;
+        if (recorder != null) {
+            recorder.returned(p);
+        }
+    }
+
+    /**
+     * Record an event in the flight recorder, if events are recorded.
+     *
+     * @param type              the type of event
+     * @param object            the pooled object or {@code null}
+     * @param key               the key of the object or {@code null}
+     * @param durationMillis    the duration associated with the event
+     */
+    final void recordEvent(final PoolEvent.Type type, final Object object,
+            final Object key, final long durationMillis) {
+        final FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.record(type, object, key, durationMillis);
+        }
+    }
+
+    /**
+     * Record that a borrower gave up waiting for an object and capture the
+     * recent events, unless they were captured very recently.
+     *
+     * @param key               the key requested or {@code null}
+     * @param durationMillis    the time the borrower waited
+     */
+    final void recordTimeout(final Object key, final long durationMillis) {
+        final FlightRecorder recorder = flightRecorder;
+        if (recorder == null) {
+            return;
+        }
+        recorder.record(PoolEvent.Type.TIMEOUT, null, key, durationMillis);
+        final long now = System.currentTimeMillis();
+        final long last = lastEventsCaptureTime.get();
+        if (now - last >= EVENTS_CAPTURE_INTERVAL_MILLIS &&
+                lastEventsCaptureTime.compareAndSet(last, now)) {
+            eventsBeforeLastTimeout.set(
+                    Collections.unmodifiableList(recorder.getEvents()));
+        }
+    }
+
+    /**
+     * Create a recorder for statistics of a lock used internally by this pool
+     * and include it in {@link #getLockStatistics()}.
+     *
+     * @param name  The name of the lock
+     *
+     * @return The new recorder
+     */
+    final LockRecorder createLockRecorder(final String name) {
+        final LockRecorder recorder = new LockRecorder(name);
+        recorder.setSamplingInterval(lockStatisticsSamplingInterval);
+        lockRecorders.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * Obtain the distribution of the time borrowers have waited for an
+     * object while the pool has been registered with a
+     * {@link PoolCountersExporter}.
+     *
+     * @return the histogram of borrow wait times
+     */
+    final LatencyHistogram getBorrowWaitTimeHistogram() {
+        return borrowWaitTimeHistogram;
+    }
+
+    /**
+     * Called when a {@link PoolCountersExporter} starts publishing the
+     * statistics of this pool. Borrow wait times are only added to the
+     * histogram while at least one exporter does.
+     */
+    final void countersExporterRegistered() {
+        countersExporters.incrementAndGet();
+    }
+
+    /**
+     * Called when a {@link PoolCountersExporter} stops publishing the
+     * statistics of this pool.
+     */
+    final void countersExporterUnregistered() {
+        countersExporters.decrementAndGet();
+    }
+
     /**
      * The listener used (if any) to receive notifications of exceptions
      * unavoidably swallowed by the pool.
@@ -915,9 +1478,25 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
      * @param waitTime time (in milliseconds) that the borrowing thread had to wait
      */
     final void updateStatsBorrow(final PooledObject<T> p, final long waitTime) {
-        borrowedCount.incrementAndGet();
+        updateStatsBorrow(p, waitTime, 1);
+    }
+
+    /**
+     * Updates statistics after a batch of objects is borrowed from the pool.
+     * Only one object of the batch contributes to the timing statistics.
+     * @param p object of the batch to sample for the timing statistics
+     * @param waitTime time (in milliseconds) that the borrowing thread had to
+     * wait for the sampled object
+     * @param count number of objects borrowed
+     */
+    final void updateStatsBorrow(final PooledObject<T> p, final long waitTime,
+            final int count) {
+        borrowedCount.addAndGet(count);
         idleTimes.add(p.getIdleTimeMillis());
         waitTimes.add(waitTime);
+        if (countersExporters.get() > 0) {
+            borrowWaitTimeHistogram.record(waitTime);
+        }
 
         // lock-free optimistic-locking maximum
         long currentMax;
@@ -929,16 +1508,45 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
         } while (!maxBorrowWaitTimeMillis.compareAndSet(currentMax, waitTime));
     }
 
+    /**
+     * Updates the number of objects borrowed from the pool after a batch that
+     * is not sampled for the timing statistics.
+     * @param count number of objects borrowed
+     */
+    final void updateStatsBorrowCount(final int count) {
+        borrowedCount.addAndGet(count);
+    }
+
     /**
      * Updates statistics after an object is returned to the pool.
      * @param activeTime the amount of time (in milliseconds) that the returning
      * object was checked out
      */
     final void updateStatsReturn(final long activeTime) {
-        returnedCount.incrementAndGet();
+        updateStatsReturn(activeTime, 1);
+    }
+
+    /**
+     * Updates statistics after a batch of objects is returned to the pool.
+     * Only one object of the batch contributes to the timing statistics.
+     * @param activeTime the amount of time (in milliseconds) that the sampled
+     * object was checked out
+     * @param count number of objects returned
+     */
+    final void updateStatsReturn(final long activeTime, final int count) {
+        returnedCount.addAndGet(count);
         activeTimes.add(activeTime);
     }
 
+    /**
+     * Updates the number of objects returned to the pool after a batch that
+     * is not sampled for the timing statistics.
+     * @param count number of objects returned
+     */
+    final void updateStatsReturnCount(final int count) {
+        returnedCount.addAndGet(count);
+    }
+
     /**
      * Unregisters this pool's MBean.
      */
@@ -1220,6 +1828,12 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
     static class IdentityWrapper<T> {
         /** Wrapped object */
         private final T instance;
+        /**
+         * Pooled object through which the wrapped object is obtained, if the
+         * wrapper was created by {@link #forPooledObject(PooledObject)}
+         */
+        private final PooledObject<T> pooledObject;
+        private final int hash;
 
         /**
          * Create a wrapper for an instance.
@@ -1228,32 +1842,80 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
          */
         public IdentityWrapper(final T instance) {
             this.instance = instance;
+            this.pooledObject = null;
+            this.hash = System.identityHashCode(instance);
+        }
+
+        private IdentityWrapper(final PooledObject<T> pooledObject, final int hash) {
+            this.instance = null;
+            this.pooledObject = pooledObject;
+            this.hash = hash;
+        }
+
+        /**
+         * Create a wrapper for the object wrapped by a pooled object that
+         * does not itself refer to the object. If the pooled object only
+         * softly holds the object, so does the wrapper. Once the object has
+         * been reclaimed the wrapper is only equal to itself.
+         *
+         * @param <T> type of the wrapped object
+         * @param pooledObject pooled object wrapping the object to wrap
+         * @return the wrapper
+         */
+        static <T> IdentityWrapper<T> forPooledObject(final PooledObject<T> pooledObject) {
+            return new IdentityWrapper<T>(pooledObject,
+                    System.identityHashCode(pooledObject.getObject()));
+        }
+
+        /**
+         * Create a wrapper equal to the one created by
+         * {@link #forPooledObject(PooledObject)} for the same pooled object,
+         * so that it can be found once the wrapped object has been reclaimed.
+         *
+         * @param <T> type of the wrapped object
+         * @param pooledObject pooled object the wrapper was created for
+         * @param hash identity hash code the wrapped object had
+         * @return the wrapper
+         */
+        static <T> IdentityWrapper<T> forReclaimedObject(
+                final PooledObject<T> pooledObject, final int hash) {
+            return new IdentityWrapper<T>(pooledObject, hash);
         }
 
         @Override
         public int hashCode() {
-            return System.identityHashCode(instance);
+            return hash;
         }
 
         @Override
         @SuppressWarnings("rawtypes")
         public boolean equals(final Object other) {
-            return  other instanceof IdentityWrapper &&
-                    ((IdentityWrapper) other).instance == instance;
+            if (other == this) {
+                return true;
+            }
+            if (!(other instanceof IdentityWrapper)) {
+                return false;
+            }
+            if (pooledObject != null &&
+                    ((IdentityWrapper) other).pooledObject == pooledObject) {
+                return true;
+            }
+            final Object object = getObject();
+            return object != null && ((IdentityWrapper) other).getObject() == object;
         }
 
         /**
          * @return the wrapped object
          */
         public T getObject() {
-            return instance;
+            return pooledObject == null ? instance : pooledObject.getObject();
         }
 
         @Override
         public String toString() {
             final StringBuilder builder = new StringBuilder();
             builder.append("IdentityWrapper [instance=");
-            builder.append(instance);
+            builder.append(getObject());
             builder.append("]");
             return builder.toString();
         }
@@ -1269,6 +1931,8 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
         builder.append(maxWaitMillis);
         builder.append(", lifo=");
         builder.append(lifo);
+        builder.append(", softReferenceIdleObjects=");
+        builder.append(softReferenceIdleObjects);
         builder.append(", fairness=");
         builder.append(fairness);
         builder.append(", testOnCreate=");
@@ -1325,8 +1989,16 @@ public abstract class BaseGenericObjectPool<T> extends BaseObject {
         builder.append(waitTimes);
         builder.append(", maxBorrowWaitTimeMillis=");
         builder.append(maxBorrowWaitTimeMillis);
+        builder.append(", borrowWaitTimeHistogram=");
+        builder.append(borrowWaitTimeHistogram);
         builder.append(", swallowedExceptionListener=");
         builder.append(swallowedExceptionListener);
+        builder.append(", lockStatisticsSamplingInterval=");
+        builder.append(lockStatisticsSamplingInterval);
+        builder.append(", lockRecorders=");
+        builder.append(lockRecorders);
+        builder.append(", flightRecorder=");
+        builder.append(flightRecorder);
     }
 
 }
@@ -164,6 +164,42 @@ public abstract class BaseObjectPoolConfig extends BaseObject implements Cloneab
     public static final String DEFAULT_EVICTION_POLICY_CLASS_NAME =
             "org.apache.commons.pool2.impl.DefaultEvictionPolicy";
 
+    /**
+     * The default value for the {@code lockStatisticsSamplingInterval}
+     * configuration attribute.
+     * @see GenericObjectPool#getLockStatisticsSamplingInterval()
+     * @see GenericKeyedObjectPool#getLockStatisticsSamplingInterval()
+     * @since 2.4.3
+     */
+    public static final int DEFAULT_LOCK_STATISTICS_SAMPLING_INTERVAL = 0;
+
+    /**
+     * The default value for the {@code flightRecorderSize} configuration
+     * attribute.
+     * @see GenericObjectPool#getFlightRecorderSize()
+     * @see GenericKeyedObjectPool#getFlightRecorderSize()
+     * @since 2.4.3
+     */
+    public static final int DEFAULT_FLIGHT_RECORDER_SIZE = 0;
+
+    /**
+     * The default value for the {@code callSiteSamplingInterval}
+     * configuration attribute.
+     * @see GenericObjectPool#getCallSiteSamplingInterval()
+     * @see GenericKeyedObjectPool#getCallSiteSamplingInterval()
+     * @since 2.4.3
+     */
+    public static final int DEFAULT_CALL_SITE_SAMPLING_INTERVAL = 0;
+
+    /**
+     * The default value for the {@code softReferenceIdleObjects}
+     * configuration attribute.
+     * @see GenericObjectPool#getSoftReferenceIdleObjects()
+     * @see GenericKeyedObjectPool#getSoftReferenceIdleObjects()
+     * @since 2.4.3
+     */
+    public static final boolean DEFAULT_SOFT_REFERENCE_IDLE_OBJECTS = false;
+
 
     private boolean lifo = DEFAULT_LIFO;
 
@@ -205,6 +241,17 @@ public abstract class BaseObjectPoolConfig extends BaseObject implements Cloneab
 
     private String jmxNameBase = DEFAULT_JMX_NAME_BASE;
 
+    private int lockStatisticsSamplingInterval =
+            DEFAULT_LOCK_STATISTICS_SAMPLING_INTERVAL;
+
+    private int flightRecorderSize = DEFAULT_FLIGHT_RECORDER_SIZE;
+
+    private int callSiteSamplingInterval =
+            DEFAULT_CALL_SITE_SAMPLING_INTERVAL;
+
+    private boolean softReferenceIdleObjects =
+            DEFAULT_SOFT_REFERENCE_IDLE_OBJECTS;
+
 
     /**
      * Get the value for the {@code lifo} configuration attribute for pools
@@ -610,6 +657,130 @@ public abstract class BaseObjectPoolConfig extends BaseObject implements Cloneab
         this.blockWhenExhausted = blockWhenExhausted;
     }
 
+    /**
+     * Get the value for the {@code lockStatisticsSamplingInterval}
+     * configuration attribute for pools created with this configuration
+     * instance.
+     *
+     * @return  The current setting of {@code lockStatisticsSamplingInterval}
+     *          for this configuration instance
+     *
+     * @see GenericObjectPool#getLockStatisticsSamplingInterval()
+     * @see GenericKeyedObjectPool#getLockStatisticsSamplingInterval()
+     * @since 2.4.3
+     */
+    public int getLockStatisticsSamplingInterval() {
+        return lockStatisticsSamplingInterval;
+    }
+
+    /**
+     * Set the value for the {@code lockStatisticsSamplingInterval}
+     * configuration attribute for pools created with this configuration
+     * instance.
+     *
+     * @param lockStatisticsSamplingInterval The new setting of
+     *        {@code lockStatisticsSamplingInterval} for this configuration
+     *        instance
+     *
+     * @see GenericObjectPool#getLockStatisticsSamplingInterval()
+     * @see GenericKeyedObjectPool#getLockStatisticsSamplingInterval()
+     * @since 2.4.3
+     */
+    public void setLockStatisticsSamplingInterval(
+            final int lockStatisticsSamplingInterval) {
+        this.lockStatisticsSamplingInterval = lockStatisticsSamplingInterval;
+    }
+
+    /**
+     * Get the value for the {@code flightRecorderSize} configuration attribute
+     * for pools created with this configuration instance.
+     *
+     * @return  The current setting of {@code flightRecorderSize} for this
+     *          configuration instance
+     *
+     * @see GenericObjectPool#getFlightRecorderSize()
+     * @see GenericKeyedObjectPool#getFlightRecorderSize()
+     * @since 2.4.3
+     */
+    public int getFlightRecorderSize() {
+        return flightRecorderSize;
+    }
+
+    /**
+     * Set the value for the {@code flightRecorderSize} configuration attribute
+     * for pools created with this configuration instance.
+     *
+     * @param flightRecorderSize The new setting of {@code flightRecorderSize}
+     *        for this configuration instance
+     *
+     * @see GenericObjectPool#getFlightRecorderSize()
+     * @see GenericKeyedObjectPool#getFlightRecorderSize()
+     * @since 2.4.3
+     */
+    public void setFlightRecorderSize(final int flightRecorderSize) {
+        this.flightRecorderSize = flightRecorderSize;
+    }
+
+    /**
+     * Get the value for the {@code callSiteSamplingInterval} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @return  The current setting of {@code callSiteSamplingInterval} for
+     *          this configuration instance
+     *
+     * @see GenericObjectPool#getCallSiteSamplingInterval()
+     * @see GenericKeyedObjectPool#getCallSiteSamplingInterval()
+     * @since 2.4.3
+     */
+    public int getCallSiteSamplingInterval() {
+        return callSiteSamplingInterval;
+    }
+
+    /**
+     * Set the value for the {@code callSiteSamplingInterval} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @param callSiteSamplingInterval The new setting of
+     *        {@code callSiteSamplingInterval} for this configuration instance
+     *
+     * @see GenericObjectPool#getCallSiteSamplingInterval()
+     * @see GenericKeyedObjectPool#getCallSiteSamplingInterval()
+     * @since 2.4.3
+     */
+    public void setCallSiteSamplingInterval(final int callSiteSamplingInterval) {
+        this.callSiteSamplingInterval = callSiteSamplingInterval;
+    }
+
+    /**
+     * Get the value for the {@code softReferenceIdleObjects} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @return  The current setting of {@code softReferenceIdleObjects} for
+     *          this configuration instance
+     *
+     * @see GenericObjectPool#getSoftReferenceIdleObjects()
+     * @see GenericKeyedObjectPool#getSoftReferenceIdleObjects()
+     * @since 2.4.3
+     */
+    public boolean getSoftReferenceIdleObjects() {
+        return softReferenceIdleObjects;
+    }
+
+    /**
+     * Set the value for the {@code softReferenceIdleObjects} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @param softReferenceIdleObjects The new setting of
+     *        {@code softReferenceIdleObjects} for this configuration instance
+     *
+     * @see GenericObjectPool#getSoftReferenceIdleObjects()
+     * @see GenericKeyedObjectPool#getSoftReferenceIdleObjects()
+     * @since 2.4.3
+     */
+    public void setSoftReferenceIdleObjects(final boolean softReferenceIdleObjects) {
+        this.softReferenceIdleObjects = softReferenceIdleObjects;
+    }
+
     /**
      * Gets the value of the flag that determines if JMX will be enabled for
      * pools created with this configuration instance.
@@ -710,6 +881,14 @@ public abstract class BaseObjectPoolConfig extends BaseObject implements Cloneab
         builder.append(timeBetweenEvictionRunsMillis);
         builder.append(", blockWhenExhausted=");
         builder.append(blockWhenExhausted);
+        builder.append(", lockStatisticsSamplingInterval=");
+        builder.append(lockStatisticsSamplingInterval);
+        builder.append(", flightRecorderSize=");
+        builder.append(flightRecorderSize);
+        builder.append(", callSiteSamplingInterval=");
+        builder.append(callSiteSamplingInterval);
+        builder.append(", softReferenceIdleObjects=");
+        builder.append(softReferenceIdleObjects);
         builder.append(", jmxEnabled=");
         builder.append(jmxEnabled);
         builder.append(", jmxNamePrefix=");
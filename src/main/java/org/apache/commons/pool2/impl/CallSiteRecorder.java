@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool2.PooledObject;
+
+/**
+ * Attributes the borrow wait times and hold times of a pool to the call
+ * sites that borrow objects. Borrows are attributed to the tag passed to the
+ * pool or, for untagged borrows, to the call stack captured for one in every
+ * {@link #getSamplingInterval()} borrows. Borrows that are neither tagged nor
+ * sampled are not attributed.
+ * <p>
+ * The number of distinct call sites is limited to {@link #MAX_CALL_SITES};
+ * further call sites are combined as {@link #OTHER_CALL_SITES}.
+ * <p>
+ * This class is intended to be thread-safe.
+ *
+ * @since 2.4.3
+ */
+class CallSiteRecorder {
+
+    /** The maximum number of distinct call sites recorded. */
+    static final int MAX_CALL_SITES = 1000;
+
+    /** The name under which call sites beyond the limit are recorded. */
+    static final String OTHER_CALL_SITES = "<other>";
+
+    private static final Comparator<CallSiteStatistics> BY_HOLD_TIME =
+            new Comparator<CallSiteStatistics>() {
+                @Override
+                public int compare(final CallSiteStatistics s1,
+                        final CallSiteStatistics s2) {
+                    return compareDescending(s1.getTotalHoldTimeMillis(),
+                            s2.getTotalHoldTimeMillis());
+                }
+            };
+
+    private static final Comparator<CallSiteStatistics> BY_WAIT_TIME =
+            new Comparator<CallSiteStatistics>() {
+                @Override
+                public int compare(final CallSiteStatistics s1,
+                        final CallSiteStatistics s2) {
+                    return compareDescending(s1.getTotalWaitTimeMillis(),
+                            s2.getTotalWaitTimeMillis());
+                }
+            };
+
+    private final int samplingInterval;
+    private final Set<String> poolClassNames = new HashSet<String>();
+    private final AtomicLong borrowCount = new AtomicLong(0);
+    private final ConcurrentMap<String, CallSite> callSites =
+            new ConcurrentHashMap<String, CallSite>();
+    private final ConcurrentMap<PooledObject<?>, CallSite> borrowed =
+            new ConcurrentHashMap<PooledObject<?>, CallSite>();
+
+    /**
+     * Create a new recorder.
+     *
+     * @param poolClass         The class of the pool. Frames of this class and
+     *                          its super classes are omitted from captured
+     *                          call stacks.
+     * @param samplingInterval  The number of untagged borrows per captured
+     *                          call stack
+     */
+    CallSiteRecorder(final Class<?> poolClass, final int samplingInterval) {
+        this.samplingInterval = samplingInterval;
+        Class<?> c = poolClass;
+        while (c != null) {
+            poolClassNames.add(c.getName());
+            c = c.getSuperclass();
+        }
+        poolClassNames.add(CallSiteRecorder.class.getName());
+    }
+
+    /**
+     * Obtain the number of untagged borrows per captured call stack.
+     *
+     * @return The sampling interval
+     */
+    int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * Determine the call site of a borrow that is starting.
+     *
+     * @param tag   The tag passed to the pool or {@code null} to sample the
+     *              call stack
+     *
+     * @return The call site or {@code null} if the borrow is not attributed
+     */
+    CallSite getCallSite(final String tag) {
+        if (tag != null) {
+            return lookup(tag, tag);
+        }
+        if (borrowCount.getAndIncrement() % samplingInterval != 0) {
+            return null;
+        }
+        final StackTraceElement[] frames = new Throwable().getStackTrace();
+        int start = 0;
+        while (start < frames.length && isPoolFrame(frames[start])) {
+            start++;
+        }
+        if (start == frames.length) {
+            return null;
+        }
+        final StringBuilder stack = new StringBuilder();
+        for (int i = frames.length - 1; i >= start; i--) {
+            stack.append(frames[i].getClassName());
+            stack.append('.');
+            stack.append(frames[i].getMethodName());
+            if (i > start) {
+                stack.append(';');
+            }
+        }
+        final StackTraceElement top = frames[start];
+        return lookup(stack.toString(),
+                top.getClassName() + "." + top.getMethodName());
+    }
+
+    private CallSite lookup(final String stack, final String name) {
+        CallSite callSite = callSites.get(stack);
+        if (callSite == null) {
+            if (callSites.size() >= MAX_CALL_SITES) {
+                return getOverflowCallSite();
+            }
+            callSite = new CallSite(name, stack);
+            final CallSite existing = callSites.putIfAbsent(stack, callSite);
+            if (existing != null) {
+                callSite = existing;
+            }
+        }
+        return callSite;
+    }
+
+    private CallSite getOverflowCallSite() {
+        CallSite callSite = callSites.get(OTHER_CALL_SITES);
+        if (callSite == null) {
+            callSite = new CallSite(OTHER_CALL_SITES, OTHER_CALL_SITES);
+            final CallSite existing =
+                    callSites.putIfAbsent(OTHER_CALL_SITES, callSite);
+            if (existing != null) {
+                callSite = existing;
+            }
+        }
+        return callSite;
+    }
+
+    private boolean isPoolFrame(final StackTraceElement frame) {
+        final String className = frame.getClassName();
+        return poolClassNames.contains(className) ||
+                className.startsWith("org.apache.commons.pool2.proxy.Proxied") ||
+                className.startsWith("org.apache.commons.pool2.PoolUtils$");
+    }
+
+    /**
+     * Record that an object has been borrowed from a call site.
+     *
+     * @param callSite      The call site
+     * @param p             The borrowed object
+     * @param waitTimeMillis The time the borrower waited for the object
+     */
+    void borrowed(final CallSite callSite, final PooledObject<?> p,
+            final long waitTimeMillis) {
+        callSite.waitTimes.record(waitTimeMillis);
+        borrowed.put(p, callSite);
+    }
+
+    /**
+     * Record that an object is being returned to the pool or destroyed.
+     * Nothing is recorded if the borrow of the object was not attributed.
+     *
+     * @param p The object
+     */
+    void returned(final PooledObject<?> p) {
+        final CallSite callSite = borrowed.remove(p);
+        if (callSite != null) {
+            callSite.holdTimes.record(p.getActiveTimeMillis());
+        }
+    }
+
+    /**
+     * Obtain the call sites that have held objects for the longest in total.
+     *
+     * @param limit The maximum number of call sites to return
+     *
+     * @return The call sites, longest total hold time first
+     */
+    List<CallSiteStatistics> getTopByHoldTime(final int limit) {
+        return getTop(BY_HOLD_TIME, limit);
+    }
+
+    /**
+     * Obtain the call sites that have waited for objects for the longest in
+     * total.
+     *
+     * @param limit The maximum number of call sites to return
+     *
+     * @return The call sites, longest total wait time first
+     */
+    List<CallSiteStatistics> getTopByWaitTime(final int limit) {
+        return getTop(BY_WAIT_TIME, limit);
+    }
+
+    private List<CallSiteStatistics> getTop(
+            final Comparator<CallSiteStatistics> comparator, final int limit) {
+        final List<CallSiteStatistics> all = new ArrayList<CallSiteStatistics>();
+        for (final CallSite callSite : callSites.values()) {
+            all.add(callSite.getStatistics());
+        }
+        Collections.sort(all, comparator);
+        return all.size() > limit ?
+                new ArrayList<CallSiteStatistics>(all.subList(0, Math.max(0, limit))) :
+                all;
+    }
+
+    /**
+     * Obtain the recorded call stacks in the collapsed format used to
+     * generate flame graphs: one line per call stack, the frames outermost
+     * first separated by semicolons followed by a space and the total hold
+     * or wait time in milliseconds. Call stacks with a total of zero are
+     * omitted.
+     *
+     * @param waitTime {@code true} for the total wait time, {@code false}
+     *                 for the total hold time
+     *
+     * @return The collapsed call stacks
+     */
+    List<String> getCollapsedStacks(final boolean waitTime) {
+        final List<String> result = new ArrayList<String>();
+        for (final CallSite callSite : callSites.values()) {
+            final long total = waitTime ? callSite.waitTimes.getTotal() :
+                    callSite.holdTimes.getTotal();
+            if (total > 0) {
+                result.add(callSite.stack + " " + total);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static int compareDescending(final long v1, final long v2) {
+        return v1 > v2 ? -1 : v1 < v2 ? 1 : 0;
+    }
+
+    /**
+     * The times recorded for a call site.
+     */
+    static class CallSite {
+
+        private final String name;
+        private final String stack;
+        private final LatencyHistogram holdTimes = new LatencyHistogram();
+        private final LatencyHistogram waitTimes = new LatencyHistogram();
+
+        CallSite(final String name, final String stack) {
+            this.name = name;
+            this.stack = stack;
+        }
+
+        CallSiteStatistics getStatistics() {
+            return new CallSiteStatistics(name, stack, holdTimes, waitTimes);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+/**
+ * The hold and wait times recorded for the borrows made from one call site.
+ * A call site is either a tag passed to a borrow method or a call stack
+ * captured for a sample of the borrows. Hold times are only recorded once
+ * the borrowed object has been returned or invalidated. Instances are
+ * immutable and are exposed via JMX.
+ *
+ * @since 2.4.3
+ */
+public class CallSiteStatistics {
+
+    private final String name;
+    private final String stack;
+    private final long borrowCount;
+    private final long holdCount;
+    private final long totalHoldTimeMillis;
+    private final long meanHoldTimeMillis;
+    private final long holdTimeMillis99thPercentile;
+    private final long maxHoldTimeMillis;
+    private final long totalWaitTimeMillis;
+    private final long meanWaitTimeMillis;
+    private final long waitTimeMillis99thPercentile;
+    private final long maxWaitTimeMillis;
+
+    /**
+     * Create a new instance.
+     *
+     * @param name  The name of the call site
+     * @param stack The call stack of the call site in collapsed form
+     * @param holdTimes The hold times recorded for the call site
+     * @param waitTimes The borrow wait times recorded for the call site
+     */
+    CallSiteStatistics(final String name, final String stack,
+            final LatencyHistogram holdTimes, final LatencyHistogram waitTimes) {
+        this.name = name;
+        this.stack = stack;
+        this.borrowCount = waitTimes.getCount();
+        this.holdCount = holdTimes.getCount();
+        this.totalHoldTimeMillis = holdTimes.getTotal();
+        this.meanHoldTimeMillis = holdTimes.getMean();
+        this.holdTimeMillis99thPercentile = holdTimes.getPercentile(99);
+        this.maxHoldTimeMillis = holdTimes.getMax();
+        this.totalWaitTimeMillis = waitTimes.getTotal();
+        this.meanWaitTimeMillis = waitTimes.getMean();
+        this.waitTimeMillis99thPercentile = waitTimes.getPercentile(99);
+        this.maxWaitTimeMillis = waitTimes.getMax();
+    }
+
+    /**
+     * Obtain the name of the call site: the tag or the innermost frame of the
+     * call stack outside of the pool.
+     *
+     * @return The name of the call site
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtain the call stack of the call site in collapsed form, outermost
+     * frame first with frames separated by semicolons. For a tagged call site
+     * this is the tag.
+     *
+     * @return The call stack
+     */
+    public String getStack() {
+        return stack;
+    }
+
+    /**
+     * Obtain the number of recorded borrows.
+     *
+     * @return The number of borrows
+     */
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    /**
+     * Obtain the number of recorded borrows for which the object has been
+     * returned or invalidated.
+     *
+     * @return The number of completed holds
+     */
+    public long getHoldCount() {
+        return holdCount;
+    }
+
+    /**
+     * Obtain the total time objects were held.
+     *
+     * @return The total hold time in milliseconds
+     */
+    public long getTotalHoldTimeMillis() {
+        return totalHoldTimeMillis;
+    }
+
+    /**
+     * Obtain the mean time objects were held.
+     *
+     * @return The mean hold time in milliseconds
+     */
+    public long getMeanHoldTimeMillis() {
+        return meanHoldTimeMillis;
+    }
+
+    /**
+     * Obtain an upper bound for the 99th percentile of the hold times.
+     *
+     * @return The 99th percentile hold time in milliseconds
+     */
+    public long getHoldTimeMillis99thPercentile() {
+        return holdTimeMillis99thPercentile;
+    }
+
+    /**
+     * Obtain the longest time an object was held.
+     *
+     * @return The longest hold time in milliseconds
+     */
+    public long getMaxHoldTimeMillis() {
+        return maxHoldTimeMillis;
+    }
+
+    /**
+     * Obtain the total time borrowers waited for an object.
+     *
+     * @return The total wait time in milliseconds
+     */
+    public long getTotalWaitTimeMillis() {
+        return totalWaitTimeMillis;
+    }
+
+    /**
+     * Obtain the mean time borrowers waited for an object.
+     *
+     * @return The mean wait time in milliseconds
+     */
+    public long getMeanWaitTimeMillis() {
+        return meanWaitTimeMillis;
+    }
+
+    /**
+     * Obtain an upper bound for the 99th percentile of the wait times.
+     *
+     * @return The 99th percentile wait time in milliseconds
+     */
+    public long getWaitTimeMillis99thPercentile() {
+        return waitTimeMillis99thPercentile;
+    }
+
+    /**
+     * Obtain the longest time a borrower waited for an object.
+     *
+     * @return The longest wait time in milliseconds
+     */
+    public long getMaxWaitTimeMillis() {
+        return maxWaitTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("CallSiteStatistics [name=");
+        builder.append(name);
+        builder.append(", borrowCount=");
+        builder.append(borrowCount);
+        builder.append(", totalHoldTimeMillis=");
+        builder.append(totalHoldTimeMillis);
+        builder.append(", maxHoldTimeMillis=");
+        builder.append(maxHoldTimeMillis);
+        builder.append(", totalWaitTimeMillis=");
+        builder.append(totalWaitTimeMillis);
+        builder.append(", maxWaitTimeMillis=");
+        builder.append(maxWaitTimeMillis);
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.io.PrintWriter;
+
+/**
+ * A call stack captured when an object is borrowed from or used via a pool,
+ * retained so that it can be reported if the object is later found to have
+ * been abandoned.
+ * <p>
+ * Implementations should do as little work as possible when the call stack is
+ * captured and defer formatting until {@link #printStackTrace(PrintWriter)} is
+ * called since the great majority of captured call stacks are never printed.
+ *
+ * @since 2.4.3
+ */
+interface CallStack {
+
+    /**
+     * Prints the captured call stack to the given writer.
+     *
+     * @param writer the writer to print to
+     * @return {@code true} if anything was written
+     */
+    boolean printStackTrace(PrintWriter writer);
+}
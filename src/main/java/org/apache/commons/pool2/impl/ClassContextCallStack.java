@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.io.PrintWriter;
+import java.security.PrivilegedAction;
+
+/**
+ * A {@link CallStack} that records only the classes on the call stack. The
+ * classes are obtained from {@link SecurityManager#getClassContext()} which is
+ * considerably cheaper than filling in a full stack trace, at the cost of
+ * losing method names and line numbers.
+ * <p>
+ * If a {@link SecurityManager} is installed that does not permit the creation
+ * of a new security manager this class can not be used, see
+ * {@link #isAvailable()}.
+ *
+ * @since 2.4.3
+ */
+class ClassContextCallStack implements CallStack {
+
+    /** Null if the security manager could not be created. */
+    private static final ClassContext CLASS_CONTEXT = ClassContext.create();
+
+    private final String message;
+    private final long createdTime;
+    private final String[] classNames;
+
+    /**
+     * Create a new instance, capturing the classes on the current call stack.
+     *
+     * @param message the message to print before the class names or
+     *                {@code null} to use the message reported for an object
+     *                that has been borrowed but not returned
+     */
+    ClassContextCallStack(final String message) {
+        if (CLASS_CONTEXT == null) {
+            throw new IllegalStateException(
+                    "The classes on the call stack can not be obtained");
+        }
+        this.message = message;
+        this.createdTime = System.currentTimeMillis();
+        this.classNames = captureClassNames();
+    }
+
+    /**
+     * Can instances be created? Callers should fall back to a
+     * {@link ThrowableCallStack} if not.
+     *
+     * @return {@code true} unless the installed security manager prevents
+     *         the classes on the call stack from being obtained
+     */
+    static boolean isAvailable() {
+        return CLASS_CONTEXT != null;
+    }
+
+    @Override
+    public boolean printStackTrace(final PrintWriter writer) {
+        if (message == null) {
+            writer.println(DefaultPooledObject.AbandonedObjectCreatedException
+                    .formatMessage(createdTime));
+        } else {
+            writer.println(message);
+        }
+        for (final String className : classNames) {
+            writer.print("\tat ");
+            writer.println(className);
+        }
+        return true;
+    }
+
+    private static String[] captureClassNames() {
+        final Class<?>[] classes = CLASS_CONTEXT.getCallStack();
+        final String[] names = new String[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            names[i] = classes[i].getName();
+        }
+        int start = 0;
+        while (start < names.length && isCaptureClass(names[start])) {
+            start++;
+        }
+        final String[] callers = new String[names.length - start];
+        System.arraycopy(names, start, callers, 0, callers.length);
+        return callers;
+    }
+
+    /*
+     * The classes doing the capturing are omitted from the recorded stack.
+     */
+    private static boolean isCaptureClass(final String className) {
+        return className.equals(ClassContext.class.getName()) ||
+                className.equals(ClassContextCallStack.class.getName()) ||
+                className.equals(DefaultPooledObject.class.getName());
+    }
+
+    /**
+     * Exposes the protected {@link SecurityManager#getClassContext()}. This
+     * security manager is never installed. Recent versions of Java deprecate
+     * the security manager for removal, the resulting warnings are confined
+     * to this class.
+     */
+    @SuppressWarnings("removal")
+    private static class ClassContext extends SecurityManager {
+        /**
+         * @return a new instance or {@code null} if the installed security
+         *         manager does not permit its creation
+         */
+        static ClassContext create() {
+            return java.security.AccessController.doPrivileged(
+                    new PrivilegedAction<ClassContext>() {
+                @Override
+                public ClassContext run() {
+                    try {
+                        return new ClassContext();
+                    } catch (final SecurityException e) {
+                        return null;
+                    }
+                }
+            });
+        }
+
+        Class<?>[] getCallStack() {
+            return getClassContext();
+        }
+    }
+}
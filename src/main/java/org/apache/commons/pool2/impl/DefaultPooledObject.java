@@ -17,6 +17,7 @@
 package org.apache.commons.pool2.impl;
 
 import java.io.PrintWriter;
+import java.lang.ref.SoftReference;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Deque;
@@ -39,16 +40,23 @@ import org.apache.commons.pool2.TrackedUse;
  */
 public class DefaultPooledObject<T> implements PooledObject<T> {
 
-    private final T object;
+    // Null while the object is softly held
+    private volatile T object;
+    private volatile SoftReference<T> softObject = null;
+    private int softObjectIdentityHash; // @GuardedBy("this")
     private PooledObjectState state = PooledObjectState.IDLE; // @GuardedBy("this") to ensure transitions are valid
     private final long createTime = System.currentTimeMillis();
     private volatile long lastBorrowTime = createTime;
     private volatile long lastUseTime = createTime;
     private volatile long lastReturnTime = createTime;
     private volatile boolean logAbandoned = false;
-    private volatile Exception borrowedBy = null;
-    private volatile Exception usedBy = null;
+    private volatile CallStack borrowedBy = null;
+    private volatile CallStack usedBy = null;
     private volatile long borrowedCount = 0;
+    private volatile boolean requireFullStackTrace = true;
+    private volatile int stackTraceSamplingInterval = 1;
+    // Not thread safe but lost updates only skew the sampling slightly
+    private long useCount = 0;
 
     /**
      * Create a new instance that wraps the provided object so that the pool can
@@ -62,7 +70,12 @@ public class DefaultPooledObject<T> implements PooledObject<T> {
 
     @Override
     public T getObject() {
-        return object;
+        final T obj = object;
+        if (obj != null) {
+            return obj;
+        }
+        final SoftReference<T> ref = softObject;
+        return ref == null ? null : ref.get();
     }
 
     @Override
@@ -121,8 +134,9 @@ public class DefaultPooledObject<T> implements PooledObject<T> {
      */
     @Override
     public long getLastUsedTime() {
-        if (object instanceof TrackedUse) {
-            return Math.max(((TrackedUse) object).getLastUsed(), lastUseTime);
+        final T obj = getObject();
+        if (obj instanceof TrackedUse) {
+            return Math.max(((TrackedUse) obj).getLastUsed(), lastUseTime);
         }
         return lastUseTime;
     }
@@ -145,7 +159,7 @@ public class DefaultPooledObject<T> implements PooledObject<T> {
     public String toString() {
         final StringBuilder result = new StringBuilder();
         result.append("Object: ");
-        result.append(object.toString());
+        result.append(getObject());
         result.append(", State: ");
         synchronized (this) {
             result.append(state.toString());
@@ -193,7 +207,8 @@ public class DefaultPooledObject<T> implements PooledObject<T> {
             lastUseTime = lastBorrowTime;
             borrowedCount++;
             if (logAbandoned) {
-                borrowedBy = new AbandonedObjectCreatedException();
+                borrowedBy = isSampled(borrowedCount - 1) ?
+                        captureCallStack(null) : null;
             }
             return true;
         } else if (state == PooledObjectState.EVICTION) {
@@ -236,21 +251,79 @@ public class DefaultPooledObject<T> implements PooledObject<T> {
     @Override
     public void use() {
         lastUseTime = System.currentTimeMillis();
-        usedBy = new Exception("The last code to use this object was:");
+        if (isSampled(useCount++)) {
+            usedBy = captureCallStack(stackTraceSamplingInterval > 1 ?
+                    "The last sampled code to use this object was:" :
+                    "The last code to use this object was:");
+        }
+    }
+
+    /**
+     * Hold the wrapped object through a soft reference so that the garbage
+     * collector may reclaim it. Used by pools for idle objects.
+     *
+     * @return <code>true</code> if the object was strongly held before the
+     *         call
+     */
+    synchronized boolean soften() {
+        final T obj = object;
+        if (obj == null) {
+            return false;
+        }
+        softObject = new SoftReference<T>(obj);
+        softObjectIdentityHash = System.identityHashCode(obj);
+        object = null;
+        return true;
+    }
+
+    /**
+     * Obtain the identity hash code of the wrapped object as it was when the
+     * object was last softly held, so that the pool can still find the object
+     * once it has been reclaimed.
+     *
+     * @return the identity hash code recorded by {@link #soften()}
+     */
+    synchronized int getSoftObjectIdentityHash() {
+        return softObjectIdentityHash;
+    }
+
+    /**
+     * Is the wrapped object currently held through a soft reference?
+     *
+     * @return <code>true</code> if {@link #soften()} has been called since the
+     *         object was last strongly held
+     */
+    boolean isSoft() {
+        return softObject != null;
+    }
+
+    /**
+     * Hold the wrapped object strongly again after a call to
+     * {@link #soften()}.
+     *
+     * @return <code>true</code> if the object was softly held before the
+     *         call, whether or not it has since been reclaimed
+     */
+    synchronized boolean harden() {
+        final SoftReference<T> ref = softObject;
+        if (ref == null) {
+            return false;
+        }
+        object = ref.get();
+        softObject = null;
+        return true;
     }
 
     @Override
     public void printStackTrace(final PrintWriter writer) {
         boolean written = false;
-        final Exception borrowedByCopy = this.borrowedBy;
+        final CallStack borrowedByCopy = this.borrowedBy;
         if (borrowedByCopy != null) {
-            borrowedByCopy.printStackTrace(writer);
-            written = true;
+            written |= borrowedByCopy.printStackTrace(writer);
         }
-        final Exception usedByCopy = this.usedBy;
+        final CallStack usedByCopy = this.usedBy;
         if (usedByCopy != null) {
-            usedByCopy.printStackTrace(writer);
-            written = true;
+            written |= usedByCopy.printStackTrace(writer);
         }
         if (written) {
             writer.flush();
@@ -287,6 +360,53 @@ public class DefaultPooledObject<T> implements PooledObject<T> {
         this.logAbandoned = logAbandoned;
     }
 
+    /**
+     * Configures whether the call stacks recorded when this object is borrowed
+     * or used include method names and line numbers. If {@code false}, only the
+     * classes on the call stack are recorded which is considerably cheaper.
+     *
+     * @param requireFullStackTrace {@code true} to record full stack traces
+     * @since 2.4.3
+     */
+    public void setRequireFullStackTrace(final boolean requireFullStackTrace) {
+        this.requireFullStackTrace = requireFullStackTrace;
+    }
+
+    /**
+     * Configures how often a call stack is recorded when this object is
+     * borrowed or used. A value of {@code n} records the call stack for one
+     * borrow (and one use) in every {@code n}, starting with the first.
+     * Borrows that are not sampled record no call stack so an abandoned object
+     * may be reported without one. Values less than 1 are treated as 1.
+     *
+     * @param stackTraceSamplingInterval the sampling interval
+     * @since 2.4.3
+     */
+    public void setStackTraceSamplingInterval(final int stackTraceSamplingInterval) {
+        this.stackTraceSamplingInterval = stackTraceSamplingInterval;
+    }
+
+    private boolean isSampled(final long count) {
+        final int interval = stackTraceSamplingInterval;
+        return interval <= 1 || count % interval == 0;
+    }
+
+    /**
+     * Captures the current call stack.
+     *
+     * @param message the message to report with the call stack or
+     *                {@code null} for a borrow
+     */
+    private CallStack captureCallStack(final String message) {
+        if (!requireFullStackTrace && ClassContextCallStack.isAvailable()) {
+            return new ClassContextCallStack(message);
+        }
+        if (message == null) {
+            return new ThrowableCallStack(new AbandonedObjectCreatedException());
+        }
+        return new ThrowableCallStack(new Exception(message));
+    }
+
     /**
      * Used to track how an object was obtained from the pool (the stack trace
      * of the exception will show which code borrowed the object) and when the
@@ -318,11 +438,13 @@ public class DefaultPooledObject<T> implements PooledObject<T> {
         // dates unless the log message will actually be used.
         @Override
         public String getMessage() {
-            String msg;
+            return formatMessage(_createdTime);
+        }
+
+        static String formatMessage(final long createdTime) {
             synchronized(format) {
-                msg = format.format(new Date(_createdTime));
+                return format.format(new Date(createdTime));
             }
-            return msg;
         }
     }
 }
@@ -83,12 +83,14 @@ public class DefaultPooledObjectInfo implements DefaultPooledObjectInfoMBean {
 
     @Override
     public String getPooledObjectType() {
-        return pooledObject.getObject().getClass().getName();
+        // Null if a softly held idle object has been reclaimed
+        final Object object = pooledObject.getObject();
+        return object == null ? null : object.getClass().getName();
     }
 
     @Override
     public String getPooledObjectToString() {
-        return pooledObject.getObject().toString();
+        return String.valueOf(pooledObject.getObject());
     }
 
     @Override
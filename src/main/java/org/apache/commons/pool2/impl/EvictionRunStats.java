@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+/**
+ * Statistics for a single run of the idle object evictor or of the
+ * replenishment of idle instances that follows it. Instances are immutable
+ * and are exposed via JMX.
+ *
+ * @since 2.4.3
+ */
+public class EvictionRunStats {
+
+    private final long startTime;
+    private final long durationMillis;
+    private final int keyCount;
+    private final int testedCount;
+    private final int destroyedCount;
+    private final int createdCount;
+
+    /**
+     * Create a new instance.
+     *
+     * @param startTime         The time the run started
+     * @param durationMillis    The duration of the run in milliseconds
+     * @param keyCount          The number of keys examined during the run
+     * @param testedCount       The number of idle instances tested
+     * @param destroyedCount    The number of idle instances destroyed
+     * @param createdCount      The number of idle instances created
+     */
+    public EvictionRunStats(final long startTime, final long durationMillis,
+            final int keyCount, final int testedCount,
+            final int destroyedCount, final int createdCount) {
+        this.startTime = startTime;
+        this.durationMillis = durationMillis;
+        this.keyCount = keyCount;
+        this.testedCount = testedCount;
+        this.destroyedCount = destroyedCount;
+        this.createdCount = createdCount;
+    }
+
+    /**
+     * Obtain the time the run started.
+     *
+     * @return The start time in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Obtain the duration of the run.
+     *
+     * @return The duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Obtain the number of keys examined during the run. This is always zero
+     * for pools without keys.
+     *
+     * @return The number of keys
+     */
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Obtain the number of idle instances tested for eviction.
+     *
+     * @return The number of instances tested
+     */
+    public int getTestedCount() {
+        return testedCount;
+    }
+
+    /**
+     * Obtain the number of idle instances destroyed during the run.
+     *
+     * @return The number of instances destroyed
+     */
+    public int getDestroyedCount() {
+        return destroyedCount;
+    }
+
+    /**
+     * Obtain the number of idle instances created during the run.
+     *
+     * @return The number of instances created
+     */
+    public int getCreatedCount() {
+        return createdCount;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("EvictionRunStats [startTime=");
+        builder.append(startTime);
+        builder.append(", durationMillis=");
+        builder.append(durationMillis);
+        builder.append(", keyCount=");
+        builder.append(keyCount);
+        builder.append(", testedCount=");
+        builder.append(testedCount);
+        builder.append(", destroyedCount=");
+        builder.append(destroyedCount);
+        builder.append(", createdCount=");
+        builder.append(createdCount);
+        builder.append("]");
+        return builder.toString();
+    }
+}
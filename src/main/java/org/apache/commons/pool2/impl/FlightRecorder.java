@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size ring buffer of the most recent events of a pool. Recording an
+ * event claims a slot with a single atomic increment and writes the fields of
+ * the event to preallocated arrays so it neither locks nor allocates. Older
+ * events are overwritten once the buffer is full. The class is intended for
+ * internal use only.
+ * <p>
+ * This class is intended to be thread-safe.
+ *
+ * @since 2.4.3
+ */
+class FlightRecorder {
+
+    /*
+     * Written to the sequence of a slot while an event is written to it.
+     */
+    private static final long WRITING = -1L;
+
+    private static final PoolEvent.Type[] TYPES = PoolEvent.Type.values();
+
+    private final int capacity;
+    private final AtomicLong nextSequence = new AtomicLong(0);
+    /*
+     * The sequence of the event held by each slot. It is set to WRITING
+     * before the other fields of the slot are written and to the sequence of
+     * the event afterwards, so readers can detect events that changed while
+     * they were read.
+     */
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray timestamps;
+    private final AtomicLongArray threadIds;
+    /*
+     * The ordinal of the type in the upper 32 bits and the identity hash code
+     * of the object in the lower 32 bits.
+     */
+    private final AtomicLongArray typesAndIdentities;
+    private final AtomicLongArray durations;
+    private final AtomicReferenceArray<Object> keys;
+
+    /**
+     * Create a new recorder.
+     *
+     * @param capacity  The number of events retained
+     *
+     * @throws IllegalArgumentException if {@code capacity} is less than 1
+     */
+    FlightRecorder(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        sequences = new AtomicLongArray(capacity);
+        timestamps = new AtomicLongArray(capacity);
+        threadIds = new AtomicLongArray(capacity);
+        typesAndIdentities = new AtomicLongArray(capacity);
+        durations = new AtomicLongArray(capacity);
+        keys = new AtomicReferenceArray<Object>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, WRITING);
+        }
+    }
+
+    /**
+     * Obtain the number of events retained.
+     *
+     * @return The capacity of the buffer
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Record an event.
+     *
+     * @param type              The type of event
+     * @param object            The pooled object or {@code null}
+     * @param key               The key or {@code null}
+     * @param durationMillis    The duration associated with the event
+     */
+    void record(final PoolEvent.Type type, final Object object,
+            final Object key, final long durationMillis) {
+        final long sequence = nextSequence.getAndIncrement();
+        final int slot = (int) (sequence % capacity);
+        final int identity = object == null ? 0 : System.identityHashCode(object);
+        sequences.set(slot, WRITING);
+        timestamps.lazySet(slot, System.currentTimeMillis());
+        threadIds.lazySet(slot, Thread.currentThread().getId());
+        typesAndIdentities.lazySet(slot,
+                (long) type.ordinal() << 32 | identity & 0xFFFFFFFFL);
+        durations.lazySet(slot, durationMillis);
+        keys.lazySet(slot, key);
+        sequences.lazySet(slot, sequence);
+    }
+
+    /**
+     * Obtain the events currently held, oldest first. Events that are
+     * overwritten while they are read are skipped.
+     *
+     * @return The recorded events
+     */
+    List<PoolEvent> getEvents() {
+        final long last = nextSequence.get();
+        final long first = Math.max(0, last - capacity);
+        final List<PoolEvent> events = new ArrayList<PoolEvent>((int) (last - first));
+        for (long sequence = first; sequence < last; sequence++) {
+            final int slot = (int) (sequence % capacity);
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            final long timestamp = timestamps.get(slot);
+            final long threadId = threadIds.get(slot);
+            final long typeAndIdentity = typesAndIdentities.get(slot);
+            final long duration = durations.get(slot);
+            final Object key = keys.get(slot);
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            events.add(new PoolEvent(sequence,
+                    TYPES[(int) (typeAndIdentity >>> 32)], timestamp, threadId,
+                    (int) typeAndIdentity,
+                    key == null ? null : key.toString(), duration));
+        }
+        return events;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("FlightRecorder [capacity=");
+        builder.append(capacity);
+        builder.append(", nextSequence=");
+        builder.append(nextSequence);
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -17,20 +17,33 @@
 package org.apache.commons.pool2.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.pool2.KeyedObjectPool;
@@ -180,6 +193,8 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      */
     public void setMaxIdlePerKey(final int maxIdlePerKey) {
         this.maxIdlePerKey = maxIdlePerKey;
+        // The effective minIdlePerKey may have changed
+        minIdleFullScan = true;
     }
 
     /**
@@ -202,6 +217,7 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      */
     public void setMinIdlePerKey(final int minIdlePerKey) {
         this.minIdlePerKey = minIdlePerKey;
+        minIdleFullScan = true;
     }
 
     /**
@@ -229,6 +245,300 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         return minIdlePerKey;
     }
 
+    /**
+     * Returns whether keys whose number of idle instances falls below
+     * {@link #getMinIdlePerKey() minIdlePerKey} are replenished right away by
+     * a background thread. When {@code false}, such keys are replenished
+     * during the next run of the idle object evictor.
+     *
+     * @return {@code true} if idle instances are replenished right away
+     *
+     * @see #setReplenishMinIdleImmediately(boolean)
+     * @since 2.4.3
+     */
+    @Override
+    public boolean getReplenishMinIdleImmediately() {
+        return replenishMinIdleImmediately;
+    }
+
+    /**
+     * Sets whether keys whose number of idle instances falls below
+     * {@link #getMinIdlePerKey() minIdlePerKey} are replenished right away by
+     * a background thread.
+     *
+     * @param replenishMinIdleImmediately {@code true} to replenish idle
+     *                                    instances right away
+     *
+     * @see #getReplenishMinIdleImmediately()
+     * @since 2.4.3
+     */
+    public void setReplenishMinIdleImmediately(
+            final boolean replenishMinIdleImmediately) {
+        this.replenishMinIdleImmediately = replenishMinIdleImmediately;
+    }
+
+    /**
+     * Returns the maximum number of threads used to examine the keyed
+     * sub-pools during an eviction run and to replenish their idle instances
+     * afterwards. With a value of one the evictor thread processes the keys
+     * in sequence. With a larger value each keyed sub-pool is processed
+     * independently by one of a bounded set of worker threads, which requires
+     * the {@link EvictionPolicy} and the factory to be thread safe.
+     *
+     * @return the maximum number of threads used by each eviction run
+     *
+     * @see #setEvictionConcurrency(int)
+     * @since 2.4.3
+     */
+    @Override
+    public int getEvictionConcurrency() {
+        return evictionConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of threads used to examine the keyed sub-pools
+     * during an eviction run and to replenish their idle instances
+     * afterwards.
+     *
+     * @param evictionConcurrency the maximum number of threads used by each
+     *                            eviction run
+     *
+     * @throws IllegalArgumentException if evictionConcurrency is less than
+     *                                  one
+     *
+     * @see #getEvictionConcurrency()
+     * @since 2.4.3
+     */
+    public void setEvictionConcurrency(final int evictionConcurrency) {
+        if (evictionConcurrency < 1) {
+            throw new IllegalArgumentException(
+                    "evictionConcurrency must be at least one");
+        }
+        this.evictionConcurrency = evictionConcurrency;
+    }
+
+    /**
+     * Returns the statistics of the most recent eviction run.
+     *
+     * @return the statistics or {@code null} if no eviction run has completed
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public EvictionRunStats getLastEvictionRunStats() {
+        return lastEvictionRunStats;
+    }
+
+    /**
+     * Returns the statistics of the most recent replenishment of idle
+     * instances up to {@link #getMinIdlePerKey() minIdlePerKey}.
+     *
+     * @return the statistics or {@code null} if no replenishment has
+     *         completed
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public EvictionRunStats getLastMinIdleRunStats() {
+        return lastMinIdleRunStats;
+    }
+
+    /**
+     * Returns the time for which the sub-pool of a key is retained after its
+     * last instance has been destroyed and no thread is using the key. Keys
+     * that are used sporadically then avoid the cost of removing and
+     * re-creating the sub-pool under the pool wide key lock each time they
+     * are used. Retained sub-pools are removed by the idle object evictor once
+     * they have not been used for this time. When non-positive, or when the
+     * idle object evictor is not enabled, sub-pools are removed as soon as
+     * they are no longer used.
+     *
+     * @return the linger time in milliseconds
+     *
+     * @see #setKeyLingerTimeMillis(long)
+     * @see #setTimeBetweenEvictionRunsMillis(long)
+     * @since 2.4.3
+     */
+    @Override
+    public long getKeyLingerTimeMillis() {
+        return keyLingerTimeMillis;
+    }
+
+    /**
+     * Sets the time for which the sub-pool of a key is retained after its
+     * last instance has been destroyed and no thread is using the key.
+     *
+     * @param keyLingerTimeMillis the linger time in milliseconds. Use a
+     *                            non-positive value to remove sub-pools as
+     *                            soon as they are no longer used.
+     *
+     * @see #getKeyLingerTimeMillis()
+     * @since 2.4.3
+     */
+    public void setKeyLingerTimeMillis(final long keyLingerTimeMillis) {
+        this.keyLingerTimeMillis = keyLingerTimeMillis;
+    }
+
+    /**
+     * Returns the time after which a key that has not been used to borrow or
+     * return an instance, and that has no instances checked out, is removed
+     * from the pool by the idle object evictor, along with all of its idle
+     * instances. When non-positive, keys are only removed once they have no
+     * instances.
+     *
+     * @return the maximum idle time for a key in milliseconds
+     *
+     * @see #setMaxKeyIdleTimeMillis(long)
+     * @see #setTimeBetweenEvictionRunsMillis(long)
+     * @since 2.4.3
+     */
+    @Override
+    public long getMaxKeyIdleTimeMillis() {
+        return maxKeyIdleTimeMillis;
+    }
+
+    /**
+     * Sets the time after which a key that has not been used to borrow or
+     * return an instance, and that has no instances checked out, is removed
+     * from the pool by the idle object evictor, along with all of its idle
+     * instances.
+     *
+     * @param maxKeyIdleTimeMillis the maximum idle time for a key in
+     *                             milliseconds. Use a non-positive value to
+     *                             only remove keys once they have no
+     *                             instances.
+     *
+     * @see #getMaxKeyIdleTimeMillis()
+     * @since 2.4.3
+     */
+    public void setMaxKeyIdleTimeMillis(final long maxKeyIdleTimeMillis) {
+        this.maxKeyIdleTimeMillis = maxKeyIdleTimeMillis;
+    }
+
+    /**
+     * Configures the share of {@link #getMaxTotal() maxTotal} that is
+     * guaranteed to the given key and the weight used when capacity that is
+     * not in use by its guaranteed owner is lent to, and reclaimed from, other
+     * keys.
+     * <p>
+     * Capacity sharing only has an effect if <code>maxTotal</code> is
+     * positive and at least one key has a configured share. When the pool is at
+     * <code>maxTotal</code>, a key may only take capacity from another key
+     * that is further beyond its guaranteed share, relative to its weight,
+     * than the requesting key would be after the new instance is created.
+     * Capacity is reclaimed from idle instances first and otherwise, as
+     * instances are returned to the pool, from instances that would have been
+     * returned to the idle instances of a key that is beyond its share. Keys
+     * without a configured share are guaranteed nothing and have a weight of
+     * one.
+     * <p>
+     * The pool does not check that the sum of the guaranteed shares does not
+     * exceed <code>maxTotal</code>. If it does, the guarantees cannot all be
+     * honoured at the same time.
+     *
+     * @param key               the key the share applies to
+     * @param guaranteedShare   the number of instances guaranteed to the key
+     * @param weight            the relative weight of the key when sharing
+     *                          capacity beyond the guaranteed shares
+     *
+     * @throws IllegalArgumentException if the guaranteed share is negative or
+     *                                  the weight is not positive
+     *
+     * @see #removeCapacityShare(Object)
+     * @since 2.4.3
+     */
+    public void setCapacityShare(final K key, final int guaranteedShare,
+            final int weight) {
+        if (guaranteedShare < 0) {
+            throw new IllegalArgumentException(
+                    "guaranteedShare may not be negative");
+        }
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        capacityShares.put(key, new CapacityShare(guaranteedShare, weight));
+    }
+
+    /**
+     * Removes any capacity share configured for the given key.
+     *
+     * @param key the key to remove the share for
+     *
+     * @see #setCapacityShare(Object, int, int)
+     * @since 2.4.3
+     */
+    public void removeCapacityShare(final K key) {
+        capacityShares.remove(key);
+    }
+
+    /**
+     * Returns the number of instances guaranteed to the given key when the
+     * pool is at {@link #getMaxTotal() maxTotal}.
+     *
+     * @param key the key to look up
+     *
+     * @return the guaranteed share or zero if no share is configured for the
+     *         key
+     *
+     * @see #setCapacityShare(Object, int, int)
+     * @since 2.4.3
+     */
+    public int getGuaranteedShare(final K key) {
+        final CapacityShare share = capacityShares.get(key);
+        return share == null ? 0 : share.guaranteedShare;
+    }
+
+    /**
+     * Returns the weight of the given key when capacity beyond the guaranteed
+     * shares is shared between keys.
+     *
+     * @param key the key to look up
+     *
+     * @return the weight or one if no share is configured for the key
+     *
+     * @see #setCapacityShare(Object, int, int)
+     * @since 2.4.3
+     */
+    public int getShareWeight(final K key) {
+        final CapacityShare share = capacityShares.get(key);
+        return share == null ? 1 : share.weight;
+    }
+
+    /**
+     * Returns the resolver used to find keys whose idle objects may be
+     * borrowed in place of objects of a requested key.
+     *
+     * @return the key equivalence or {@code null} if none is configured
+     *
+     * @see #setKeyEquivalence(KeyEquivalence)
+     * @since 2.4.3
+     */
+    public KeyEquivalence<K> getKeyEquivalence() {
+        return keyEquivalence;
+    }
+
+    /**
+     * Sets the resolver used to find keys whose idle objects may be borrowed
+     * in place of objects of a requested key. When no idle object is
+     * available for the requested key, {@link #borrowObject(Object, long)}
+     * tries the idle objects of the equivalent keys, least loaded key first,
+     * before creating a new object or waiting.
+     * <p>
+     * An object borrowed from an equivalent key remains associated with that
+     * key. It is activated, validated and passivated using that key and it is
+     * returned to that key whichever of the two keys is passed to
+     * {@link #returnObject(Object, Object)} or
+     * {@link #invalidateObject(Object, Object)}.
+     *
+     * @param keyEquivalence the key equivalence or {@code null} to only borrow
+     *                       objects of the requested key
+     *
+     * @since 2.4.3
+     */
+    public void setKeyEquivalence(final KeyEquivalence<K> keyEquivalence) {
+        this.keyEquivalence = keyEquivalence;
+    }
+
     /**
      * Sets the configuration.
      *
@@ -256,6 +566,15 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                 conf.getTimeBetweenEvictionRunsMillis());
         setEvictionPolicyClassName(conf.getEvictionPolicyClassName());
         setEvictorShutdownTimeoutMillis(conf.getEvictorShutdownTimeoutMillis());
+        setKeyLingerTimeMillis(conf.getKeyLingerTimeMillis());
+        setMaxKeyIdleTimeMillis(conf.getMaxKeyIdleTimeMillis());
+        setEvictionConcurrency(conf.getEvictionConcurrency());
+        setReplenishMinIdleImmediately(conf.getReplenishMinIdleImmediately());
+        setLockStatisticsSamplingInterval(
+                conf.getLockStatisticsSamplingInterval());
+        setFlightRecorderSize(conf.getFlightRecorderSize());
+        setCallSiteSamplingInterval(conf.getCallSiteSamplingInterval());
+        setSoftReferenceIdleObjects(conf.getSoftReferenceIdleObjects());
     }
 
     /**
@@ -293,6 +612,12 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      * instance is returned or there are no more idle instances available.
      * <p>
      * If there are no idle instances available in the sub-pool associated with
+     * the given key and a {@link #setKeyEquivalence(KeyEquivalence) key
+     * equivalence} has been configured, the idle instances of the equivalent
+     * keys are examined in the same way, starting with the key with the fewest
+     * active instances.
+     * <p>
+     * If there are no idle instances available in the sub-pool associated with
      * the given key, behavior depends on the {@link #getMaxTotalPerKey()
      * maxTotalPerKey}, {@link #getMaxTotal() maxTotal}, and (if applicable)
      * {@link #getBlockWhenExhausted()} and the value passed in to the
@@ -316,7 +641,10 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      * When <code>maxTotal</code> is set to a positive value and this method is
      * invoked when at the limit with no idle instances available under the requested
      * key, an attempt is made to create room by clearing the oldest 15% of the
-     * elements from the keyed sub-pools.
+     * elements from the keyed sub-pools. If capacity shares have been
+     * configured (see {@link #setCapacityShare(Object, int, int)}), only idle
+     * instances of keys that are further beyond their share are destroyed
+     * instead.
      * <p>
      * When the pool is exhausted, multiple calling threads may be
      * simultaneously blocked waiting for instances to become available. A
@@ -336,7 +664,58 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      *                   error
      */
     public T borrowObject(final K key, final long borrowMaxWaitMillis) throws Exception {
+        return borrowObject(key, null, borrowMaxWaitMillis);
+    }
+
+    /**
+     * Equivalent to <code>{@link #borrowObject(Object, String, long)
+     * borrowObject}(key, callSite, {@link #getMaxWaitMillis()})</code>.
+     *
+     * @param key pool key
+     * @param callSite The call site to which the borrow is attributed
+     *
+     * @return object instance from the keyed pool
+     *
+     * @throws NoSuchElementException if a keyed object instance cannot be
+     *                                returned because the pool is exhausted.
+     *
+     * @throws Exception if a keyed object instance cannot be returned due to an
+     *                   error
+     *
+     * @since 2.4.3
+     */
+    public T borrowObject(final K key, final String callSite) throws Exception {
+        return borrowObject(key, callSite, getMaxWaitMillis());
+    }
+
+    /**
+     * Borrows an object from the sub-pool associated with the given key as
+     * {@link #borrowObject(Object, long)} does, attributing the time spent
+     * waiting for the object and the time for which the object is held to the
+     * given call site if {@link #getCallSiteSamplingInterval() call site
+     * recording} is enabled.
+     *
+     * @param key pool key
+     * @param callSite The call site to which the borrow is attributed or
+     *                 {@code null} to attribute a sample of borrows to the
+     *                 call stack of the borrower
+     * @param borrowMaxWaitMillis The time to wait in milliseconds for an object
+     *                            to become available
+     *
+     * @return object instance from the keyed pool
+     *
+     * @throws NoSuchElementException if a keyed object instance cannot be
+     *                                returned because the pool is exhausted.
+     *
+     * @throws Exception if a keyed object instance cannot be returned due to an
+     *                   error
+     *
+     * @since 2.4.3
+     */
+    public T borrowObject(final K key, final String callSite,
+            final long borrowMaxWaitMillis) throws Exception {
         assertOpen();
+        final CallSiteRecorder.CallSite borrowCallSite = getBorrowCallSite(callSite);
 
         PooledObject<T> p = null;
 
@@ -345,13 +724,32 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         final boolean blockWhenExhausted = getBlockWhenExhausted();
 
         boolean create;
+        // The key the borrowed object is associated with
+        K borrowKey;
         final long waitTime = System.currentTimeMillis();
         final ObjectDeque<T> objectDeque = register(key);
+        objectDeque.markUsed();
+        final KeyEquivalence<K> equivalence = keyEquivalence;
 
         try {
             while (p == null) {
                 create = false;
+                borrowKey = key;
                 p = objectDeque.getIdleObjects().pollFirst();
+                if (p == null && equivalence != null) {
+                    for (final K equivalentKey :
+                            getEquivalentKeysByLoad(key, equivalence)) {
+                        final ObjectDeque<T> equivalentDeque =
+                                poolMap.get(equivalentKey);
+                        if (equivalentDeque != null) {
+                            p = equivalentDeque.getIdleObjects().pollFirst();
+                            if (p != null) {
+                                borrowKey = equivalentKey;
+                                break;
+                            }
+                        }
+                    }
+                }
                 if (p == null) {
                     p = create(key);
                     if (p != null) {
@@ -368,6 +766,8 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                         }
                     }
                     if (p == null) {
+                        recordTimeout(key,
+                                System.currentTimeMillis() - waitTime);
                         throw new NoSuchElementException(
                                 "Timeout waiting for idle object");
                     }
@@ -378,14 +778,17 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                 }
                 if (!p.allocate()) {
                     p = null;
+                } else if (!harden(borrowKey, p)) {
+                    // Reclaimed by the garbage collector while idle
+                    p = null;
                 }
 
                 if (p != null) {
                     try {
-                        factory.activateObject(key, p);
+                        factory.activateObject(borrowKey, p);
                     } catch (final Exception e) {
                         try {
-                            destroy(key, p, true);
+                            destroy(borrowKey, p, true);
                         } catch (final Exception e1) {
                             // Ignore - activation failure is more important
                         }
@@ -401,15 +804,16 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                         boolean validate = false;
                         Throwable validationThrowable = null;
                         try {
-                            validate = factory.validateObject(key, p);
+                            validate = factory.validateObject(borrowKey, p);
                         } catch (final Throwable t) {
                             PoolUtils.checkRethrow(t);
                             validationThrowable = t;
                         }
                         if (!validate) {
                             try {
-                                destroy(key, p, true);
+                                destroy(borrowKey, p, true);
                                 destroyedByBorrowValidationCount.incrementAndGet();
+                                objectDeque.getDestroyedByBorrowValidationCount().incrementAndGet();
                             } catch (final Exception e) {
                                 // Ignore - validation failure is more important
                             }
@@ -423,12 +827,24 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                         }
                     }
                 }
+                if (p != null && borrowKey != key) {
+                    equivalentBorrows.put(new IdentityWrapper<T>(p.getObject()),
+                            borrowKey);
+                }
+                if (p != null) {
+                    markMinIdleDirty(borrowKey);
+                }
             }
         } finally {
             deregister(key);
         }
 
-        updateStatsBorrow(p, System.currentTimeMillis() - waitTime);
+        final long waitTimeMillis = System.currentTimeMillis() - waitTime;
+        updateStatsBorrow(p, waitTimeMillis);
+        recordCallSiteBorrow(borrowCallSite, p, waitTimeMillis);
+        objectDeque.getBorrowedCount().incrementAndGet();
+        objectDeque.getBorrowWaitTimes().record(waitTimeMillis);
+        recordEvent(PoolEvent.Type.BORROW, p.getObject(), key, waitTimeMillis);
 
         return p.getObject();
     }
@@ -448,8 +864,11 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      * <p>
      * Exceptions encountered destroying objects for any reason are swallowed
      * but notified via a {@link SwallowedExceptionListener}.
+     * <p>
+     * Objects that were borrowed in place of an object of an equivalent key
+     * are returned to the sub-pool of the key they are associated with.
      *
-     * @param key pool key
+     * @param returnKey pool key
      * @param obj instance to return to the keyed pool
      *
      * @throws IllegalStateException if an object is returned to the pool that
@@ -457,8 +876,9 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      *                               returned to the pool multiple times
      */
     @Override
-    public void returnObject(final K key, final T obj) {
+    public void returnObject(final K returnKey, final T obj) {
 
+        final K key = getOriginKey(returnKey, obj);
         final ObjectDeque<T> objectDeque = poolMap.get(key);
 
         final PooledObject<T> p = objectDeque.getAllObjects().get(new IdentityWrapper<T>(obj));
@@ -467,6 +887,7 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             throw new IllegalStateException(
                     "Returned object not currently part of this pool");
         }
+        objectDeque.markUsed();
 
         synchronized(p) {
             final PooledObjectState state = p.getState();
@@ -476,8 +897,10 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             }
             p.markReturning(); // Keep from being marked abandoned (once GKOP does this)
         }
+        recordCallSiteReturn(p);
 
         final long activeTime = p.getActiveTimeMillis();
+        recordEvent(PoolEvent.Type.RETURN, obj, key, activeTime);
 
         try {
             if (getTestOnReturn()) {
@@ -522,22 +945,22 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                         "Object has already been returned to this pool");
             }
 
-            final int maxIdle = getMaxIdlePerKey();
+            int maxIdle = getMaxIdlePerKey();
+            if (isMemoryPressure()) {
+                maxIdle = Math.max(getMinIdlePerKey(), 0);
+            }
             final LinkedBlockingDeque<PooledObject<T>> idleObjects =
                     objectDeque.getIdleObjects();
 
-            if (isClosed() || maxIdle > -1 && maxIdle <= idleObjects.size()) {
+            if (isClosed() || maxIdle > -1 && maxIdle <= idleObjects.size() ||
+                    isCapacityOwed(key, objectDeque)) {
                 try {
                     destroy(key, p, true);
                 } catch (final Exception e) {
                     swallowException(e);
                 }
             } else {
-                if (getLifo()) {
-                    idleObjects.addFirst(p);
-                } else {
-                    idleObjects.addLast(p);
-                }
+                addToIdleObjects(idleObjects, p);
                 if (isClosed()) {
                     // Pool closed while object was being added to idle objects.
                     // Make sure the returned object is destroyed rather than left
@@ -560,7 +983,7 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      * Activation of this method decrements the active count associated with
      * the given keyed pool and attempts to destroy <code>obj.</code>
      *
-     * @param key pool key
+     * @param invalidateKey pool key
      * @param obj instance to invalidate
      *
      * @throws Exception             if an exception occurs destroying the
@@ -569,8 +992,9 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      *                               under the given key
      */
     @Override
-    public void invalidateObject(final K key, final T obj) throws Exception {
+    public void invalidateObject(final K invalidateKey, final T obj) throws Exception {
 
+        final K key = getOriginKey(invalidateKey, obj);
         final ObjectDeque<T> objectDeque = poolMap.get(key);
 
         final PooledObject<T> p = objectDeque.getAllObjects().get(new IdentityWrapper<T>(obj));
@@ -616,6 +1040,37 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         }
     }
 
+    @Override
+    int trimIdle() {
+        final int target = Math.max(getMinIdlePerKey(), 0);
+        int destroyed = 0;
+        for (final K key : poolMap.keySet()) {
+            final ObjectDeque<T> objectDeque = register(key);
+            try {
+                final LinkedBlockingDeque<PooledObject<T>> idleObjects =
+                        objectDeque.getIdleObjects();
+                while (idleObjects.size() > target) {
+                    // Least recently used first
+                    final PooledObject<T> p = getLifo() ?
+                            idleObjects.pollLast() : idleObjects.pollFirst();
+                    if (p == null) {
+                        break;
+                    }
+                    try {
+                        if (destroy(key, p, true)) {
+                            destroyed++;
+                        }
+                    } catch (final Exception e) {
+                        swallowException(e);
+                    }
+                }
+            } finally {
+                deregister(key);
+            }
+        }
+        return destroyed;
+    }
+
 
     /**
      * Clears the specified sub-pool, removing all pooled instances
@@ -702,7 +1157,8 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             return;
         }
 
-        synchronized (closeLock) {
+        closeLock.lock();
+        try {
             if (isClosed()) {
                 return;
             }
@@ -710,6 +1166,21 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             // Stop the evictor before the pool is closed since evict() calls
             // assertOpen()
             startEvictor(-1L);
+            evictionLock.lock();
+            try {
+                if (evictionExecutor != null) {
+                    evictionExecutor.shutdown();
+                    evictionExecutor = null;
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+            synchronized (replenishLock) {
+                if (replenishExecutor != null) {
+                    replenishExecutor.shutdown();
+                    replenishExecutor = null;
+                }
+            }
 
             closed = true;
             // This clear removes any idle objects
@@ -725,6 +1196,8 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             // This clear cleans up the keys now any waiting threads have been
             // interrupted
             clear();
+        } finally {
+            closeLock.unlock();
         }
     }
 
@@ -794,23 +1267,47 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      * correct, since it does not lock the pool and instances may be created,
      * borrowed, returned or destroyed by other threads while it is executing.
      */
-    private void reuseCapacity() {
+    void reuseCapacity() {
         final int maxTotalPerKeySave = getMaxTotalPerKey();
+        final boolean shareCapacity = isCapacityShared();
 
-        // Find the most loaded pool that could take a new instance
-        int maxQueueLength = 0;
-        LinkedBlockingDeque<PooledObject<T>> mostLoaded = null;
-        K loadedKey = null;
+        // Find the pools with waiting threads that could take a new instance
+        final List<K> candidates = new ArrayList<K>();
         for (Map.Entry<K, ObjectDeque<T>> entry : poolMap.entrySet()) {
             final K k = entry.getKey();
             final ObjectDeque<T> deque = entry.getValue();
+            if (deque != null && deque.getIdleObjects().getTakeQueueLength() > 0 &&
+                    getNumActive(k) < maxTotalPerKeySave) {
+                candidates.add(k);
+            }
+        }
+        retainKeysWithCapacity(candidates);
+
+        // Find the most loaded of those pools. If capacity is shared, the
+        // waiting pool furthest below its share wins instead.
+        int maxQueueLength = 0;
+        double minExcess = Double.MAX_VALUE;
+        LinkedBlockingDeque<PooledObject<T>> mostLoaded = null;
+        K loadedKey = null;
+        for (final K k : candidates) {
+            final ObjectDeque<T> deque = poolMap.get(k);
             if (deque != null) {
                 final LinkedBlockingDeque<PooledObject<T>> pool = deque.getIdleObjects();
                 final int queueLength = pool.getTakeQueueLength();
-                if (getNumActive(k) < maxTotalPerKeySave && queueLength > maxQueueLength) {
-                    maxQueueLength = queueLength;
-                    mostLoaded = pool;
-                    loadedKey = k;
+                if (queueLength > 0) {
+                    if (shareCapacity) {
+                        final double excess = getShareExcess(k,
+                                deque.getCreateCount().get() + 1);
+                        if (excess < minExcess) {
+                            minExcess = excess;
+                            mostLoaded = pool;
+                            loadedKey = k;
+                        }
+                    } else if (queueLength > maxQueueLength) {
+                        maxQueueLength = queueLength;
+                        mostLoaded = pool;
+                        loadedKey = k;
+                    }
                 }
             }
         }
@@ -831,6 +1328,60 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         }
     }
 
+    /**
+     * Obtain the keys equivalent to the given key that currently have idle
+     * objects, ordered by increasing number of active objects.
+     *
+     * @param key           the requested key
+     * @param equivalence   the key equivalence to use
+     *
+     * @return the equivalent keys with idle objects
+     */
+    private List<K> getEquivalentKeysByLoad(final K key,
+            final KeyEquivalence<K> equivalence) {
+        final List<K> result = new ArrayList<K>();
+        final Map<K,Integer> load = new HashMap<K,Integer>();
+        for (final K equivalentKey : equivalence.getEquivalentKeys(key)) {
+            final ObjectDeque<T> deque = poolMap.get(equivalentKey);
+            if (deque != null && !equivalentKey.equals(key) &&
+                    !load.containsKey(equivalentKey)) {
+                final int idle = deque.getIdleObjects().size();
+                if (idle > 0) {
+                    load.put(equivalentKey, Integer.valueOf(
+                            deque.getAllObjects().size() - idle));
+                    result.add(equivalentKey);
+                }
+            }
+        }
+        if (result.size() > 1) {
+            Collections.sort(result, new Comparator<K>() {
+                @Override
+                public int compare(final K k1, final K k2) {
+                    return load.get(k1).compareTo(load.get(k2));
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Obtain the key an object is associated with. This is the given key
+     * unless the object was borrowed in place of an object of an equivalent
+     * key.
+     *
+     * @param key   the key provided by the caller
+     * @param obj   the object
+     *
+     * @return the key the object is associated with
+     */
+    private K getOriginKey(final K key, final T obj) {
+        if (equivalentBorrows.isEmpty()) {
+            return key;
+        }
+        final K originKey = equivalentBorrows.remove(new IdentityWrapper<T>(obj));
+        return originKey == null ? key : originKey;
+    }
+
     /**
      * Checks to see if there are any threads currently waiting to borrow
      * objects but are blocked waiting for more objects to become available.
@@ -838,7 +1389,7 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      * @return {@code true} if there is at least one thread waiting otherwise
      *         {@code false}
      */
-    private boolean hasBorrowWaiters() {
+    boolean hasBorrowWaiters() {
         for (Map.Entry<K, ObjectDeque<T>> entry : poolMap.entrySet()) {
             final ObjectDeque<T> deque = entry.getValue();
             if (deque != null) {
@@ -858,20 +1409,47 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      * <p>
      * Successive activations of this method examine objects in keyed sub-pools
      * in sequence, cycling through the keys and examining objects in
-     * oldest-to-youngest order within the keyed sub-pools.
+     * oldest-to-youngest order within the keyed sub-pools. When
+     * {@link #getEvictionConcurrency() evictionConcurrency} is greater than
+     * one, the keyed sub-pools are instead examined in parallel and
+     * {@link #getNumTestsPerEvictionRun() numTestsPerEvictionRun} applies to
+     * each keyed sub-pool.
      */
     @Override
     public void evict() throws Exception {
         assertOpen();
 
-        if (getNumIdle() == 0) {
-            return;
+        removeExpiredKeys();
+
+        final EvictionRun run = new EvictionRun();
+        try {
+            if (getNumIdle() == 0) {
+                return;
+            }
+            if (getEvictionConcurrency() > 1) {
+                evictInParallel(run);
+            } else {
+                evictInSequence(run);
+            }
+        } finally {
+            lastEvictionRunStats = run.getStats();
         }
+    }
 
+    /**
+     * Examine up to {@link #getNumTests(int)} idle objects, continuing from
+     * where the previous call left off.
+     *
+     * @param run   The statistics of the current run
+     *
+     * @throws Exception when there is a problem evicting idle objects.
+     */
+    private void evictInSequence(final EvictionRun run) throws Exception {
         PooledObject<T> underTest = null;
         final EvictionPolicy<T> evictionPolicy = getEvictionPolicy();
 
-        synchronized (evictionLock) {
+        evictionLock.lock();
+        try {
             final EvictionConfig evictionConfig = new EvictionConfig(
                     getMinEvictableIdleTimeMillis(),
                     getSoftMinEvictableIdleTimeMillis(),
@@ -879,19 +1457,11 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
 
             final boolean testWhileIdle = getTestWhileIdle();
 
-            for (int i = 0, m = getNumTests(); i < m; i++) {
+            for (int i = 0, m = getNumTests(getNumIdle()); i < m; i++) {
                 if(evictionIterator == null || !evictionIterator.hasNext()) {
                     if (evictionKeyIterator == null ||
                             !evictionKeyIterator.hasNext()) {
-                        final List<K> keyCopy = new ArrayList<K>();
-                        final Lock readLock = keyLock.readLock();
-                        readLock.lock();
-                        try {
-                            keyCopy.addAll(poolKeyList);
-                        } finally {
-                            readLock.unlock();
-                        }
-                        evictionKeyIterator = keyCopy.iterator();
+                        evictionKeyIterator = getKeys().iterator();
                     }
                     while (evictionKeyIterator.hasNext()) {
                         evictionKey = evictionKeyIterator.next();
@@ -903,6 +1473,7 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                         final Deque<PooledObject<T>> idleObjects = objectDeque.getIdleObjects();
                         evictionIterator = new EvictionIterator(idleObjects);
                         if (evictionIterator.hasNext()) {
+                            run.keyCount.incrementAndGet();
                             break;
                         }
                         evictionIterator = null;
@@ -931,73 +1502,329 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                     continue;
                 }
 
-                // User provided eviction policy could throw all sorts of
-                // crazy exceptions. Protect against such an exception
-                // killing the eviction thread.
-                boolean evict;
-                try {
-                    evict = evictionPolicy.evict(evictionConfig, underTest,
-                            poolMap.get(evictionKey).getIdleObjects().size());
-                } catch (final Throwable t) {
-                    // Slightly convoluted as SwallowedExceptionListener
-                    // uses Exception rather than Throwable
-                    PoolUtils.checkRethrow(t);
-                    swallowException(new Exception(t));
-                    // Don't evict on error conditions
-                    evict = false;
-                }
-
-                if (evict) {
-                    destroy(evictionKey, underTest, true);
-                    destroyedByEvictorCount.incrementAndGet();
-                } else {
-                    if (testWhileIdle) {
-                        boolean active = false;
-                        try {
-                            factory.activateObject(evictionKey, underTest);
-                            active = true;
-                        } catch (final Exception e) {
-                            destroy(evictionKey, underTest, true);
-                            destroyedByEvictorCount.incrementAndGet();
-                        }
-                        if (active) {
-                            if (!factory.validateObject(evictionKey, underTest)) {
-                                destroy(evictionKey, underTest, true);
-                                destroyedByEvictorCount.incrementAndGet();
-                            } else {
-                                try {
-                                    factory.passivateObject(evictionKey, underTest);
-                                } catch (final Exception e) {
-                                    destroy(evictionKey, underTest, true);
-                                    destroyedByEvictorCount.incrementAndGet();
-                                }
-                            }
-                        }
-                    }
-                    if (!underTest.endEvictionTest(idleObjects)) {
-                        // TODO - May need to add code here once additional
-                        // states are used
-                    }
+                run.testedCount.incrementAndGet();
+                if (evictionTest(evictionKey, underTest, idleObjects,
+                        evictionPolicy, evictionConfig, testWhileIdle)) {
+                    run.destroyedCount.incrementAndGet();
                 }
             }
+        } finally {
+            evictionLock.unlock();
         }
     }
 
     /**
-     * Create a new pooled object.
-     *
-     * @param key Key associated with new pooled object
+     * Examine the idle objects of all keyed sub-pools, using up to
+     * {@link #getEvictionConcurrency()} threads. Up to
+     * {@link #getNumTests(int)} idle objects are examined in each sub-pool.
      *
-     * @return The new, wrapped pooled object
+     * @param run   The statistics of the current run
      *
-     * @throws Exception If the objection creation fails
+     * @throws Exception when there is a problem evicting idle objects.
      */
-    private PooledObject<T> create(final K key) throws Exception {
-        int maxTotalPerKeySave = getMaxTotalPerKey(); // Per key
-        if (maxTotalPerKeySave < 0) {
-            maxTotalPerKeySave = Integer.MAX_VALUE;
-        }
-        final int maxTotal = getMaxTotal();   // All keys
+    private void evictInParallel(final EvictionRun run) throws Exception {
+        final EvictionPolicy<T> evictionPolicy = getEvictionPolicy();
+
+        evictionLock.lock();
+        try {
+            final EvictionConfig evictionConfig = new EvictionConfig(
+                    getMinEvictableIdleTimeMillis(),
+                    getSoftMinEvictableIdleTimeMillis(),
+                    getMinIdlePerKey());
+
+            final boolean testWhileIdle = getTestWhileIdle();
+
+            forEachKey(getKeys(), new KeyTask<K>() {
+                @Override
+                public void run(final K key) throws Exception {
+                    final ObjectDeque<T> objectDeque = poolMap.get(key);
+                    if (objectDeque == null) {
+                        return;
+                    }
+                    final Deque<PooledObject<T>> idleObjects =
+                            objectDeque.getIdleObjects();
+                    final int numTests = getNumTests(idleObjects.size());
+                    if (numTests == 0) {
+                        return;
+                    }
+                    run.keyCount.incrementAndGet();
+
+                    final EvictionIterator iter = new EvictionIterator(idleObjects);
+                    int i = 0;
+                    while (i < numTests && iter.hasNext()) {
+                        final PooledObject<T> underTest;
+                        try {
+                            underTest = iter.next();
+                        } catch (final NoSuchElementException nsee) {
+                            // Object was borrowed in another thread
+                            return;
+                        }
+                        if (!underTest.startEvictionTest()) {
+                            // Object was borrowed in another thread
+                            continue;
+                        }
+                        i++;
+                        run.testedCount.incrementAndGet();
+                        if (evictionTest(key, underTest, idleObjects,
+                                evictionPolicy, evictionConfig, testWhileIdle)) {
+                            run.destroyedCount.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Test an idle object that is in the eviction test state, destroying it
+     * if it should be evicted or, when testWhileIdle is set, if it fails
+     * validation.
+     *
+     * @param key               The key associated with the object
+     * @param underTest         The object to test
+     * @param idleObjects       The idle objects of the key
+     * @param evictionPolicy    The eviction policy of this pool
+     * @param evictionConfig    The eviction configuration of this pool
+     * @param testWhileIdle     Should the object be validated if it is not
+     *                          evicted
+     *
+     * @return {@code true} if the object was destroyed
+     *
+     * @throws Exception If the object could not be destroyed
+     */
+    private boolean evictionTest(final K key, final PooledObject<T> underTest,
+            final Deque<PooledObject<T>> idleObjects,
+            final EvictionPolicy<T> evictionPolicy,
+            final EvictionConfig evictionConfig, final boolean testWhileIdle)
+            throws Exception {
+        // Softly held objects are strongly held while tested
+        final boolean softlyHeld = isSoftlyHeld(underTest);
+        if (!harden(key, underTest)) {
+            // Reclaimed by the garbage collector
+            idleObjects.remove(underTest);
+            return false;
+        }
+
+        // User provided eviction policy could throw all sorts of
+        // crazy exceptions. Protect against such an exception
+        // killing the eviction thread.
+        boolean evict;
+        try {
+            evict = evictionPolicy.evict(evictionConfig, underTest,
+                    idleObjects.size());
+        } catch (final Throwable t) {
+            // Slightly convoluted as SwallowedExceptionListener
+            // uses Exception rather than Throwable
+            PoolUtils.checkRethrow(t);
+            swallowException(new Exception(t));
+            // Don't evict on error conditions
+            evict = false;
+        }
+
+        if (evict) {
+            recordEvent(PoolEvent.Type.EVICT, underTest.getObject(), key,
+                    underTest.getIdleTimeMillis());
+            destroy(key, underTest, true);
+            destroyedByEvictorCount.incrementAndGet();
+            return true;
+        }
+        boolean destroyed = false;
+        if (testWhileIdle) {
+            boolean active = false;
+            try {
+                factory.activateObject(key, underTest);
+                active = true;
+            } catch (final Exception e) {
+                destroy(key, underTest, true);
+                destroyedByEvictorCount.incrementAndGet();
+                destroyed = true;
+            }
+            if (active) {
+                if (!factory.validateObject(key, underTest)) {
+                    destroy(key, underTest, true);
+                    destroyedByEvictorCount.incrementAndGet();
+                    destroyed = true;
+                } else {
+                    try {
+                        factory.passivateObject(key, underTest);
+                    } catch (final Exception e) {
+                        destroy(key, underTest, true);
+                        destroyedByEvictorCount.incrementAndGet();
+                        destroyed = true;
+                    }
+                }
+            }
+        }
+        if (softlyHeld) {
+            soften(underTest);
+        }
+        if (!underTest.endEvictionTest(idleObjects)) {
+            // TODO - May need to add code here once additional
+            // states are used
+        }
+        return destroyed;
+    }
+
+    /**
+     * Run a task for each of the given keys, using up to
+     * {@link #getEvictionConcurrency()} threads, and wait for all of them to
+     * complete. Each key is processed by a single thread. If a task fails, the
+     * remaining keys are skipped and the first failure is thrown.
+     *
+     * @param keys  The keys to process
+     * @param task  The task to run for each key
+     *
+     * @throws Exception If a task failed
+     */
+    private void forEachKey(final List<K> keys, final KeyTask<K> task)
+            throws Exception {
+        final int workers = Math.min(getEvictionConcurrency(), keys.size());
+        if (workers == 0) {
+            return;
+        }
+        // Workers run under the class loader of the calling evictor thread
+        final ClassLoader classLoader =
+                Thread.currentThread().getContextClassLoader();
+        final AtomicInteger nextKey = new AtomicInteger(0);
+        final AtomicReference<Exception> failure =
+                new AtomicReference<Exception>();
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                final Thread thread = Thread.currentThread();
+                final ClassLoader savedClassLoader =
+                        thread.getContextClassLoader();
+                thread.setContextClassLoader(classLoader);
+                try {
+                    int i;
+                    while (failure.get() == null &&
+                            (i = nextKey.getAndIncrement()) < keys.size()) {
+                        try {
+                            task.run(keys.get(i));
+                        } catch (final Exception e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                } finally {
+                    thread.setContextClassLoader(savedClassLoader);
+                }
+            }
+        };
+
+        final ExecutorService executor = getEvictionExecutor(workers);
+        final List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(worker));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException ie) {
+            for (final Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw ie;
+        } catch (final ExecutionException ee) {
+            // Only Errors escape the workers
+            PoolUtils.checkRethrow(ee.getCause());
+            throw ee;
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Obtain the executor used to process keys in parallel, creating it if
+     * necessary.
+     *
+     * @param workers The number of threads that are required
+     *
+     * @return The executor
+     */
+    private ExecutorService getEvictionExecutor(final int workers) {
+        evictionLock.lock();
+        try {
+            final int concurrency = Math.max(workers, getEvictionConcurrency());
+            if (evictionExecutor == null ||
+                    evictionExecutor.getMaximumPoolSize() < concurrency) {
+                if (evictionExecutor != null) {
+                    evictionExecutor.shutdown();
+                }
+                evictionExecutor = new ThreadPoolExecutor(concurrency,
+                        concurrency, EVICTION_THREAD_KEEP_ALIVE_MILLIS,
+                        TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new EvictionThreadFactory());
+                evictionExecutor.allowCoreThreadTimeOut(true);
+            }
+            return evictionExecutor;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the keys that have exceeded {@link #getMaxKeyIdleTimeMillis()},
+     * destroying their idle instances, and the retained sub-pools without
+     * instances that have exceeded {@link #getKeyLingerTimeMillis()}.
+     */
+    private void removeExpiredKeys() {
+        final long lingerTime = getKeyLingerTimeMillis();
+        final long maxKeyIdleTime = getMaxKeyIdleTimeMillis();
+        if (lingerTime <= 0 && maxKeyIdleTime <= 0) {
+            return;
+        }
+
+        evictionLock.lock();
+        try {
+            boolean removed = false;
+            for (final K k : getKeys()) {
+                final ObjectDeque<T> objectDeque = poolMap.get(k);
+                if (objectDeque == null ||
+                        objectDeque.getNumInterested().get() > 0) {
+                    continue;
+                }
+                final long idleTime =
+                        System.currentTimeMillis() - objectDeque.getLastUseTime();
+                if (maxKeyIdleTime > 0 && idleTime > maxKeyIdleTime &&
+                        objectDeque.getAllObjects().size() ==
+                        objectDeque.getIdleObjects().size()) {
+                    // No instances are checked out. Destroy the idle ones.
+                    clear(k);
+                }
+                if (idleTime > lingerTime && removeKey(k, objectDeque)) {
+                    removed = true;
+                }
+            }
+            if (removed) {
+                // The eviction iterators may reference removed keys
+                evictionKeyIterator = null;
+                evictionIterator = null;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Create a new pooled object.
+     *
+     * @param key Key associated with new pooled object
+     *
+     * @return The new, wrapped pooled object
+     *
+     * @throws Exception If the objection creation fails
+     */
+    private PooledObject<T> create(final K key) throws Exception {
+        int maxTotalPerKeySave = getMaxTotalPerKey(); // Per key
+        if (maxTotalPerKeySave < 0) {
+            maxTotalPerKeySave = Integer.MAX_VALUE;
+        }
+        final int maxTotal = getMaxTotal();   // All keys
 
         final ObjectDeque<T> objectDeque = poolMap.get(key);
 
@@ -1011,12 +1838,22 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                 if (getNumIdle() == 0) {
                     return null;
                 }
-                clearOldest();
+                if (!isCapacityShared()) {
+                    clearOldest();
+                } else if (!reclaimCapacity(key, objectDeque)) {
+                    return null;
+                }
             } else {
                 loop = false;
             }
         }
 
+        // Check against any additional limits imposed by sub-classes
+        if (!reserveCapacity(key)) {
+            numTotal.decrementAndGet();
+            return null;
+        }
+
         // Flag that indicates if create should:
         // - TRUE:  call the factory to create an object
         // - FALSE: return null
@@ -1024,7 +1861,8 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         //          call the factory
         Boolean create = null;
         while (create == null) {
-            synchronized (objectDeque.makeObjectCountLock) {
+            objectDeque.makeObjectCountLock.lock();
+            try {
                 final long newCreateCount = objectDeque.getCreateCount().incrementAndGet();
                 // Check against the per key limit
                 if (newCreateCount > maxTotalPerKeySave) {
@@ -1042,40 +1880,267 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                         // bring the pool to capacity. Those calls might also
                         // fail so wait until they complete and then re-test if
                         // the pool is at capacity or not.
-                        objectDeque.makeObjectCountLock.wait();
+                        objectDeque.makeObjectCountLock.await(objectDeque.makeObjectCountChanged);
                     }
                 } else {
                     // The pool is not at capacity. Create a new object.
                     objectDeque.makeObjectCount++;
                     create = Boolean.TRUE;
                 }
+            } finally {
+                objectDeque.makeObjectCountLock.unlock();
             }
         }
 
         if (!create.booleanValue()) {
             numTotal.decrementAndGet();
+            releaseCapacity(key);
             return null;
         }
 
+        final long createStartTime = System.currentTimeMillis();
         PooledObject<T> p = null;
         try {
             p = factory.makeObject(key);
         } catch (final Exception e) {
             numTotal.decrementAndGet();
             objectDeque.getCreateCount().decrementAndGet();
+            releaseCapacity(key);
             throw e;
         } finally {
-            synchronized (objectDeque.makeObjectCountLock) {
+            objectDeque.makeObjectCountLock.lock();
+            try {
                 objectDeque.makeObjectCount--;
-                objectDeque.makeObjectCountLock.notifyAll();
+                objectDeque.makeObjectCountChanged.signalAll();
+            } finally {
+                objectDeque.makeObjectCountLock.unlock();
             }
         }
 
+        final long createTime = System.currentTimeMillis() - createStartTime;
         createdCount.incrementAndGet();
-        objectDeque.getAllObjects().put(new IdentityWrapper<T>(p.getObject()), p);
+        objectDeque.getCreatedCount().incrementAndGet();
+        objectDeque.getCreateTimes().record(createTime);
+        recordEvent(PoolEvent.Type.CREATE, p.getObject(), key, createTime);
+        // The key must not strongly refer to the object in case the object
+        // is softly held while idle
+        objectDeque.getAllObjects().put(IdentityWrapper.forPooledObject(p), p);
         return p;
     }
 
+    /**
+     * Reserves any capacity, in addition to that controlled by
+     * {@link #getMaxTotal()} and {@link #getMaxTotalPerKey()}, required to
+     * create a new instance for the given key. Called before the factory is
+     * asked to create an instance. Every successful reservation is matched by
+     * exactly one call to {@link #releaseCapacity(Object)}.
+     * <p>
+     * This implementation imposes no additional limits.
+     *
+     * @param key the key a new instance is about to be created for
+     *
+     * @return {@code true} if the capacity was reserved, {@code false} if no
+     *         instance may be created for the key at this time
+     */
+    boolean reserveCapacity(final K key) {
+        return true;
+    }
+
+    /**
+     * Releases capacity reserved by {@link #reserveCapacity(Object)} once the
+     * associated instance has been destroyed or could not be created.
+     * <p>
+     * This implementation does nothing.
+     *
+     * @param key the key associated with the released capacity
+     */
+    void releaseCapacity(final K key) {
+        // NO-OP
+    }
+
+    /**
+     * Remove the keys for which {@link #reserveCapacity(Object)} could not
+     * succeed. Used to avoid selecting a key that cannot take a new instance
+     * when capacity is being reused for threads waiting to borrow an object.
+     * The keys are checked together so that state shared by the keys is only
+     * looked up once.
+     * <p>
+     * This implementation keeps all the keys.
+     *
+     * @param keys the keys to check, updated in place
+     */
+    void retainKeysWithCapacity(final List<K> keys) {
+        // NO-OP
+    }
+
+    /**
+     * Obtain a copy of the keys currently registered with this pool.
+     *
+     * @return the current keys in registration order
+     */
+    List<K> getKeys() {
+        final List<K> keyCopy = new ArrayList<K>();
+        final Lock readLock = keyLock.readLock();
+        final long acquired = lockKeys(readLock);
+        try {
+            keyCopy.addAll(poolKeyList);
+        } finally {
+            unlockKeys(readLock, acquired);
+        }
+        return keyCopy;
+    }
+
+    /**
+     * Acquire the read or the write lock of {@link #keyLock}, recording the
+     * acquisition if it is sampled.
+     *
+     * @param lock  The lock to acquire
+     *
+     * @return The value to pass to {@link #unlockKeys(Lock, long)}
+     */
+    private long lockKeys(final Lock lock) {
+        final long start = keyLockRecorder.startAcquire();
+        if (start == LockRecorder.NOT_SAMPLED) {
+            lock.lock();
+            return LockRecorder.NOT_SAMPLED;
+        }
+        final boolean contended = keyLock.isWriteLocked() ||
+                lock == keyLock.writeLock() && keyLock.getReadLockCount() > 0;
+        lock.lock();
+        return keyLockRecorder.acquired(start, contended);
+    }
+
+    /**
+     * Release a lock acquired with {@link #lockKeys(Lock)}.
+     *
+     * @param lock      The lock to release
+     * @param acquired  The value returned by {@link #lockKeys(Lock)}
+     */
+    private void unlockKeys(final Lock lock, final long acquired) {
+        lock.unlock();
+        keyLockRecorder.released(acquired);
+    }
+
+    /**
+     * Destroy one of the idle instances associated with the given key, if
+     * any, to free capacity for other keys.
+     *
+     * @param key the key to destroy an idle instance for
+     *
+     * @return {@code true} if an idle instance was found for destruction
+     */
+    boolean destroyIdleObject(final K key) {
+        final ObjectDeque<T> objectDeque = poolMap.get(key);
+        if (objectDeque == null) {
+            return false;
+        }
+        final PooledObject<T> p = objectDeque.getIdleObjects().peekLast();
+        if (p == null) {
+            return false;
+        }
+        try {
+            destroy(key, p, false);
+        } catch (final Exception e) {
+            swallowException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Is capacity shared between keys using the configured capacity shares?
+     *
+     * @return {@code true} if {@link #getMaxTotal()} is limited and at least
+     *         one capacity share is configured
+     */
+    private boolean isCapacityShared() {
+        return getMaxTotal() > -1 && !capacityShares.isEmpty();
+    }
+
+    /**
+     * Calculates how far a key is beyond its guaranteed share, relative to its
+     * weight. Negative values indicate the key is below its guaranteed share.
+     *
+     * @param key   the key
+     * @param count the number of instances to assume for the key
+     *
+     * @return the weighted excess over the guaranteed share
+     */
+    private double getShareExcess(final K key, final int count) {
+        final CapacityShare share = capacityShares.get(key);
+        if (share == null) {
+            return count;
+        }
+        return (count - share.guaranteedShare) / (double) share.weight;
+    }
+
+    /**
+     * Attempt to free capacity for a new instance under the given key by
+     * destroying an idle instance of the key that is furthest beyond its
+     * share. Only keys that are further beyond their share than the requesting
+     * key would be with one more instance are considered.
+     *
+     * @param key           the key that requires capacity
+     * @param objectDeque   the objects associated with the key
+     *
+     * @return {@code true} if an idle instance was found for destruction,
+     *         {@code false} if no other key is further beyond its share
+     */
+    private boolean reclaimCapacity(final K key, final ObjectDeque<T> objectDeque) {
+        final double requesterExcess =
+                getShareExcess(key, objectDeque.getCreateCount().get() + 1);
+
+        double maxExcess = requesterExcess;
+        K victimKey = null;
+        for (Map.Entry<K, ObjectDeque<T>> entry : poolMap.entrySet()) {
+            final K k = entry.getKey();
+            final ObjectDeque<T> deque = entry.getValue();
+            if (deque == null || deque == objectDeque ||
+                    deque.getIdleObjects().isEmpty()) {
+                continue;
+            }
+            final double excess = getShareExcess(k, deque.getCreateCount().get());
+            if (excess > maxExcess) {
+                maxExcess = excess;
+                victimKey = k;
+            }
+        }
+
+        if (victimKey == null) {
+            return false;
+        }
+        return destroyIdleObject(victimKey);
+    }
+
+    /**
+     * Should an instance being returned under the given key be destroyed so
+     * that its capacity may be used by a waiting key that is further below its
+     * share?
+     *
+     * @param key           the key of the instance being returned
+     * @param objectDeque   the objects associated with the key
+     *
+     * @return {@code true} if the capacity is owed to another key
+     */
+    private boolean isCapacityOwed(final K key, final ObjectDeque<T> objectDeque) {
+        if (!isCapacityShared() || numTotal.get() < getMaxTotal()) {
+            return false;
+        }
+        final double returnerExcess =
+                getShareExcess(key, objectDeque.getCreateCount().get());
+        for (Map.Entry<K, ObjectDeque<T>> entry : poolMap.entrySet()) {
+            final ObjectDeque<T> deque = entry.getValue();
+            if (deque == null || deque == objectDeque ||
+                    !deque.getIdleObjects().hasTakeWaiters()) {
+                continue;
+            }
+            if (getShareExcess(entry.getKey(),
+                    deque.getCreateCount().get() + 1) < returnerExcess) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Destroy the wrapped, pooled object.
      *
@@ -1095,7 +2160,12 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             final boolean isIdle = objectDeque.getIdleObjects().remove(toDestroy);
 
             if (isIdle || always) {
+                if (!harden(key, toDestroy)) {
+                    // Reclaimed by the garbage collector and already removed
+                    return false;
+                }
                 objectDeque.getAllObjects().remove(new IdentityWrapper<T>(toDestroy.getObject()));
+                recordCallSiteReturn(toDestroy);
                 toDestroy.invalidate();
 
                 try {
@@ -1103,7 +2173,12 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                 } finally {
                     objectDeque.getCreateCount().decrementAndGet();
                     destroyedCount.incrementAndGet();
+                    objectDeque.getDestroyedCount().incrementAndGet();
                     numTotal.decrementAndGet();
+                    releaseCapacity(key);
+                    markMinIdleDirty(key);
+                    recordEvent(PoolEvent.Type.DESTROY, toDestroy.getObject(),
+                            key, 0);
                 }
                 return true;
             }
@@ -1127,15 +2202,16 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      */
     private ObjectDeque<T> register(final K k) {
         Lock lock = keyLock.readLock();
+        long acquired = LockRecorder.NOT_SAMPLED;
         ObjectDeque<T> objectDeque = null;
         try {
-            lock.lock();
+            acquired = lockKeys(lock);
             objectDeque = poolMap.get(k);
             if (objectDeque == null) {
                 // Upgrade to write lock
-                lock.unlock();
+                unlockKeys(lock, acquired);
                 lock = keyLock.writeLock();
-                lock.lock();
+                acquired = lockKeys(lock);
                 objectDeque = poolMap.get(k);
                 if (objectDeque == null) {
                     objectDeque = new ObjectDeque<T>(fairness);
@@ -1152,7 +2228,7 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                 objectDeque.getNumInterested().incrementAndGet();
             }
         } finally {
-            lock.unlock();
+            unlockKeys(lock, acquired);
         }
         return objectDeque;
     }
@@ -1169,22 +2245,40 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
 
         objectDeque = poolMap.get(k);
         final long numInterested = objectDeque.getNumInterested().decrementAndGet();
-        if (numInterested == 0 && objectDeque.getCreateCount().get() == 0) {
+        if (numInterested == 0 && objectDeque.getCreateCount().get() == 0 &&
+                (getKeyLingerTimeMillis() <= 0 ||
+                        getTimeBetweenEvictionRunsMillis() <= 0)) {
             // Potential to remove key
-            final Lock writeLock = keyLock.writeLock();
-            writeLock.lock();
-            try {
-                if (objectDeque.getCreateCount().get() == 0 &&
-                        objectDeque.getNumInterested().get() == 0) {
-                    // NOTE: Keys must always be removed from both poolMap and
-                    //       poolKeyList at the same time while protected by
-                    //       keyLock.writeLock()
-                    poolMap.remove(k);
-                    poolKeyList.remove(k);
-                }
-            } finally {
-                writeLock.unlock();
+            removeKey(k, objectDeque);
+        }
+    }
+
+    /**
+     * Remove a key from the pool if it has no instances and no thread has a
+     * registered interest in it.
+     *
+     * @param k             The key to remove
+     * @param objectDeque   The objects currently associated with the key
+     *
+     * @return {@code true} if the key was removed
+     */
+    private boolean removeKey(final K k, final ObjectDeque<T> objectDeque) {
+        final Lock writeLock = keyLock.writeLock();
+        final long acquired = lockKeys(writeLock);
+        try {
+            if (objectDeque.getCreateCount().get() == 0 &&
+                    objectDeque.getNumInterested().get() == 0) {
+                // NOTE: Keys must always be removed from both poolMap and
+                //       poolKeyList at the same time while protected by
+                //       keyLock.writeLock()
+                poolMap.remove(k);
+                poolKeyList.remove(k);
+                minIdleDirtyKeys.remove(k);
+                return true;
             }
+            return false;
+        } finally {
+            unlockKeys(writeLock, acquired);
         }
     }
 
@@ -1195,8 +2289,154 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             return;
         }
 
-        for (final K k : poolMap.keySet()) {
-            ensureMinIdle(k);
+        final EvictionRun run = new EvictionRun();
+        final List<K> keys = takeMinIdleKeys();
+        final AtomicReference<Exception> failure =
+                new AtomicReference<Exception>();
+        // A key that fails remains marked, the other keys are still processed
+        final KeyTask<K> task = new KeyTask<K>() {
+            @Override
+            public void run(final K key) {
+                try {
+                    replenish(key, run);
+                } catch (final Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+        boolean completed = false;
+        try {
+            if (getEvictionConcurrency() > 1) {
+                forEachKey(keys, task);
+            } else {
+                for (final K k : keys) {
+                    task.run(k);
+                }
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // Interrupted, keep the keys for the next run
+                minIdleDirtyKeys.addAll(keys);
+            }
+            lastMinIdleRunStats = run.getStats();
+        }
+        final Exception e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Obtain the keys that may need idle objects to be created to meet
+     * {@link #getMinIdlePerKey()}. These are the keys that have been marked
+     * since the last call or, after the minimum has been changed, all keys.
+     *
+     * @return The keys to replenish
+     */
+    private List<K> takeMinIdleKeys() {
+        if (minIdleFullScan) {
+            minIdleFullScan = false;
+            minIdleDirtyKeys.clear();
+            return getKeys();
+        }
+        final List<K> keys = new ArrayList<K>();
+        final Iterator<K> iter = minIdleDirtyKeys.iterator();
+        while (iter.hasNext()) {
+            keys.add(iter.next());
+            iter.remove();
+        }
+        return keys;
+    }
+
+    /**
+     * Create idle objects for a key that is still part of the pool until
+     * {@link #getMinIdlePerKey()} is met. If the minimum cannot be met, the key
+     * is marked to be replenished again by the next call.
+     *
+     * @param key   The key to replenish
+     * @param run   The statistics of the current run
+     *
+     * @throws Exception If a new object is required and cannot be created
+     */
+    private void replenish(final K key, final EvictionRun run)
+            throws Exception {
+        if (!poolMap.containsKey(key)) {
+            // Removed keys are not re-created
+            return;
+        }
+        run.keyCount.incrementAndGet();
+        boolean replenished = false;
+        try {
+            run.createdCount.addAndGet(ensureMinIdle(key));
+            final ObjectDeque<T> objectDeque = poolMap.get(key);
+            replenished = objectDeque == null ||
+                    objectDeque.getIdleObjects().size() >= getMinIdlePerKey();
+        } finally {
+            if (!replenished) {
+                minIdleDirtyKeys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Mark a key whose number of idle objects has fallen below
+     * {@link #getMinIdlePerKey()} so it is replenished by the next call to
+     * {@link #ensureMinIdle()}, scheduling that call if idle objects are to be
+     * replenished immediately.
+     *
+     * @param key The key to check
+     */
+    private void markMinIdleDirty(final K key) {
+        final int minIdlePerKeySave = getMinIdlePerKey();
+        if (minIdlePerKeySave < 1) {
+            return;
+        }
+        final ObjectDeque<T> objectDeque = poolMap.get(key);
+        if (objectDeque == null ||
+                objectDeque.getIdleObjects().size() >= minIdlePerKeySave) {
+            return;
+        }
+        if (minIdleDirtyKeys.add(key) && getReplenishMinIdleImmediately()) {
+            scheduleReplenish();
+        }
+    }
+
+    /**
+     * Schedule a call to {@link #ensureMinIdle()} on the background thread
+     * unless one is already pending.
+     */
+    private void scheduleReplenish() {
+        if (isClosed() || !replenishScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (replenishLock) {
+            if (isClosed()) {
+                replenishScheduled.set(false);
+                return;
+            }
+            if (replenishExecutor == null) {
+                replenishExecutor = new ThreadPoolExecutor(1, 1,
+                        EVICTION_THREAD_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new EvictionThreadFactory());
+                replenishExecutor.allowCoreThreadTimeOut(true);
+            }
+            replenishExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Keys marked from now on need another call
+                    replenishScheduled.set(false);
+                    if (isClosed()) {
+                        return;
+                    }
+                    try {
+                        ensureMinIdle();
+                    } catch (final Exception e) {
+                        swallowException(e);
+                    }
+                }
+            });
         }
     }
 
@@ -1206,9 +2446,11 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      *
      * @param key The key to check for idle objects
      *
+     * @return The number of objects created
+     *
      * @throws Exception If a new object is required and cannot be created
      */
-    private void ensureMinIdle(final K key) throws Exception {
+    private int ensureMinIdle(final K key) throws Exception {
         // Calculate current pool objects
         ObjectDeque<T> objectDeque = poolMap.get(key);
 
@@ -1222,8 +2464,10 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         // needed objects
         final int deficit = calculateDeficit(objectDeque);
 
+        int created = 0;
         for (int i = 0; i < deficit && calculateDeficit(objectDeque) > 0; i++) {
             addObject(key);
+            created++;
             // If objectDeque was null, it won't be any more. Obtain a reference
             // to it so the deficit can be correctly calculated. It needs to
             // take account of objects created in other threads.
@@ -1231,6 +2475,7 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
                 objectDeque = poolMap.get(key);
             }
         }
+        return created;
     }
 
     /**
@@ -1241,41 +2486,126 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      *
      * @param key the key a new instance should be added to
      *
-     * @throws Exception when {@link KeyedPooledObjectFactory#makeObject}
-     *                   fails.
+     * @throws Exception when {@link KeyedPooledObjectFactory#makeObject}
+     *                   fails.
+     */
+    @Override
+    public void addObject(final K key) throws Exception {
+        assertOpen();
+        register(key);
+        try {
+            final PooledObject<T> p = create(key);
+            addIdleObject(key, p);
+        } finally {
+            deregister(key);
+        }
+    }
+
+    /**
+     * Add an object to the set of idle objects for a given key.
+     *
+     * @param key The key to associate with the idle object
+     * @param p The wrapped object to add.
+     *
+     * @throws Exception If the associated factory fails to passivate the object
+     */
+    private void addIdleObject(final K key, final PooledObject<T> p) throws Exception {
+
+        if (p != null) {
+            factory.passivateObject(key, p);
+            addToIdleObjects(poolMap.get(key).getIdleObjects(), p);
+        }
+    }
+
+    /**
+     * Add an object that has become idle to the idle objects of its key,
+     * holding it through a soft reference if
+     * {@link #getSoftReferenceIdleObjects() softReferenceIdleObjects} is set
+     * and there are already at least {@link #getMinIdlePerKey() minIdlePerKey}
+     * idle objects for the key.
+     *
+     * @param idleObjects The idle objects of the key
+     * @param p The idle object
+     */
+    private void addToIdleObjects(
+            final LinkedBlockingDeque<PooledObject<T>> idleObjects,
+            final PooledObject<T> p) {
+        if (getSoftReferenceIdleObjects() &&
+                idleObjects.size() >= getMinIdlePerKey()) {
+            soften(p);
+        }
+        if (getLifo()) {
+            idleObjects.addFirst(p);
+        } else {
+            idleObjects.addLast(p);
+        }
+    }
+
+    /**
+     * Hold an idle object through a soft reference.
+     *
+     * @param p The idle object
      */
-    @Override
-    public void addObject(final K key) throws Exception {
-        assertOpen();
-        register(key);
-        try {
-            final PooledObject<T> p = create(key);
-            addIdleObject(key, p);
-        } finally {
-            deregister(key);
+    private void soften(final PooledObject<T> p) {
+        // Only DefaultPooledObject supports soft references, other
+        // PooledObject implementations are always strongly held
+        if (p instanceof DefaultPooledObject) {
+            final DefaultPooledObject<T> dpo = (DefaultPooledObject<T>) p;
+            synchronized (dpo) {
+                if (dpo.getState() != PooledObjectState.INVALID) {
+                    dpo.soften();
+                }
+            }
         }
     }
 
+    private boolean isSoftlyHeld(final PooledObject<T> p) {
+        return p instanceof DefaultPooledObject &&
+                ((DefaultPooledObject<T>) p).isSoft();
+    }
+
     /**
-     * Add an object to the set of idle objects for a given key.
+     * Strongly hold an idle object that may be softly held so that it can be
+     * borrowed, tested or destroyed. If the object has been reclaimed by the
+     * garbage collector it is removed from the pool, other than from the
+     * idle objects, which is left to the caller.
      *
-     * @param key The key to associate with the idle object
-     * @param p The wrapped object to add.
+     * @param key The key associated with the object
+     * @param p The idle object, which must not be in use by another thread
      *
-     * @throws Exception If the associated factory fails to passivate the object
+     * @return <code>false</code> if the object has been reclaimed
      */
-    private void addIdleObject(final K key, final PooledObject<T> p) throws Exception {
-
-        if (p != null) {
-            factory.passivateObject(key, p);
-            final LinkedBlockingDeque<PooledObject<T>> idleObjects =
-                    poolMap.get(key).getIdleObjects();
-            if (getLifo()) {
-                idleObjects.addFirst(p);
-            } else {
-                idleObjects.addLast(p);
+    private boolean harden(final K key, final PooledObject<T> p) {
+        if (!(p instanceof DefaultPooledObject)) {
+            return true;
+        }
+        final DefaultPooledObject<T> dpo = (DefaultPooledObject<T>) p;
+        final int hash;
+        synchronized (dpo) {
+            if (!dpo.harden()) {
+                // Not softly held or reclaimed and already removed
+                return dpo.getObject() != null;
+            }
+            if (dpo.getObject() != null) {
+                return true;
             }
+            dpo.invalidate();
+            hash = dpo.getSoftObjectIdentityHash();
+        }
+        final ObjectDeque<T> objectDeque = register(key);
+        try {
+            objectDeque.getAllObjects().remove(
+                    IdentityWrapper.forReclaimedObject(p, hash));
+            objectDeque.getCreateCount().decrementAndGet();
+            destroyedCount.incrementAndGet();
+            objectDeque.getDestroyedCount().incrementAndGet();
+            numTotal.decrementAndGet();
+            releaseCapacity(key);
+            markMinIdleDirty(key);
+        } finally {
+            deregister(key);
         }
+        return false;
     }
 
     /**
@@ -1300,8 +2630,7 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      *
      * @return The number of objects to test for validity
      */
-    private int getNumTests() {
-        final int totalIdle = getNumIdle();
+    private int getNumTests(final int totalIdle) {
         final int numTests = getNumTestsPerEvictionRun();
         if (numTests >= 0) {
             return Math.min(numTests, totalIdle);
@@ -1395,6 +2724,21 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         return result;
     }
 
+    @Override
+    PoolStatistics createStatisticsSnapshot() {
+        final boolean blockWhenExhausted = getBlockWhenExhausted();
+        int numIdle = 0;
+        int numWaiters = 0;
+        for (final ObjectDeque<T> objectDeque : poolMap.values()) {
+            numIdle += objectDeque.getIdleObjects().size();
+            if (blockWhenExhausted) {
+                numWaiters += objectDeque.getIdleObjects().getTakeQueueLength();
+            }
+        }
+        return createStatisticsSnapshot(numTotal.get() - numIdle, numIdle,
+                numWaiters);
+    }
+
     /**
      * Return an estimate of the number of threads currently blocked waiting for
      * an object from the pool for each key. This is intended for
@@ -1453,6 +2797,277 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         return result;
     }
 
+    /**
+     * Provides information on a bounded number of the objects in the pool,
+     * both idle and active. Objects are reported in an unspecified order that
+     * is stable while the keys and objects in the pool do not change, so large
+     * pools can be listed a page at a time.
+     *
+     * @param offset    The number of objects to skip
+     * @param limit     The maximum number of objects to report
+     *
+     * @return Information grouped by key on up to limit objects
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public Map<String,List<DefaultPooledObjectInfo>> listObjects(
+            final int offset, final int limit) {
+        final Map<String,List<DefaultPooledObjectInfo>> result =
+                new HashMap<String,List<DefaultPooledObjectInfo>>();
+        if (limit < 1) {
+            return result;
+        }
+        visitAllObjects(new KeyedPooledObjectVisitor<K,T>() {
+            private int skip = offset;
+            private int count = 0;
+            private K lastKey = null;
+            private List<DefaultPooledObjectInfo> list = null;
+
+            @Override
+            public boolean visit(final K key, final PooledObject<T> p) {
+                if (skip > 0) {
+                    skip--;
+                    return true;
+                }
+                if (list == null || key != lastKey) {
+                    lastKey = key;
+                    list = new ArrayList<DefaultPooledObjectInfo>();
+                    result.put(key.toString(), list);
+                }
+                list.add(new DefaultPooledObjectInfo(p));
+                return ++count < limit;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Provides the number of active objects of the keys with the most active
+     * objects.
+     *
+     * @param n The maximum number of keys to report
+     *
+     * @return The number of active objects of up to n keys, in descending
+     *         order
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public Map<String,Integer> listTopKeysByNumActive(final int n) {
+        return listTopKeys(n, false);
+    }
+
+    /**
+     * Provides the number of waiting threads of the keys with the most
+     * waiting threads.
+     *
+     * @param n The maximum number of keys to report
+     *
+     * @return The number of waiting threads of up to n keys, in descending
+     *         order
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public Map<String,Integer> listTopKeysByNumWaiters(final int n) {
+        return listTopKeys(n, true);
+    }
+
+    private Map<String,Integer> listTopKeys(final int n,
+            final boolean byWaiters) {
+        final Map<String,Integer> result = new LinkedHashMap<String,Integer>();
+        if (n < 1) {
+            return result;
+        }
+        // Smallest count at the head so it can be replaced by a larger one
+        final PriorityQueue<KeyCount<K>> top = new PriorityQueue<KeyCount<K>>(n);
+        visitKeys(new KeyVisitor<K>() {
+            @Override
+            public boolean visit(final K key, final int numActive,
+                    final int numIdle, final int numWaiters) {
+                final int count = byWaiters ? numWaiters : numActive;
+                if (top.size() < n) {
+                    top.add(new KeyCount<K>(key, count));
+                } else if (count > top.peek().count) {
+                    top.poll();
+                    top.add(new KeyCount<K>(key, count));
+                }
+                return true;
+            }
+        });
+        final List<KeyCount<K>> sorted = new ArrayList<KeyCount<K>>(top);
+        Collections.sort(sorted, Collections.reverseOrder());
+        for (final KeyCount<K> keyCount : sorted) {
+            result.put(keyCount.key.toString(),
+                    Integer.valueOf(keyCount.count));
+        }
+        return result;
+    }
+
+    /**
+     * Passes each of the objects in the pool, both idle and active, to the
+     * given visitor along with its key, without creating a collection of
+     * them. Objects are visited key by key. This is intended for monitoring
+     * large pools. The keys and objects that are added or removed while the
+     * visit is in progress may or may not be visited.
+     *
+     * @param visitor The visitor to pass the objects to
+     *
+     * @since 2.4.3
+     */
+    public void visitAllObjects(final KeyedPooledObjectVisitor<K,T> visitor) {
+        for (final Map.Entry<K, ObjectDeque<T>> entry : poolMap.entrySet()) {
+            final K k = entry.getKey();
+            for (final PooledObject<T> p :
+                    entry.getValue().getAllObjects().values()) {
+                if (!visitor.visit(k, p)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes each of the keys in the pool to the given visitor along with its
+     * current number of active and idle objects and waiting threads, without
+     * creating a collection of them. The keys that are added or removed while
+     * the visit is in progress may or may not be visited.
+     *
+     * @param visitor The visitor to pass the keys to
+     *
+     * @since 2.4.3
+     */
+    public void visitKeys(final KeyVisitor<K> visitor) {
+        final boolean blockWhenExhausted = getBlockWhenExhausted();
+        for (final Map.Entry<K, ObjectDeque<T>> entry : poolMap.entrySet()) {
+            final ObjectDeque<T> deque = entry.getValue();
+            final int numIdle = deque.getIdleObjects().size();
+            final int numWaiters = blockWhenExhausted ?
+                    deque.getIdleObjects().getTakeQueueLength() : 0;
+            if (!visitor.visit(entry.getKey(),
+                    deque.getAllObjects().size() - numIdle, numIdle,
+                    numWaiters)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Obtain the statistics for a key. Statistics are kept for as long as the
+     * key remains in the pool.
+     *
+     * @param key The key
+     *
+     * @return The statistics or {@code null} if the key is not in the pool
+     *
+     * @since 2.4.3
+     */
+    public KeyStatistics getKeyStatistics(final K key) {
+        final ObjectDeque<T> objectDeque = poolMap.get(key);
+        if (objectDeque == null) {
+            return null;
+        }
+        return objectDeque.getStatistics(key.toString());
+    }
+
+    /**
+     * Obtain the statistics of the keys with the longest 99th percentile of
+     * the times threads waited to borrow an object.
+     *
+     * @param n The maximum number of keys to report
+     *
+     * @return The statistics of up to n keys, longest wait first
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public List<KeyStatistics> getTopKeysByBorrowWaitTime(final int n) {
+        return getTopKeys(n, BORROW_WAIT_TIME_ORDER);
+    }
+
+    /**
+     * Obtain the statistics of the keys with the longest 99th percentile of
+     * the times taken to create an object.
+     *
+     * @param n The maximum number of keys to report
+     *
+     * @return The statistics of up to n keys, longest create time first
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public List<KeyStatistics> getTopKeysByCreateTime(final int n) {
+        return getTopKeys(n, CREATE_TIME_ORDER);
+    }
+
+    /**
+     * Obtain the statistics of the keys with the most objects that failed
+     * validation when borrowed.
+     *
+     * @param n The maximum number of keys to report
+     *
+     * @return The statistics of up to n keys, most failures first
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public List<KeyStatistics> getTopKeysByBorrowValidationFailures(
+            final int n) {
+        return getTopKeys(n, BORROW_VALIDATION_FAILURE_ORDER);
+    }
+
+    private List<KeyStatistics> getTopKeys(final int n,
+            final Comparator<KeyStatistics> order) {
+        final List<KeyStatistics> result = new ArrayList<KeyStatistics>();
+        if (n < 1) {
+            return result;
+        }
+        for (Map.Entry<K, ObjectDeque<T>> entry : poolMap.entrySet()) {
+            result.add(entry.getValue().getStatistics(entry.getKey().toString()));
+        }
+        Collections.sort(result, order);
+        if (result.size() > n) {
+            return new ArrayList<KeyStatistics>(result.subList(0, n));
+        }
+        return result;
+    }
+
+    private static int compareDescending(final long v1, final long v2) {
+        return v1 > v2 ? -1 : (v1 == v2 ? 0 : 1);
+    }
+
+    private static final Comparator<KeyStatistics> BORROW_WAIT_TIME_ORDER =
+            new Comparator<KeyStatistics>() {
+        @Override
+        public int compare(final KeyStatistics s1, final KeyStatistics s2) {
+            final int result = compareDescending(
+                    s1.getP99BorrowWaitTimeMillis(), s2.getP99BorrowWaitTimeMillis());
+            return result != 0 ? result : compareDescending(
+                    s1.getMaxBorrowWaitTimeMillis(), s2.getMaxBorrowWaitTimeMillis());
+        }
+    };
+
+    private static final Comparator<KeyStatistics> CREATE_TIME_ORDER =
+            new Comparator<KeyStatistics>() {
+        @Override
+        public int compare(final KeyStatistics s1, final KeyStatistics s2) {
+            final int result = compareDescending(
+                    s1.getP99CreateTimeMillis(), s2.getP99CreateTimeMillis());
+            return result != 0 ? result : compareDescending(
+                    s1.getMaxCreateTimeMillis(), s2.getMaxCreateTimeMillis());
+        }
+    };
+
+    private static final Comparator<KeyStatistics> BORROW_VALIDATION_FAILURE_ORDER =
+            new Comparator<KeyStatistics>() {
+        @Override
+        public int compare(final KeyStatistics s1, final KeyStatistics s2) {
+            return compareDescending(s1.getDestroyedByBorrowValidationCount(),
+                    s2.getDestroyedByBorrowValidationCount());
+        }
+    };
+
 
     //--- inner classes ----------------------------------------------
 
@@ -1470,7 +3085,10 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         private final AtomicInteger createCount = new AtomicInteger(0);
 
         private long makeObjectCount = 0;
-        private final Object makeObjectCountLock = new Object();
+        private final InterruptibleReentrantLock makeObjectCountLock =
+                new InterruptibleReentrantLock(false, makeObjectCountLockRecorder);
+        private final Condition makeObjectCountChanged =
+                makeObjectCountLock.newCondition();
 
         /*
          * The map is keyed on pooled instances, wrapped to ensure that
@@ -1487,13 +3105,29 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
          */
         private final AtomicLong numInterested = new AtomicLong(0);
 
+        /*
+         * The time an instance was last borrowed from or returned to this key.
+         */
+        private volatile long lastUseTime = System.currentTimeMillis();
+
+        /*
+         * Statistics for this key. These are updated without locking.
+         */
+        private final AtomicLong borrowedCount = new AtomicLong(0);
+        private final AtomicLong createdCount = new AtomicLong(0);
+        private final AtomicLong destroyedCount = new AtomicLong(0);
+        private final AtomicLong destroyedByBorrowValidationCount = new AtomicLong(0);
+        private final LatencyHistogram borrowWaitTimes = new LatencyHistogram();
+        private final LatencyHistogram createTimes = new LatencyHistogram();
+
         /**
          * Create a new ObjecDeque with the given fairness policy.
          * @param fairness true means client threads waiting to borrow / return instances
          * will be served as if waiting in a FIFO queue.
          */
         public ObjectDeque(final boolean fairness) {
-            idleObjects = new LinkedBlockingDeque<PooledObject<S>>(fairness);
+            idleObjects = new LinkedBlockingDeque<PooledObject<S>>(
+                    Integer.MAX_VALUE, fairness, idleObjectsLockRecorder);
         }
 
         /**
@@ -1533,6 +3167,95 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             return allObjects;
         }
 
+        /**
+         * Obtain the time an instance was last borrowed from or returned to
+         * the current key.
+         *
+         * @return The last use time in milliseconds
+         */
+        public long getLastUseTime() {
+            return lastUseTime;
+        }
+
+        /**
+         * Record that an instance has been borrowed from or returned to the
+         * current key.
+         */
+        public void markUsed() {
+            lastUseTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Obtain the number of instances borrowed for the current key.
+         *
+         * @return The borrowed count
+         */
+        public AtomicLong getBorrowedCount() {
+            return borrowedCount;
+        }
+
+        /**
+         * Obtain the number of instances created for the current key.
+         *
+         * @return The created count
+         */
+        public AtomicLong getCreatedCount() {
+            return createdCount;
+        }
+
+        /**
+         * Obtain the number of instances of the current key destroyed.
+         *
+         * @return The destroyed count
+         */
+        public AtomicLong getDestroyedCount() {
+            return destroyedCount;
+        }
+
+        /**
+         * Obtain the number of instances of the current key destroyed because
+         * they failed validation when borrowed.
+         *
+         * @return The destroyed by borrow validation count
+         */
+        public AtomicLong getDestroyedByBorrowValidationCount() {
+            return destroyedByBorrowValidationCount;
+        }
+
+        /**
+         * Obtain the histogram of the times threads waited to borrow an
+         * instance for the current key.
+         *
+         * @return The borrow wait times
+         */
+        public LatencyHistogram getBorrowWaitTimes() {
+            return borrowWaitTimes;
+        }
+
+        /**
+         * Obtain the histogram of the times taken to create instances for the
+         * current key.
+         *
+         * @return The create times
+         */
+        public LatencyHistogram getCreateTimes() {
+            return createTimes;
+        }
+
+        /**
+         * Obtain a snapshot of the statistics for the current key.
+         *
+         * @param key The string form of the current key
+         *
+         * @return The statistics
+         */
+        public KeyStatistics getStatistics(final String key) {
+            return new KeyStatistics(key, borrowedCount.get(),
+                    createdCount.get(), destroyedCount.get(),
+                    destroyedByBorrowValidationCount.get(), borrowWaitTimes,
+                    createTimes);
+        }
+
         @Override
         public String toString() {
             final StringBuilder builder = new StringBuilder();
@@ -1544,12 +3267,45 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             builder.append(allObjects);
             builder.append(", numInterested=");
             builder.append(numInterested);
+            builder.append(", lastUseTime=");
+            builder.append(lastUseTime);
             builder.append("]");
             return builder.toString();
         }
 
     }
 
+    /**
+     * The guaranteed share of maxTotal and the sharing weight for a key.
+     */
+    private static class CapacityShare {
+
+        private final int guaranteedShare;
+        private final int weight;
+
+        /**
+         * Create a new capacity share.
+         *
+         * @param guaranteedShare the number of instances guaranteed to the key
+         * @param weight the weight of the key when sharing capacity
+         */
+        public CapacityShare(final int guaranteedShare, final int weight) {
+            this.guaranteedShare = guaranteedShare;
+            this.weight = weight;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder();
+            builder.append("CapacityShare [guaranteedShare=");
+            builder.append(guaranteedShare);
+            builder.append(", weight=");
+            builder.append(weight);
+            builder.append("]");
+            return builder.toString();
+        }
+    }
+
     //--- configuration attributes ---------------------------------------------
     private volatile int maxIdlePerKey =
             GenericKeyedObjectPoolConfig.DEFAULT_MAX_IDLE_PER_KEY;
@@ -1557,8 +3313,19 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
             GenericKeyedObjectPoolConfig.DEFAULT_MIN_IDLE_PER_KEY;
     private volatile int maxTotalPerKey =
             GenericKeyedObjectPoolConfig.DEFAULT_MAX_TOTAL_PER_KEY;
+    private volatile long keyLingerTimeMillis =
+            GenericKeyedObjectPoolConfig.DEFAULT_KEY_LINGER_TIME_MILLIS;
+    private volatile long maxKeyIdleTimeMillis =
+            GenericKeyedObjectPoolConfig.DEFAULT_MAX_KEY_IDLE_TIME_MILLIS;
+    private volatile int evictionConcurrency =
+            GenericKeyedObjectPoolConfig.DEFAULT_EVICTION_CONCURRENCY;
+    private volatile boolean replenishMinIdleImmediately =
+            GenericKeyedObjectPoolConfig.DEFAULT_REPLENISH_MIN_IDLE_IMMEDIATELY;
     private final KeyedPooledObjectFactory<K,T> factory;
     private final boolean fairness;
+    private final Map<K,CapacityShare> capacityShares =
+            new ConcurrentHashMap<K,CapacityShare>();
+    private volatile KeyEquivalence<K> keyEquivalence = null;
 
 
     //--- internal attributes --------------------------------------------------
@@ -1577,7 +3344,8 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      * thread-safe manner.
      */
     private final List<K> poolKeyList = new ArrayList<K>(); // @GuardedBy("keyLock")
-    private final ReadWriteLock keyLock = new ReentrantReadWriteLock(true);
+    private final ReentrantReadWriteLock keyLock = new ReentrantReadWriteLock(true);
+    private final LockRecorder keyLockRecorder = createLockRecorder("keyLock");
     /*
      * The combined count of the currently active objects for all keys and those
      * in the process of being created. Under load, it may exceed
@@ -1585,10 +3353,86 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
      * created at any one time.
      */
     private final AtomicInteger numTotal = new AtomicInteger(0);
+    /*
+     * The objects currently borrowed in place of objects of an equivalent key,
+     * mapped to the key they are associated with.
+     */
+    private final Map<IdentityWrapper<T>,K> equivalentBorrows =
+            new ConcurrentHashMap<IdentityWrapper<T>,K>();
     private Iterator<K> evictionKeyIterator = null; // @GuardedBy("evictionLock")
+    private ThreadPoolExecutor evictionExecutor = null; // @GuardedBy("evictionLock")
+    private volatile EvictionRunStats lastEvictionRunStats = null;
+    private volatile EvictionRunStats lastMinIdleRunStats = null;
+    /*
+     * The keys that may have fewer than minIdlePerKey idle objects. All keys
+     * are examined when minIdleFullScan is set.
+     */
+    private final Set<K> minIdleDirtyKeys =
+            Collections.newSetFromMap(new ConcurrentHashMap<K,Boolean>());
+    private volatile boolean minIdleFullScan = true;
+    private final AtomicBoolean replenishScheduled = new AtomicBoolean(false);
+    private final Object replenishLock = new Object();
+    private ThreadPoolExecutor replenishExecutor = null; // @GuardedBy("replenishLock")
     private K evictionKey = null; // @GuardedBy("evictionLock")
 
     // JMX specific attributes
+    /**
+     * A key and one of its counts, ordered by the count.
+     */
+    private static class KeyCount<K> implements Comparable<KeyCount<K>> {
+        private final K key;
+        private final int count;
+
+        KeyCount(final K key, final int count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        @Override
+        public int compareTo(final KeyCount<K> other) {
+            return count < other.count ? -1 : (count == other.count ? 0 : 1);
+        }
+    }
+
+    /**
+     * A task run for each key by {@link #forEachKey(List, KeyTask)}.
+     */
+    private interface KeyTask<K> {
+        void run(K key) throws Exception;
+    }
+
+    /**
+     * Accumulates the statistics of an eviction run.
+     */
+    private static class EvictionRun {
+        private final long startTime = System.currentTimeMillis();
+        private final AtomicInteger keyCount = new AtomicInteger(0);
+        private final AtomicInteger testedCount = new AtomicInteger(0);
+        private final AtomicInteger destroyedCount = new AtomicInteger(0);
+        private final AtomicInteger createdCount = new AtomicInteger(0);
+
+        EvictionRunStats getStats() {
+            return new EvictionRunStats(startTime,
+                    System.currentTimeMillis() - startTime, keyCount.get(),
+                    testedCount.get(), destroyedCount.get(), createdCount.get());
+        }
+    }
+
+    /**
+     * Creates the daemon threads used to process keys in parallel during
+     * eviction runs.
+     */
+    private static class EvictionThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "commons-pool-eviction-worker");
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    private static final long EVICTION_THREAD_KEEP_ALIVE_MILLIS = 60000L;
+
     private static final String ONAME_BASE =
             "org.apache.commons.pool2:type=GenericKeyedObjectPool,name=";
 
@@ -1601,10 +3445,22 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         builder.append(minIdlePerKey);
         builder.append(", maxTotalPerKey=");
         builder.append(maxTotalPerKey);
+        builder.append(", keyLingerTimeMillis=");
+        builder.append(keyLingerTimeMillis);
+        builder.append(", maxKeyIdleTimeMillis=");
+        builder.append(maxKeyIdleTimeMillis);
+        builder.append(", evictionConcurrency=");
+        builder.append(evictionConcurrency);
+        builder.append(", replenishMinIdleImmediately=");
+        builder.append(replenishMinIdleImmediately);
         builder.append(", factory=");
         builder.append(factory);
         builder.append(", fairness=");
         builder.append(fairness);
+        builder.append(", capacityShares=");
+        builder.append(capacityShares);
+        builder.append(", keyEquivalence=");
+        builder.append(keyEquivalence);
         builder.append(", poolMap=");
         builder.append(poolMap);
         builder.append(", poolKeyList=");
@@ -1617,5 +3473,11 @@ implements KeyedObjectPool<K,T>, GenericKeyedObjectPoolMXBean<K> {
         builder.append(evictionKeyIterator);
         builder.append(", evictionKey=");
         builder.append(evictionKey);
+        builder.append(", lastEvictionRunStats=");
+        builder.append(lastEvictionRunStats);
+        builder.append(", lastMinIdleRunStats=");
+        builder.append(lastMinIdleRunStats);
+        builder.append(", minIdleDirtyKeys=");
+        builder.append(minIdleDirtyKeys);
     }
 }
@@ -54,6 +54,34 @@ public class GenericKeyedObjectPoolConfig extends BaseObjectPoolConfig {
      */
     public static final int DEFAULT_MAX_IDLE_PER_KEY = 8;
 
+    /**
+     * The default value for the {@code keyLingerTimeMillis} configuration
+     * attribute.
+     * @see GenericKeyedObjectPool#getKeyLingerTimeMillis()
+     */
+    public static final long DEFAULT_KEY_LINGER_TIME_MILLIS = -1L;
+
+    /**
+     * The default value for the {@code maxKeyIdleTimeMillis} configuration
+     * attribute.
+     * @see GenericKeyedObjectPool#getMaxKeyIdleTimeMillis()
+     */
+    public static final long DEFAULT_MAX_KEY_IDLE_TIME_MILLIS = -1L;
+
+    /**
+     * The default value for the {@code evictionConcurrency} configuration
+     * attribute.
+     * @see GenericKeyedObjectPool#getEvictionConcurrency()
+     */
+    public static final int DEFAULT_EVICTION_CONCURRENCY = 1;
+
+    /**
+     * The default value for the {@code replenishMinIdleImmediately}
+     * configuration attribute.
+     * @see GenericKeyedObjectPool#getReplenishMinIdleImmediately()
+     */
+    public static final boolean DEFAULT_REPLENISH_MIN_IDLE_IMMEDIATELY = false;
+
 
     private int minIdlePerKey = DEFAULT_MIN_IDLE_PER_KEY;
 
@@ -63,6 +91,15 @@ public class GenericKeyedObjectPoolConfig extends BaseObjectPoolConfig {
 
     private int maxTotal = DEFAULT_MAX_TOTAL;
 
+    private long keyLingerTimeMillis = DEFAULT_KEY_LINGER_TIME_MILLIS;
+
+    private long maxKeyIdleTimeMillis = DEFAULT_MAX_KEY_IDLE_TIME_MILLIS;
+
+    private int evictionConcurrency = DEFAULT_EVICTION_CONCURRENCY;
+
+    private boolean replenishMinIdleImmediately =
+            DEFAULT_REPLENISH_MIN_IDLE_IMMEDIATELY;
+
     /**
      * Create a new configuration with default settings.
      */
@@ -173,6 +210,128 @@ public class GenericKeyedObjectPoolConfig extends BaseObjectPoolConfig {
         this.maxIdlePerKey = maxIdlePerKey;
     }
 
+    /**
+     * Get the value for the {@code keyLingerTimeMillis} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @return  The current setting of {@code keyLingerTimeMillis} for this
+     *          configuration instance
+     *
+     * @see GenericKeyedObjectPool#getKeyLingerTimeMillis()
+     *
+     * @since 2.4.3
+     */
+    public long getKeyLingerTimeMillis() {
+        return keyLingerTimeMillis;
+    }
+
+    /**
+     * Set the value for the {@code keyLingerTimeMillis} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @param keyLingerTimeMillis The new setting of
+     *        {@code keyLingerTimeMillis} for this configuration instance
+     *
+     * @see GenericKeyedObjectPool#setKeyLingerTimeMillis(long)
+     *
+     * @since 2.4.3
+     */
+    public void setKeyLingerTimeMillis(final long keyLingerTimeMillis) {
+        this.keyLingerTimeMillis = keyLingerTimeMillis;
+    }
+
+    /**
+     * Get the value for the {@code maxKeyIdleTimeMillis} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @return  The current setting of {@code maxKeyIdleTimeMillis} for this
+     *          configuration instance
+     *
+     * @see GenericKeyedObjectPool#getMaxKeyIdleTimeMillis()
+     *
+     * @since 2.4.3
+     */
+    public long getMaxKeyIdleTimeMillis() {
+        return maxKeyIdleTimeMillis;
+    }
+
+    /**
+     * Set the value for the {@code maxKeyIdleTimeMillis} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @param maxKeyIdleTimeMillis The new setting of
+     *        {@code maxKeyIdleTimeMillis} for this configuration instance
+     *
+     * @see GenericKeyedObjectPool#setMaxKeyIdleTimeMillis(long)
+     *
+     * @since 2.4.3
+     */
+    public void setMaxKeyIdleTimeMillis(final long maxKeyIdleTimeMillis) {
+        this.maxKeyIdleTimeMillis = maxKeyIdleTimeMillis;
+    }
+
+    /**
+     * Get the value for the {@code evictionConcurrency} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @return  The current setting of {@code evictionConcurrency} for this
+     *          configuration instance
+     *
+     * @see GenericKeyedObjectPool#getEvictionConcurrency()
+     *
+     * @since 2.4.3
+     */
+    public int getEvictionConcurrency() {
+        return evictionConcurrency;
+    }
+
+    /**
+     * Set the value for the {@code evictionConcurrency} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @param evictionConcurrency The new setting of
+     *        {@code evictionConcurrency} for this configuration instance
+     *
+     * @see GenericKeyedObjectPool#setEvictionConcurrency(int)
+     *
+     * @since 2.4.3
+     */
+    public void setEvictionConcurrency(final int evictionConcurrency) {
+        this.evictionConcurrency = evictionConcurrency;
+    }
+
+    /**
+     * Get the value for the {@code replenishMinIdleImmediately} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @return  The current setting of {@code replenishMinIdleImmediately} for
+     *          this configuration instance
+     *
+     * @see GenericKeyedObjectPool#getReplenishMinIdleImmediately()
+     *
+     * @since 2.4.3
+     */
+    public boolean getReplenishMinIdleImmediately() {
+        return replenishMinIdleImmediately;
+    }
+
+    /**
+     * Set the value for the {@code replenishMinIdleImmediately} configuration
+     * attribute for pools created with this configuration instance.
+     *
+     * @param replenishMinIdleImmediately The new setting of
+     *        {@code replenishMinIdleImmediately} for this configuration
+     *        instance
+     *
+     * @see GenericKeyedObjectPool#setReplenishMinIdleImmediately(boolean)
+     *
+     * @since 2.4.3
+     */
+    public void setReplenishMinIdleImmediately(
+            final boolean replenishMinIdleImmediately) {
+        this.replenishMinIdleImmediately = replenishMinIdleImmediately;
+    }
+
     @Override
     public GenericKeyedObjectPoolConfig clone() {
         try {
@@ -193,5 +352,13 @@ public class GenericKeyedObjectPoolConfig extends BaseObjectPoolConfig {
         builder.append(maxTotalPerKey);
         builder.append(", maxTotal=");
         builder.append(maxTotal);
+        builder.append(", keyLingerTimeMillis=");
+        builder.append(keyLingerTimeMillis);
+        builder.append(", maxKeyIdleTimeMillis=");
+        builder.append(maxKeyIdleTimeMillis);
+        builder.append(", evictionConcurrency=");
+        builder.append(evictionConcurrency);
+        builder.append(", replenishMinIdleImmediately=");
+        builder.append(replenishMinIdleImmediately);
     }
 }
@@ -67,6 +67,42 @@ public interface GenericKeyedObjectPoolMXBean<K> {
      * @return See {@link GenericKeyedObjectPool#getMaxTotalPerKey()}
      */
     int getMaxTotalPerKey();
+    /**
+     * See {@link GenericKeyedObjectPool#getReplenishMinIdleImmediately()}
+     * @return See {@link GenericKeyedObjectPool#getReplenishMinIdleImmediately()}
+     * @since 2.4.3
+     */
+    boolean getReplenishMinIdleImmediately();
+    /**
+     * See {@link GenericKeyedObjectPool#getEvictionConcurrency()}
+     * @return See {@link GenericKeyedObjectPool#getEvictionConcurrency()}
+     * @since 2.4.3
+     */
+    int getEvictionConcurrency();
+    /**
+     * See {@link GenericKeyedObjectPool#getLastEvictionRunStats()}
+     * @return See {@link GenericKeyedObjectPool#getLastEvictionRunStats()}
+     * @since 2.4.3
+     */
+    EvictionRunStats getLastEvictionRunStats();
+    /**
+     * See {@link GenericKeyedObjectPool#getLastMinIdleRunStats()}
+     * @return See {@link GenericKeyedObjectPool#getLastMinIdleRunStats()}
+     * @since 2.4.3
+     */
+    EvictionRunStats getLastMinIdleRunStats();
+    /**
+     * See {@link GenericKeyedObjectPool#getKeyLingerTimeMillis()}
+     * @return See {@link GenericKeyedObjectPool#getKeyLingerTimeMillis()}
+     * @since 2.4.3
+     */
+    long getKeyLingerTimeMillis();
+    /**
+     * See {@link GenericKeyedObjectPool#getMaxKeyIdleTimeMillis()}
+     * @return See {@link GenericKeyedObjectPool#getMaxKeyIdleTimeMillis()}
+     * @since 2.4.3
+     */
+    long getMaxKeyIdleTimeMillis();
     /**
      * See {@link GenericKeyedObjectPool#getMaxWaitMillis()}
      * @return See {@link GenericKeyedObjectPool#getMaxWaitMillis()}
@@ -204,4 +240,128 @@ public interface GenericKeyedObjectPoolMXBean<K> {
      * @return See {@link GenericKeyedObjectPool#listAllObjects()}
      */
     Map<String,List<DefaultPooledObjectInfo>> listAllObjects();
+    /**
+     * See {@link GenericKeyedObjectPool#listObjects(int, int)}
+     * @param offset See {@link GenericKeyedObjectPool#listObjects(int, int)}
+     * @param limit See {@link GenericKeyedObjectPool#listObjects(int, int)}
+     * @return See {@link GenericKeyedObjectPool#listObjects(int, int)}
+     * @since 2.4.3
+     */
+    Map<String,List<DefaultPooledObjectInfo>> listObjects(int offset, int limit);
+    /**
+     * See {@link GenericKeyedObjectPool#listTopKeysByNumActive(int)}
+     * @param n See {@link GenericKeyedObjectPool#listTopKeysByNumActive(int)}
+     * @return See {@link GenericKeyedObjectPool#listTopKeysByNumActive(int)}
+     * @since 2.4.3
+     */
+    Map<String,Integer> listTopKeysByNumActive(int n);
+    /**
+     * See {@link GenericKeyedObjectPool#listTopKeysByNumWaiters(int)}
+     * @param n See {@link GenericKeyedObjectPool#listTopKeysByNumWaiters(int)}
+     * @return See {@link GenericKeyedObjectPool#listTopKeysByNumWaiters(int)}
+     * @since 2.4.3
+     */
+    Map<String,Integer> listTopKeysByNumWaiters(int n);
+    /**
+     * See {@link GenericKeyedObjectPool#getTopKeysByBorrowWaitTime(int)}
+     * @param n See {@link GenericKeyedObjectPool#getTopKeysByBorrowWaitTime(int)}
+     * @return See {@link GenericKeyedObjectPool#getTopKeysByBorrowWaitTime(int)}
+     * @since 2.4.3
+     */
+    List<KeyStatistics> getTopKeysByBorrowWaitTime(int n);
+    /**
+     * See {@link GenericKeyedObjectPool#getTopKeysByCreateTime(int)}
+     * @param n See {@link GenericKeyedObjectPool#getTopKeysByCreateTime(int)}
+     * @return See {@link GenericKeyedObjectPool#getTopKeysByCreateTime(int)}
+     * @since 2.4.3
+     */
+    List<KeyStatistics> getTopKeysByCreateTime(int n);
+    /**
+     * See {@link GenericKeyedObjectPool#getTopKeysByBorrowValidationFailures(int)}
+     * @param n See {@link GenericKeyedObjectPool#getTopKeysByBorrowValidationFailures(int)}
+     * @return See {@link GenericKeyedObjectPool#getTopKeysByBorrowValidationFailures(int)}
+     * @since 2.4.3
+     */
+    List<KeyStatistics> getTopKeysByBorrowValidationFailures(int n);
+    /**
+     * See {@link GenericKeyedObjectPool#getStatisticsSnapshot()}
+     * @return See {@link GenericKeyedObjectPool#getStatisticsSnapshot()}
+     * @since 2.4.3
+     */
+    PoolStatistics getStatisticsSnapshot();
+    /**
+     * See {@link GenericKeyedObjectPool#getStatisticsSnapshot(boolean)}
+     * @param delta See {@link GenericKeyedObjectPool#getStatisticsSnapshot(boolean)}
+     * @return See {@link GenericKeyedObjectPool#getStatisticsSnapshot(boolean)}
+     * @since 2.4.3
+     */
+    PoolStatistics getStatisticsSnapshot(boolean delta);
+    /**
+     * See {@link GenericKeyedObjectPool#getLockStatisticsSamplingInterval()}
+     * @return See {@link GenericKeyedObjectPool#getLockStatisticsSamplingInterval()}
+     * @since 2.4.3
+     */
+    int getLockStatisticsSamplingInterval();
+    /**
+     * See {@link GenericKeyedObjectPool#getLockStatistics()}
+     * @return See {@link GenericKeyedObjectPool#getLockStatistics()}
+     * @since 2.4.3
+     */
+    List<LockStatistics> getLockStatistics();
+    /**
+     * See {@link GenericKeyedObjectPool#getFlightRecorderSize()}
+     * @return See {@link GenericKeyedObjectPool#getFlightRecorderSize()}
+     * @since 2.4.3
+     */
+    int getFlightRecorderSize();
+    /**
+     * See {@link GenericKeyedObjectPool#listRecentEvents()}
+     * @return See {@link GenericKeyedObjectPool#listRecentEvents()}
+     * @since 2.4.3
+     */
+    List<PoolEvent> listRecentEvents();
+    /**
+     * See {@link GenericKeyedObjectPool#listEventsBeforeLastTimeout()}
+     * @return See {@link GenericKeyedObjectPool#listEventsBeforeLastTimeout()}
+     * @since 2.4.3
+     */
+    List<PoolEvent> listEventsBeforeLastTimeout();
+    /**
+     * See {@link GenericKeyedObjectPool#getCallSiteSamplingInterval()}
+     * @return See {@link GenericKeyedObjectPool#getCallSiteSamplingInterval()}
+     * @since 2.4.3
+     */
+    int getCallSiteSamplingInterval();
+    /**
+     * See {@link GenericKeyedObjectPool#listTopCallSitesByHoldTime(int)}
+     * @param limit See {@link GenericKeyedObjectPool#listTopCallSitesByHoldTime(int)}
+     * @return See {@link GenericKeyedObjectPool#listTopCallSitesByHoldTime(int)}
+     * @since 2.4.3
+     */
+    List<CallSiteStatistics> listTopCallSitesByHoldTime(int limit);
+    /**
+     * See {@link GenericKeyedObjectPool#listTopCallSitesByWaitTime(int)}
+     * @param limit See {@link GenericKeyedObjectPool#listTopCallSitesByWaitTime(int)}
+     * @return See {@link GenericKeyedObjectPool#listTopCallSitesByWaitTime(int)}
+     * @since 2.4.3
+     */
+    List<CallSiteStatistics> listTopCallSitesByWaitTime(int limit);
+    /**
+     * See {@link GenericKeyedObjectPool#listCallSiteHoldTimeStacks()}
+     * @return See {@link GenericKeyedObjectPool#listCallSiteHoldTimeStacks()}
+     * @since 2.4.3
+     */
+    List<String> listCallSiteHoldTimeStacks();
+    /**
+     * See {@link GenericKeyedObjectPool#listCallSiteWaitTimeStacks()}
+     * @return See {@link GenericKeyedObjectPool#listCallSiteWaitTimeStacks()}
+     * @since 2.4.3
+     */
+    List<String> listCallSiteWaitTimeStacks();
+    /**
+     * See {@link GenericKeyedObjectPool#getSoftReferenceIdleObjects()}
+     * @return See {@link GenericKeyedObjectPool#getSoftReferenceIdleObjects()}
+     * @since 2.4.3
+     */
+    boolean getSoftReferenceIdleObjects();
 }
@@ -16,16 +16,18 @@
  */
 package org.apache.commons.pool2.impl;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 
+import org.apache.commons.pool2.LazyActivation;
 import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.PoolUtils;
 import org.apache.commons.pool2.PooledObject;
@@ -33,7 +35,7 @@ import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.PooledObjectState;
 import org.apache.commons.pool2.SwallowedExceptionListener;
 import org.apache.commons.pool2.TrackedUse;
-import org.apache.commons.pool2.UsageTracking;
+import org.apache.commons.pool2.UsageTrackingHandles;
 
 /**
  * A configurable {@link ObjectPool} implementation.
@@ -77,7 +79,8 @@ import org.apache.commons.pool2.UsageTracking;
  * @since 2.0
  */
 public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
-        implements ObjectPool<T>, GenericObjectPoolMXBean, UsageTracking<T> {
+        implements ObjectPool<T>, GenericObjectPoolMXBean, UsageTrackingHandles<T>,
+        LazyActivation<T> {
 
     /**
      * Create a new <code>GenericObjectPool</code> using defaults from
@@ -112,7 +115,9 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
         }
         this.factory = factory;
 
-        idleObjects = new LinkedBlockingDeque<PooledObject<T>>(config.getFairness());
+        idleObjects = new LinkedBlockingDeque<PooledObject<T>>(
+                Integer.MAX_VALUE, config.getFairness(),
+                idleObjectsLockRecorder);
 
         setConfig(config);
 
@@ -319,6 +324,11 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
                 conf.getSoftMinEvictableIdleTimeMillis());
         setEvictionPolicyClassName(conf.getEvictionPolicyClassName());
         setEvictorShutdownTimeoutMillis(conf.getEvictorShutdownTimeoutMillis());
+        setLockStatisticsSamplingInterval(
+                conf.getLockStatisticsSamplingInterval());
+        setFlightRecorderSize(conf.getFlightRecorderSize());
+        setCallSiteSamplingInterval(conf.getCallSiteSamplingInterval());
+        setSoftReferenceIdleObjects(conf.getSoftReferenceIdleObjects());
     }
 
     /**
@@ -339,6 +349,33 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
             this.abandonedConfig.setRemoveAbandonedOnMaintenance(abandonedConfig.getRemoveAbandonedOnMaintenance());
             this.abandonedConfig.setRemoveAbandonedTimeout(abandonedConfig.getRemoveAbandonedTimeout());
             this.abandonedConfig.setUseUsageTracking(abandonedConfig.getUseUsageTracking());
+            this.abandonedConfig.setRequireFullStackTrace(abandonedConfig.getRequireFullStackTrace());
+            this.abandonedConfig.setStackTraceSamplingInterval(abandonedConfig.getStackTraceSamplingInterval());
+            this.abandonedConfig.setUsageTrackingGranularityMillis(
+                    abandonedConfig.getUsageTrackingGranularityMillis());
+        }
+        updateAbandonedObjectIndex();
+    }
+
+    /**
+     * Creates the index of allocated objects if abandoned object removal has
+     * been enabled, indexing any objects that are already allocated, or
+     * discards it if removal has been disabled.
+     */
+    private void updateAbandonedObjectIndex() {
+        final AbandonedConfig ac = this.abandonedConfig;
+        if (ac == null || !ac.getRemoveAbandonedOnBorrow() &&
+                !ac.getRemoveAbandonedOnMaintenance()) {
+            abandonedObjectIndex = null;
+        } else if (abandonedObjectIndex == null) {
+            final AbandonedObjectIndex<T> index = new AbandonedObjectIndex<T>();
+            // Publish the index before examining the existing objects so
+            // that objects allocated concurrently are indexed either here or
+            // by borrowObject
+            abandonedObjectIndex = index;
+            for (final PooledObject<T> p : allObjects.values()) {
+                index.addIfAllocated(p);
+            }
         }
     }
 
@@ -409,7 +446,64 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
      *                   error
      */
     public T borrowObject(final long borrowMaxWaitMillis) throws Exception {
+        return borrowObject(null, borrowMaxWaitMillis);
+    }
+
+    /**
+     * Equivalent to <code>{@link #borrowObject(String, long)
+     * borrowObject}(callSite, {@link #getMaxWaitMillis()})</code>.
+     *
+     * @param callSite The call site to which the borrow is attributed
+     *
+     * @return object instance from the pool
+     *
+     * @throws NoSuchElementException if an instance cannot be returned
+     *
+     * @throws Exception if an object instance cannot be returned due to an
+     *                   error
+     *
+     * @since 2.4.3
+     */
+    public T borrowObject(final String callSite) throws Exception {
+        return borrowObject(callSite, getMaxWaitMillis());
+    }
+
+    /**
+     * Borrow an object from the pool as {@link #borrowObject(long)} does,
+     * attributing the time spent waiting for the object and the time for
+     * which the object is held to the given call site if
+     * {@link #getCallSiteSamplingInterval() call site recording} is enabled.
+     *
+     * @param callSite The call site to which the borrow is attributed or
+     *                 {@code null} to attribute a sample of borrows to the
+     *                 call stack of the borrower
+     * @param borrowMaxWaitMillis The time to wait in milliseconds for an object
+     *                            to become available
+     *
+     * @return object instance from the pool
+     *
+     * @throws NoSuchElementException if an instance cannot be returned
+     *
+     * @throws Exception if an object instance cannot be returned due to an
+     *                   error
+     *
+     * @since 2.4.3
+     */
+    public T borrowObject(final String callSite, final long borrowMaxWaitMillis)
+            throws Exception {
+        return borrow(callSite, borrowMaxWaitMillis, true);
+    }
+
+    /**
+     * Borrow an object from the pool, activating and validating it only if
+     * {@code activate} is {@code true}. Objects that are not activated are
+     * tracked in {@link #inactiveObjects} until they are activated or
+     * returned.
+     */
+    private T borrow(final String callSite, final long borrowMaxWaitMillis,
+            final boolean activate) throws Exception {
         assertOpen();
+        final CallSiteRecorder.CallSite borrowCallSite = getBorrowCallSite(callSite);
 
         final AbandonedConfig ac = this.abandonedConfig;
         if (ac != null && ac.getRemoveAbandonedOnBorrow() &&
@@ -424,7 +518,7 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
         // method execution
         final boolean blockWhenExhausted = getBlockWhenExhausted();
 
-        boolean create;
+        boolean create = false;
         final long waitTime = System.currentTimeMillis();
 
         while (p == null) {
@@ -446,6 +540,7 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
                     }
                 }
                 if (p == null) {
+                    recordTimeout(null, System.currentTimeMillis() - waitTime);
                     throw new NoSuchElementException(
                             "Timeout waiting for idle object");
                 }
@@ -456,9 +551,17 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
             }
             if (!p.allocate()) {
                 p = null;
+            } else if (!harden(p)) {
+                // Reclaimed by the garbage collector while idle
+                p = null;
+            } else {
+                final AbandonedObjectIndex<T> index = abandonedObjectIndex;
+                if (index != null) {
+                    index.allocated(p);
+                }
             }
 
-            if (p != null) {
+            if (p != null && activate) {
                 try {
                     factory.activateObject(p);
                 } catch (final Exception e) {
@@ -503,7 +606,14 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
             }
         }
 
-        updateStatsBorrow(p, System.currentTimeMillis() - waitTime);
+        if (!activate) {
+            inactiveObjects.put(p, Boolean.valueOf(create));
+        }
+
+        final long borrowWaitTime = System.currentTimeMillis() - waitTime;
+        updateStatsBorrow(p, borrowWaitTime);
+        recordCallSiteBorrow(borrowCallSite, p, borrowWaitTime);
+        recordEvent(PoolEvent.Type.BORROW, p.getObject(), null, borrowWaitTime);
 
         return p.getObject();
     }
@@ -542,10 +652,21 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
             }
             p.markReturning(); // Keep from being marked abandoned
         }
+        recordCallSiteReturn(p);
+        final AbandonedObjectIndex<T> index = abandonedObjectIndex;
+        if (index != null) {
+            index.deallocated(p);
+        }
 
         final long activeTime = p.getActiveTimeMillis();
+        recordEvent(PoolEvent.Type.RETURN, obj, null, activeTime);
 
-        if (getTestOnReturn()) {
+        // Objects that were never activated are neither validated nor
+        // passivated
+        final boolean activated = inactiveObjects.remove(p) == null;
+        usageTrackingHandles.remove(p);
+
+        if (activated && getTestOnReturn()) {
             if (!factory.validateObject(p)) {
                 try {
                     destroy(p);
@@ -562,22 +683,24 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
             }
         }
 
-        try {
-            factory.passivateObject(p);
-        } catch (final Exception e1) {
-            swallowException(e1);
-            try {
-                destroy(p);
-            } catch (final Exception e) {
-                swallowException(e);
-            }
+        if (activated) {
             try {
-                ensureIdle(1, false);
-            } catch (final Exception e) {
-                swallowException(e);
+                factory.passivateObject(p);
+            } catch (final Exception e1) {
+                swallowException(e1);
+                try {
+                    destroy(p);
+                } catch (final Exception e) {
+                    swallowException(e);
+                }
+                try {
+                    ensureIdle(1, false);
+                } catch (final Exception e) {
+                    swallowException(e);
+                }
+                updateStatsReturn(activeTime);
+                return;
             }
-            updateStatsReturn(activeTime);
-            return;
         }
 
         if (!p.deallocate()) {
@@ -585,7 +708,10 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
                     "Object has already been returned to this pool or is invalid");
         }
 
-        final int maxIdleSave = getMaxIdle();
+        int maxIdleSave = getMaxIdle();
+        if (isMemoryPressure()) {
+            maxIdleSave = Math.max(getMinIdle(), 0);
+        }
         if (isClosed() || maxIdleSave > -1 && maxIdleSave <= idleObjects.size()) {
             try {
                 destroy(p);
@@ -593,11 +719,7 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
                 swallowException(e);
             }
         } else {
-            if (getLifo()) {
-                idleObjects.addFirst(p);
-            } else {
-                idleObjects.addLast(p);
-            }
+            addToIdleObjects(p);
             if (isClosed()) {
                 // Pool closed while object was being added to idle objects.
                 // Make sure the returned object is destroyed rather than left
@@ -658,15 +780,40 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
         PooledObject<T> p = idleObjects.poll();
 
         while (p != null) {
-            try {
-                destroy(p);
-            } catch (final Exception e) {
-                swallowException(e);
+            if (harden(p)) {
+                try {
+                    destroy(p);
+                } catch (final Exception e) {
+                    swallowException(e);
+                }
             }
             p = idleObjects.poll();
         }
     }
 
+    @Override
+    int trimIdle() {
+        final int target = Math.max(getMinIdle(), 0);
+        int destroyed = 0;
+        while (idleObjects.size() > target) {
+            // Least recently used first
+            final PooledObject<T> p =
+                    getLifo() ? idleObjects.pollLast() : idleObjects.pollFirst();
+            if (p == null) {
+                break;
+            }
+            if (harden(p)) {
+                try {
+                    destroy(p);
+                    destroyed++;
+                } catch (final Exception e) {
+                    swallowException(e);
+                }
+            }
+        }
+        return destroyed;
+    }
+
     @Override
     public int getNumActive() {
         return allObjects.size() - idleObjects.size();
@@ -691,7 +838,8 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
             return;
         }
 
-        synchronized (closeLock) {
+        closeLock.lock();
+        try {
             if (isClosed()) {
                 return;
             }
@@ -708,6 +856,8 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
 
             // Release any threads that were waiting for an object
             idleObjects.interuptTakeWaiters();
+        } finally {
+            closeLock.unlock();
         }
     }
 
@@ -726,7 +876,8 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
             PooledObject<T> underTest = null;
             final EvictionPolicy<T> evictionPolicy = getEvictionPolicy();
 
-            synchronized (evictionLock) {
+            evictionLock.lock();
+            try {
                 final EvictionConfig evictionConfig = new EvictionConfig(
                         getMinEvictableIdleTimeMillis(),
                         getSoftMinEvictableIdleTimeMillis(),
@@ -760,6 +911,14 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
                         continue;
                     }
 
+                    // Softly held objects are strongly held while tested
+                    final boolean softlyHeld = isSoftlyHeld(underTest);
+                    if (!harden(underTest)) {
+                        // Reclaimed by the garbage collector
+                        idleObjects.remove(underTest);
+                        continue;
+                    }
+
                     // User provided eviction policy could throw all sorts of
                     // crazy exceptions. Protect against such an exception
                     // killing the eviction thread.
@@ -777,6 +936,9 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
                     }
 
                     if (evict) {
+                        recordEvent(PoolEvent.Type.EVICT,
+                                underTest.getObject(), null,
+                                underTest.getIdleTimeMillis());
                         destroy(underTest);
                         destroyedByEvictorCount.incrementAndGet();
                     } else {
@@ -803,12 +965,17 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
                                 }
                             }
                         }
+                        if (softlyHeld) {
+                            soften(underTest);
+                        }
                         if (!underTest.endEvictionTest(idleObjects)) {
                             // TODO - May need to add code here once additional
                             // states are used
                         }
                     }
                 }
+            } finally {
+                evictionLock.unlock();
             }
         }
         final AbandonedConfig ac = this.abandonedConfig;
@@ -855,7 +1022,8 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
         //          call the factory
         Boolean create = null;
         while (create == null) {
-            synchronized (makeObjectCountLock) {
+            makeObjectCountLock.lock();
+            try {
                 final long newCreateCount = createCount.incrementAndGet();
                 if (newCreateCount > localMaxTotal) {
                     // The pool is currently at capacity or in the process of
@@ -871,13 +1039,15 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
                         // bring the pool to capacity. Those calls might also
                         // fail so wait until they complete and then re-test if
                         // the pool is at capacity or not.
-                        makeObjectCountLock.wait();
+                        makeObjectCountLock.await(makeObjectCountChanged);
                     }
                 } else {
                     // The pool is not at capacity. Create a new object.
                     makeObjectCount++;
                     create = Boolean.TRUE;
                 }
+            } finally {
+                makeObjectCountLock.unlock();
             }
         }
 
@@ -885,6 +1055,7 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
             return null;
         }
 
+        final long createStartTime = System.currentTimeMillis();
         final PooledObject<T> p;
         try {
             p = factory.makeObject();
@@ -892,19 +1063,35 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
             createCount.decrementAndGet();
             throw e;
         } finally {
-            synchronized (makeObjectCountLock) {
+            makeObjectCountLock.lock();
+            try {
                 makeObjectCount--;
-                makeObjectCountLock.notifyAll();
+                makeObjectCountChanged.signalAll();
+            } finally {
+                makeObjectCountLock.unlock();
             }
         }
 
         final AbandonedConfig ac = this.abandonedConfig;
-        if (ac != null && ac.getLogAbandoned()) {
-            p.setLogAbandoned(true);
+        if (ac != null) {
+            if (ac.getLogAbandoned()) {
+                p.setLogAbandoned(true);
+            }
+            // Only DefaultPooledObject supports these settings, other
+            // PooledObject implementations always record full stack traces
+            if (p instanceof DefaultPooledObject) {
+                final DefaultPooledObject<T> dpo = (DefaultPooledObject<T>) p;
+                dpo.setRequireFullStackTrace(ac.getRequireFullStackTrace());
+                dpo.setStackTraceSamplingInterval(ac.getStackTraceSamplingInterval());
+            }
         }
 
         createdCount.incrementAndGet();
-        allObjects.put(new IdentityWrapper<T>(p.getObject()), p);
+        recordEvent(PoolEvent.Type.CREATE, p.getObject(), null,
+                System.currentTimeMillis() - createStartTime);
+        // The key must not strongly refer to the object in case the object
+        // is softly held while idle
+        allObjects.put(IdentityWrapper.forPooledObject(p), p);
         return p;
     }
 
@@ -920,11 +1107,19 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
         toDestroy.invalidate();
         idleObjects.remove(toDestroy);
         allObjects.remove(new IdentityWrapper<T>(toDestroy.getObject()));
+        inactiveObjects.remove(toDestroy);
+        usageTrackingHandles.remove(toDestroy);
+        recordCallSiteReturn(toDestroy);
+        final AbandonedObjectIndex<T> index = abandonedObjectIndex;
+        if (index != null) {
+            index.deallocated(toDestroy);
+        }
         try {
             factory.destroyObject(toDestroy);
         } finally {
             destroyedCount.incrementAndGet();
             createCount.decrementAndGet();
+            recordEvent(PoolEvent.Type.DESTROY, toDestroy.getObject(), null, 0);
         }
     }
 
@@ -957,11 +1152,7 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
                 // create will work. Give up.
                 break;
             }
-            if (getLifo()) {
-                idleObjects.addFirst(p);
-            } else {
-                idleObjects.addLast(p);
-            }
+            addToIdleObjects(p);
         }
         if (isClosed()) {
             // Pool closed while object was being added to idle objects.
@@ -1001,12 +1192,83 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
     private void addIdleObject(final PooledObject<T> p) throws Exception {
         if (p != null) {
             factory.passivateObject(p);
-            if (getLifo()) {
-                idleObjects.addFirst(p);
-            } else {
-                idleObjects.addLast(p);
+            addToIdleObjects(p);
+        }
+    }
+
+    /**
+     * Add an object that has become idle to the idle objects, holding it
+     * through a soft reference if {@link #getSoftReferenceIdleObjects()
+     * softReferenceIdleObjects} is set and there are already at least
+     * {@link #getMinIdle() minIdle} idle objects.
+     *
+     * @param p The idle object
+     */
+    private void addToIdleObjects(final PooledObject<T> p) {
+        if (getSoftReferenceIdleObjects() && idleObjects.size() >= getMinIdle()) {
+            soften(p);
+        }
+        if (getLifo()) {
+            idleObjects.addFirst(p);
+        } else {
+            idleObjects.addLast(p);
+        }
+    }
+
+    /**
+     * Hold an idle object through a soft reference.
+     *
+     * @param p The idle object
+     */
+    private void soften(final PooledObject<T> p) {
+        // Only DefaultPooledObject supports soft references, other
+        // PooledObject implementations are always strongly held
+        if (p instanceof DefaultPooledObject) {
+            final DefaultPooledObject<T> dpo = (DefaultPooledObject<T>) p;
+            synchronized (dpo) {
+                if (dpo.getState() != PooledObjectState.INVALID) {
+                    dpo.soften();
+                }
+            }
+        }
+    }
+
+    private boolean isSoftlyHeld(final PooledObject<T> p) {
+        return p instanceof DefaultPooledObject &&
+                ((DefaultPooledObject<T>) p).isSoft();
+    }
+
+    /**
+     * Strongly hold an idle object that may be softly held so that it can be
+     * borrowed, tested or destroyed. If the object has been reclaimed by the
+     * garbage collector it is removed from the pool, other than from the
+     * idle objects, which is left to the caller.
+     *
+     * @param p The idle object, which must not be in use by another thread
+     *
+     * @return <code>false</code> if the object has been reclaimed
+     */
+    private boolean harden(final PooledObject<T> p) {
+        if (!(p instanceof DefaultPooledObject)) {
+            return true;
+        }
+        final DefaultPooledObject<T> dpo = (DefaultPooledObject<T>) p;
+        final int hash;
+        synchronized (dpo) {
+            if (!dpo.harden()) {
+                // Not softly held or reclaimed and already removed
+                return dpo.getObject() != null;
             }
+            if (dpo.getObject() != null) {
+                return true;
+            }
+            dpo.invalidate();
+            hash = dpo.getSoftObjectIdentityHash();
         }
+        allObjects.remove(IdentityWrapper.forReclaimedObject(p, hash));
+        createCount.decrementAndGet();
+        destroyedCount.incrementAndGet();
+        return false;
     }
 
     /**
@@ -1035,18 +1297,13 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
         final long now = System.currentTimeMillis();
         final long timeout =
                 now - (ac.getRemoveAbandonedTimeout() * 1000L);
-        final ArrayList<PooledObject<T>> remove = new ArrayList<PooledObject<T>>();
-        final Iterator<PooledObject<T>> it = allObjects.values().iterator();
-        while (it.hasNext()) {
-            final PooledObject<T> pooledObject = it.next();
-            synchronized (pooledObject) {
-                if (pooledObject.getState() == PooledObjectState.ALLOCATED &&
-                        pooledObject.getLastUsedTime() <= timeout) {
-                    pooledObject.markAbandoned();
-                    remove.add(pooledObject);
-                }
-            }
+        final AbandonedObjectIndex<T> index = abandonedObjectIndex;
+        if (index == null) {
+            // Removal is being enabled concurrently
+            return;
         }
+        // Only examines the objects that may have passed the timeout
+        final List<PooledObject<T>> remove = index.markAbandoned(timeout);
 
         // Now remove the abandoned objects
         final Iterator<PooledObject<T>> itr = remove.iterator();
@@ -1071,8 +1328,162 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
         final AbandonedConfig ac = this.abandonedConfig;
         if (ac != null && ac.getUseUsageTracking()) {
             final PooledObject<T> wrapper = allObjects.get(new IdentityWrapper<T>(pooledObject));
-            wrapper.use();
+            if (ac.getUsageTrackingGranularityMillis() <= 0) {
+                wrapper.use();
+                return;
+            }
+            // The last use time of the object is reset when it is borrowed
+            UsageTrackingHandle handle = usageTrackingHandles.get(wrapper);
+            if (handle == null) {
+                handle = new UsageTrackingHandle(wrapper);
+                final UsageTrackingHandle existing =
+                        usageTrackingHandles.putIfAbsent(wrapper, handle);
+                if (existing != null) {
+                    handle = existing;
+                }
+            }
+            handle.use();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public UsageTrackingHandles.Handle getUsageTrackingHandle(final T pooledObject) {
+        final PooledObject<T> wrapper = allObjects.get(new IdentityWrapper<T>(pooledObject));
+        if (wrapper == null) {
+            return null;
+        }
+        return new UsageTrackingHandle(wrapper);
+    }
+
+    /**
+     * Reports the uses of a borrowed object without looking it up, recording
+     * at most one use per {@link AbandonedConfig#getUsageTrackingGranularityMillis()
+     * usageTrackingGranularityMillis}. The time of the last recorded use is
+     * deliberately not volatile so that the common case of an unrecorded use
+     * is a plain read.
+     */
+    private class UsageTrackingHandle implements UsageTrackingHandles.Handle {
+
+        private final PooledObject<T> pooledObject;
+        private long lastRecordedUse = 0;
+
+        UsageTrackingHandle(final PooledObject<T> pooledObject) {
+            this.pooledObject = pooledObject;
+        }
+
+        @Override
+        public void use() {
+            final AbandonedConfig ac = abandonedConfig;
+            if (ac != null && ac.getUseUsageTracking()) {
+                final long granularity = ac.getUsageTrackingGranularityMillis();
+                if (granularity > 0) {
+                    final long now = System.currentTimeMillis();
+                    if (now - lastRecordedUse < granularity) {
+                        return;
+                    }
+                    lastRecordedUse = now;
+                }
+                pooledObject.use();
+            }
+        }
+    }
+
+
+    //--- Lazy activation support ----------------------------------------------
+
+    /**
+     * Borrow an object from the pool as {@link #borrowObject()} does but
+     * without activating or validating it. The object is activated and, if
+     * {@link #getTestOnBorrow() testOnBorrow} is set, validated by
+     * {@link #activateBorrowedObject(Object)}. If the object is returned
+     * without having been activated, it is neither validated nor passivated
+     * regardless of the value of {@link #getTestOnReturn() testOnReturn}.
+     *
+     * @return an object instance from the pool that has not been activated
+     *
+     * @throws NoSuchElementException if an instance cannot be returned
+     *
+     * @throws Exception if an object instance cannot be returned due to an
+     *                   error
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public T borrowInactiveObject() throws Exception {
+        return borrow(null, getMaxWaitMillis(), false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Activation and validation failures are handled as they are by
+     * {@link #borrowObject()}: if the object was newly created for the borrow
+     * that obtained it, a {@link NoSuchElementException} is thrown rather than
+     * a replacement being borrowed.
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public T activateBorrowedObject(final T obj) throws Exception {
+        final PooledObject<T> p = allObjects.get(new IdentityWrapper<T>(obj));
+        if (p == null) {
+            throw new IllegalStateException(
+                    "Object not currently part of this pool");
+        }
+        final Boolean created = inactiveObjects.get(p);
+        if (created == null) {
+            // Already activated
+            return obj;
         }
+
+        Throwable activationThrowable = null;
+        boolean validate = true;
+        Throwable validationThrowable = null;
+        try {
+            factory.activateObject(p);
+        } catch (final Exception e) {
+            activationThrowable = e;
+        }
+        if (activationThrowable == null &&
+                (getTestOnBorrow() || created.booleanValue() && getTestOnCreate())) {
+            try {
+                validate = factory.validateObject(p);
+            } catch (final Throwable t) {
+                PoolUtils.checkRethrow(t);
+                validate = false;
+                validationThrowable = t;
+            }
+        }
+        inactiveObjects.remove(p);
+        if (activationThrowable == null && validate) {
+            return obj;
+        }
+
+        try {
+            destroy(p);
+            if (activationThrowable == null) {
+                destroyedByBorrowValidationCount.incrementAndGet();
+            }
+        } catch (final Exception e) {
+            // Ignore - activation or validation failure is more important
+        }
+        if (created.booleanValue()) {
+            final NoSuchElementException nsee;
+            if (activationThrowable != null) {
+                nsee = new NoSuchElementException("Unable to activate object");
+                nsee.initCause(activationThrowable);
+            } else {
+                nsee = new NoSuchElementException("Unable to validate object");
+                nsee.initCause(validationThrowable);
+            }
+            throw nsee;
+        }
+        return borrowObject();
     }
 
 
@@ -1096,6 +1507,13 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
         return 0;
     }
 
+    @Override
+    PoolStatistics createStatisticsSnapshot() {
+        final int numIdle = idleObjects.size();
+        return createStatisticsSnapshot(allObjects.size() - numIdle, numIdle,
+                getNumWaiters());
+    }
+
     /**
      * Return the type - including the specific type rather than the generic -
      * of the factory.
@@ -1139,6 +1557,61 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
         return result;
     }
 
+    /**
+     * Provides information on a bounded number of the objects in the pool,
+     * both idle and active. Objects are reported in an unspecified order that
+     * is stable while the objects in the pool do not change, so large pools
+     * can be listed a page at a time.
+     *
+     * @param offset    The number of objects to skip
+     * @param limit     The maximum number of objects to report
+     *
+     * @return Information on up to limit objects
+     *
+     * @since 2.4.3
+     */
+    @Override
+    public Set<DefaultPooledObjectInfo> listObjects(final int offset,
+            final int limit) {
+        final Set<DefaultPooledObjectInfo> result =
+                new HashSet<DefaultPooledObjectInfo>();
+        if (limit < 1) {
+            return result;
+        }
+        visitAllObjects(new PooledObjectVisitor<T>() {
+            private int skip = offset;
+
+            @Override
+            public boolean visit(final PooledObject<T> p) {
+                if (skip > 0) {
+                    skip--;
+                    return true;
+                }
+                result.add(new DefaultPooledObjectInfo(p));
+                return result.size() < limit;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Passes each of the objects in the pool, both idle and active, to the
+     * given visitor without creating a collection of them. This is intended
+     * for monitoring large pools. The objects that are added or removed while
+     * the visit is in progress may or may not be visited.
+     *
+     * @param visitor The visitor to pass the objects to
+     *
+     * @since 2.4.3
+     */
+    public void visitAllObjects(final PooledObjectVisitor<T> visitor) {
+        for (final PooledObject<T> p : allObjects.values()) {
+            if (!visitor.visit(p)) {
+                return;
+            }
+        }
+    }
+
     // --- configuration attributes --------------------------------------------
 
     private volatile int maxIdle = GenericObjectPoolConfig.DEFAULT_MAX_IDLE;
@@ -1166,7 +1639,10 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
      */
     private final AtomicLong createCount = new AtomicLong(0);
     private long makeObjectCount = 0;
-    private final Object makeObjectCountLock = new Object();
+    private final InterruptibleReentrantLock makeObjectCountLock =
+            new InterruptibleReentrantLock(false, makeObjectCountLockRecorder);
+    private final Condition makeObjectCountChanged =
+            makeObjectCountLock.newCondition();
     private final LinkedBlockingDeque<PooledObject<T>> idleObjects;
 
     // JMX specific attributes
@@ -1175,6 +1651,20 @@ public class GenericObjectPool<T> extends BaseGenericObjectPool<T>
 
     // Additional configuration properties for abandoned object tracking
     private volatile AbandonedConfig abandonedConfig = null;
+    // Null unless abandoned objects are being removed
+    private volatile AbandonedObjectIndex<T> abandonedObjectIndex = null;
+    /*
+     * Objects borrowed by borrowInactiveObject() that have not yet been
+     * activated. Values record whether the object was created by the borrow.
+     */
+    private final Map<PooledObject<T>, Boolean> inactiveObjects =
+        new ConcurrentHashMap<PooledObject<T>, Boolean>();
+    /*
+     * The uses reported through use(T) by the current borrowers of objects,
+     * so that the first use of each borrow is recorded.
+     */
+    private final ConcurrentHashMap<PooledObject<T>, UsageTrackingHandle> usageTrackingHandles =
+        new ConcurrentHashMap<PooledObject<T>, UsageTrackingHandle>();
 
     @Override
     protected void toStringAppendFields(final StringBuilder builder) {
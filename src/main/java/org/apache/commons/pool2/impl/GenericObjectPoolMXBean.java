@@ -16,6 +16,7 @@
  */
 package org.apache.commons.pool2.impl;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -218,4 +219,93 @@ public interface GenericObjectPoolMXBean {
      * @return See {@link GenericObjectPool#listAllObjects()}
      */
     Set<DefaultPooledObjectInfo> listAllObjects();
+    /**
+     * See {@link GenericObjectPool#listObjects(int, int)}
+     * @param offset See {@link GenericObjectPool#listObjects(int, int)}
+     * @param limit See {@link GenericObjectPool#listObjects(int, int)}
+     * @return See {@link GenericObjectPool#listObjects(int, int)}
+     * @since 2.4.3
+     */
+    Set<DefaultPooledObjectInfo> listObjects(int offset, int limit);
+    /**
+     * See {@link GenericObjectPool#getStatisticsSnapshot()}
+     * @return See {@link GenericObjectPool#getStatisticsSnapshot()}
+     * @since 2.4.3
+     */
+    PoolStatistics getStatisticsSnapshot();
+    /**
+     * See {@link GenericObjectPool#getStatisticsSnapshot(boolean)}
+     * @param delta See {@link GenericObjectPool#getStatisticsSnapshot(boolean)}
+     * @return See {@link GenericObjectPool#getStatisticsSnapshot(boolean)}
+     * @since 2.4.3
+     */
+    PoolStatistics getStatisticsSnapshot(boolean delta);
+    /**
+     * See {@link GenericObjectPool#getLockStatisticsSamplingInterval()}
+     * @return See {@link GenericObjectPool#getLockStatisticsSamplingInterval()}
+     * @since 2.4.3
+     */
+    int getLockStatisticsSamplingInterval();
+    /**
+     * See {@link GenericObjectPool#getLockStatistics()}
+     * @return See {@link GenericObjectPool#getLockStatistics()}
+     * @since 2.4.3
+     */
+    List<LockStatistics> getLockStatistics();
+    /**
+     * See {@link GenericObjectPool#getFlightRecorderSize()}
+     * @return See {@link GenericObjectPool#getFlightRecorderSize()}
+     * @since 2.4.3
+     */
+    int getFlightRecorderSize();
+    /**
+     * See {@link GenericObjectPool#listRecentEvents()}
+     * @return See {@link GenericObjectPool#listRecentEvents()}
+     * @since 2.4.3
+     */
+    List<PoolEvent> listRecentEvents();
+    /**
+     * See {@link GenericObjectPool#listEventsBeforeLastTimeout()}
+     * @return See {@link GenericObjectPool#listEventsBeforeLastTimeout()}
+     * @since 2.4.3
+     */
+    List<PoolEvent> listEventsBeforeLastTimeout();
+    /**
+     * See {@link GenericObjectPool#getCallSiteSamplingInterval()}
+     * @return See {@link GenericObjectPool#getCallSiteSamplingInterval()}
+     * @since 2.4.3
+     */
+    int getCallSiteSamplingInterval();
+    /**
+     * See {@link GenericObjectPool#listTopCallSitesByHoldTime(int)}
+     * @param limit See {@link GenericObjectPool#listTopCallSitesByHoldTime(int)}
+     * @return See {@link GenericObjectPool#listTopCallSitesByHoldTime(int)}
+     * @since 2.4.3
+     */
+    List<CallSiteStatistics> listTopCallSitesByHoldTime(int limit);
+    /**
+     * See {@link GenericObjectPool#listTopCallSitesByWaitTime(int)}
+     * @param limit See {@link GenericObjectPool#listTopCallSitesByWaitTime(int)}
+     * @return See {@link GenericObjectPool#listTopCallSitesByWaitTime(int)}
+     * @since 2.4.3
+     */
+    List<CallSiteStatistics> listTopCallSitesByWaitTime(int limit);
+    /**
+     * See {@link GenericObjectPool#listCallSiteHoldTimeStacks()}
+     * @return See {@link GenericObjectPool#listCallSiteHoldTimeStacks()}
+     * @since 2.4.3
+     */
+    List<String> listCallSiteHoldTimeStacks();
+    /**
+     * See {@link GenericObjectPool#listCallSiteWaitTimeStacks()}
+     * @return See {@link GenericObjectPool#listCallSiteWaitTimeStacks()}
+     * @since 2.4.3
+     */
+    List<String> listCallSiteWaitTimeStacks();
+    /**
+     * See {@link GenericObjectPool#getSoftReferenceIdleObjects()}
+     * @return See {@link GenericObjectPool#getSoftReferenceIdleObjects()}
+     * @since 2.4.3
+     */
+    boolean getSoftReferenceIdleObjects();
 }
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.pool2.KeyedPooledObjectFactory;
+
+/**
+ * A {@link GenericKeyedObjectPool} for keys that form a tree, such as data
+ * centre, host and database, where the number of instances may be limited at
+ * each level of the tree as well as per key and in total.
+ * <p>
+ * The ancestors of each key are provided by a {@link KeyHierarchy} and the
+ * limit for a node is configured with
+ * {@link #setMaxTotalPerNode(Object, int)}. The counters for all the
+ * ancestors of a key are checked and updated atomically when an instance is
+ * created. If a node is at its limit, an idle instance of another key below
+ * that node is destroyed to make room, in the same way that
+ * {@link #clearOldest()} makes room when the pool is at
+ * {@link #getMaxTotal() maxTotal}.
+ * <p>
+ * Threads waiting to borrow an instance for a key whose ancestors are at
+ * their limit are served when capacity is released anywhere below those
+ * ancestors, whether by returning, invalidating, clearing or evicting
+ * instances.
+ * <p>
+ * This class is intended to be thread-safe.
+ *
+ * @param <K> The type of keys maintained by this pool.
+ * @param <T> Type of element pooled in this pool.
+ *
+ * @since 2.4.3
+ */
+public class HierarchicalKeyedObjectPool<K,T> extends GenericKeyedObjectPool<K,T> {
+
+    /**
+     * Create a new <code>HierarchicalKeyedObjectPool</code> using defaults
+     * from {@link GenericKeyedObjectPoolConfig}.
+     *
+     * @param factory       the factory to be used to create entries
+     * @param keyHierarchy  the hierarchy of the keys
+     */
+    public HierarchicalKeyedObjectPool(final KeyedPooledObjectFactory<K,T> factory,
+            final KeyHierarchy<K> keyHierarchy) {
+        this(factory, new GenericKeyedObjectPoolConfig(), keyHierarchy);
+    }
+
+    /**
+     * Create a new <code>HierarchicalKeyedObjectPool</code> using a specific
+     * configuration.
+     *
+     * @param factory       the factory to be used to create entries
+     * @param config        The configuration to use for this pool instance.
+     *                      The configuration is used by value. Subsequent
+     *                      changes to the configuration object will not be
+     *                      reflected in the pool.
+     * @param keyHierarchy  the hierarchy of the keys
+     */
+    public HierarchicalKeyedObjectPool(final KeyedPooledObjectFactory<K,T> factory,
+            final GenericKeyedObjectPoolConfig config,
+            final KeyHierarchy<K> keyHierarchy) {
+        super(factory, config);
+        if (keyHierarchy == null) {
+            close(); // tidy up
+            throw new IllegalArgumentException("keyHierarchy may not be null");
+        }
+        this.keyHierarchy = keyHierarchy;
+    }
+
+    /**
+     * Obtain the hierarchy used to find the ancestors of the keys.
+     *
+     * @return the key hierarchy
+     */
+    public KeyHierarchy<K> getKeyHierarchy() {
+        return keyHierarchy;
+    }
+
+    /**
+     * Returns the limit on the number of object instances allocated by the
+     * pool (checked out or idle) for all the keys below the given node. A
+     * negative value indicates no limit.
+     *
+     * @param node the node of the key hierarchy
+     *
+     * @return the limit for the node
+     *
+     * @see #setMaxTotalPerNode(Object, int)
+     */
+    public int getMaxTotalPerNode(final Object node) {
+        final Integer max = maxTotalPerNode.get(node);
+        return max == null ? -1 : max.intValue();
+    }
+
+    /**
+     * Sets the limit on the number of object instances allocated by the pool
+     * (checked out or idle) for all the keys below the given node. Use a
+     * negative value for no limit.
+     *
+     * @param node      the node of the key hierarchy
+     * @param maxTotal  the limit for the node
+     *
+     * @see #getMaxTotalPerNode(Object)
+     */
+    public void setMaxTotalPerNode(final Object node, final int maxTotal) {
+        if (maxTotal < 0) {
+            maxTotalPerNode.remove(node);
+        } else {
+            maxTotalPerNode.put(node, Integer.valueOf(maxTotal));
+        }
+    }
+
+    /**
+     * Returns the number of object instances currently allocated by the pool
+     * (checked out, idle or being created) for all the keys below the given
+     * node.
+     *
+     * @param node the node of the key hierarchy
+     *
+     * @return the number of instances for the node
+     */
+    public int getNumTotalPerNode(final Object node) {
+        synchronized (numTotalPerNode) {
+            final Integer count = numTotalPerNode.get(node);
+            return count == null ? 0 : count.intValue();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Capacity released by the invalidation is used to serve threads waiting
+     * to borrow an instance for any key.
+     */
+    @Override
+    public void invalidateObject(final K key, final T obj) throws Exception {
+        super.invalidateObject(key, obj);
+        reuseReleasedCapacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Capacity released by clearing the key is used to serve threads waiting
+     * to borrow an instance for any key.
+     */
+    @Override
+    public void clear(final K key) {
+        super.clear(key);
+        reuseReleasedCapacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Capacity released by the eviction run is used to serve threads waiting
+     * to borrow an instance for any key.
+     */
+    @Override
+    public void evict() throws Exception {
+        super.evict();
+        reuseReleasedCapacity();
+    }
+
+    @Override
+    boolean reserveCapacity(final K key) {
+        final List<?> ancestors = keyHierarchy.getAncestors(key);
+        if (ancestors.isEmpty()) {
+            return true;
+        }
+        while (true) {
+            Object fullNode = null;
+            synchronized (numTotalPerNode) {
+                for (final Object node : ancestors) {
+                    final int max = getMaxTotalPerNode(node);
+                    if (max > -1 && getNumTotalPerNode(node) >= max) {
+                        fullNode = node;
+                        break;
+                    }
+                }
+                if (fullNode == null) {
+                    for (final Object node : ancestors) {
+                        final Integer count = numTotalPerNode.get(node);
+                        numTotalPerNode.put(node, Integer.valueOf(
+                                count == null ? 1 : count.intValue() + 1));
+                    }
+                    return true;
+                }
+            }
+            // Make room by destroying an idle instance below the full node.
+            // This must happen outside of the lock as it calls the factory.
+            if (!destroyIdleObjectBelow(fullNode)) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    void releaseCapacity(final K key) {
+        final List<?> ancestors = keyHierarchy.getAncestors(key);
+        synchronized (numTotalPerNode) {
+            for (final Object node : ancestors) {
+                final Integer count = numTotalPerNode.get(node);
+                if (count == null || count.intValue() <= 1) {
+                    numTotalPerNode.remove(node);
+                } else {
+                    numTotalPerNode.put(node,
+                            Integer.valueOf(count.intValue() - 1));
+                }
+            }
+        }
+    }
+
+    @Override
+    void retainKeysWithCapacity(final List<K> keys) {
+        // Only looked up if a node is full, then once for all the keys
+        Set<Object> idleNodes = null;
+        final Iterator<K> iter = keys.iterator();
+        while (iter.hasNext()) {
+            for (final Object node : keyHierarchy.getAncestors(iter.next())) {
+                final int max = getMaxTotalPerNode(node);
+                if (max > -1 && getNumTotalPerNode(node) >= max) {
+                    if (idleNodes == null) {
+                        idleNodes = getNodesWithIdleKeys();
+                    }
+                    if (!idleNodes.contains(node)) {
+                        iter.remove();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Serve any threads waiting to borrow an instance with capacity that has
+     * just been released.
+     */
+    private void reuseReleasedCapacity() {
+        if (!isClosed() && hasBorrowWaiters()) {
+            reuseCapacity();
+        }
+    }
+
+    /**
+     * Destroy an idle instance of one of the keys below the given node.
+     *
+     * @param node the node
+     *
+     * @return {@code true} if an idle instance was found for destruction
+     */
+    private boolean destroyIdleObjectBelow(final Object node) {
+        final K key = findIdleKeyBelow(node);
+        return key != null && destroyIdleObject(key);
+    }
+
+    /**
+     * Find a key below the given node that has idle instances.
+     *
+     * @param node the node
+     *
+     * @return a key with idle instances or {@code null} if there is none
+     */
+    private K findIdleKeyBelow(final Object node) {
+        for (final K key : getKeys()) {
+            if (getNumIdle(key) > 0 &&
+                    keyHierarchy.getAncestors(key).contains(node)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the nodes that have a key with idle instances below them.
+     *
+     * @return the nodes with idle instances
+     */
+    private Set<Object> getNodesWithIdleKeys() {
+        final Set<Object> nodes = new HashSet<Object>();
+        for (final K key : getKeys()) {
+            if (getNumIdle(key) > 0) {
+                nodes.addAll(keyHierarchy.getAncestors(key));
+            }
+        }
+        return nodes;
+    }
+
+    //--- configuration attributes ---------------------------------------------
+    private final KeyHierarchy<K> keyHierarchy;
+    private final Map<Object,Integer> maxTotalPerNode =
+            new ConcurrentHashMap<Object,Integer>();
+
+
+    //--- internal attributes --------------------------------------------------
+
+    /*
+     * The number of instances created, or being created, below each node.
+     * Nodes without instances are removed.
+     */
+    private final Map<Object,Integer> numTotalPerNode =
+            new HashMap<Object,Integer>(); // @GuardedBy("numTotalPerNode")
+
+    @Override
+    protected void toStringAppendFields(final StringBuilder builder) {
+        super.toStringAppendFields(builder);
+        builder.append(", keyHierarchy=");
+        builder.append(keyHierarchy);
+        builder.append(", maxTotalPerNode=");
+        builder.append(maxTotalPerNode);
+        builder.append(", numTotalPerNode=");
+        builder.append(numTotalPerNode);
+    }
+}
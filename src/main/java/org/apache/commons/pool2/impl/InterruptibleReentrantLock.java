@@ -22,8 +22,10 @@ import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This sub-class was created to expose the waiting threads so that they can be
- * interrupted when the pool using the queue that uses this lock is closed. The
- * class is intended for internal use only.
+ * interrupted when the pool using the queue that uses this lock is closed. It
+ * also reports acquisitions to an optional {@link LockRecorder}, for which
+ * the pools use it for their other internal locks too. The class is intended
+ * for internal use only.
  * <p>
  * This class is intended to be thread-safe.
  *
@@ -33,6 +35,9 @@ class InterruptibleReentrantLock extends ReentrantLock {
 
     private static final long serialVersionUID = 1L;
 
+    private final transient LockRecorder recorder;
+    private transient long acquiredTime = LockRecorder.NOT_SAMPLED; // @GuardedBy("this")
+
     /**
      * Create a new InterruptibleReentrantLock with the given fairness policy.
      *
@@ -40,7 +45,127 @@ class InterruptibleReentrantLock extends ReentrantLock {
      * waiting in a FIFO queue
      */
     public InterruptibleReentrantLock(final boolean fairness) {
+        this(fairness, null);
+    }
+
+    /**
+     * Create a new InterruptibleReentrantLock with the given fairness policy
+     * that reports acquisitions to the given recorder.
+     *
+     * @param fairness true means threads should acquire contended locks as if
+     * waiting in a FIFO queue
+     * @param recorder the recorder to report acquisitions to, may be null
+     */
+    InterruptibleReentrantLock(final boolean fairness,
+            final LockRecorder recorder) {
         super(fairness);
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void lock() {
+        final long start = startAcquire();
+        if (start == LockRecorder.NOT_SAMPLED) {
+            super.lock();
+        } else {
+            final boolean contended = isContended();
+            super.lock();
+            acquired(start, contended);
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        final long start = startAcquire();
+        if (start == LockRecorder.NOT_SAMPLED) {
+            super.lockInterruptibly();
+        } else {
+            final boolean contended = isContended();
+            super.lockInterruptibly();
+            acquired(start, contended);
+        }
+    }
+
+    @Override
+    public void unlock() {
+        if (recorder != null && acquiredTime != LockRecorder.NOT_SAMPLED &&
+                getHoldCount() == 1) {
+            recorder.released(acquiredTime);
+            acquiredTime = LockRecorder.NOT_SAMPLED;
+        }
+        super.unlock();
+    }
+
+    /**
+     * Wait on a condition of this lock without counting the time spent
+     * waiting, during which the lock is released, as hold time.
+     *
+     * @param condition the condition to wait on
+     *
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    void await(final Condition condition) throws InterruptedException {
+        final boolean timed = suspendHold();
+        try {
+            condition.await();
+        } finally {
+            resumeHold(timed);
+        }
+    }
+
+    /**
+     * Wait on a condition of this lock for at most the given time without
+     * counting the time spent waiting, during which the lock is released, as
+     * hold time.
+     *
+     * @param condition the condition to wait on
+     * @param nanos the maximum time to wait
+     *
+     * @return an estimate of the time remaining, see
+     *         {@link Condition#awaitNanos(long)}
+     *
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    long awaitNanos(final Condition condition, final long nanos)
+            throws InterruptedException {
+        final boolean timed = suspendHold();
+        try {
+            return condition.awaitNanos(nanos);
+        } finally {
+            resumeHold(timed);
+        }
+    }
+
+    private long startAcquire() {
+        if (recorder == null) {
+            return LockRecorder.NOT_SAMPLED;
+        }
+        return recorder.startAcquire();
+    }
+
+    private boolean isContended() {
+        return isLocked() && !isHeldByCurrentThread();
+    }
+
+    private void acquired(final long start, final boolean contended) {
+        if (getHoldCount() == 1) {
+            acquiredTime = recorder.acquired(start, contended);
+        }
+    }
+
+    private boolean suspendHold() {
+        if (recorder == null || acquiredTime == LockRecorder.NOT_SAMPLED) {
+            return false;
+        }
+        recorder.released(acquiredTime);
+        acquiredTime = LockRecorder.NOT_SAMPLED;
+        return true;
+    }
+
+    private void resumeHold(final boolean timed) {
+        if (timed) {
+            acquiredTime = System.nanoTime();
+        }
     }
 
     /**
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.Collection;
+
+/**
+ * Identifies keys of a {@link GenericKeyedObjectPool} whose objects are
+ * interchangeable, such as the keys of the replicas of a service. When no
+ * idle object is available for the requested key, the pool will borrow an
+ * idle object of an equivalent key rather than create a new object or wait.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @param <K> the type of keys maintained by the pool
+ *
+ * @see GenericKeyedObjectPool#setKeyEquivalence(KeyEquivalence)
+ *
+ * @since 2.4.3
+ */
+public interface KeyEquivalence<K> {
+
+    /**
+     * Obtain the keys whose objects may be used in place of objects of the
+     * given key.
+     *
+     * @param key the requested key
+     *
+     * @return the equivalent keys. The requested key itself, if present, is
+     *         ignored. An empty collection indicates there are no equivalent
+     *         keys.
+     */
+    Collection<K> getEquivalentKeys(K key);
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.List;
+
+/**
+ * Describes how the keys of a {@link HierarchicalKeyedObjectPool} are
+ * arranged in a tree. Each key is a leaf of the tree and the nodes above it
+ * (for example the data centre and host for a key that identifies a
+ * database) are its ancestors. Capacity limits may be configured for any
+ * ancestor node.
+ * <p>
+ * Implementations must be thread-safe and must always return the same
+ * ancestors for a given key. Nodes are compared using
+ * {@link Object#equals(Object)} and {@link Object#hashCode()}.
+ *
+ * @param <K> the type of keys maintained by the pool
+ *
+ * @since 2.4.3
+ */
+public interface KeyHierarchy<K> {
+
+    /**
+     * Obtain the ancestors of the given key.
+     *
+     * @param key the key
+     *
+     * @return the nodes above the key, starting with the root of the tree.
+     *         An empty list indicates that the key is not limited by any
+     *         node.
+     */
+    List<?> getAncestors(K key);
+}
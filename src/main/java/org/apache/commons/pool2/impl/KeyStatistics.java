@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+/**
+ * Statistics for a single key of a {@link GenericKeyedObjectPool}. Instances
+ * are immutable snapshots and are exposed via JMX. The statistics are kept
+ * for as long as the key remains in the pool.
+ *
+ * @since 2.4.3
+ */
+public class KeyStatistics {
+
+    private final String key;
+    private final long borrowedCount;
+    private final long createdCount;
+    private final long destroyedCount;
+    private final long destroyedByBorrowValidationCount;
+    private final long meanBorrowWaitTimeMillis;
+    private final long p99BorrowWaitTimeMillis;
+    private final long maxBorrowWaitTimeMillis;
+    private final long meanCreateTimeMillis;
+    private final long p99CreateTimeMillis;
+    private final long maxCreateTimeMillis;
+
+    /**
+     * Create a new instance.
+     *
+     * @param key                               The key
+     * @param borrowedCount                     Objects borrowed for the key
+     * @param createdCount                      Objects created for the key
+     * @param destroyedCount                    Objects destroyed for the key
+     * @param destroyedByBorrowValidationCount  Objects destroyed as they
+     *                                          failed validation on borrow
+     * @param borrowWaitTimes                   Histogram of the borrow wait
+     *                                          times
+     * @param createTimes                       Histogram of the times taken
+     *                                          to create objects
+     */
+    KeyStatistics(final String key, final long borrowedCount,
+            final long createdCount, final long destroyedCount,
+            final long destroyedByBorrowValidationCount,
+            final LatencyHistogram borrowWaitTimes,
+            final LatencyHistogram createTimes) {
+        this.key = key;
+        this.borrowedCount = borrowedCount;
+        this.createdCount = createdCount;
+        this.destroyedCount = destroyedCount;
+        this.destroyedByBorrowValidationCount = destroyedByBorrowValidationCount;
+        this.meanBorrowWaitTimeMillis = borrowWaitTimes.getMean();
+        this.p99BorrowWaitTimeMillis = borrowWaitTimes.getPercentile(99);
+        this.maxBorrowWaitTimeMillis = borrowWaitTimes.getMax();
+        this.meanCreateTimeMillis = createTimes.getMean();
+        this.p99CreateTimeMillis = createTimes.getPercentile(99);
+        this.maxCreateTimeMillis = createTimes.getMax();
+    }
+
+    /**
+     * Obtain the string form of the key.
+     *
+     * @return The key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Obtain the number of objects borrowed for the key.
+     *
+     * @return The number of objects borrowed
+     */
+    public long getBorrowedCount() {
+        return borrowedCount;
+    }
+
+    /**
+     * Obtain the number of objects created for the key.
+     *
+     * @return The number of objects created
+     */
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * Obtain the number of objects of the key that have been destroyed.
+     *
+     * @return The number of objects destroyed
+     */
+    public long getDestroyedCount() {
+        return destroyedCount;
+    }
+
+    /**
+     * Obtain the number of objects borrowed for the key that were destroyed
+     * because they failed validation.
+     *
+     * @return The number of objects that failed validation on borrow
+     */
+    public long getDestroyedByBorrowValidationCount() {
+        return destroyedByBorrowValidationCount;
+    }
+
+    /**
+     * Obtain the mean time threads waited to borrow an object for the key.
+     *
+     * @return The mean wait time in milliseconds
+     */
+    public long getMeanBorrowWaitTimeMillis() {
+        return meanBorrowWaitTimeMillis;
+    }
+
+    /**
+     * Obtain an upper bound for the 99th percentile of the times threads
+     * waited to borrow an object for the key.
+     *
+     * @return The 99th percentile of the wait time in milliseconds
+     */
+    public long getP99BorrowWaitTimeMillis() {
+        return p99BorrowWaitTimeMillis;
+    }
+
+    /**
+     * Obtain the longest time a thread waited to borrow an object for the
+     * key.
+     *
+     * @return The maximum wait time in milliseconds
+     */
+    public long getMaxBorrowWaitTimeMillis() {
+        return maxBorrowWaitTimeMillis;
+    }
+
+    /**
+     * Obtain the mean time taken to create an object for the key.
+     *
+     * @return The mean create time in milliseconds
+     */
+    public long getMeanCreateTimeMillis() {
+        return meanCreateTimeMillis;
+    }
+
+    /**
+     * Obtain an upper bound for the 99th percentile of the times taken to
+     * create an object for the key.
+     *
+     * @return The 99th percentile of the create time in milliseconds
+     */
+    public long getP99CreateTimeMillis() {
+        return p99CreateTimeMillis;
+    }
+
+    /**
+     * Obtain the longest time taken to create an object for the key.
+     *
+     * @return The maximum create time in milliseconds
+     */
+    public long getMaxCreateTimeMillis() {
+        return maxCreateTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("KeyStatistics [key=");
+        builder.append(key);
+        builder.append(", borrowedCount=");
+        builder.append(borrowedCount);
+        builder.append(", createdCount=");
+        builder.append(createdCount);
+        builder.append(", destroyedCount=");
+        builder.append(destroyedCount);
+        builder.append(", destroyedByBorrowValidationCount=");
+        builder.append(destroyedByBorrowValidationCount);
+        builder.append(", meanBorrowWaitTimeMillis=");
+        builder.append(meanBorrowWaitTimeMillis);
+        builder.append(", p99BorrowWaitTimeMillis=");
+        builder.append(p99BorrowWaitTimeMillis);
+        builder.append(", maxBorrowWaitTimeMillis=");
+        builder.append(maxBorrowWaitTimeMillis);
+        builder.append(", meanCreateTimeMillis=");
+        builder.append(meanCreateTimeMillis);
+        builder.append(", p99CreateTimeMillis=");
+        builder.append(p99CreateTimeMillis);
+        builder.append(", maxCreateTimeMillis=");
+        builder.append(maxCreateTimeMillis);
+        builder.append("]");
+        return builder.toString();
+    }
+}
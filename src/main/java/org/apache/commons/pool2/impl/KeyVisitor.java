@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+/**
+ * Receives the keys of a keyed pool with their current object counts, one at
+ * a time, without the pool having to build a collection of them.
+ *
+ * @param <K> The type of keys maintained by the pool
+ *
+ * @see GenericKeyedObjectPool#visitKeys(KeyVisitor)
+ * @since 2.4.3
+ */
+public interface KeyVisitor<K> {
+
+    /**
+     * Receive a key of the pool.
+     *
+     * @param key           The key
+     * @param numActive     The number of objects currently borrowed for the key
+     * @param numIdle       The number of idle objects of the key
+     * @param numWaiters    The number of threads waiting to borrow an object
+     *                      for the key
+     *
+     * @return {@code true} to continue with the next key or {@code false} to
+     *         stop
+     */
+    boolean visit(K key, int numActive, int numIdle, int numWaiters);
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import org.apache.commons.pool2.PooledObject;
+
+/**
+ * Receives the objects of a keyed pool, one at a time, without the pool
+ * having to build a collection of them. Implementations must not retain or
+ * modify the pooled objects they are given.
+ *
+ * @param <K> The type of keys maintained by the pool
+ * @param <T> Type of element pooled
+ *
+ * @see GenericKeyedObjectPool#visitAllObjects(KeyedPooledObjectVisitor)
+ * @since 2.4.3
+ */
+public interface KeyedPooledObjectVisitor<K,T> {
+
+    /**
+     * Receive an object of the pool, which may be idle or active.
+     *
+     * @param key   The key the object is associated with
+     * @param p     The pooled object
+     *
+     * @return {@code true} to continue with the next object or {@code false}
+     *         to stop
+     */
+    boolean visit(K key, PooledObject<T> p);
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in milliseconds that may be updated concurrently
+ * without locking. Durations are counted in buckets whose upper bounds are
+ * successive powers of two so percentiles are reported as the upper bound of
+ * the bucket that contains them.
+ *
+ * @since 2.4.3
+ */
+class LatencyHistogram {
+
+    /*
+     * Bucket i holds the durations d with 2^(i-1) <= d < 2^i. Bucket zero holds
+     * zero durations and the last bucket also holds all longer durations.
+     */
+    static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong total = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Record a duration.
+     *
+     * @param millis The duration in milliseconds. Negative durations are
+     *               recorded as zero.
+     */
+    void record(final long millis) {
+        final long value = Math.max(0, millis);
+        final int bucket = Math.min(BUCKETS - 1,
+                Long.SIZE - Long.numberOfLeadingZeros(value));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Obtain the number of durations recorded in a bucket.
+     *
+     * @param bucket The bucket, from zero to {@link #BUCKETS} - 1
+     *
+     * @return The number of durations d with 2^(bucket-1) &lt;= d &lt;
+     *         2^bucket, or of zero durations for bucket zero
+     */
+    long getBucketCount(final int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Obtain the number of recorded durations.
+     *
+     * @return The number of durations
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Obtain the sum of the recorded durations.
+     *
+     * @return The total in milliseconds
+     */
+    long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Obtain the mean of the recorded durations.
+     *
+     * @return The mean in milliseconds or zero if no durations were recorded
+     */
+    long getMean() {
+        final long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * Obtain the longest recorded duration.
+     *
+     * @return The longest duration in milliseconds
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Obtain an upper bound for the given percentile of the recorded
+     * durations.
+     *
+     * @param percentile The percentile, between 0 and 100
+     *
+     * @return The upper bound of the bucket that contains the percentile,
+     *         limited to the longest recorded duration, or zero if no
+     *         durations were recorded
+     */
+    long getPercentile(final double percentile) {
+        final long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(max.get(), (1L << i) - 1);
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("LatencyHistogram [count=");
+        builder.append(count);
+        builder.append(", mean=");
+        builder.append(getMean());
+        builder.append(", max=");
+        builder.append(max);
+        builder.append("]");
+        return builder.toString();
+    }
+}
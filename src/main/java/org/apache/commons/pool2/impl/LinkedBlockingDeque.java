@@ -140,8 +140,23 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
      */
     private transient Node<E> last; // @GuardedBy("lock")
 
-    /** Number of items in the deque */
-    private transient int count; // @GuardedBy("lock")
+    /**
+     * Number of items in the deque. Volatile so that it may be read without
+     * the lock.
+     */
+    private transient volatile int count; // @GuardedBy("lock") for write access
+
+    /**
+     * Number of threads waiting on notEmpty that have not been signalled.
+     * Volatile so that it may be read without the lock.
+     */
+    private transient volatile int takeWaiters; // @GuardedBy("lock") for write access
+
+    /**
+     * Number of threads waiting on notEmpty that have been signalled but have
+     * not yet returned from waiting.
+     */
+    private transient int signalledTakeWaiters; // @GuardedBy("lock")
 
     /** Maximum number of items in the deque */
     private final int capacity;
@@ -193,11 +208,28 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
      * @throws IllegalArgumentException if {@code capacity} is less than 1
      */
     public LinkedBlockingDeque(final int capacity, final boolean fairness) {
+        this(capacity, fairness, null);
+    }
+
+    /**
+     * Creates a {@code LinkedBlockingDeque} with the given (fixed) capacity
+     * and fairness policy that reports acquisitions of its lock to the given
+     * recorder.
+     *
+     * @param capacity the capacity of this deque
+     * @param fairness true means threads waiting on the deque should be served
+     * as if waiting in a FIFO request queue
+     * @param lockRecorder the recorder for acquisitions of the lock, may be
+     * null
+     * @throws IllegalArgumentException if {@code capacity} is less than 1
+     */
+    LinkedBlockingDeque(final int capacity, final boolean fairness,
+            final LockRecorder lockRecorder) {
         if (capacity <= 0) {
             throw new IllegalArgumentException();
         }
         this.capacity = capacity;
-        lock = new InterruptibleReentrantLock(fairness);
+        lock = new InterruptibleReentrantLock(fairness, lockRecorder);
         notEmpty = lock.newCondition();
         notFull = lock.newCondition();
     }
@@ -253,7 +285,7 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
             f.prev = x;
         }
         ++count;
-        notEmpty.signal();
+        signalNotEmpty();
         return true;
     }
 
@@ -278,10 +310,35 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
             l.next = x;
         }
         ++count;
-        notEmpty.signal();
+        signalNotEmpty();
         return true;
     }
 
+    /**
+     * Signals a thread waiting on notEmpty, if any, and stops counting it as
+     * a take waiter.
+     */
+    private void signalNotEmpty() {
+        // assert lock.isHeldByCurrentThread();
+        notEmpty.signal();
+        if (takeWaiters > 0) {
+            takeWaiters--;
+            signalledTakeWaiters++;
+        }
+    }
+
+    /**
+     * Records that a thread that waited on notEmpty has stopped waiting.
+     */
+    private void endTakeWait() {
+        // assert lock.isHeldByCurrentThread();
+        if (signalledTakeWaiters > 0) {
+            signalledTakeWaiters--;
+        } else {
+            takeWaiters--;
+        }
+    }
+
     /**
      * Removes and returns the first element, or null if empty.
      *
@@ -429,7 +486,7 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
         lock.lock();
         try {
             while (!linkFirst(e)) {
-                notFull.await();
+                lock.await(notFull);
             }
         } finally {
             lock.unlock();
@@ -453,7 +510,7 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
         lock.lock();
         try {
             while (!linkLast(e)) {
-                notFull.await();
+                lock.await(notFull);
             }
         } finally {
             lock.unlock();
@@ -486,7 +543,7 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
                 if (nanos <= 0) {
                     return false;
                 }
-                nanos = notFull.awaitNanos(nanos);
+                nanos = lock.awaitNanos(notFull, nanos);
             }
             return true;
         } finally {
@@ -520,7 +577,7 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
                 if (nanos <= 0) {
                     return false;
                 }
-                nanos = notFull.awaitNanos(nanos);
+                nanos = lock.awaitNanos(notFull, nanos);
             }
             return true;
         } finally {
@@ -584,7 +641,12 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
         try {
             E x;
             while ( (x = unlinkFirst()) == null) {
-                notEmpty.await();
+                takeWaiters++;
+                try {
+                    lock.await(notEmpty);
+                } finally {
+                    endTakeWait();
+                }
             }
             return x;
         } finally {
@@ -604,7 +666,12 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
         try {
             E x;
             while ( (x = unlinkLast()) == null) {
-                notEmpty.await();
+                takeWaiters++;
+                try {
+                    lock.await(notEmpty);
+                } finally {
+                    endTakeWait();
+                }
             }
             return x;
         } finally {
@@ -632,7 +699,12 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
                 if (nanos <= 0) {
                     return null;
                 }
-                nanos = notEmpty.awaitNanos(nanos);
+                takeWaiters++;
+                try {
+                    nanos = lock.awaitNanos(notEmpty, nanos);
+                } finally {
+                    endTakeWait();
+                }
             }
             return x;
         } finally {
@@ -660,7 +732,12 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
                 if (nanos <= 0) {
                     return null;
                 }
-                nanos = notEmpty.awaitNanos(nanos);
+                takeWaiters++;
+                try {
+                    nanos = lock.awaitNanos(notEmpty, nanos);
+                } finally {
+                    endTakeWait();
+                }
             }
             return x;
         } finally {
@@ -992,18 +1069,15 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
     }
 
     /**
-     * Returns the number of elements in this deque.
+     * Returns the number of elements in this deque. The count is maintained as
+     * elements are added and removed so this method does not need to acquire
+     * the lock.
      *
      * @return the number of elements in this deque
      */
     @Override
     public int size() {
-        lock.lock();
-        try {
-            return count;
-        } finally {
-            lock.unlock();
-        }
+        return count;
     }
 
     /**
@@ -1377,32 +1451,26 @@ class LinkedBlockingDeque<E> extends AbstractQueue<E>
 
     /**
      * Returns true if there are threads waiting to take instances from this deque.
-     * See disclaimer on accuracy in {@link ReentrantLock#hasWaiters(Condition)}.
+     * The number of waiting threads is maintained as threads start and stop
+     * waiting so this method does not need to acquire the lock. It is intended
+     * for monitoring and heuristics, not for synchronization control.
      *
      * @return true if there is at least one thread waiting on this deque's notEmpty condition.
      */
     public boolean hasTakeWaiters() {
-        lock.lock();
-        try {
-            return lock.hasWaiters(notEmpty);
-        } finally {
-            lock.unlock();
-        }
+        return takeWaiters > 0;
     }
 
     /**
      * Returns the length of the queue of threads waiting to take instances from this deque.
-     * See disclaimer on accuracy in {@link ReentrantLock#getWaitQueueLength(Condition)}.
+     * The number of waiting threads is maintained as threads start and stop
+     * waiting so this method does not need to acquire the lock. It is intended
+     * for monitoring and heuristics, not for synchronization control.
      *
      * @return number of threads waiting on this deque's notEmpty condition.
      */
     public int getTakeQueueLength() {
-        lock.lock();
-        try {
-           return lock.getWaitQueueLength(notEmpty);
-        } finally {
-            lock.unlock();
-        }
+        return takeWaiters;
     }
 
     /**
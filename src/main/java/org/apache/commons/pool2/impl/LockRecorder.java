@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how often one of the locks used internally by a pool is acquired,
+ * how often acquisition is contended and how long threads wait for and hold
+ * the lock. Only one in every {@link #setSamplingInterval(int) sampling
+ * interval} acquisitions is timed so that recording may be left enabled in
+ * production. Recording is disabled until a positive sampling interval is
+ * set. Acquisitions are counted in stripes selected by thread so that
+ * threads acquiring the lock do not all update the same counter. The class
+ * is intended for internal use only.
+ * <p>
+ * This class is intended to be thread-safe.
+ *
+ * @since 2.4.3
+ */
+class LockRecorder {
+
+    /**
+     * The value returned by {@link #startAcquire()} and
+     * {@link #acquired(long, boolean)} when an acquisition is not timed.
+     */
+    static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    /*
+     * The stripes of the acquisition count are this many elements apart so
+     * that each is in its own cache line.
+     */
+    private static final int STRIPE_SPACING = 8;
+    private static final int STRIPES = getStripeCount();
+
+    private final String name;
+    private volatile int samplingInterval = 0;
+    private final AtomicLongArray acquisitionCounts =
+            new AtomicLongArray(STRIPES * STRIPE_SPACING);
+    private final AtomicLong sampledCount = new AtomicLong(0);
+    private final AtomicLong contendedCount = new AtomicLong(0);
+    private final AtomicLong waitTimeNanos = new AtomicLong(0);
+    private final AtomicLong holdTimeNanos = new AtomicLong(0);
+
+    /**
+     * Create a new recorder. Recording is initially disabled.
+     *
+     * @param name  The name of the lock used when reporting statistics
+     */
+    LockRecorder(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Obtain the name of the lock.
+     *
+     * @return The name used when reporting statistics
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Obtain the sampling interval.
+     *
+     * @return The number of acquisitions per timed acquisition or zero if
+     *         recording is disabled
+     */
+    int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * Set the sampling interval. A value of one times every acquisition, a
+     * value of {@code n} times every n-th acquisition and zero or a negative
+     * value disables recording.
+     *
+     * @param samplingInterval  The new sampling interval
+     */
+    void setSamplingInterval(final int samplingInterval) {
+        this.samplingInterval = Math.max(0, samplingInterval);
+    }
+
+    /**
+     * Called by a thread before it attempts to acquire the lock.
+     *
+     * @return The time the attempt started if this acquisition is timed,
+     *         otherwise {@link #NOT_SAMPLED}
+     */
+    long startAcquire() {
+        final int interval = samplingInterval;
+        if (interval <= 0) {
+            return NOT_SAMPLED;
+        }
+        // Each stripe samples one in every interval of its acquisitions
+        final int stripe =
+                (int) Thread.currentThread().getId() & (STRIPES - 1);
+        if (acquisitionCounts.incrementAndGet(stripe * STRIPE_SPACING) %
+                interval != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Called by a thread once it has acquired the lock.
+     *
+     * @param start     The value returned by {@link #startAcquire()}
+     * @param contended Was the lock observed to be held by another thread when
+     *                  the acquisition started
+     *
+     * @return The time the lock was acquired if this acquisition is timed,
+     *         otherwise {@link #NOT_SAMPLED}
+     */
+    long acquired(final long start, final boolean contended) {
+        if (start == NOT_SAMPLED) {
+            return NOT_SAMPLED;
+        }
+        final long now = System.nanoTime();
+        final long waitTime = now - start;
+        sampledCount.incrementAndGet();
+        waitTimeNanos.addAndGet(waitTime);
+        if (contended) {
+            contendedCount.incrementAndGet();
+        }
+        return now;
+    }
+
+    /**
+     * Called by a thread when it releases the lock.
+     *
+     * @param acquired  The value returned by {@link #acquired(long, boolean)}
+     */
+    void released(final long acquired) {
+        if (acquired != NOT_SAMPLED) {
+            holdTimeNanos.addAndGet(System.nanoTime() - acquired);
+        }
+    }
+
+    /**
+     * Obtain a snapshot of the statistics recorded so far.
+     *
+     * @return The current statistics
+     */
+    LockStatistics getStatistics() {
+        long acquisitionCount = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            acquisitionCount += acquisitionCounts.get(i * STRIPE_SPACING);
+        }
+        return new LockStatistics(name, samplingInterval,
+                acquisitionCount, sampledCount.get(),
+                contendedCount.get(), waitTimeNanos.get(),
+                holdTimeNanos.get());
+    }
+
+    /**
+     * One stripe per processor, rounded up to a power of two, up to 16.
+     */
+    private static int getStripeCount() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < 16) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    @Override
+    public String toString() {
+        return getStatistics().toString();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+/**
+ * Statistics for one of the locks used internally by a pool. Only sampled
+ * acquisitions are timed and checked for contention so the counts and times
+ * other than {@link #getAcquisitionCount()} cover the sampled acquisitions
+ * only. Instances are immutable and are exposed via JMX.
+ *
+ * @since 2.4.3
+ */
+public class LockStatistics {
+
+    private final String name;
+    private final int samplingInterval;
+    private final long acquisitionCount;
+    private final long sampledCount;
+    private final long contendedCount;
+    private final long waitTimeNanos;
+    private final long holdTimeNanos;
+
+    /**
+     * Create a new instance.
+     *
+     * @param name              The name of the lock
+     * @param samplingInterval  The number of acquisitions per sampled
+     *                          acquisition
+     * @param acquisitionCount  The number of acquisitions while recording
+     * @param sampledCount      The number of sampled acquisitions
+     * @param contendedCount    The number of sampled acquisitions that were
+     *                          contended
+     * @param waitTimeNanos     The total time spent waiting for sampled
+     *                          acquisitions in nanoseconds
+     * @param holdTimeNanos     The total time sampled acquisitions held the
+     *                          lock in nanoseconds
+     */
+    public LockStatistics(final String name, final int samplingInterval,
+            final long acquisitionCount, final long sampledCount,
+            final long contendedCount, final long waitTimeNanos,
+            final long holdTimeNanos) {
+        this.name = name;
+        this.samplingInterval = samplingInterval;
+        this.acquisitionCount = acquisitionCount;
+        this.sampledCount = sampledCount;
+        this.contendedCount = contendedCount;
+        this.waitTimeNanos = waitTimeNanos;
+        this.holdTimeNanos = holdTimeNanos;
+    }
+
+    /**
+     * Obtain the name of the lock.
+     *
+     * @return The name of the lock
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtain the number of acquisitions per sampled acquisition.
+     *
+     * @return The sampling interval or zero if recording is disabled
+     */
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * Obtain the number of times the lock has been acquired while recording
+     * was enabled.
+     *
+     * @return The number of acquisitions
+     */
+    public long getAcquisitionCount() {
+        return acquisitionCount;
+    }
+
+    /**
+     * Obtain the number of acquisitions that were sampled.
+     *
+     * @return The number of sampled acquisitions
+     */
+    public long getSampledCount() {
+        return sampledCount;
+    }
+
+    /**
+     * Obtain the number of sampled acquisitions that found the lock held by
+     * another thread.
+     *
+     * @return The number of contended sampled acquisitions
+     */
+    public long getContendedCount() {
+        return contendedCount;
+    }
+
+    /**
+     * Obtain the total time sampled acquisitions waited for the lock.
+     *
+     * @return The total wait time in nanoseconds
+     */
+    public long getWaitTimeNanos() {
+        return waitTimeNanos;
+    }
+
+    /**
+     * Obtain the total time sampled acquisitions held the lock.
+     *
+     * @return The total hold time in nanoseconds
+     */
+    public long getHoldTimeNanos() {
+        return holdTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("LockStatistics [name=");
+        builder.append(name);
+        builder.append(", samplingInterval=");
+        builder.append(samplingInterval);
+        builder.append(", acquisitionCount=");
+        builder.append(acquisitionCount);
+        builder.append(", sampledCount=");
+        builder.append(sampledCount);
+        builder.append(", contendedCount=");
+        builder.append(contendedCount);
+        builder.append(", waitTimeNanos=");
+        builder.append(waitTimeNanos);
+        builder.append(", holdTimeNanos=");
+        builder.append(holdTimeNanos);
+        builder.append("]");
+        return builder.toString();
+    }
+}
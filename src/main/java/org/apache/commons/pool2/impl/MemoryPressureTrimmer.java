@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+
+/**
+ * Trims the idle instances of {@link GenericObjectPool} and
+ * {@link GenericKeyedObjectPool} instances as soon as the heap comes under
+ * pressure rather than waiting for the next eviction run, which is often too
+ * late to avoid a full garbage collection.
+ * <p>
+ * The heap is under pressure when the occupancy of a heap memory pool that
+ * supports usage thresholds, typically the old generation, reaches the
+ * pressure threshold, expressed as a fraction of the maximum size of the
+ * memory pool. The usage threshold and, where supported, the collection usage
+ * threshold of these memory pools are set to the pressure threshold so that
+ * the JVM notifies this trimmer when the threshold is crossed, either by
+ * allocation or as measured after a garbage collection. These thresholds are
+ * global to the JVM so only one trimmer should be used per JVM. The
+ * thresholds are reset when the trimmer is closed.
+ * <p>
+ * When the heap comes under pressure the registered pools are trimmed, the
+ * pools with the most idle instances first, down to their minimum number of
+ * idle instances. Until the pressure subsides, instances returned to the
+ * pools are only kept idle up to that minimum. The pressure subsides when
+ * the occupancy of every monitored memory pool, as measured after the last
+ * garbage collection where available, has fallen below the relief threshold.
+ * Occupancy is checked periodically, which also catches pressure that
+ * started before the trimmer was created.
+ * <p>
+ * This class is intended to be thread-safe.
+ *
+ * @since 2.4.3
+ */
+public class MemoryPressureTrimmer {
+
+    private final double pressureThreshold;
+    private final double reliefThreshold;
+    private final List<MemoryPoolMXBean> memoryPools =
+            new ArrayList<MemoryPoolMXBean>();
+    private final NotificationEmitter emitter;
+    private final NotificationListener listener;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Set<BaseGenericObjectPool<?>> pools =
+            new HashSet<BaseGenericObjectPool<?>>(); // @GuardedBy("this")
+    private boolean underPressure = false; // @GuardedBy("this")
+    private final AtomicLong pressureCount = new AtomicLong(0);
+    private final AtomicLong destroyedCount = new AtomicLong(0);
+
+    /**
+     * Create a trimmer and start monitoring the heap.
+     *
+     * @param pressureThreshold The occupancy, as a fraction of the maximum
+     *                          size of a memory pool, at which the heap is
+     *                          under pressure
+     * @param reliefThreshold   The occupancy below which the pressure
+     *                          subsides. Must not be greater than
+     *                          <code>pressureThreshold</code>.
+     * @param checkPeriodMillis The time between checks of the occupancy. If
+     *                          this is not positive the pressure only
+     *                          subsides when {@link #check()} is called.
+     *
+     * @throws IllegalArgumentException if the thresholds are not valid
+     */
+    public MemoryPressureTrimmer(final double pressureThreshold,
+            final double reliefThreshold, final long checkPeriodMillis) {
+        if (!(pressureThreshold > 0 && pressureThreshold <= 1)) {
+            throw new IllegalArgumentException(
+                    "pressureThreshold must be greater than 0 and at most 1");
+        }
+        if (!(reliefThreshold >= 0 && reliefThreshold <= pressureThreshold)) {
+            throw new IllegalArgumentException(
+                    "reliefThreshold must be between 0 and pressureThreshold");
+        }
+        this.pressureThreshold = pressureThreshold;
+        this.reliefThreshold = reliefThreshold;
+
+        for (final MemoryPoolMXBean memoryPool :
+                ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() != MemoryType.HEAP ||
+                    !memoryPool.isUsageThresholdSupported()) {
+                continue;
+            }
+            final long max = memoryPool.getUsage().getMax();
+            if (max > 0) {
+                final long threshold = (long) (max * pressureThreshold);
+                memoryPool.setUsageThreshold(threshold);
+                if (memoryPool.isCollectionUsageThresholdSupported()) {
+                    memoryPool.setCollectionUsageThreshold(threshold);
+                }
+                memoryPools.add(memoryPool);
+            }
+        }
+
+        executor = new ScheduledThreadPoolExecutor(1, new TrimmerThreadFactory());
+        // Trimming may take a while so keep it off the thread that delivers
+        // the notifications
+        listener = new NotificationListener() {
+            @Override
+            public void handleNotification(final Notification notification,
+                    final Object handback) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        pressure();
+                    }
+                });
+            }
+        };
+        emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener(listener, new ThresholdFilter(), null);
+        if (checkPeriodMillis > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    check();
+                }
+            }, checkPeriodMillis, checkPeriodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Start trimming a pool when the heap comes under pressure. If the heap
+     * is currently under pressure the pool is trimmed immediately.
+     *
+     * @param pool  The pool
+     */
+    public synchronized void register(final BaseGenericObjectPool<?> pool) {
+        if (pools.add(pool) && underPressure) {
+            pool.setMemoryPressure(true);
+            destroyedCount.addAndGet(pool.trimIdle());
+        }
+    }
+
+    /**
+     * Stop trimming a pool. If the heap is currently under pressure the pool
+     * returns to its normal number of idle instances.
+     *
+     * @param pool  The pool
+     */
+    public synchronized void unregister(final BaseGenericObjectPool<?> pool) {
+        if (pools.remove(pool)) {
+            pool.setMemoryPressure(false);
+        }
+    }
+
+    /**
+     * Check the occupancy of the monitored memory pools now, trimming the
+     * registered pools if the heap is under pressure or letting them return
+     * to their normal number of idle instances if the pressure has subsided.
+     */
+    public void check() {
+        final double occupancy = getOccupancy();
+        if (occupancy >= pressureThreshold) {
+            pressure();
+        } else if (occupancy < reliefThreshold) {
+            relief();
+        }
+    }
+
+    /**
+     * Obtain the highest occupancy of the monitored memory pools, as a
+     * fraction of their maximum size. The occupancy measured after the last
+     * garbage collection is used where it is available.
+     *
+     * @return the occupancy, or 0 if no memory pools are monitored
+     */
+    public double getOccupancy() {
+        double occupancy = 0;
+        for (final MemoryPoolMXBean memoryPool : memoryPools) {
+            MemoryUsage usage = null;
+            if (memoryPool.isCollectionUsageThresholdSupported()) {
+                usage = memoryPool.getCollectionUsage();
+            }
+            if (usage == null) {
+                usage = memoryPool.getUsage();
+            }
+            if (usage.getMax() > 0) {
+                occupancy = Math.max(occupancy,
+                        (double) usage.getUsed() / usage.getMax());
+            }
+        }
+        return occupancy;
+    }
+
+    /**
+     * @return <code>true</code> if the heap is currently considered to be
+     *         under pressure
+     */
+    public synchronized boolean isUnderPressure() {
+        return underPressure;
+    }
+
+    /**
+     * @return the number of times the heap has come under pressure, or the
+     *         pressure has been renewed while it was already under pressure
+     */
+    public long getPressureCount() {
+        return pressureCount.get();
+    }
+
+    /**
+     * @return the number of idle instances destroyed by trimming
+     */
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    /**
+     * Stop monitoring the heap. The usage thresholds set by this trimmer are
+     * reset and registered pools return to their normal number of idle
+     * instances.
+     */
+    public void close() {
+        try {
+            emitter.removeNotificationListener(listener);
+        } catch (final ListenerNotFoundException e) {
+            // Already removed
+        }
+        executor.shutdown();
+        for (final MemoryPoolMXBean memoryPool : memoryPools) {
+            memoryPool.setUsageThreshold(0);
+            if (memoryPool.isCollectionUsageThresholdSupported()) {
+                memoryPool.setCollectionUsageThreshold(0);
+            }
+        }
+        synchronized (this) {
+            relief();
+            pools.clear();
+        }
+    }
+
+    /**
+     * The heap is under pressure. Trim the registered pools, those with the
+     * most idle instances first.
+     */
+    synchronized void pressure() {
+        underPressure = true;
+        pressureCount.incrementAndGet();
+        final List<IdleCount> idleCounts = new ArrayList<IdleCount>(pools.size());
+        final Iterator<BaseGenericObjectPool<?>> iter = pools.iterator();
+        while (iter.hasNext()) {
+            final BaseGenericObjectPool<?> pool = iter.next();
+            if (pool.isClosed()) {
+                iter.remove();
+            } else {
+                pool.setMemoryPressure(true);
+                idleCounts.add(new IdleCount(pool));
+            }
+        }
+        Collections.sort(idleCounts, new Comparator<IdleCount>() {
+            @Override
+            public int compare(final IdleCount o1, final IdleCount o2) {
+                return o2.numIdle < o1.numIdle ? -1 :
+                        (o2.numIdle == o1.numIdle ? 0 : 1);
+            }
+        });
+        for (final IdleCount idleCount : idleCounts) {
+            destroyedCount.addAndGet(idleCount.pool.trimIdle());
+        }
+    }
+
+    /**
+     * The pressure on the heap has subsided. Let the registered pools return
+     * to their normal number of idle instances.
+     */
+    synchronized void relief() {
+        if (underPressure) {
+            underPressure = false;
+            for (final BaseGenericObjectPool<?> pool : pools) {
+                pool.setMemoryPressure(false);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("MemoryPressureTrimmer [pressureThreshold=");
+        builder.append(pressureThreshold);
+        builder.append(", reliefThreshold=");
+        builder.append(reliefThreshold);
+        builder.append(", memoryPools=");
+        builder.append(memoryPools.size());
+        builder.append(", underPressure=");
+        builder.append(isUnderPressure());
+        builder.append("]");
+        return builder.toString();
+    }
+
+
+    /**
+     * The number of idle instances of a pool when trimming started, so that
+     * pools are sorted consistently while their sizes change.
+     */
+    private static class IdleCount {
+        private final BaseGenericObjectPool<?> pool;
+        private final int numIdle;
+
+        IdleCount(final BaseGenericObjectPool<?> pool) {
+            this.pool = pool;
+            this.numIdle = pool.getNumIdle();
+        }
+    }
+
+    /**
+     * Only passes the notifications of the JVM that a memory pool threshold
+     * has been exceeded.
+     */
+    private static class ThresholdFilter implements NotificationFilter {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean isNotificationEnabled(final Notification notification) {
+            final String type = notification.getType();
+            return MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type) ||
+                    MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type);
+        }
+    }
+
+    private static class TrimmerThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "commons-pool-memory-pressure-trimmer");
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
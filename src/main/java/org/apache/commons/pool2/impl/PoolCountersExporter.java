@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the statistics of {@link GenericObjectPool} and
+ * {@link GenericKeyedObjectPool} instances to memory mapped files so that
+ * they can be monitored by other processes without JMX. Each registered pool
+ * has its own file, named after its JMX name, holding its counters, its size
+ * gauges and a histogram of borrow wait times. The counters and gauges are
+ * copied from the statistics the pool already maintains. The histogram is
+ * only maintained while the pool is registered with an exporter, so a pool
+ * that is not published pays nothing for it on the borrow path.
+ * <p>
+ * The files are written with plain writes, bracketed by an update sequence
+ * that {@link PoolCountersReader} uses to obtain consistent values. Files are
+ * left in place when a pool is unregistered or closed so that the last
+ * values remain available.
+ * <p>
+ * This class is intended to be thread-safe.
+ *
+ * @see PoolCountersReader
+ * @since 2.4.3
+ */
+public class PoolCountersExporter {
+
+    /**
+     * The extension of the files written by this exporter.
+     */
+    public static final String FILE_EXTENSION = ".counters";
+
+    private final File directory;
+    private final Map<BaseGenericObjectPool<?>, CountersFile> files =
+            new ConcurrentHashMap<BaseGenericObjectPool<?>, CountersFile>();
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Create an exporter that writes to the given directory.
+     *
+     * @param directory     The directory for the files, which is created if
+     *                      it does not exist
+     * @param periodMillis  The time between updates of the files. If this is
+     *                      not positive, files are only updated by calls to
+     *                      {@link #publish()}.
+     *
+     * @throws IOException if the directory cannot be created
+     */
+    public PoolCountersExporter(final File directory, final long periodMillis)
+            throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        this.directory = directory;
+        if (periodMillis > 0) {
+            executor = new ScheduledThreadPoolExecutor(1,
+                    new ExporterThreadFactory());
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    publish();
+                }
+            }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Start publishing the statistics of a pool to a file named after the
+     * JMX name of the pool.
+     *
+     * @param pool  The pool
+     *
+     * @return The file the statistics are written to
+     *
+     * @throws IOException if the file cannot be created
+     * @throws IllegalArgumentException if the pool is not registered with JMX
+     */
+    public File register(final BaseGenericObjectPool<?> pool)
+            throws IOException {
+        if (pool.getJmxName() == null) {
+            throw new IllegalArgumentException(
+                    "The pool is not registered with JMX, provide a name");
+        }
+        return register(pool, pool.getJmxName().toString());
+    }
+
+    /**
+     * Start publishing the statistics of a pool to a file named after the
+     * given name. Characters other than letters, digits, '.', '-' and '_' are
+     * replaced with '_' in the file name.
+     *
+     * @param pool  The pool
+     * @param name  The name of the pool
+     *
+     * @return The file the statistics are written to
+     *
+     * @throws IOException if the file cannot be created
+     * @throws IllegalArgumentException if the pool is already registered,
+     *         another registered pool is published to the same file or the
+     *         name is too long
+     */
+    public File register(final BaseGenericObjectPool<?> pool,
+            final String name) throws IOException {
+        final File file = new File(directory,
+                name.replaceAll("[^A-Za-z0-9._-]", "_") + FILE_EXTENSION);
+        final CountersFile countersFile;
+        synchronized (files) {
+            if (files.containsKey(pool)) {
+                throw new IllegalArgumentException(
+                        "The pool is already registered");
+            }
+            for (final CountersFile registered : files.values()) {
+                if (registered.file.equals(file)) {
+                    throw new IllegalArgumentException(
+                            "Another pool is already published to " + file);
+                }
+            }
+            // Mapping the file resets it, only done once it is known unused
+            countersFile = new CountersFile(file, name);
+            files.put(pool, countersFile);
+        }
+        pool.countersExporterRegistered();
+        countersFile.write(pool);
+        return file;
+    }
+
+    /**
+     * Stop publishing the statistics of a pool. The file is updated one last
+     * time and left in place.
+     *
+     * @param pool  The pool
+     */
+    public void unregister(final BaseGenericObjectPool<?> pool) {
+        final CountersFile countersFile = files.remove(pool);
+        if (countersFile != null) {
+            pool.countersExporterUnregistered();
+            countersFile.write(pool);
+        }
+    }
+
+    /**
+     * Update the files of all registered pools now. Pools that have been
+     * closed are updated one last time and unregistered.
+     */
+    public void publish() {
+        for (final Map.Entry<BaseGenericObjectPool<?>, CountersFile> entry :
+                files.entrySet()) {
+            final BaseGenericObjectPool<?> pool = entry.getKey();
+            entry.getValue().write(pool);
+            if (pool.isClosed() && files.remove(pool) != null) {
+                pool.countersExporterUnregistered();
+            }
+        }
+    }
+
+    /**
+     * Stop publishing. The files of all registered pools are updated one last
+     * time and left in place.
+     */
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        publish();
+        for (final BaseGenericObjectPool<?> pool : files.keySet()) {
+            if (files.remove(pool) != null) {
+                pool.countersExporterUnregistered();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("PoolCountersExporter [directory=");
+        builder.append(directory);
+        builder.append(", pools=");
+        builder.append(files.size());
+        builder.append("]");
+        return builder.toString();
+    }
+
+
+    /**
+     * The memory mapped file of a single pool.
+     */
+    private static class CountersFile {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int valuesOffset;
+        private long sequence = 0; // @GuardedBy("this")
+        /*
+         * Written between the update sequence and the values so that the
+         * writes to the file are not reordered.
+         */
+        private volatile long fence;
+
+        CountersFile(final File file, final String name) throws IOException {
+            final byte[] nameBytes = utf8(name);
+            if (nameBytes.length > PoolCountersLayout.MAX_NAME_LENGTH) {
+                throw new IllegalArgumentException("Name too long: " + name);
+            }
+            this.file = file;
+            final String[] counterNames = PoolCountersLayout.COUNTER_NAMES;
+            final int length = PoolCountersLayout.fileLength(counterNames.length);
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                        0, length);
+            } finally {
+                raf.close();
+            }
+            buffer.order(PoolCountersLayout.BYTE_ORDER);
+            valuesOffset = PoolCountersLayout.valuesOffset(counterNames.length);
+
+            // Mark the file as incomplete until the header has been written
+            buffer.putInt(PoolCountersLayout.MAGIC_OFFSET, 0);
+            buffer.putInt(PoolCountersLayout.VERSION_OFFSET,
+                    PoolCountersLayout.VERSION);
+            buffer.putLong(PoolCountersLayout.SEQUENCE_OFFSET, 0);
+            buffer.putLong(PoolCountersLayout.TIMESTAMP_OFFSET, 0);
+            buffer.putInt(PoolCountersLayout.COUNTER_COUNT_OFFSET,
+                    counterNames.length);
+            buffer.putInt(PoolCountersLayout.NAME_LENGTH_OFFSET,
+                    nameBytes.length);
+            for (int i = 0; i < nameBytes.length; i++) {
+                buffer.put(PoolCountersLayout.NAME_OFFSET + i, nameBytes[i]);
+            }
+            for (int i = 0; i < counterNames.length; i++) {
+                final byte[] label = utf8(counterNames[i]);
+                final int offset = PoolCountersLayout.LABELS_OFFSET +
+                        i * PoolCountersLayout.LABEL_LENGTH;
+                buffer.putInt(offset, label.length);
+                for (int j = 0; j < label.length; j++) {
+                    buffer.put(offset + 4 + j, label[j]);
+                }
+                buffer.putLong(valuesOffset + i * 8, 0);
+            }
+            fence = 0;
+            buffer.putInt(PoolCountersLayout.MAGIC_OFFSET,
+                    PoolCountersLayout.MAGIC);
+        }
+
+        synchronized void write(final BaseGenericObjectPool<?> pool) {
+            final PoolStatistics stats = pool.getStatisticsSnapshot();
+            final LatencyHistogram histogram =
+                    pool.getBorrowWaitTimeHistogram();
+
+            buffer.putLong(PoolCountersLayout.SEQUENCE_OFFSET, ++sequence);
+            fence = sequence;
+            buffer.putLong(PoolCountersLayout.TIMESTAMP_OFFSET,
+                    stats.getTimestamp());
+            int i = 0;
+            putValue(i++, stats.getBorrowedCount());
+            putValue(i++, stats.getReturnedCount());
+            putValue(i++, stats.getCreatedCount());
+            putValue(i++, stats.getDestroyedCount());
+            putValue(i++, stats.getDestroyedByEvictorCount());
+            putValue(i++, stats.getDestroyedByBorrowValidationCount());
+            putValue(i++, stats.getNumActive());
+            putValue(i++, stats.getNumIdle());
+            putValue(i++, stats.getNumWaiters());
+            putValue(i++, stats.getMeanActiveTimeMillis());
+            putValue(i++, stats.getMeanIdleTimeMillis());
+            putValue(i++, stats.getMeanBorrowWaitTimeMillis());
+            putValue(i++, stats.getMaxBorrowWaitTimeMillis());
+            for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+                putValue(PoolCountersLayout.FIRST_BUCKET_INDEX + bucket,
+                        histogram.getBucketCount(bucket));
+            }
+            fence = sequence;
+            buffer.putLong(PoolCountersLayout.SEQUENCE_OFFSET, ++sequence);
+        }
+
+        private void putValue(final int index, final long value) {
+            buffer.putLong(valuesOffset + index * 8, value);
+        }
+    }
+
+    /**
+     * Encode a string as UTF-8.
+     *
+     * @param s The string
+     *
+     * @return The bytes
+     */
+    static byte[] utf8(final String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates the daemon thread that updates the files.
+     */
+    private static class ExporterThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "commons-pool-counters-exporter");
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.nio.ByteOrder;
+
+/**
+ * The layout of the memory mapped files written by
+ * {@link PoolCountersExporter} and read by {@link PoolCountersReader}. All
+ * values are little endian.
+ * <pre>
+ *   0  int   magic number
+ *   4  int   layout version
+ *   8  long  update sequence, odd while the values are being written
+ *  16  long  time of the last update in milliseconds since the epoch
+ *  24  int   number of counters
+ *  28  int   length of the pool name in bytes
+ *  32        pool name, UTF-8, at most {@link #MAX_NAME_LENGTH} bytes
+ * 512        one {@link #LABEL_LENGTH} byte label per counter: an int length
+ *            followed by the UTF-8 counter name
+ *  ...       one long value per counter
+ * </pre>
+ * The class is intended for internal use only.
+ *
+ * @since 2.4.3
+ */
+final class PoolCountersLayout {
+
+    static final int MAGIC = 0x504F4F4C;
+    static final int VERSION = 1;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int SEQUENCE_OFFSET = 8;
+    static final int TIMESTAMP_OFFSET = 16;
+    static final int COUNTER_COUNT_OFFSET = 24;
+    static final int NAME_LENGTH_OFFSET = 28;
+    static final int NAME_OFFSET = 32;
+    static final int MAX_NAME_LENGTH = 480;
+    static final int LABELS_OFFSET = NAME_OFFSET + MAX_NAME_LENGTH;
+    static final int LABEL_LENGTH = 64;
+
+    /**
+     * The names of the counters in the order they are written. The values
+     * other than the bucket counts are those of {@link PoolStatistics}.
+     * Bucket i of the borrow wait time histogram counts the waits w with
+     * 2^(i-1) &lt;= w &lt; 2^i milliseconds, bucket zero counts waits of zero
+     * milliseconds and the last bucket also counts all longer waits.
+     */
+    static final String[] COUNTER_NAMES;
+
+    static {
+        final String[] names = new String[] {
+                "borrowedCount", "returnedCount", "createdCount",
+                "destroyedCount", "destroyedByEvictorCount",
+                "destroyedByBorrowValidationCount", "numActive", "numIdle",
+                "numWaiters", "meanActiveTimeMillis", "meanIdleTimeMillis",
+                "meanBorrowWaitTimeMillis", "maxBorrowWaitTimeMillis" };
+        COUNTER_NAMES = new String[names.length + LatencyHistogram.BUCKETS];
+        System.arraycopy(names, 0, COUNTER_NAMES, 0, names.length);
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            COUNTER_NAMES[names.length + i] = "borrowWaitTimeBucket" + i;
+        }
+    }
+
+    /**
+     * The index of the first bucket of the borrow wait time histogram in
+     * {@link #COUNTER_NAMES}.
+     */
+    static final int FIRST_BUCKET_INDEX =
+            COUNTER_NAMES.length - LatencyHistogram.BUCKETS;
+
+    /** Prevent instantiation */
+    private PoolCountersLayout() {
+        // Hide the default constructor
+    }
+
+    /**
+     * Obtain the offset of the values.
+     *
+     * @param counterCount  The number of counters
+     *
+     * @return The offset of the first value
+     */
+    static int valuesOffset(final int counterCount) {
+        return LABELS_OFFSET + counterCount * LABEL_LENGTH;
+    }
+
+    /**
+     * Obtain the length of a file.
+     *
+     * @param counterCount  The number of counters
+     *
+     * @return The length in bytes
+     */
+    static int fileLength(final int counterCount) {
+        return valuesOffset(counterCount) + counterCount * 8;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the statistics of a pool from a file written by
+ * {@link PoolCountersExporter}. The file is memory mapped so reading the
+ * statistics involves no communication with the process that owns the pool.
+ * <p>
+ * The class may also be run from the command line to print the statistics
+ * held by one or more files, or by all the files in one or more directories:
+ * <pre>
+ * java -cp commons-pool2.jar org.apache.commons.pool2.impl.PoolCountersReader &lt;file or directory&gt;...
+ * </pre>
+ * This class is intended to be thread-safe.
+ *
+ * @see PoolCountersExporter
+ * @since 2.4.3
+ */
+public class PoolCountersReader {
+
+    /*
+     * An update only writes a few dozen values so a sequence that stays odd
+     * for this many attempts means the writer died part way through.
+     */
+    private static final int MAX_READ_ATTEMPTS = 10000;
+
+    private final MappedByteBuffer buffer;
+    private final String name;
+    private final List<String> counterNames;
+    private final int valuesOffset;
+    /*
+     * Read between the update sequence and the values so that the reads from
+     * the file are not reordered.
+     */
+    private volatile long fence;
+
+    /**
+     * Open a file written by {@link PoolCountersExporter}.
+     *
+     * @param file  The file
+     *
+     * @throws IOException if the file cannot be read or was not written by
+     *         {@link PoolCountersExporter}
+     */
+    public PoolCountersReader(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long length = raf.length();
+            if (length < PoolCountersLayout.LABELS_OFFSET) {
+                throw new IOException("Not a pool counters file: " + file);
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                    length);
+        } finally {
+            raf.close();
+        }
+        buffer.order(PoolCountersLayout.BYTE_ORDER);
+        if (buffer.getInt(PoolCountersLayout.MAGIC_OFFSET) !=
+                PoolCountersLayout.MAGIC) {
+            throw new IOException("Not a pool counters file: " + file);
+        }
+        final int version = buffer.getInt(PoolCountersLayout.VERSION_OFFSET);
+        if (version != PoolCountersLayout.VERSION) {
+            throw new IOException("Unsupported pool counters file version " +
+                    version + ": " + file);
+        }
+        final int counterCount =
+                buffer.getInt(PoolCountersLayout.COUNTER_COUNT_OFFSET);
+        if (counterCount < 0 ||
+                PoolCountersLayout.fileLength(counterCount) > buffer.capacity()) {
+            throw new IOException("Truncated pool counters file: " + file);
+        }
+        name = readString(PoolCountersLayout.NAME_LENGTH_OFFSET,
+                PoolCountersLayout.NAME_OFFSET,
+                PoolCountersLayout.MAX_NAME_LENGTH);
+        final String[] names = new String[counterCount];
+        for (int i = 0; i < counterCount; i++) {
+            final int offset = PoolCountersLayout.LABELS_OFFSET +
+                    i * PoolCountersLayout.LABEL_LENGTH;
+            names[i] = readString(offset, offset + 4,
+                    PoolCountersLayout.LABEL_LENGTH - 4);
+        }
+        counterNames = Collections.unmodifiableList(Arrays.asList(names));
+        valuesOffset = PoolCountersLayout.valuesOffset(counterCount);
+    }
+
+    /**
+     * Obtain the name of the pool, normally its JMX name.
+     *
+     * @return The name of the pool
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtain the names of the counters in the order their values are
+     * returned by {@link #read()}.
+     *
+     * @return The counter names
+     */
+    public List<String> getCounterNames() {
+        return counterNames;
+    }
+
+    /**
+     * Obtain the time the values were last updated.
+     *
+     * @return The time in milliseconds since the epoch or zero if the values
+     *         have never been updated
+     */
+    public long getLastUpdateTime() {
+        return buffer.getLong(PoolCountersLayout.TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * Read the current values of the counters. The values are consistent with
+     * each other: they were all written by the same update.
+     *
+     * @return The values in the order of {@link #getCounterNames()}
+     *
+     * @throws IOException if consistent values could not be read, typically
+     *         because the process that owns the pool stopped part way
+     *         through an update
+     */
+    public long[] read() throws IOException {
+        final long[] values = new long[counterNames.size()];
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            final long before =
+                    buffer.getLong(PoolCountersLayout.SEQUENCE_OFFSET);
+            if ((before & 1) == 0) {
+                fence = before;
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = buffer.getLong(valuesOffset + i * 8);
+                }
+                final long check = fence;
+                if (check == before && before ==
+                        buffer.getLong(PoolCountersLayout.SEQUENCE_OFFSET)) {
+                    return values;
+                }
+            }
+            Thread.yield();
+        }
+        throw new IOException("Unable to read consistent values from " +
+                "pool counters file, the update sequence is " +
+                buffer.getLong(PoolCountersLayout.SEQUENCE_OFFSET));
+    }
+
+    /**
+     * Read the current values of the counters together with their names.
+     *
+     * @return The values keyed by counter name in the order of
+     *         {@link #getCounterNames()}
+     *
+     * @throws IOException if consistent values could not be read
+     *
+     * @see #read()
+     */
+    public Map<String,Long> readAll() throws IOException {
+        final long[] values = read();
+        final Map<String,Long> result = new LinkedHashMap<String,Long>();
+        for (int i = 0; i < values.length; i++) {
+            result.put(counterNames.get(i), Long.valueOf(values[i]));
+        }
+        return result;
+    }
+
+    private String readString(final int lengthOffset, final int offset,
+            final int maxLength) throws IOException {
+        final int length = buffer.getInt(lengthOffset);
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Corrupt pool counters file");
+        }
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("PoolCountersReader [name=");
+        builder.append(name);
+        builder.append(", counterNames=");
+        builder.append(counterNames);
+        builder.append("]");
+        return builder.toString();
+    }
+
+    /**
+     * Print the statistics held by the given files, or by the files in the
+     * given directories, to standard output.
+     *
+     * @param args  The files and directories to read
+     *
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: PoolCountersReader <file or directory>...");
+            return;
+        }
+        for (final String arg : args) {
+            final File file = new File(arg);
+            if (file.isDirectory()) {
+                final File[] files = file.listFiles(new FileFilter() {
+                    @Override
+                    public boolean accept(final File f) {
+                        return f.getName().endsWith(
+                                PoolCountersExporter.FILE_EXTENSION);
+                    }
+                });
+                if (files != null) {
+                    Arrays.sort(files);
+                    for (final File f : files) {
+                        print(new PoolCountersReader(f), System.out);
+                    }
+                }
+            } else {
+                print(new PoolCountersReader(file), System.out);
+            }
+        }
+    }
+
+    private static void print(final PoolCountersReader reader,
+            final PrintStream out) throws IOException {
+        out.println(reader.getName());
+        out.println("  lastUpdateTime=" + reader.getLastUpdateTime());
+        for (final Map.Entry<String,Long> entry : reader.readAll().entrySet()) {
+            out.println("  " + entry.getKey() + "=" + entry.getValue());
+        }
+    }
+}
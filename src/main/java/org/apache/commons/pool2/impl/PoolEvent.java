@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+/**
+ * An event recorded by the flight recorder of a pool. Instances are immutable
+ * and are exposed via JMX.
+ *
+ * @see GenericObjectPool#listRecentEvents()
+ * @see GenericKeyedObjectPool#listRecentEvents()
+ * @since 2.4.3
+ */
+public class PoolEvent {
+
+    /**
+     * The types of event recorded.
+     */
+    public enum Type {
+        /**
+         * An object was borrowed. The duration is the time the borrower
+         * waited.
+         */
+        BORROW,
+        /**
+         * An object was returned. The duration is the time the object was
+         * active.
+         */
+        RETURN,
+        /**
+         * An object was created. The duration is the time taken by the
+         * factory.
+         */
+        CREATE,
+        /**
+         * An object was destroyed. The duration is zero.
+         */
+        DESTROY,
+        /**
+         * An idle object was selected for eviction and is about to be
+         * destroyed. The duration is the time the object was idle.
+         */
+        EVICT,
+        /**
+         * A borrower gave up waiting for an object. The duration is the time
+         * the borrower waited and there is no object.
+         */
+        TIMEOUT
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final long timestamp;
+    private final long threadId;
+    private final int objectIdentity;
+    private final String key;
+    private final long durationMillis;
+
+    /**
+     * Create a new instance.
+     *
+     * @param sequence          The position of the event in the sequence of
+     *                          events recorded by the pool
+     * @param type              The type of event
+     * @param timestamp         The time the event occurred
+     * @param threadId          The id of the thread that caused the event
+     * @param objectIdentity    The identity hash code of the pooled object or
+     *                          zero if there is none
+     * @param key               The key of the pooled object or {@code null}
+     *                          for pools without keys
+     * @param durationMillis    The duration associated with the event
+     */
+    public PoolEvent(final long sequence, final Type type,
+            final long timestamp, final long threadId,
+            final int objectIdentity, final String key,
+            final long durationMillis) {
+        this.sequence = sequence;
+        this.type = type;
+        this.timestamp = timestamp;
+        this.threadId = threadId;
+        this.objectIdentity = objectIdentity;
+        this.key = key;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Obtain the position of this event in the sequence of events recorded by
+     * the pool. Gaps between the sequence numbers of consecutive events show
+     * that events were overwritten while the events were read.
+     *
+     * @return The sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Obtain the type of this event.
+     *
+     * @return The type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Obtain the time this event occurred.
+     *
+     * @return The time in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Obtain the id of the thread that caused this event.
+     *
+     * @return The thread id
+     */
+    public long getThreadId() {
+        return threadId;
+    }
+
+    /**
+     * Obtain the identity hash code of the pooled object this event relates
+     * to.
+     *
+     * @return The identity hash code or zero if the event does not relate to
+     *         an object
+     */
+    public int getObjectIdentity() {
+        return objectIdentity;
+    }
+
+    /**
+     * Obtain the key of the pooled object this event relates to.
+     *
+     * @return The string form of the key or {@code null} for pools without
+     *         keys
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Obtain the duration associated with this event. The meaning depends on
+     * the {@link #getType() type}.
+     *
+     * @return The duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("PoolEvent [sequence=");
+        builder.append(sequence);
+        builder.append(", type=");
+        builder.append(type);
+        builder.append(", timestamp=");
+        builder.append(timestamp);
+        builder.append(", threadId=");
+        builder.append(threadId);
+        builder.append(", objectIdentity=");
+        builder.append(objectIdentity);
+        builder.append(", key=");
+        builder.append(key);
+        builder.append(", durationMillis=");
+        builder.append(durationMillis);
+        builder.append("]");
+        return builder.toString();
+    }
+}
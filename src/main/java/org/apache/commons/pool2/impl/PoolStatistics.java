@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+/**
+ * A snapshot of the statistics of a {@link GenericObjectPool} or
+ * {@link GenericKeyedObjectPool}, obtained in a single operation so that
+ * monitoring tools do not have to read, and the pool does not have to
+ * compute, each value separately. Instances are immutable and are exposed via
+ * JMX.
+ * <p>
+ * A delta snapshot reports the counts accumulated since the previous delta
+ * snapshot, and the length of that interval, so rates can be computed. The
+ * numbers of active and idle objects and of waiting threads, and the mean and
+ * maximum times, are always current values.
+ *
+ * @see BaseGenericObjectPool#getStatisticsSnapshot(boolean)
+ * @since 2.4.3
+ */
+public class PoolStatistics {
+
+    private final long timestamp;
+    private final long intervalMillis;
+    private final int numActive;
+    private final int numIdle;
+    private final int numWaiters;
+    private final long borrowedCount;
+    private final long returnedCount;
+    private final long createdCount;
+    private final long destroyedCount;
+    private final long destroyedByEvictorCount;
+    private final long destroyedByBorrowValidationCount;
+    private final long meanActiveTimeMillis;
+    private final long meanIdleTimeMillis;
+    private final long meanBorrowWaitTimeMillis;
+    private final long maxBorrowWaitTimeMillis;
+
+    PoolStatistics(final long timestamp, final long intervalMillis,
+            final int numActive, final int numIdle, final int numWaiters,
+            final long borrowedCount, final long returnedCount,
+            final long createdCount, final long destroyedCount,
+            final long destroyedByEvictorCount,
+            final long destroyedByBorrowValidationCount,
+            final long meanActiveTimeMillis, final long meanIdleTimeMillis,
+            final long meanBorrowWaitTimeMillis,
+            final long maxBorrowWaitTimeMillis) {
+        this.timestamp = timestamp;
+        this.intervalMillis = intervalMillis;
+        this.numActive = numActive;
+        this.numIdle = numIdle;
+        this.numWaiters = numWaiters;
+        this.borrowedCount = borrowedCount;
+        this.returnedCount = returnedCount;
+        this.createdCount = createdCount;
+        this.destroyedCount = destroyedCount;
+        this.destroyedByEvictorCount = destroyedByEvictorCount;
+        this.destroyedByBorrowValidationCount = destroyedByBorrowValidationCount;
+        this.meanActiveTimeMillis = meanActiveTimeMillis;
+        this.meanIdleTimeMillis = meanIdleTimeMillis;
+        this.meanBorrowWaitTimeMillis = meanBorrowWaitTimeMillis;
+        this.maxBorrowWaitTimeMillis = maxBorrowWaitTimeMillis;
+    }
+
+    /**
+     * Create a delta snapshot holding the counts accumulated between the
+     * given snapshot and this one.
+     *
+     * @param previous The earlier snapshot
+     *
+     * @return The delta snapshot
+     */
+    PoolStatistics since(final PoolStatistics previous) {
+        return new PoolStatistics(timestamp, timestamp - previous.timestamp,
+                numActive, numIdle, numWaiters,
+                borrowedCount - previous.borrowedCount,
+                returnedCount - previous.returnedCount,
+                createdCount - previous.createdCount,
+                destroyedCount - previous.destroyedCount,
+                destroyedByEvictorCount - previous.destroyedByEvictorCount,
+                destroyedByBorrowValidationCount -
+                        previous.destroyedByBorrowValidationCount,
+                meanActiveTimeMillis, meanIdleTimeMillis,
+                meanBorrowWaitTimeMillis, maxBorrowWaitTimeMillis);
+    }
+
+    /**
+     * Obtain the time the snapshot was taken.
+     *
+     * @return The time in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Obtain the length of the interval the counts of a delta snapshot were
+     * accumulated over.
+     *
+     * @return The interval in milliseconds or zero if this is not a delta
+     *         snapshot
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Obtain the number of objects borrowed from the pool.
+     *
+     * @return The number of active objects
+     */
+    public int getNumActive() {
+        return numActive;
+    }
+
+    /**
+     * Obtain the number of idle objects in the pool.
+     *
+     * @return The number of idle objects
+     */
+    public int getNumIdle() {
+        return numIdle;
+    }
+
+    /**
+     * Obtain an estimate of the number of threads waiting to borrow an
+     * object.
+     *
+     * @return The number of waiting threads
+     */
+    public int getNumWaiters() {
+        return numWaiters;
+    }
+
+    /**
+     * Obtain the number of objects borrowed.
+     *
+     * @return The borrowed count
+     * @see BaseGenericObjectPool#getBorrowedCount()
+     */
+    public long getBorrowedCount() {
+        return borrowedCount;
+    }
+
+    /**
+     * Obtain the number of objects returned.
+     *
+     * @return The returned count
+     * @see BaseGenericObjectPool#getReturnedCount()
+     */
+    public long getReturnedCount() {
+        return returnedCount;
+    }
+
+    /**
+     * Obtain the number of objects created.
+     *
+     * @return The created count
+     * @see BaseGenericObjectPool#getCreatedCount()
+     */
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * Obtain the number of objects destroyed.
+     *
+     * @return The destroyed count
+     * @see BaseGenericObjectPool#getDestroyedCount()
+     */
+    public long getDestroyedCount() {
+        return destroyedCount;
+    }
+
+    /**
+     * Obtain the number of objects destroyed by the evictor.
+     *
+     * @return The destroyed by evictor count
+     * @see BaseGenericObjectPool#getDestroyedByEvictorCount()
+     */
+    public long getDestroyedByEvictorCount() {
+        return destroyedByEvictorCount;
+    }
+
+    /**
+     * Obtain the number of objects destroyed because they failed validation
+     * when borrowed.
+     *
+     * @return The destroyed by borrow validation count
+     * @see BaseGenericObjectPool#getDestroyedByBorrowValidationCount()
+     */
+    public long getDestroyedByBorrowValidationCount() {
+        return destroyedByBorrowValidationCount;
+    }
+
+    /**
+     * Obtain the mean time recently returned objects were active for.
+     *
+     * @return The mean active time in milliseconds
+     * @see BaseGenericObjectPool#getMeanActiveTimeMillis()
+     */
+    public long getMeanActiveTimeMillis() {
+        return meanActiveTimeMillis;
+    }
+
+    /**
+     * Obtain the mean time recently borrowed objects were idle for.
+     *
+     * @return The mean idle time in milliseconds
+     * @see BaseGenericObjectPool#getMeanIdleTimeMillis()
+     */
+    public long getMeanIdleTimeMillis() {
+        return meanIdleTimeMillis;
+    }
+
+    /**
+     * Obtain the mean time recently served threads waited to borrow an
+     * object.
+     *
+     * @return The mean borrow wait time in milliseconds
+     * @see BaseGenericObjectPool#getMeanBorrowWaitTimeMillis()
+     */
+    public long getMeanBorrowWaitTimeMillis() {
+        return meanBorrowWaitTimeMillis;
+    }
+
+    /**
+     * Obtain the longest time a thread has waited to borrow an object.
+     *
+     * @return The maximum borrow wait time in milliseconds
+     * @see BaseGenericObjectPool#getMaxBorrowWaitTimeMillis()
+     */
+    public long getMaxBorrowWaitTimeMillis() {
+        return maxBorrowWaitTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("PoolStatistics [timestamp=");
+        builder.append(timestamp);
+        builder.append(", intervalMillis=");
+        builder.append(intervalMillis);
+        builder.append(", numActive=");
+        builder.append(numActive);
+        builder.append(", numIdle=");
+        builder.append(numIdle);
+        builder.append(", numWaiters=");
+        builder.append(numWaiters);
+        builder.append(", borrowedCount=");
+        builder.append(borrowedCount);
+        builder.append(", returnedCount=");
+        builder.append(returnedCount);
+        builder.append(", createdCount=");
+        builder.append(createdCount);
+        builder.append(", destroyedCount=");
+        builder.append(destroyedCount);
+        builder.append(", destroyedByEvictorCount=");
+        builder.append(destroyedByEvictorCount);
+        builder.append(", destroyedByBorrowValidationCount=");
+        builder.append(destroyedByBorrowValidationCount);
+        builder.append(", meanActiveTimeMillis=");
+        builder.append(meanActiveTimeMillis);
+        builder.append(", meanIdleTimeMillis=");
+        builder.append(meanIdleTimeMillis);
+        builder.append(", meanBorrowWaitTimeMillis=");
+        builder.append(meanBorrowWaitTimeMillis);
+        builder.append(", maxBorrowWaitTimeMillis=");
+        builder.append(maxBorrowWaitTimeMillis);
+        builder.append("]");
+        return builder.toString();
+    }
+}
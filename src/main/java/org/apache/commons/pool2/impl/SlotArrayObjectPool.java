@@ -0,0 +1,712 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool2.BaseObjectPool;
+import org.apache.commons.pool2.ObjectPool;
+import org.apache.commons.pool2.PoolUtils;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.BaseGenericObjectPool.IdentityWrapper;
+
+/**
+ * A bounded {@link ObjectPool} for cheap objects that are borrowed and
+ * returned at a high rate, such as encoders, buffers and
+ * <code>StringBuilder</code>s.
+ * <p>
+ * The pool holds at most <code>capacity</code> objects, each in a slot of a
+ * fixed size array. The state of every slot is held in an atomic array so
+ * that borrowing and returning an object claims and releases its slot with a
+ * single compare-and-set, without locks, hash map lookups or per-cycle
+ * allocation. Returned objects are matched to their slot by identity, i.e.
+ * using <code>==</code> rather than {@link Object#equals(Object)}, with a
+ * linear scan of the slots, so the capacity should be kept small. The
+ * {@link PooledObject} created by the factory for an object is only used to
+ * pass the object to the factory and, if
+ * {@link #setTrackTimestamps(boolean) trackTimestamps} is set, to record
+ * when it was last borrowed and returned.
+ * <p>
+ * Slots are probed from the first slot unless
+ * {@link #setThreadAffine(boolean) threadAffine} is set, in which case each
+ * thread starts probing from a slot derived from its id. This spreads
+ * threads across the slots, reducing contention, and tends to give a thread
+ * the same object each time.
+ * <p>
+ * When every slot holds a borrowed object, {@link #borrowObject()} does not
+ * wait. It throws a <code>NoSuchElementException</code> or, if
+ * {@link #setCreateWhenExhausted(boolean) createWhenExhausted} is set,
+ * returns a newly created object that is not held by the pool and is
+ * destroyed when it is returned. Such objects are tracked, by identity,
+ * until they are returned so that objects the pool did not hand out are
+ * rejected.
+ * <p>
+ * This class is intended to be thread-safe.
+ *
+ * @param <T>
+ *            Type of element pooled in this pool.
+ *
+ * @since 2.4.3
+ */
+public class SlotArrayObjectPool<T> extends BaseObjectPool<T> {
+
+    /** The slot holds no object */
+    private static final int EMPTY = 0;
+    /** The slot holds an idle object */
+    private static final int IDLE = 1;
+    /** The slot holds a borrowed object */
+    private static final int BORROWED = 2;
+    /**
+     * The slot is reserved by a thread that is creating, returning or
+     * destroying its object
+     */
+    private static final int RESERVED = 3;
+
+    /** Factory to source pooled objects */
+    private final PooledObjectFactory<T> factory;
+
+    /** The state of each slot */
+    private final AtomicIntegerArray states;
+
+    /**
+     * The wrapper of the object in each slot. Written before, and read after,
+     * the state of the slot is updated.
+     */
+    private final PooledObject<T>[] wrappers;
+
+    /** The object in each slot, for matching returned objects by identity */
+    private final Object[] objects;
+
+    private volatile boolean threadAffine = false;
+    private volatile boolean trackTimestamps = false;
+    private volatile boolean createWhenExhausted = false;
+    private volatile boolean testOnBorrow = false;
+    private volatile boolean testOnReturn = false;
+
+    /** Borrowed objects that are not held in a slot */
+    private final Map<IdentityWrapper<T>, PooledObject<T>> unpooled =
+            new ConcurrentHashMap<IdentityWrapper<T>, PooledObject<T>>();
+
+    /** Count of borrowed objects that are not held in a slot */
+    private final AtomicInteger numUnpooledActive = new AtomicInteger(0);
+
+    /** Total number of instances that have been created */
+    private final AtomicLong createdCount = new AtomicLong(0);
+
+    /** Total number of instances that have been destroyed */
+    private final AtomicLong destroyedCount = new AtomicLong(0);
+
+    /**
+     * Create a <code>SlotArrayObjectPool</code> with the specified factory and
+     * capacity.
+     *
+     * @param factory   object factory to use
+     * @param capacity  the maximum number of objects held by the pool
+     *
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    @SuppressWarnings("unchecked")
+    public SlotArrayObjectPool(final PooledObjectFactory<T> factory,
+            final int capacity) {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory may not be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.factory = factory;
+        states = new AtomicIntegerArray(capacity);
+        wrappers = new PooledObject[capacity];
+        objects = new Object[capacity];
+    }
+
+    /**
+     * Borrow an object from the pool. An idle object is claimed if there is
+     * one, otherwise a new object is created in an empty slot. If there are
+     * neither idle objects nor empty slots, an object that is not held by the
+     * pool is created if {@link #getCreateWhenExhausted() createWhenExhausted}
+     * is set.
+     * <p>
+     * Objects are {@link PooledObjectFactory#activateObject(PooledObject)
+     * activated} and, if {@link #getTestOnBorrow() testOnBorrow} is set,
+     * {@link PooledObjectFactory#validateObject(PooledObject) validated}
+     * before being returned. If this fails for an idle object, the object is
+     * destroyed and another object is borrowed. If it fails for a newly
+     * created object, <code>NoSuchElementException</code> is thrown.
+     * Exceptions thrown by <code>makeObject</code> are propagated to the
+     * caller, other exceptions thrown by the factory are swallowed.
+     *
+     * @throws NoSuchElementException
+     *             if every slot holds a borrowed object and
+     *             <code>createWhenExhausted</code> is not set, or a valid
+     *             object cannot be provided
+     * @throws IllegalStateException
+     *             if invoked on a {@link #close() closed} pool
+     * @throws Exception
+     *             if an exception occurs creating a new instance
+     * @return a valid, activated object instance
+     */
+    @Override
+    public T borrowObject() throws Exception {
+        assertOpen();
+        final int capacity = states.length();
+        final int start = probeStart();
+        while (true) {
+            int empty = -1;
+            for (int n = 0; n < capacity; n++) {
+                final int i = (start + n) % capacity;
+                final int state = states.get(i);
+                if (state == IDLE && states.compareAndSet(i, IDLE, BORROWED)) {
+                    if (activate(wrappers[i])) {
+                        return getObject(i);
+                    }
+                    destroyQuietly(i);
+                } else if (state == EMPTY && empty < 0) {
+                    empty = i;
+                }
+            }
+            if (empty >= 0) {
+                if (states.compareAndSet(empty, EMPTY, RESERVED)) {
+                    final PooledObject<T> p;
+                    try {
+                        p = create();
+                    } catch (final Exception e) {
+                        states.set(empty, EMPTY);
+                        throw e;
+                    }
+                    wrappers[empty] = p;
+                    objects[empty] = p.getObject();
+                    states.set(empty, BORROWED);
+                    if (activate(p)) {
+                        return getObject(empty);
+                    }
+                    destroyQuietly(empty);
+                    throw new NoSuchElementException(
+                            "Unable to activate or validate a new object");
+                }
+                // Lost the slot to another thread, probe again
+                continue;
+            }
+            if (!createWhenExhausted) {
+                throw new NoSuchElementException("Pool exhausted");
+            }
+            final PooledObject<T> p = create();
+            if (!activate(p)) {
+                destroyUnpooled(p);
+                throw new NoSuchElementException(
+                        "Unable to activate or validate a new object");
+            }
+            unpooled.put(new IdentityWrapper<T>(p.getObject()), p);
+            numUnpooledActive.incrementAndGet();
+            return p.getObject();
+        }
+    }
+
+    /**
+     * Returns an object to the pool after
+     * {@link PooledObjectFactory#passivateObject(PooledObject) passivation}
+     * and, if {@link #getTestOnReturn() testOnReturn} is set,
+     * {@link PooledObjectFactory#validateObject(PooledObject) validation}.
+     * The object is destroyed if either fails, if the pool is closed or if
+     * the object is not held by the pool. Exceptions thrown by the factory
+     * are swallowed.
+     *
+     * @param obj instance to return to the pool
+     *
+     * @throws IllegalStateException if the object was not borrowed from this
+     *         pool
+     */
+    @Override
+    public void returnObject(final T obj) {
+        final int i = claimBorrowed(obj);
+        if (i < 0) {
+            returnUnpooled(obj);
+            return;
+        }
+        final PooledObject<T> p = wrappers[i];
+        boolean success = !isClosed();
+        if (success && testOnReturn) {
+            success = validate(p);
+        }
+        if (success) {
+            try {
+                factory.passivateObject(p);
+            } catch (final Exception e) {
+                success = false;
+            }
+        }
+        if (!success) {
+            destroyQuietly(i);
+            return;
+        }
+        if (trackTimestamps) {
+            p.deallocate();
+        }
+        states.set(i, IDLE);
+        if (isClosed()) {
+            // Pool closed while the object was being returned. Make sure the
+            // object is destroyed rather than left in the pool.
+            clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the object was not borrowed from this
+     *         pool
+     */
+    @Override
+    public void invalidateObject(final T obj) throws Exception {
+        final int i = claimBorrowed(obj);
+        if (i < 0) {
+            returnUnpooled(obj);
+            return;
+        }
+        destroy(i);
+    }
+
+    /**
+     * Create an object in an empty slot, if there is one, and
+     * {@link PooledObjectFactory#passivateObject(PooledObject) passivate} it
+     * so that it is ready to be borrowed. Exceptions thrown by the factory
+     * are propagated to the caller. If passivation fails, the object is
+     * discarded without being destroyed.
+     *
+     * @throws IllegalStateException
+     *             if invoked on a {@link #close() closed} pool
+     * @throws Exception
+     *             if the factory has a problem creating or passivating an
+     *             object
+     */
+    @Override
+    public void addObject() throws Exception {
+        assertOpen();
+        for (int i = 0; i < states.length(); i++) {
+            if (states.get(i) == EMPTY &&
+                    states.compareAndSet(i, EMPTY, RESERVED)) {
+                final PooledObject<T> p;
+                try {
+                    p = create();
+                } catch (final Exception e) {
+                    states.set(i, EMPTY);
+                    throw e;
+                }
+                wrappers[i] = p;
+                objects[i] = p.getObject();
+                try {
+                    factory.passivateObject(p);
+                } catch (final Exception e) {
+                    discard(i);
+                    throw e;
+                }
+                states.set(i, IDLE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return the number of idle objects, found by scanning the slots.
+     *
+     * @return the number of idle objects
+     */
+    @Override
+    public int getNumIdle() {
+        return count(IDLE);
+    }
+
+    /**
+     * Return the number of borrowed objects, found by scanning the slots,
+     * plus the number of borrowed objects that are not held by the pool.
+     *
+     * @return the number of borrowed objects
+     */
+    @Override
+    public int getNumActive() {
+        return count(BORROWED) + numUnpooledActive.get();
+    }
+
+    /**
+     * Destroys the idle objects in the pool. Exceptions thrown by the factory
+     * are swallowed.
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < states.length(); i++) {
+            if (states.get(i) == IDLE && states.compareAndSet(i, IDLE, RESERVED)) {
+                destroyQuietly(i);
+            }
+        }
+    }
+
+    /**
+     * Close this pool and destroy the idle objects. Borrowed objects are
+     * destroyed when they are returned.
+     * <p>
+     * Calling {@link #addObject} or {@link #borrowObject} after invoking this
+     * method on a pool will cause them to throw an
+     * {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        super.close();
+        clear();
+    }
+
+    /**
+     * Returns the {@link PooledObjectFactory} used by this pool to create and
+     * manage object instances.
+     *
+     * @return the factory
+     */
+    public PooledObjectFactory<T> getFactory() {
+        return factory;
+    }
+
+    /**
+     * @return the maximum number of objects held by the pool
+     */
+    public int getCapacity() {
+        return states.length();
+    }
+
+    /**
+     * Returns whether each thread starts probing the slots from a slot
+     * derived from its id rather than from the first slot.
+     *
+     * @return <code>true</code> if probing is thread affine
+     *
+     * @see #setThreadAffine
+     */
+    public boolean getThreadAffine() {
+        return threadAffine;
+    }
+
+    /**
+     * Sets whether each thread starts probing the slots from a slot derived
+     * from its id rather than from the first slot.
+     *
+     * @param threadAffine <code>true</code> if probing should be thread
+     *                     affine
+     *
+     * @see #getThreadAffine
+     */
+    public void setThreadAffine(final boolean threadAffine) {
+        this.threadAffine = threadAffine;
+    }
+
+    /**
+     * Returns whether the {@link PooledObject} of each object records when
+     * the object was last borrowed and returned. This costs a synchronized
+     * state change on every borrow and return.
+     *
+     * @return <code>true</code> if timestamps are recorded
+     *
+     * @see #setTrackTimestamps
+     */
+    public boolean getTrackTimestamps() {
+        return trackTimestamps;
+    }
+
+    /**
+     * Sets whether the {@link PooledObject} of each object records when the
+     * object was last borrowed and returned.
+     *
+     * @param trackTimestamps <code>true</code> if timestamps should be
+     *                        recorded
+     *
+     * @see #getTrackTimestamps
+     */
+    public void setTrackTimestamps(final boolean trackTimestamps) {
+        this.trackTimestamps = trackTimestamps;
+    }
+
+    /**
+     * Returns whether {@link #borrowObject()} creates an object that is not
+     * held by the pool when every slot holds a borrowed object, rather than
+     * throwing <code>NoSuchElementException</code>.
+     *
+     * @return <code>true</code> if objects are created when the pool is
+     *         exhausted
+     *
+     * @see #setCreateWhenExhausted
+     */
+    public boolean getCreateWhenExhausted() {
+        return createWhenExhausted;
+    }
+
+    /**
+     * Sets whether {@link #borrowObject()} creates an object that is not held
+     * by the pool when every slot holds a borrowed object.
+     *
+     * @param createWhenExhausted <code>true</code> if objects should be
+     *                            created when the pool is exhausted
+     *
+     * @see #getCreateWhenExhausted
+     */
+    public void setCreateWhenExhausted(final boolean createWhenExhausted) {
+        this.createWhenExhausted = createWhenExhausted;
+    }
+
+    /**
+     * Returns whether objects are validated before being returned by
+     * {@link #borrowObject()}.
+     *
+     * @return <code>true</code> if objects are validated when borrowed
+     *
+     * @see #setTestOnBorrow
+     */
+    public boolean getTestOnBorrow() {
+        return testOnBorrow;
+    }
+
+    /**
+     * Sets whether objects are validated before being returned by
+     * {@link #borrowObject()}.
+     *
+     * @param testOnBorrow <code>true</code> if objects should be validated
+     *                     when borrowed
+     *
+     * @see #getTestOnBorrow
+     */
+    public void setTestOnBorrow(final boolean testOnBorrow) {
+        this.testOnBorrow = testOnBorrow;
+    }
+
+    /**
+     * Returns whether objects are validated when returned to the pool.
+     *
+     * @return <code>true</code> if objects are validated when returned
+     *
+     * @see #setTestOnReturn
+     */
+    public boolean getTestOnReturn() {
+        return testOnReturn;
+    }
+
+    /**
+     * Sets whether objects are validated when returned to the pool.
+     *
+     * @param testOnReturn <code>true</code> if objects should be validated
+     *                     when returned
+     *
+     * @see #getTestOnReturn
+     */
+    public void setTestOnReturn(final boolean testOnReturn) {
+        this.testOnReturn = testOnReturn;
+    }
+
+    /**
+     * @return the total number of objects created for this pool, including
+     *         those not held by the pool
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return the total number of objects destroyed by this pool, including
+     *         those not held by the pool
+     */
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    private int probeStart() {
+        if (!threadAffine) {
+            return 0;
+        }
+        return (int) (Thread.currentThread().getId() % states.length());
+    }
+
+    @SuppressWarnings("unchecked")
+    private T getObject(final int i) {
+        return (T) objects[i];
+    }
+
+    /**
+     * Find the slot of a borrowed object and claim it for the calling thread,
+     * starting from where the calling thread starts probing so that thread
+     * affine pools usually find it quickly.
+     *
+     * @param obj The object
+     *
+     * @return the index of the claimed slot or -1 if the object is not a
+     *         borrowed object held by the pool
+     *
+     * @throws IllegalStateException if another thread returned or
+     *         invalidated the object concurrently
+     */
+    private int claimBorrowed(final Object obj) {
+        final int capacity = states.length();
+        final int start = probeStart();
+        for (int n = 0; n < capacity; n++) {
+            final int i = (start + n) % capacity;
+            // Read the state first for the latest object
+            if (states.get(i) == BORROWED && objects[i] == obj) {
+                if (!states.compareAndSet(i, BORROWED, RESERVED)) {
+                    throw new IllegalStateException(
+                            "Object has already been returned to this pool");
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private PooledObject<T> create() throws Exception {
+        final PooledObject<T> p = factory.makeObject();
+        createdCount.incrementAndGet();
+        return p;
+    }
+
+    /**
+     * Activate and, if configured, validate an object that is about to be
+     * borrowed.
+     *
+     * @param p The object
+     *
+     * @return <code>false</code> if activation or validation failed
+     */
+    private boolean activate(final PooledObject<T> p) {
+        try {
+            factory.activateObject(p);
+            if (testOnBorrow && !factory.validateObject(p)) {
+                return false;
+            }
+        } catch (final Throwable t) {
+            PoolUtils.checkRethrow(t);
+            return false;
+        }
+        if (trackTimestamps) {
+            p.allocate();
+        }
+        return true;
+    }
+
+    private boolean validate(final PooledObject<T> p) {
+        try {
+            return factory.validateObject(p);
+        } catch (final Throwable t) {
+            PoolUtils.checkRethrow(t);
+            return false;
+        }
+    }
+
+    /**
+     * Destroy the object in a slot that the calling thread has claimed and
+     * empty the slot.
+     *
+     * @param i The index of the slot
+     *
+     * @throws Exception if the factory fails to destroy the object
+     */
+    private void destroy(final int i) throws Exception {
+        final PooledObject<T> p = discard(i);
+        try {
+            factory.destroyObject(p);
+        } finally {
+            destroyedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Destroy the object in a slot that the calling thread has claimed and
+     * empty the slot, swallowing any exception thrown by the factory.
+     *
+     * @param i The index of the slot
+     */
+    private void destroyQuietly(final int i) {
+        try {
+            destroy(i);
+        } catch (final Exception e) {
+            // ignored
+        }
+    }
+
+    /**
+     * Empty a slot that the calling thread has claimed.
+     *
+     * @param i The index of the slot
+     *
+     * @return the wrapper of the object that was in the slot
+     */
+    private PooledObject<T> discard(final int i) {
+        final PooledObject<T> p = wrappers[i];
+        wrappers[i] = null;
+        objects[i] = null;
+        states.set(i, EMPTY);
+        p.invalidate();
+        return p;
+    }
+
+    private void returnUnpooled(final T obj) {
+        final PooledObject<T> p = unpooled.remove(new IdentityWrapper<T>(obj));
+        if (p == null) {
+            for (int i = 0; i < objects.length; i++) {
+                if (obj != null && objects[i] == obj) {
+                    throw new IllegalStateException(
+                            "Object has already been returned to this pool");
+                }
+            }
+            throw new IllegalStateException(
+                    "Returned object not currently part of this pool");
+        }
+        numUnpooledActive.decrementAndGet();
+        destroyUnpooled(p);
+    }
+
+    private void destroyUnpooled(final PooledObject<T> p) {
+        try {
+            factory.destroyObject(p);
+        } catch (final Exception e) {
+            // ignored
+        } finally {
+            destroyedCount.incrementAndGet();
+        }
+    }
+
+    private int count(final int state) {
+        int count = 0;
+        for (int i = 0; i < states.length(); i++) {
+            if (states.get(i) == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    protected void toStringAppendFields(final StringBuilder builder) {
+        super.toStringAppendFields(builder);
+        builder.append(", factory=");
+        builder.append(factory);
+        builder.append(", capacity=");
+        builder.append(states.length());
+        builder.append(", threadAffine=");
+        builder.append(threadAffine);
+        builder.append(", createWhenExhausted=");
+        builder.append(createWhenExhausted);
+    }
+}
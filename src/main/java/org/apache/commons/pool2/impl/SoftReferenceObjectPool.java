@@ -19,9 +19,13 @@ package org.apache.commons.pool2.impl;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.pool2.BaseObjectPool;
 import org.apache.commons.pool2.ObjectPool;
@@ -31,6 +35,15 @@ import org.apache.commons.pool2.PooledObjectFactory;
 /**
  * A {@link java.lang.ref.SoftReference SoftReference} based {@link ObjectPool}.
  * <p>
+ * Idle objects are only softly reachable from the pool so the garbage
+ * collector may reclaim them when memory is low. Borrowed objects are tracked
+ * by identity, i.e. an object is matched to the pool's record of it using
+ * <code>==</code> rather than {@link Object#equals(Object)}.
+ * <p>
+ * References cleared by the garbage collector are removed from the pool the
+ * next time the pool is used or, if {@link #setTimeBetweenCleanerRunsMillis(long)
+ * timeBetweenCleanerRunsMillis} is positive, by a background task.
+ * <p>
  * This class is intended to be thread-safe.
  *
  * @param <T>
@@ -46,29 +59,44 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
     private final PooledObjectFactory<T> factory;
 
     /**
-     * Queue of broken references that might be able to be removed from
-     * <code>_pool</code>. This is used to help {@link #getNumIdle()} be more
-     * accurate with minimal performance overhead.
+     * Queue of references to idle objects that have been cleared by the
+     * garbage collector and need to be removed from the pool.
      */
     private final ReferenceQueue<T> refQueue = new ReferenceQueue<T>();
 
     /** Count of instances that have been checkout out to pool clients */
-    private int numActive = 0; // @GuardedBy("this")
+    private final AtomicInteger numActive = new AtomicInteger(0);
 
-    /** Total number of instances that have been destroyed */
-    private long destroyCount = 0; // @GuardedBy("this")
+    /**
+     * Count of idle instances, including those cleared by the garbage
+     * collector that have not yet been removed from the pool.
+     */
+    private final AtomicInteger numIdle = new AtomicInteger(0);
 
+    /** Total number of instances that have been destroyed */
+    private final AtomicLong destroyCount = new AtomicLong(0);
 
     /** Total number of instances that have been created */
-    private long createCount = 0; // @GuardedBy("this")
+    private final AtomicLong createCount = new AtomicLong(0);
+
+    /**
+     * Idle references - waiting to be borrowed. References claimed by the
+     * cleaner stay queued until they are polled and skipped.
+     */
+    private final ConcurrentLinkedQueue<PooledSoftReference<T>> idleReferences =
+        new ConcurrentLinkedQueue<PooledSoftReference<T>>();
+
+    /**
+     * All references - checked out or waiting to be borrowed, indexed by the
+     * identity of the referenced object.
+     */
+    private final ConcurrentHashMap<ReferenceKey<T>, PooledSoftReference<T>> allReferences =
+        new ConcurrentHashMap<ReferenceKey<T>, PooledSoftReference<T>>();
 
-    /** Idle references - waiting to be borrowed */
-    private final LinkedBlockingDeque<PooledSoftReference<T>> idleReferences =
-        new LinkedBlockingDeque<PooledSoftReference<T>>();
+    /** Background task removing cleared references, if any */
+    private Cleaner cleaner = null; // @GuardedBy("this")
 
-    /** All references - checked out or waiting to be borrowed. */
-    private final ArrayList<PooledSoftReference<T>> allReferences =
-        new ArrayList<PooledSoftReference<T>>();
+    private long timeBetweenCleanerRunsMillis = -1; // @GuardedBy("this")
 
     /**
      * Create a <code>SoftReferenceObjectPool</code> with the specified factory.
@@ -115,32 +143,43 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
      */
     @SuppressWarnings("null") // ref can not be null
     @Override
-    public synchronized T borrowObject() throws Exception {
+    public T borrowObject() throws Exception {
         assertOpen();
+        pruneClearedReferences();
         T obj = null;
         boolean newlyCreated = false;
         PooledSoftReference<T> ref = null;
         while (null == obj) {
-            if (idleReferences.isEmpty()) {
+            ref = idleReferences.poll();
+            if (ref == null) {
                 if (null == factory) {
                     throw new NoSuchElementException();
                 }
                 newlyCreated = true;
                 obj = factory.makeObject().getObject();
-                createCount++;
+                createCount.incrementAndGet();
                 // Do not register with the queue
-                ref = new PooledSoftReference<T>(new SoftReference<T>(obj));
-                allReferences.add(ref);
+                ref = track(obj, null);
+                ref.allocate();
             } else {
-                ref = idleReferences.pollFirst();
+                if (!ref.allocate()) {
+                    // Removed by the cleaner or clear()
+                    continue;
+                }
+                numIdle.decrementAndGet();
                 obj = ref.getObject();
+                if (obj == null) {
+                    // Cleared but not yet removed by the cleaner
+                    ref.invalidate();
+                    allReferences.remove(getKey(ref));
+                    continue;
+                }
                 // Clear the reference so it will not be queued, but replace with a
                 // a new, non-registered reference so we can still track this object
                 // in allReferences
-                ref.getReference().clear();
-                ref.setReference(new SoftReference<T>(obj));
+                replaceReference(ref, obj, null);
             }
-            if (null != factory && null != obj) {
+            if (null != factory) {
                 try {
                     factory.activateObject(ref);
                     if (!factory.validateObject(ref)) {
@@ -164,8 +203,7 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
                 }
             }
         }
-        numActive++;
-        ref.allocate();
+        numActive.incrementAndGet();
         return obj;
     }
 
@@ -189,7 +227,7 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
      *            instance to return to the pool
      */
     @Override
-    public synchronized void returnObject(final T obj) throws Exception {
+    public void returnObject(final T obj) throws Exception {
         boolean success = !isClosed();
         final PooledSoftReference<T> ref = findReference(obj);
         if (ref == null) {
@@ -209,14 +247,16 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
         }
 
         final boolean shouldDestroy = !success;
-        numActive--;
+        numActive.decrementAndGet();
         if (success) {
-
+            // Register the reference so that it is queued if the idle object
+            // is garbage collected
+            replaceReference(ref, obj, refQueue);
             // Deallocate and add to the idle instance pool
             ref.deallocate();
+            numIdle.incrementAndGet();
             idleReferences.add(ref);
         }
-        notifyAll(); // numActive has changed
 
         if (shouldDestroy && factory != null) {
             try {
@@ -231,7 +271,7 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
      * {@inheritDoc}
      */
     @Override
-    public synchronized void invalidateObject(final T obj) throws Exception {
+    public void invalidateObject(final T obj) throws Exception {
         final PooledSoftReference<T> ref = findReference(obj);
         if (ref == null) {
             throw new IllegalStateException(
@@ -240,8 +280,7 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
         if (factory != null) {
             destroy(ref);
         }
-        numActive--;
-        notifyAll(); // numActive has changed
+        numActive.decrementAndGet();
     }
 
     /**
@@ -267,18 +306,16 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
      *             or passivating an object.
      */
     @Override
-    public synchronized void addObject() throws Exception {
+    public void addObject() throws Exception {
         assertOpen();
         if (factory == null) {
             throw new IllegalStateException(
                     "Cannot add objects without a factory.");
         }
         final T obj = factory.makeObject().getObject();
-        createCount++;
+        createCount.incrementAndGet();
         // Create and register with the queue
-        final PooledSoftReference<T> ref = new PooledSoftReference<T>(
-                new SoftReference<T>(obj, refQueue));
-        allReferences.add(ref);
+        final PooledSoftReference<T> ref = track(obj, refQueue);
 
         boolean success = true;
         if (!factory.validateObject(ref)) {
@@ -289,8 +326,8 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
 
         final boolean shouldDestroy = !success;
         if (success) {
+            numIdle.incrementAndGet();
             idleReferences.add(ref);
-            notifyAll(); // numActive has changed
         }
 
         if (shouldDestroy) {
@@ -309,9 +346,9 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
      * @return estimated number of idle instances in the pool
      */
     @Override
-    public synchronized int getNumIdle() {
+    public int getNumIdle() {
         pruneClearedReferences();
-        return idleReferences.size();
+        return numIdle.get();
     }
 
     /**
@@ -320,29 +357,33 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
      * @return the number of instances currently borrowed from this pool
      */
     @Override
-    public synchronized int getNumActive() {
-        return numActive;
+    public int getNumActive() {
+        return numActive.get();
     }
 
     /**
      * Clears any objects sitting idle in the pool.
      */
     @Override
-    public synchronized void clear() {
-        if (null != factory) {
-            final Iterator<PooledSoftReference<T>> iter = idleReferences.iterator();
-            while (iter.hasNext()) {
-                try {
-                    final PooledSoftReference<T> ref = iter.next();
-                    if (null != ref.getObject()) {
-                        factory.destroyObject(ref);
+    public void clear() {
+        PooledSoftReference<T> ref = idleReferences.poll();
+        while (ref != null) {
+            // Borrowers and the cleaner skip references that are not idle
+            if (ref.startEvictionTest()) {
+                numIdle.decrementAndGet();
+                if (null != factory && null != ref.getObject()) {
+                    try {
+                        destroy(ref);
+                    } catch (final Exception e) {
+                        // ignore error, keep destroying the rest
                     }
-                } catch (final Exception e) {
-                    // ignore error, keep destroying the rest
+                } else {
+                    ref.invalidate();
+                    allReferences.remove(getKey(ref));
                 }
             }
+            ref = idleReferences.poll();
         }
-        idleReferences.clear();
         pruneClearedReferences();
     }
 
@@ -357,6 +398,7 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
     @Override
     public void close() {
         super.close();
+        setTimeBetweenCleanerRunsMillis(-1);
         clear();
     }
 
@@ -366,19 +408,71 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
      *
      * @return the factory
      */
-    public synchronized PooledObjectFactory<T> getFactory() {
+    public PooledObjectFactory<T> getFactory() {
         return factory;
     }
 
     /**
-     * If any idle objects were garbage collected, remove their
-     * {@link Reference} wrappers from the idle object pool.
+     * Returns the number of milliseconds between runs of the background task
+     * that removes idle objects cleared by the garbage collector from the
+     * pool. When non-positive, no background task runs and cleared objects
+     * are removed when the pool is next used.
+     *
+     * @return number of milliseconds between cleaner runs
+     *
+     * @see #setTimeBetweenCleanerRunsMillis
+     *
+     * @since 2.4.3
+     */
+    public synchronized long getTimeBetweenCleanerRunsMillis() {
+        return timeBetweenCleanerRunsMillis;
+    }
+
+    /**
+     * Sets the number of milliseconds between runs of the background task
+     * that removes idle objects cleared by the garbage collector from the
+     * pool. The task runs on the thread shared with the idle object evictors
+     * of the other pools. When non-positive, no background task runs.
+     *
+     * @param timeBetweenCleanerRunsMillis
+     *            number of milliseconds between cleaner runs
+     *
+     * @see #getTimeBetweenCleanerRunsMillis
+     *
+     * @since 2.4.3
+     */
+    public synchronized void setTimeBetweenCleanerRunsMillis(
+            final long timeBetweenCleanerRunsMillis) {
+        this.timeBetweenCleanerRunsMillis = timeBetweenCleanerRunsMillis;
+        if (cleaner != null) {
+            EvictionTimer.cancel(cleaner, 10, TimeUnit.SECONDS);
+            cleaner = null;
+        }
+        if (timeBetweenCleanerRunsMillis > 0 && !isClosed()) {
+            cleaner = new Cleaner();
+            EvictionTimer.schedule(cleaner, timeBetweenCleanerRunsMillis,
+                    timeBetweenCleanerRunsMillis);
+        }
+    }
+
+    /**
+     * Remove idle objects that have been garbage collected from the pool.
      */
+    @SuppressWarnings("unchecked") // Only KeyedReferences are registered
     private void pruneClearedReferences() {
-        // Remove wrappers for enqueued references from idle and allReferences lists
-        removeClearedReferences(idleReferences.iterator());
-        removeClearedReferences(allReferences.iterator());
-        while (refQueue.poll() != null) {}
+        Reference<? extends T> cleared = refQueue.poll();
+        while (cleared != null) {
+            final ReferenceKey<T> key = ((KeyedReference<T>) cleared).key;
+            final PooledSoftReference<T> ref = key.ref;
+            // A borrower or clear() may have already claimed the reference
+            if (ref.getReference() == cleared && ref.startEvictionTest()) {
+                ref.invalidate();
+                numIdle.decrementAndGet();
+                // Left in idleReferences, pollers skip it as it is invalid
+                allReferences.remove(key);
+            }
+            cleared = refQueue.poll();
+        }
     }
 
     /**
@@ -388,19 +482,53 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
      * @return PooledSoftReference wrapping a soft reference to obj
      */
     private PooledSoftReference<T> findReference(final T obj) {
-        final Iterator<PooledSoftReference<T>> iterator = allReferences.iterator();
-        while (iterator.hasNext()) {
-            final PooledSoftReference<T> reference = iterator.next();
-            if (reference.getObject() != null && reference.getObject().equals(obj)) {
-                return reference;
-            }
+        if (obj == null) {
+            return null;
         }
-        return null;
+        return allReferences.get(new ReferenceKey<T>(obj));
+    }
+
+    /**
+     * Create a PooledSoftReference for a new object and add it to
+     * allReferences.
+     *
+     * @param obj   the new object
+     * @param queue the queue with which to register the reference, if any
+     * @return the new PooledSoftReference
+     */
+    private PooledSoftReference<T> track(final T obj, final ReferenceQueue<T> queue) {
+        final PooledSoftReference<T> ref =
+                new PooledSoftReference<T>(new SoftReference<T>(obj));
+        final ReferenceKey<T> key =
+                new ReferenceKey<T>(System.identityHashCode(obj), ref);
+        ref.setReference(new KeyedReference<T>(obj, queue, key));
+        allReferences.put(key, ref);
+        return ref;
     }
 
     /**
-     * Destroy a {@code PooledSoftReference} and remove it from the idle and all
-     * references pools.
+     * Replace the reference wrapped by a PooledSoftReference with a new
+     * reference to the same object, clearing the old one so that it is not
+     * queued.
+     *
+     * @param ref   the PooledSoftReference
+     * @param obj   the object it refers to
+     * @param queue the queue with which to register the reference, if any
+     */
+    private void replaceReference(final PooledSoftReference<T> ref, final T obj,
+            final ReferenceQueue<T> queue) {
+        final SoftReference<T> old = ref.getReference();
+        ref.setReference(new KeyedReference<T>(obj, queue, getKey(ref)));
+        old.clear();
+    }
+
+    private ReferenceKey<T> getKey(final PooledSoftReference<T> ref) {
+        return ((KeyedReference<T>) ref.getReference()).key;
+    }
+
+    /**
+     * Destroy a {@code PooledSoftReference} and remove it from the all
+     * references index. The reference must not be in the idle queue.
      *
      * @param toDestroy PooledSoftReference to destroy
      *
@@ -408,30 +536,15 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
      */
     private void destroy(final PooledSoftReference<T> toDestroy) throws Exception {
         toDestroy.invalidate();
-        idleReferences.remove(toDestroy);
-        allReferences.remove(toDestroy);
+        allReferences.remove(getKey(toDestroy));
         try {
             factory.destroyObject(toDestroy);
         } finally {
-            destroyCount++;
+            destroyCount.incrementAndGet();
             toDestroy.getReference().clear();
         }
     }
 
-    /**
-     * Clears cleared references from iterator's collection
-     * @param iterator iterator over idle/allReferences
-     */
-    private void removeClearedReferences(final Iterator<PooledSoftReference<T>> iterator) {
-        PooledSoftReference<T> ref;
-        while (iterator.hasNext()) {
-            ref = iterator.next();
-            if (ref.getReference() == null || ref.getReference().isEnqueued()) {
-                iterator.remove();
-            }
-        }
-    }
-
     @Override
     protected void toStringAppendFields(final StringBuilder builder) {
         super.toStringAppendFields(builder);
@@ -441,6 +554,8 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
         builder.append(refQueue);
         builder.append(", numActive=");
         builder.append(numActive);
+        builder.append(", numIdle=");
+        builder.append(numIdle);
         builder.append(", destroyCount=");
         builder.append(destroyCount);
         builder.append(", createCount=");
@@ -448,6 +563,82 @@ public class SoftReferenceObjectPool<T> extends BaseObjectPool<T> {
         builder.append(", idleReferences=");
         builder.append(idleReferences);
         builder.append(", allReferences=");
-        builder.append(allReferences);
+        builder.append(allReferences.values());
+    }
+
+    /**
+     * Key of allReferences. Keys stored in the map refer to the pooled object
+     * through its soft reference so that they do not keep idle objects
+     * reachable. Keys used for look ups refer to the object directly. Keys
+     * are equal if they refer to the same object or are the same key.
+     */
+    private static final class ReferenceKey<T> {
+
+        private final int hash;
+        private final T obj;
+        private final PooledSoftReference<T> ref;
+
+        ReferenceKey(final T obj) {
+            this.hash = System.identityHashCode(obj);
+            this.obj = obj;
+            this.ref = null;
+        }
+
+        ReferenceKey(final int hash, final PooledSoftReference<T> ref) {
+            this.hash = hash;
+            this.obj = null;
+            this.ref = ref;
+        }
+
+        private T get() {
+            return ref == null ? obj : ref.getObject();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ReferenceKey)) {
+                return false;
+            }
+            final ReferenceKey<?> otherKey = (ReferenceKey<?>) other;
+            if (hash != otherKey.hash) {
+                return false;
+            }
+            final T referent = get();
+            return referent != null && referent == otherKey.get();
+        }
+    }
+
+    /**
+     * A soft reference that knows the key under which its PooledSoftReference
+     * is held so that it can be removed once the reference has been cleared.
+     */
+    private static class KeyedReference<T> extends SoftReference<T> {
+
+        private final ReferenceKey<T> key;
+
+        KeyedReference(final T referent, final ReferenceQueue<T> queue,
+                final ReferenceKey<T> key) {
+            super(referent, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * The background task that removes cleared references.
+     */
+    private class Cleaner extends TimerTask {
+
+        @Override
+        public void run() {
+            pruneClearedReferences();
+        }
     }
 }
@@ -0,0 +1,950 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool2.ObjectPool;
+import org.apache.commons.pool2.PoolUtils;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.PooledObjectState;
+
+/**
+ * An {@link ObjectPool} for threads that borrow and return objects on the
+ * same thread, such as the event loops of an asynchronous network framework.
+ * <p>
+ * Each thread that borrows from the pool has its own stack of idle objects
+ * that only it accesses, without synchronization. An object belongs to the
+ * thread that created it. When the owning thread returns the object it is
+ * pushed onto that thread's stack. When another thread returns or
+ * invalidates the object it is handed to the owning thread through a
+ * lock-free queue, which the owning thread drains the next time it uses the
+ * pool. Until then the object counts as active.
+ * <p>
+ * {@link #getMaxTotal() maxTotal} is enforced loosely, through per-thread
+ * budgets. Each thread reserves permits to create objects in batches and
+ * keeps the permits of the objects it destroys, up to a batch, for its own
+ * later use. A thread that has no idle object and can not reserve a permit
+ * fails to borrow, even if other threads hold idle objects or unused
+ * permits. {@link #borrowObject()} never waits, it throws
+ * <code>NoSuchElementException</code> instead. {@link #getMaxIdle() maxIdle}
+ * applies to the stack of each thread.
+ * <p>
+ * The statistics of {@link GenericObjectPool} are maintained and exposed
+ * through {@link GenericObjectPoolMXBean}. To avoid updating shared state on
+ * every borrow and return, each thread adds to the borrow and return counts
+ * in batches of {@link #getStatisticsBatchSize() statisticsBatchSize} and
+ * only the last borrow and return of a batch contribute to the timing
+ * statistics. The counts of a batch that has not filled up are added when
+ * the thread destroys its idle objects or once it has terminated.
+ * <p>
+ * {@link #clear()} and {@link #close()} can not reach into the stacks of
+ * other threads. They ask each thread to destroy its idle objects the next
+ * time it uses the pool, including a borrow that fails because the pool has
+ * been closed. The idle objects of threads that have terminated are
+ * destroyed immediately, when a thread can not otherwise reserve a permit
+ * and, if
+ * {@link #getTimeBetweenEvictionRunsMillis() timeBetweenEvictionRunsMillis}
+ * is positive, by the idle object evictor. Idle objects are not otherwise
+ * evicted.
+ * <p>
+ * This class is intended to be thread-safe.
+ *
+ * @see GenericObjectPool
+ *
+ * @param <T> Type of element pooled in this pool.
+ *
+ * @since 2.4.3
+ */
+public class ThreadConfinedObjectPool<T> extends BaseGenericObjectPool<T>
+        implements ObjectPool<T>, GenericObjectPoolMXBean {
+
+    /**
+     * The default value for {@link #getStatisticsBatchSize()}.
+     */
+    public static final int DEFAULT_STATISTICS_BATCH_SIZE = 64;
+
+    /**
+     * Create a new <code>ThreadConfinedObjectPool</code> using defaults from
+     * {@link GenericObjectPoolConfig}.
+     *
+     * @param factory The object factory to be used to create object instances
+     *                used by this pool
+     */
+    public ThreadConfinedObjectPool(final PooledObjectFactory<T> factory) {
+        this(factory, new GenericObjectPoolConfig());
+    }
+
+    /**
+     * Create a new <code>ThreadConfinedObjectPool</code> using a specific
+     * configuration. Only the attributes described by {@link #setConfig} are
+     * used.
+     *
+     * @param factory   The object factory to be used to create object instances
+     *                  used by this pool
+     * @param config    The configuration to use for this pool instance. The
+     *                  configuration is used by value. Subsequent changes to
+     *                  the configuration object will not be reflected in the
+     *                  pool.
+     */
+    public ThreadConfinedObjectPool(final PooledObjectFactory<T> factory,
+            final GenericObjectPoolConfig config) {
+
+        super(config, ONAME_BASE, config.getJmxNamePrefix());
+
+        if (factory == null) {
+            jmxUnregister(); // tidy up
+            throw new IllegalArgumentException("factory may not be null");
+        }
+        this.factory = factory;
+
+        setConfig(config);
+    }
+
+    /**
+     * Returns the cap on the number of idle instances held by each thread.
+     *
+     * @return the maximum number of idle instances that each thread can hold
+     *         or a negative value if there is no limit
+     *
+     * @see #setMaxIdle
+     */
+    @Override
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Sets the cap on the number of idle instances held by each thread.
+     * Instances returned to a thread that already holds this many idle
+     * instances are destroyed.
+     *
+     * @param maxIdle The cap on the number of idle instances held by each
+     *                thread. Use a negative value to indicate an unlimited
+     *                number of idle instances.
+     *
+     * @see #getMaxIdle
+     */
+    public void setMaxIdle(final int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Idle instances are not created in advance by this pool.
+     *
+     * @return zero
+     */
+    @Override
+    public int getMinIdle() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of borrows and returns each thread counts before
+     * adding them to the statistics of the pool.
+     *
+     * @return the number of borrows and returns in a batch
+     *
+     * @see #setStatisticsBatchSize
+     */
+    public int getStatisticsBatchSize() {
+        return statisticsBatchSize;
+    }
+
+    /**
+     * Sets the number of borrows and returns each thread counts before adding
+     * them to the statistics of the pool. A value of one makes the
+     * statistics exact at the cost of updating shared state on every borrow
+     * and return.
+     *
+     * @param statisticsBatchSize the number of borrows and returns in a batch
+     *
+     * @throws IllegalArgumentException if the batch size is not positive
+     *
+     * @see #getStatisticsBatchSize
+     */
+    public void setStatisticsBatchSize(final int statisticsBatchSize) {
+        if (statisticsBatchSize < 1) {
+            throw new IllegalArgumentException(
+                    "statisticsBatchSize must be positive");
+        }
+        this.statisticsBatchSize = statisticsBatchSize;
+    }
+
+    /**
+     * Sets the attributes of this pool that it uses from the given
+     * configuration: <code>maxTotal</code>, <code>maxIdle</code>,
+     * <code>testOnCreate</code>, <code>testOnBorrow</code>,
+     * <code>testOnReturn</code>, <code>timeBetweenEvictionRunsMillis</code>
+     * and <code>evictorShutdownTimeoutMillis</code>.
+     *
+     * @param conf the new configuration to use. This is used by value.
+     */
+    public void setConfig(final GenericObjectPoolConfig conf) {
+        setMaxTotal(conf.getMaxTotal());
+        setMaxIdle(conf.getMaxIdle());
+        setTestOnCreate(conf.getTestOnCreate());
+        setTestOnBorrow(conf.getTestOnBorrow());
+        setTestOnReturn(conf.getTestOnReturn());
+        setEvictorShutdownTimeoutMillis(conf.getEvictorShutdownTimeoutMillis());
+        setTimeBetweenEvictionRunsMillis(
+                conf.getTimeBetweenEvictionRunsMillis());
+    }
+
+    /**
+     * Obtain the factory used by this pool.
+     *
+     * @return the factory
+     */
+    public PooledObjectFactory<T> getFactory() {
+        return factory;
+    }
+
+    /**
+     * Borrow an object from the calling thread's idle objects or, if it has
+     * none, create a new object if the thread can obtain a permit to do so.
+     * Objects returned or invalidated by other threads are processed first.
+     * <p>
+     * Objects are {@link PooledObjectFactory#activateObject(PooledObject)
+     * activated} and, if {@link #getTestOnBorrow() testOnBorrow} is set,
+     * {@link PooledObjectFactory#validateObject(PooledObject) validated}
+     * before being returned. If this fails for an idle object, the object is
+     * destroyed and another object is borrowed. If it fails for a newly
+     * created object, <code>NoSuchElementException</code> is thrown.
+     *
+     * @return object instance from the pool
+     *
+     * @throws NoSuchElementException if the thread has no idle object and
+     *         can not create one, or a valid object can not be provided
+     * @throws IllegalStateException if the pool is closed
+     * @throws Exception if an exception occurs creating a new instance
+     */
+    @Override
+    public T borrowObject() throws Exception {
+        final LocalPool local = localPools.get();
+        // Destroys the idle objects of the thread if the pool has been closed
+        local.maintain();
+        assertOpen();
+        while (true) {
+            PooledObject<T> p = local.pop();
+            boolean create = false;
+            if (p == null) {
+                p = local.create();
+                create = true;
+            }
+            if (!p.allocate()) {
+                // Invalidated while idle
+                local.destroyQuietly(p);
+                continue;
+            }
+            local.numActive++;
+            try {
+                factory.activateObject(p);
+                if (getTestOnBorrow() && !factory.validateObject(p)) {
+                    destroyedByBorrowValidationCount.incrementAndGet();
+                    throw new Exception("ValidateObject failed");
+                }
+            } catch (final Throwable t) {
+                PoolUtils.checkRethrow(t);
+                local.numActive--;
+                local.destroyQuietly(p);
+                local.publishCounts();
+                if (create) {
+                    final NoSuchElementException nsee = new NoSuchElementException(
+                            "Unable to activate or validate object");
+                    nsee.initCause(t);
+                    throw nsee;
+                }
+                continue;
+            }
+            local.borrowed(p);
+            return p.getObject();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the object is returned by the thread that owns it, it is
+     * {@link PooledObjectFactory#passivateObject(PooledObject) passivated}
+     * and added to the thread's idle objects immediately, otherwise this is
+     * done by the owning thread the next time it uses the pool. The object is
+     * destroyed instead if the pool is closed, the owning thread already
+     * holds {@link #getMaxIdle() maxIdle} idle objects or validation or
+     * passivation fails. Exceptions thrown by the factory are swallowed.
+     */
+    @Override
+    public void returnObject(final T obj) {
+        final Tracked tracked = allObjects.get(new IdentityWrapper<T>(obj));
+        if (tracked == null) {
+            throw new IllegalStateException(
+                    "Returned object not currently part of this pool");
+        }
+        final PooledObject<T> p = tracked.pooledObject;
+        if (!p.deallocate()) {
+            throw new IllegalStateException(
+                    "Object has already been returned to this pool or is invalid");
+        }
+        tracked.owner.handOver(p);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the object is invalidated by a thread other than the one that owns
+     * it, it is destroyed by the owning thread the next time it uses the pool
+     * and exceptions thrown destroying it are swallowed.
+     *
+     * @throws IllegalStateException if the object is not currently borrowed
+     *         from this pool
+     */
+    @Override
+    public void invalidateObject(final T obj) throws Exception {
+        final Tracked tracked = allObjects.get(new IdentityWrapper<T>(obj));
+        if (tracked == null) {
+            throw new IllegalStateException(
+                    "Invalidated object not currently part of this pool");
+        }
+        final PooledObject<T> p = tracked.pooledObject;
+        if (!p.deallocate()) {
+            throw new IllegalStateException(
+                    "Object has already been returned to this pool or is invalid");
+        }
+        if (tracked.owner.thread == Thread.currentThread()) {
+            tracked.owner.numActive--;
+            try {
+                tracked.owner.destroy(p);
+            } finally {
+                tracked.owner.publishCounts();
+            }
+        } else {
+            // Marks the object for the owning thread to destroy
+            p.invalidate();
+            tracked.owner.handOver(p);
+        }
+    }
+
+    /**
+     * Create an object and add it to the calling thread's idle objects, if
+     * the thread can obtain a permit to do so.
+     * If passivation fails the object is discarded without being destroyed.
+     *
+     * @throws IllegalStateException if the pool is closed
+     * @throws Exception if the factory fails to create or passivate the
+     *         object
+     */
+    @Override
+    public void addObject() throws Exception {
+        final LocalPool local = localPools.get();
+        // Destroys the idle objects of the thread if the pool has been closed
+        local.maintain();
+        assertOpen();
+        final PooledObject<T> p;
+        try {
+            p = local.create();
+        } catch (final NoSuchElementException e) {
+            // No permit, nothing to add
+            return;
+        }
+        try {
+            factory.passivateObject(p);
+        } catch (final Exception e) {
+            local.discard(p);
+            throw e;
+        }
+        local.push(p);
+    }
+
+    /**
+     * Return the number of idle objects held by all threads.
+     *
+     * @return the number of idle objects
+     */
+    @Override
+    public int getNumIdle() {
+        int numIdle = 0;
+        for (final LocalPool local : allLocalPools) {
+            numIdle += local.publishedNumIdle.get();
+        }
+        return numIdle;
+    }
+
+    /**
+     * Return the number of borrowed objects, including those returned by a
+     * thread other than the owning thread that the owning thread has not yet
+     * processed.
+     *
+     * @return the number of borrowed objects
+     */
+    @Override
+    public int getNumActive() {
+        int numActive = 0;
+        for (final LocalPool local : allLocalPools) {
+            numActive += local.publishedNumActive.get();
+        }
+        return numActive;
+    }
+
+    /**
+     * This pool never waits.
+     *
+     * @return zero
+     */
+    @Override
+    public int getNumWaiters() {
+        return 0;
+    }
+
+    /**
+     * Destroys the idle objects of the calling thread and of threads that
+     * have terminated, and asks every other thread to destroy its idle
+     * objects the next time it uses the pool.
+     */
+    @Override
+    public void clear() {
+        clearRequests.incrementAndGet();
+        reapTerminatedThreads();
+        final LocalPool local = localPools.get();
+        local.maintain();
+    }
+
+    /**
+     * Closes the pool. Once the pool is closed, {@link #borrowObject()} will
+     * fail with IllegalStateException, but {@link #returnObject(Object)} and
+     * {@link #invalidateObject(Object)} will continue to work, with returned
+     * objects destroyed on return.
+     * <p>
+     * Idle objects are destroyed as described for {@link #clear()}. A live
+     * thread that does not use the pool again keeps its idle objects until
+     * it terminates. They are then destroyed by the next call to
+     * {@link #clear()}, which remains available once the pool is closed, or
+     * left to the garbage collector without being destroyed.
+     */
+    @Override
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+        closeLock.lock();
+        try {
+            if (isClosed()) {
+                return;
+            }
+            startEvictor(-1L);
+            closed = true;
+            clear();
+            localPools.remove();
+            jmxUnregister();
+        } finally {
+            closeLock.unlock();
+        }
+    }
+
+    /**
+     * Destroys the idle objects of threads that have terminated.
+     */
+    @Override
+    public void evict() {
+        reapTerminatedThreads();
+    }
+
+    @Override
+    void ensureMinIdle() {
+        // Idle objects are not created in advance
+    }
+
+    /**
+     * Asks every thread to destroy its idle objects the next time it uses the
+     * pool.
+     *
+     * @return zero, as objects are destroyed later by their owning threads
+     */
+    @Override
+    int trimIdle() {
+        clearRequests.incrementAndGet();
+        reapTerminatedThreads();
+        return 0;
+    }
+
+    @Override
+    PoolStatistics createStatisticsSnapshot() {
+        return createStatisticsSnapshot(getNumActive(), getNumIdle(), 0);
+    }
+
+    @Override
+    public boolean isAbandonedConfig() {
+        return false;
+    }
+
+    @Override
+    public boolean getLogAbandoned() {
+        return false;
+    }
+
+    @Override
+    public boolean getRemoveAbandonedOnBorrow() {
+        return false;
+    }
+
+    @Override
+    public boolean getRemoveAbandonedOnMaintenance() {
+        return false;
+    }
+
+    @Override
+    public int getRemoveAbandonedTimeout() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Return the type - including the specific type rather than the generic -
+     * of the factory.
+     *
+     * @return A string representation of the factory type
+     */
+    @Override
+    public String getFactoryType() {
+        // Not thread safe. Accept that there may be multiple evaluations.
+        if (factoryType == null) {
+            final StringBuilder result = new StringBuilder();
+            result.append(factory.getClass().getName());
+            result.append('<');
+            final Class<?> pooledObjectType =
+                    PoolImplUtils.getFactoryType(factory.getClass());
+            result.append(pooledObjectType.getName());
+            result.append('>');
+            factoryType = result.toString();
+        }
+        return factoryType;
+    }
+
+    /**
+     * Provides information on all the objects in the pool, both idle (waiting
+     * to be borrowed) and active (currently borrowed).
+     *
+     * @return Information grouped on all the objects in the pool
+     */
+    @Override
+    public Set<DefaultPooledObjectInfo> listAllObjects() {
+        final Set<DefaultPooledObjectInfo> result =
+                new HashSet<DefaultPooledObjectInfo>(allObjects.size());
+        for (final Tracked tracked : allObjects.values()) {
+            result.add(new DefaultPooledObjectInfo(tracked.pooledObject));
+        }
+        return result;
+    }
+
+    /**
+     * Provides information on a bounded number of the objects in the pool,
+     * both idle and active.
+     *
+     * @param offset    The number of objects to skip
+     * @param limit     The maximum number of objects to report
+     *
+     * @return Information on up to limit objects
+     *
+     * @see GenericObjectPool#listObjects(int, int)
+     */
+    @Override
+    public Set<DefaultPooledObjectInfo> listObjects(final int offset,
+            final int limit) {
+        final Set<DefaultPooledObjectInfo> result =
+                new HashSet<DefaultPooledObjectInfo>();
+        int skip = offset;
+        for (final Tracked tracked : allObjects.values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (skip > 0) {
+                skip--;
+            } else {
+                result.add(new DefaultPooledObjectInfo(tracked.pooledObject));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Destroys the idle objects of threads that have terminated, and any
+     * objects handed to them since.
+     */
+    private void reapTerminatedThreads() {
+        final Iterator<LocalPool> iter = allLocalPools.iterator();
+        while (iter.hasNext()) {
+            final LocalPool local = iter.next();
+            if (!local.thread.isAlive()) {
+                local.reap();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Reserve up to a batch of permits to create objects.
+     *
+     * @return the number of permits reserved, zero if
+     *         {@link #getMaxTotal() maxTotal} has been reached
+     */
+    private int reservePermits() {
+        final int maxTotal = getMaxTotal();
+        while (true) {
+            final int reserved = reservedPermits.get();
+            int n = permitBatchSize(maxTotal);
+            if (maxTotal >= 0) {
+                n = Math.min(n, maxTotal - reserved);
+                if (n <= 0) {
+                    return 0;
+                }
+            }
+            if (reservedPermits.compareAndSet(reserved, reserved + n)) {
+                return n;
+            }
+        }
+    }
+
+    private void releasePermits(final int n) {
+        reservedPermits.addAndGet(-n);
+    }
+
+    /**
+     * A thread reserves an eighth of maxTotal at a time, so that a handful
+     * of threads can share a small pool, and at most 16 permits.
+     */
+    private static int permitBatchSize(final int maxTotal) {
+        if (maxTotal < 0) {
+            return 16;
+        }
+        return Math.max(1, Math.min(16, maxTotal / 8));
+    }
+
+
+    /**
+     * The idle objects and accounting of a single thread. Unless stated
+     * otherwise fields and methods are only used by the owning thread, or
+     * by another thread once the owning thread has terminated.
+     */
+    private class LocalPool {
+        private final Thread thread;
+        /** Idle objects, most recently returned last */
+        private final ArrayList<PooledObject<T>> idle =
+                new ArrayList<PooledObject<T>>();
+        /** Objects returned or invalidated by other threads. Any thread. */
+        private final Queue<PooledObject<T>> handedOver =
+                new ConcurrentLinkedQueue<PooledObject<T>>();
+        /** Set once the thread has terminated. Any thread. */
+        private volatile boolean reaped = false;
+        /** Counts read by other threads. Any thread. */
+        private final AtomicInteger publishedNumIdle = new AtomicInteger(0);
+        private final AtomicInteger publishedNumActive = new AtomicInteger(0);
+        private int numActive = 0;
+        private int permits = 0;
+        private int clearRequestsSeen;
+        private int pendingBorrows = 0;
+        private int pendingReturns = 0;
+
+        LocalPool(final Thread thread) {
+            this.thread = thread;
+            this.clearRequestsSeen = clearRequests.get();
+        }
+
+        /**
+         * Process objects handed over by other threads and requests to clear
+         * the idle objects.
+         */
+        void maintain() {
+            PooledObject<T> p = handedOver.poll();
+            while (p != null) {
+                returned(p);
+                p = handedOver.poll();
+            }
+            final int requests = clearRequests.get();
+            if (requests != clearRequestsSeen || isClosed()) {
+                clearRequestsSeen = requests;
+                clearIdle();
+            }
+            publishCounts();
+        }
+
+        /**
+         * Give a returned or invalidated object to this thread. Any thread.
+         */
+        void handOver(final PooledObject<T> p) {
+            if (thread == Thread.currentThread()) {
+                returned(p);
+                maintain();
+                return;
+            }
+            handedOver.offer(p);
+            if (reaped || !thread.isAlive()) {
+                // The thread has terminated, process the object here
+                reap();
+                allLocalPools.remove(this);
+            }
+        }
+
+        PooledObject<T> pop() {
+            final int size = idle.size();
+            if (size == 0) {
+                return null;
+            }
+            return idle.remove(size - 1);
+        }
+
+        void push(final PooledObject<T> p) {
+            idle.add(p);
+            publishCounts();
+        }
+
+        PooledObject<T> create() throws Exception {
+            if (permits == 0) {
+                permits = reservePermits();
+                if (permits == 0) {
+                    // Terminated threads may still hold permits
+                    reapTerminatedThreads();
+                    permits = reservePermits();
+                }
+                if (permits == 0) {
+                    throw new NoSuchElementException("Pool exhausted");
+                }
+            }
+            permits--;
+            final PooledObject<T> p;
+            try {
+                p = factory.makeObject();
+            } catch (final Exception e) {
+                permits++;
+                throw e;
+            }
+            createdCount.incrementAndGet();
+            allObjects.put(new IdentityWrapper<T>(p.getObject()),
+                    new Tracked(p, this));
+            if (getTestOnCreate() && !validate(p)) {
+                destroyQuietly(p);
+                throw new NoSuchElementException("Unable to validate object");
+            }
+            return p;
+        }
+
+        void borrowed(final PooledObject<T> p) {
+            if (++pendingBorrows >= statisticsBatchSize) {
+                updateStatsBorrow(p, 0, pendingBorrows);
+                pendingBorrows = 0;
+            }
+            publishCounts();
+        }
+
+        /**
+         * Process an object that has been returned or invalidated.
+         */
+        void returned(final PooledObject<T> p) {
+            numActive--;
+            if (p.getState() == PooledObjectState.INVALID) {
+                destroyQuietly(p);
+                return;
+            }
+            if (++pendingReturns >= statisticsBatchSize) {
+                updateStatsReturn(p.getActiveTimeMillis(), pendingReturns);
+                pendingReturns = 0;
+            }
+            final int maxIdleSave = getMaxIdle();
+            if (isClosed() || maxIdleSave > -1 && maxIdleSave <= idle.size() ||
+                    getTestOnReturn() && !validate(p)) {
+                destroyQuietly(p);
+                return;
+            }
+            try {
+                factory.passivateObject(p);
+            } catch (final Exception e) {
+                swallowException(e);
+                destroyQuietly(p);
+                return;
+            }
+            idle.add(p);
+        }
+
+        void clearIdle() {
+            PooledObject<T> p = pop();
+            while (p != null) {
+                destroyQuietly(p);
+                p = pop();
+            }
+            releasePermits(permits);
+            permits = 0;
+            flushStats();
+            if (isClosed()) {
+                localPools.remove();
+                if (numActive == 0) {
+                    // No object can be handed to this thread any more
+                    allLocalPools.remove(this);
+                }
+            }
+        }
+
+        void destroy(final PooledObject<T> p) throws Exception {
+            try {
+                factory.destroyObject(discard(p));
+            } finally {
+                destroyedCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Remove an object from the pool without destroying it.
+         */
+        PooledObject<T> discard(final PooledObject<T> p) {
+            allObjects.remove(new IdentityWrapper<T>(p.getObject()));
+            p.invalidate();
+            permits++;
+            final int batch = permitBatchSize(getMaxTotal());
+            if (permits > batch || reaped) {
+                releasePermits(reaped ? permits : permits - batch);
+                permits = reaped ? 0 : batch;
+            }
+            return p;
+        }
+
+        void destroyQuietly(final PooledObject<T> p) {
+            try {
+                destroy(p);
+            } catch (final Exception e) {
+                swallowException(e);
+            }
+        }
+
+        private boolean validate(final PooledObject<T> p) {
+            try {
+                return factory.validateObject(p);
+            } catch (final Throwable t) {
+                PoolUtils.checkRethrow(t);
+                return false;
+            }
+        }
+
+        void publishCounts() {
+            publishedNumIdle.lazySet(idle.size());
+            publishedNumActive.lazySet(numActive);
+        }
+
+        /**
+         * Destroy the idle objects, and any objects handed over, of a
+         * terminated thread. Any thread.
+         */
+        synchronized void reap() {
+            reaped = true;
+            PooledObject<T> p = handedOver.poll();
+            while (p != null) {
+                numActive--;
+                destroyQuietly(p);
+                p = handedOver.poll();
+            }
+            p = pop();
+            while (p != null) {
+                destroyQuietly(p);
+                p = pop();
+            }
+            releasePermits(permits);
+            permits = 0;
+            flushStats();
+            publishCounts();
+        }
+
+        /**
+         * Count the borrows and returns of the batches that have not filled
+         * up yet.
+         */
+        void flushStats() {
+            if (pendingBorrows > 0) {
+                updateStatsBorrowCount(pendingBorrows);
+                pendingBorrows = 0;
+            }
+            if (pendingReturns > 0) {
+                updateStatsReturnCount(pendingReturns);
+                pendingReturns = 0;
+            }
+        }
+    }
+
+    /**
+     * An object in the pool and the thread that owns it.
+     */
+    private class Tracked {
+        private final PooledObject<T> pooledObject;
+        private final LocalPool owner;
+
+        Tracked(final PooledObject<T> pooledObject, final LocalPool owner) {
+            this.pooledObject = pooledObject;
+            this.owner = owner;
+        }
+    }
+
+    // --- configuration attributes --------------------------------------------
+
+    private volatile int maxIdle = GenericObjectPoolConfig.DEFAULT_MAX_IDLE;
+    private volatile int statisticsBatchSize = DEFAULT_STATISTICS_BATCH_SIZE;
+    private final PooledObjectFactory<T> factory;
+
+
+    // --- internal attributes -------------------------------------------------
+
+    /*
+     * All of the objects currently associated with this pool in any state,
+     * with the thread that owns them. Only updated when objects are created
+     * or destroyed.
+     */
+    private final Map<IdentityWrapper<T>, Tracked> allObjects =
+            new ConcurrentHashMap<IdentityWrapper<T>, Tracked>();
+    private final Queue<LocalPool> allLocalPools =
+            new ConcurrentLinkedQueue<LocalPool>();
+    private final ThreadLocal<LocalPool> localPools = new ThreadLocal<LocalPool>() {
+        @Override
+        protected LocalPool initialValue() {
+            final LocalPool local = new LocalPool(Thread.currentThread());
+            allLocalPools.add(local);
+            return local;
+        }
+    };
+    /* Permits to create objects reserved by all threads */
+    private final AtomicInteger reservedPermits = new AtomicInteger(0);
+    /* Incremented to ask every thread to destroy its idle objects */
+    private final AtomicInteger clearRequests = new AtomicInteger(0);
+    private volatile String factoryType = null;
+
+    // JMX specific attributes
+    private static final String ONAME_BASE =
+        "org.apache.commons.pool2:type=ThreadConfinedObjectPool,name=";
+
+    @Override
+    protected void toStringAppendFields(final StringBuilder builder) {
+        super.toStringAppendFields(builder);
+        builder.append(", factory=");
+        builder.append(factory);
+        builder.append(", maxIdle=");
+        builder.append(maxIdle);
+        builder.append(", statisticsBatchSize=");
+        builder.append(statisticsBatchSize);
+    }
+}
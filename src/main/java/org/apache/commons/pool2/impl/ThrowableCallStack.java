@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import java.io.PrintWriter;
+
+/**
+ * A {@link CallStack} that records the full stack trace, including method
+ * names and line numbers, by means of a {@link Throwable}.
+ * <p>
+ * The JVM only records an internal back trace when the throwable is created;
+ * the {@link StackTraceElement}s are not materialized until the stack trace
+ * is printed.
+ *
+ * @since 2.4.3
+ */
+class ThrowableCallStack implements CallStack {
+
+    private final Throwable snapshot;
+
+    /**
+     * Create a new instance.
+     *
+     * @param snapshot the throwable created at the point the call stack is
+     *                 to be captured
+     */
+    ThrowableCallStack(final Throwable snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public boolean printStackTrace(final PrintWriter writer) {
+        snapshot.printStackTrace(writer);
+        return true;
+    }
+}
@@ -18,7 +18,9 @@ package org.apache.commons.pool2.proxy;
 
 import java.lang.reflect.Method;
 
+import org.apache.commons.pool2.LazyActivation;
 import org.apache.commons.pool2.UsageTracking;
+import org.apache.commons.pool2.UsageTrackingHandles;
 
 /**
  * Base implementation for object wrappers when using a
@@ -32,6 +34,15 @@ class BaseProxyHandler<T> {
 
     private volatile T pooledObject;
     private final UsageTracking<T> usageTracking;
+    private final LazyActivation<T> lazyActivation;
+    private volatile boolean activationPending;
+    private volatile boolean activationFailed;
+    /*
+     * Cached so that uses are reported without the pool looking up the object.
+     * Only replaced by activate() which publishes it by clearing
+     * activationPending.
+     */
+    private UsageTrackingHandles.Handle usageTrackingHandle;
 
 
     /**
@@ -43,8 +54,30 @@ class BaseProxyHandler<T> {
      *                      wrapped object
      */
     BaseProxyHandler(final T pooledObject, final UsageTracking<T> usageTracking) {
+        this(pooledObject, usageTracking, null);
+    }
+
+
+    /**
+     * Create a new wrapper for the given pooled object.
+     *
+     * @param pooledObject  The object to wrap
+     * @param usageTracking The instance, if any (usually the object pool) to
+     *                      be provided with usage tracking information for this
+     *                      wrapped object
+     * @param lazyActivation The instance, if any (usually the object pool) to
+     *                      be used to activate the wrapped object when it is
+     *                      first used
+     *
+     * @since 2.4.3
+     */
+    BaseProxyHandler(final T pooledObject, final UsageTracking<T> usageTracking,
+            final LazyActivation<T> lazyActivation) {
         this.pooledObject = pooledObject;
         this.usageTracking = usageTracking;
+        this.lazyActivation = lazyActivation;
+        this.usageTrackingHandle = getUsageTrackingHandle(pooledObject);
+        this.activationPending = lazyActivation != null;
     }
 
 
@@ -73,16 +106,15 @@ class BaseProxyHandler<T> {
 
 
     /**
-     * Check that the proxy is still valid (i.e. that {@link #disableProxy()}
-     * has not been called).
+     * Has the proxy been disabled because the wrapped object could not be
+     * activated? The pool has then already destroyed the object.
      *
-     * @throws IllegalStateException if {@link #disableProxy()} has been called
+     * @return {@code true} if the lazy activation of the wrapped object failed
+     *
+     * @since 2.4.3
      */
-    void validateProxiedObject() {
-        if (pooledObject == null) {
-            throw new IllegalStateException("This object may no longer be " +
-                    "used as it has been returned to the Object Pool.");
-        }
+    boolean isActivationFailed() {
+        return activationFailed;
     }
 
 
@@ -95,12 +127,81 @@ class BaseProxyHandler<T> {
      * @throws Throwable    If the method invocation fails
      */
     Object doInvoke(final Method method, final Object[] args) throws Throwable {
-        validateProxiedObject();
-        final T object = getPooledObject();
-        if (usageTracking != null) {
+        return method.invoke(getObjectForUse(), args);
+    }
+
+
+    /**
+     * Obtain the wrapped object so that a method may be invoked on it,
+     * checking that the proxy is still valid and providing usage tracking
+     * information if required.
+     *
+     * @return the underlying pooled object
+     * @throws IllegalStateException if {@link #disableProxy()} has been called
+     * @throws Exception if the wrapped object has to be activated and neither
+     *                   it nor a replacement could be
+     */
+    T getObjectForUse() throws Exception {
+        if (activationPending) {
+            activate();
+        }
+        final T object = pooledObject;
+        if (object == null) {
+            throw new IllegalStateException("This object may no longer be " +
+                    "used as it has been returned to the Object Pool.");
+        }
+        final UsageTrackingHandles.Handle handle = usageTrackingHandle;
+        if (handle != null) {
+            handle.use();
+        } else if (usageTracking != null) {
             usageTracking.use(object);
         }
-        return method.invoke(object, args);
+        return object;
+    }
+
+
+    /**
+     * Obtain the handle through which uses of the given object are reported,
+     * if the pool provides one.
+     */
+    @SuppressWarnings("unchecked")
+    private UsageTrackingHandles.Handle getUsageTrackingHandle(final T object) {
+        if (object != null && usageTracking instanceof UsageTrackingHandles) {
+            return ((UsageTrackingHandles<T>) usageTracking).getUsageTrackingHandle(object);
+        }
+        return null;
+    }
+
+
+    /**
+     * Activate the wrapped object the first time the proxy is used. If the
+     * object cannot be activated the pool provides a replacement which is
+     * wrapped instead. If the pool can not provide one, the proxy is disabled
+     * as if it had been returned to the pool.
+     */
+    private synchronized void activate() throws Exception {
+        if (!activationPending) {
+            return;
+        }
+        final T object = pooledObject;
+        if (object != null) {
+            final T activated;
+            try {
+                activated = lazyActivation.activateBorrowedObject(object);
+            } catch (final Exception e) {
+                // The pool has destroyed the object so the proxy is disabled
+                pooledObject = null;
+                usageTrackingHandle = null;
+                activationFailed = true;
+                activationPending = false;
+                throw e;
+            }
+            if (activated != object) {
+                usageTrackingHandle = getUsageTrackingHandle(activated);
+                pooledObject = activated;
+            }
+        }
+        activationPending = false;
     }
 
 
@@ -18,6 +18,7 @@ package org.apache.commons.pool2.proxy;
 
 import java.lang.reflect.Method;
 
+import org.apache.commons.pool2.LazyActivation;
 import org.apache.commons.pool2.UsageTracking;
 
 import net.sf.cglib.proxy.MethodInterceptor;
@@ -46,6 +47,24 @@ class CglibProxyHandler<T> extends BaseProxyHandler<T>
         super(pooledObject, usageTracking);
     }
 
+
+    /**
+     * Create a CGLib proxy instance that activates the wrapped object when
+     * it is first used.
+     *
+     * @param pooledObject  The object to wrap
+     * @param usageTracking The instance, if any (usually the object pool) to
+     *                      be provided with usage tracking information for this
+     *                      wrapped object
+     * @param lazyActivation The instance, if any (usually the object pool) to
+     *                      be used to activate the wrapped object when it is
+     *                      first used
+     */
+    CglibProxyHandler(final T pooledObject, final UsageTracking<T> usageTracking,
+            final LazyActivation<T> lazyActivation) {
+        super(pooledObject, usageTracking, lazyActivation);
+    }
+
     @Override
     public Object intercept(final Object object, final Method method, final Object[] args,
             final MethodProxy methodProxy) throws Throwable {
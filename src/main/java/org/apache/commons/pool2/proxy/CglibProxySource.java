@@ -19,6 +19,7 @@ package org.apache.commons.pool2.proxy;
 import net.sf.cglib.proxy.Enhancer;
 import net.sf.cglib.proxy.Factory;
 
+import org.apache.commons.pool2.LazyActivation;
 import org.apache.commons.pool2.UsageTracking;
 
 /**
@@ -31,6 +32,11 @@ import org.apache.commons.pool2.UsageTracking;
 public class CglibProxySource<T> implements ProxySource<T> {
 
     private final Class<? extends T> superclass;
+    /**
+     * The first proxy created. Further proxies are created from it so that
+     * the proxy class is only looked up once.
+     */
+    private volatile Factory prototype = null;
 
     /**
      * Create a new proxy source for the given class.
@@ -43,17 +49,36 @@ public class CglibProxySource<T> implements ProxySource<T> {
 
     @Override
     public T createProxy(final T pooledObject, final UsageTracking<T> usageTracking) {
-        final Enhancer enhancer = new Enhancer();
-        enhancer.setSuperclass(superclass);
+        return createProxy(pooledObject, usageTracking, null);
+    }
 
+    /**
+     * @since 2.4.3
+     */
+    @Override
+    public T createProxy(final T pooledObject, final UsageTracking<T> usageTracking,
+            final LazyActivation<T> lazyActivation) {
         final CglibProxyHandler<T> proxyInterceptor =
-                new CglibProxyHandler<T>(pooledObject, usageTracking);
+                new CglibProxyHandler<T>(pooledObject, usageTracking, lazyActivation);
+
+        final Factory factory = prototype;
+        if (factory != null) {
+            @SuppressWarnings("unchecked")
+            final
+            T proxy = (T) factory.newInstance(proxyInterceptor);
+            return proxy;
+        }
+
+        final Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(superclass);
         enhancer.setCallback(proxyInterceptor);
 
         @SuppressWarnings("unchecked")
         final
         T proxy = (T) enhancer.create();
 
+        // Concurrent first calls may each set the prototype. Any will do.
+        prototype = (Factory) proxy;
         return proxy;
     }
 
@@ -68,6 +93,18 @@ public class CglibProxySource<T> implements ProxySource<T> {
         return pooledObject;
     }
 
+    /**
+     * @since 2.4.3
+     */
+    @Override
+    public boolean isActivationFailed(final T proxy) {
+        @SuppressWarnings("unchecked")
+        final
+        CglibProxyHandler<T> cglibProxyHandler =
+                (CglibProxyHandler<T>) ((Factory) proxy).getCallback(0);
+        return cglibProxyHandler.isActivationFailed();
+    }
+
     /**
      * @since 2.4.3
      */
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.proxy;
+
+import org.apache.commons.pool2.LazyActivation;
+import org.apache.commons.pool2.UsageTracking;
+
+/**
+ * The base class of the proxies created by {@link GeneratedProxySource}. The
+ * proxy classes are generated at runtime and defined in their own class
+ * loader so this class has to be public. It is not intended to be used
+ * directly.
+ *
+ * @param <T> type of the wrapped pooled object
+ *
+ * @since 2.4.3
+ */
+public abstract class GeneratedProxy<T> extends BaseProxyHandler<T> {
+
+    /**
+     * Create a new proxy for the given pooled object.
+     *
+     * @param pooledObject  The object to wrap
+     * @param usageTracking The instance, if any (usually the object pool) to
+     *                      be provided with usage tracking information for this
+     *                      wrapped object
+     * @param lazyActivation The instance, if any (usually the object pool) to
+     *                      be used to activate the wrapped object when it is
+     *                      first used
+     */
+    protected GeneratedProxy(final T pooledObject, final UsageTracking<T> usageTracking,
+            final LazyActivation<T> lazyActivation) {
+        super(pooledObject, usageTracking, lazyActivation);
+    }
+
+
+    /**
+     * Obtain the wrapped object so that a method may be invoked on it. Called
+     * by every generated method.
+     *
+     * @return the underlying pooled object
+     * @throws IllegalStateException if the proxy has been disabled
+     * @throws Exception if the wrapped object could not be activated
+     */
+    protected final T getProxiedTarget() throws Exception {
+        return getObjectForUse();
+    }
+
+
+    /**
+     * Create a new instance of the generated proxy class.
+     *
+     * @param pooledObject  The object to wrap
+     * @param usageTracking The instance, if any (usually the object pool) to
+     *                      be provided with usage tracking information for this
+     *                      wrapped object
+     * @param lazyActivation The instance, if any (usually the object pool) to
+     *                      be used to activate the wrapped object when it is
+     *                      first used
+     *
+     * @return the new proxy
+     */
+    protected abstract GeneratedProxy<T> newProxyInstance(T pooledObject,
+            UsageTracking<T> usageTracking, LazyActivation<T> lazyActivation);
+}
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.proxy;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool2.LazyActivation;
+import org.apache.commons.pool2.UsageTracking;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Provides proxy objects for a set of interfaces using classes generated at
+ * runtime. Each generated method calls the corresponding method of the
+ * wrapped object directly so, unlike {@link JdkProxySource} and
+ * {@link CglibProxySource}, no reflection is used and no arguments are boxed
+ * when a method is invoked on a proxy. Exceptions thrown by the wrapped object
+ * are propagated unchanged.
+ * <p>
+ * The proxy class is generated when the proxy source is created and requires
+ * the optional ASM library. The interfaces must be public.
+ *
+ * @param <T> type of the pooled object to be proxied
+ *
+ * @since 2.4.3
+ */
+public class GeneratedProxySource<T> implements ProxySource<T> {
+
+    private static final AtomicLong CLASS_COUNT = new AtomicLong(0);
+
+    private static final String PROXY_NAME = Type.getInternalName(GeneratedProxy.class);
+    private static final String PARAMETERS_DESCRIPTOR =
+            "(Ljava/lang/Object;" + Type.getDescriptor(UsageTracking.class) +
+            Type.getDescriptor(LazyActivation.class) + ")";
+    private static final String CONSTRUCTOR_DESCRIPTOR = PARAMETERS_DESCRIPTOR + "V";
+    private static final String NEW_INSTANCE_DESCRIPTOR =
+            PARAMETERS_DESCRIPTOR + "L" + PROXY_NAME + ";";
+    private static final String GET_TARGET_DESCRIPTOR = "()Ljava/lang/Object;";
+
+    private final ClassLoader classLoader;
+    private final Class<?>[] interfaces;
+    /** Disabled instance of the generated class used to create proxies. */
+    private final GeneratedProxy<T> prototype;
+
+
+    /**
+     * Create a new proxy source for the given interfaces.
+     *
+     * @param classLoader The class loader from which the interfaces are
+     *                    visible
+     * @param interfaces  The interfaces to proxy
+     *
+     * @throws IllegalArgumentException if any of the interfaces is not a
+     *         public interface
+     */
+    public GeneratedProxySource(final ClassLoader classLoader, final Class<?>[] interfaces) {
+        this.classLoader = classLoader;
+        // Defensive copy
+        this.interfaces = new Class<?>[interfaces.length];
+        System.arraycopy(interfaces, 0, this.interfaces, 0, interfaces.length);
+        this.prototype = createPrototype(generateProxyClass());
+    }
+
+
+    @Override
+    public T createProxy(final T pooledObject, final UsageTracking<T> usageTracking) {
+        return createProxy(pooledObject, usageTracking, null);
+    }
+
+
+    /**
+     * @since 2.4.3
+     */
+    @Override
+    public T createProxy(final T pooledObject, final UsageTracking<T> usageTracking,
+            final LazyActivation<T> lazyActivation) {
+        @SuppressWarnings("unchecked")
+        final
+        T proxy = (T) prototype.newProxyInstance(pooledObject, usageTracking,
+                lazyActivation);
+        return proxy;
+    }
+
+
+    @Override
+    public T resolveProxy(final T proxy) {
+        @SuppressWarnings("unchecked")
+        final
+        GeneratedProxy<T> generatedProxy = (GeneratedProxy<T>) proxy;
+        final T pooledObject = generatedProxy.disableProxy();
+        return pooledObject;
+    }
+
+
+    /**
+     * @since 2.4.3
+     */
+    @Override
+    public boolean isActivationFailed(final T proxy) {
+        @SuppressWarnings("unchecked")
+        final
+        GeneratedProxy<T> generatedProxy = (GeneratedProxy<T>) proxy;
+        return generatedProxy.isActivationFailed();
+    }
+
+
+    private GeneratedProxy<T> createPrototype(final Class<?> proxyClass) {
+        try {
+            @SuppressWarnings("unchecked")
+            final
+            GeneratedProxy<T> result = (GeneratedProxy<T>) proxyClass.getConstructor(
+                    Object.class, UsageTracking.class, LazyActivation.class).newInstance(
+                    null, null, null);
+            return result;
+        } catch (final Exception e) {
+            throw new IllegalStateException(
+                    "Unable to instantiate generated proxy class", e);
+        }
+    }
+
+
+    /**
+     * Generate a subclass of {@link GeneratedProxy} that implements the
+     * interfaces by calling the wrapped object. The methods of
+     * {@link Object} that a {@link java.lang.reflect.Proxy} forwards to its
+     * handler are forwarded to the wrapped object too.
+     */
+    private Class<?> generateProxyClass() {
+        final String className = GeneratedProxy.class.getName() + "$$" +
+                CLASS_COUNT.incrementAndGet();
+        final String internalName = className.replace('.', '/');
+
+        final Map<String,Method> methods = new LinkedHashMap<String,Method>();
+        try {
+            addMethod(methods, Object.class.getMethod("equals", Object.class));
+            addMethod(methods, Object.class.getMethod("hashCode"));
+            addMethod(methods, Object.class.getMethod("toString"));
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        final String[] interfaceNames = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            final Class<?> iface = interfaces[i];
+            if (!iface.isInterface() || !isAccessible(iface)) {
+                throw new IllegalArgumentException(iface.getName() +
+                        " is not a public interface");
+            }
+            interfaceNames[i] = Type.getInternalName(iface);
+            for (final Method method : iface.getMethods()) {
+                if (!Modifier.isStatic(method.getModifiers())) {
+                    addMethod(methods, method);
+                }
+            }
+        }
+
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_6,
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+                internalName, null, PROXY_NAME, interfaceNames);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>",
+                CONSTRUCTOR_DESCRIPTOR, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitVarInsn(Opcodes.ALOAD, 3);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, PROXY_NAME, "<init>",
+                CONSTRUCTOR_DESCRIPTOR);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "newProxyInstance",
+                NEW_INSTANCE_DESCRIPTOR, null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, internalName);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitVarInsn(Opcodes.ALOAD, 3);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, internalName, "<init>",
+                CONSTRUCTOR_DESCRIPTOR);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (final Method method : methods.values()) {
+            generateMethod(cw, internalName, method);
+        }
+        cw.visitEnd();
+
+        return new ProxyClassLoader(classLoader).defineProxyClass(className,
+                cw.toByteArray());
+    }
+
+
+    private static void addMethod(final Map<String,Method> methods, final Method method) {
+        final String descriptor = Type.getMethodDescriptor(method);
+        if (method.getName().equals("getProxiedTarget") &&
+                descriptor.equals(GET_TARGET_DESCRIPTOR) ||
+                method.getName().equals("newProxyInstance") &&
+                descriptor.equals(NEW_INSTANCE_DESCRIPTOR)) {
+            throw new IllegalArgumentException("Method " + method +
+                    " clashes with a method of " + GeneratedProxy.class.getName());
+        }
+        // Methods with the same name and descriptor need only be generated
+        // once. Methods that differ only in return type are all generated.
+        final String key = method.getName() + descriptor;
+        if (!methods.containsKey(key)) {
+            methods.put(key, method);
+        }
+    }
+
+
+    /**
+     * Generate a method that obtains the wrapped object from the proxy and
+     * calls the same method on it.
+     */
+    private static void generateMethod(final ClassWriter cw, final String internalName,
+            final Method method) {
+        final String descriptor = Type.getMethodDescriptor(method);
+        final Class<?>[] exceptionTypes = method.getExceptionTypes();
+        final String[] exceptions = new String[exceptionTypes.length];
+        for (int i = 0; i < exceptionTypes.length; i++) {
+            exceptions[i] = Type.getInternalName(exceptionTypes[i]);
+        }
+        final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL,
+                method.getName(), descriptor, null, exceptions);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, internalName,
+                "getProxiedTarget", GET_TARGET_DESCRIPTOR);
+        final Class<?> owner = method.getDeclaringClass();
+        final String ownerName = Type.getInternalName(owner);
+        if (owner != Object.class) {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, ownerName);
+        }
+        int slot = 1;
+        for (final Type argumentType : Type.getArgumentTypes(descriptor)) {
+            mv.visitVarInsn(argumentType.getOpcode(Opcodes.ILOAD), slot);
+            slot += argumentType.getSize();
+        }
+        mv.visitMethodInsn(owner == Object.class ? Opcodes.INVOKEVIRTUAL :
+                Opcodes.INVOKEINTERFACE, ownerName, method.getName(), descriptor);
+        mv.visitInsn(Type.getReturnType(descriptor).getOpcode(Opcodes.IRETURN));
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+
+    /*
+     * The generated class is defined in another class loader so the
+     * interfaces have to be accessible outside of their package. Protected
+     * member interfaces are public in the class file.
+     */
+    private static boolean isAccessible(final Class<?> iface) {
+        final int modifiers = iface.getModifiers();
+        return Modifier.isPublic(modifiers) || Modifier.isProtected(modifiers);
+    }
+
+
+    /**
+     * @since 2.4.3
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("GeneratedProxySource [classLoader=");
+        builder.append(classLoader);
+        builder.append(", interfaces=");
+        builder.append(Arrays.toString(interfaces));
+        builder.append("]");
+        return builder.toString();
+    }
+
+
+    /**
+     * Defines a generated proxy class. The interfaces are loaded from the
+     * class loader provided to the proxy source and the pool classes the
+     * generated class refers to from the class loader of the pool.
+     */
+    private static class ProxyClassLoader extends ClassLoader {
+
+        ProxyClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(final String name, final boolean resolve)
+                throws ClassNotFoundException {
+            if (name.equals(GeneratedProxy.class.getName())) {
+                return GeneratedProxy.class;
+            }
+            if (name.equals(UsageTracking.class.getName())) {
+                return UsageTracking.class;
+            }
+            if (name.equals(LazyActivation.class.getName())) {
+                return LazyActivation.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        Class<?> defineProxyClass(final String name, final byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
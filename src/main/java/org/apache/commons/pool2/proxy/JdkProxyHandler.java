@@ -19,6 +19,7 @@ package org.apache.commons.pool2.proxy;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 
+import org.apache.commons.pool2.LazyActivation;
 import org.apache.commons.pool2.UsageTracking;
 
 /**
@@ -44,6 +45,24 @@ class JdkProxyHandler<T> extends BaseProxyHandler<T>
     }
 
 
+    /**
+     * Create a Java reflection proxy instance that activates the wrapped object when
+     * it is first used.
+     *
+     * @param pooledObject  The object to wrap
+     * @param usageTracking The instance, if any (usually the object pool) to
+     *                      be provided with usage tracking information for this
+     *                      wrapped object
+     * @param lazyActivation The instance, if any (usually the object pool) to
+     *                      be used to activate the wrapped object when it is
+     *                      first used
+     */
+    JdkProxyHandler(final T pooledObject, final UsageTracking<T> usageTracking,
+            final LazyActivation<T> lazyActivation) {
+        super(pooledObject, usageTracking, lazyActivation);
+    }
+
+
     @Override
     public Object invoke(final Object proxy, final Method method, final Object[] args)
             throws Throwable {
@@ -19,6 +19,7 @@ package org.apache.commons.pool2.proxy;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
 
+import org.apache.commons.pool2.LazyActivation;
 import org.apache.commons.pool2.UsageTracking;
 
 /**
@@ -50,10 +51,20 @@ public class JdkProxySource<T> implements ProxySource<T> {
 
     @Override
     public T createProxy(final T pooledObject, final UsageTracking<T> usageTracking) {
+        return createProxy(pooledObject, usageTracking, null);
+    }
+
+
+    /**
+     * @since 2.4.3
+     */
+    @Override
+    public T createProxy(final T pooledObject, final UsageTracking<T> usageTracking,
+            final LazyActivation<T> lazyActivation) {
         @SuppressWarnings("unchecked")
         final
         T proxy = (T) Proxy.newProxyInstance(classLoader, interfaces,
-                new JdkProxyHandler<T>(pooledObject, usageTracking));
+                new JdkProxyHandler<T>(pooledObject, usageTracking, lazyActivation));
         return proxy;
     }
 
@@ -69,6 +80,19 @@ public class JdkProxySource<T> implements ProxySource<T> {
     }
 
 
+    /**
+     * @since 2.4.3
+     */
+    @Override
+    public boolean isActivationFailed(final T proxy) {
+        @SuppressWarnings("unchecked")
+        final
+        JdkProxyHandler<T> jdkProxyHandler =
+                (JdkProxyHandler<T>) Proxy.getInvocationHandler(proxy);
+        return jdkProxyHandler.isActivationFailed();
+    }
+
+
     /**
      * @since 2.4.3
      */
@@ -18,6 +18,7 @@ package org.apache.commons.pool2.proxy;
 
 import java.util.NoSuchElementException;
 
+import org.apache.commons.pool2.LazyActivation;
 import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.UsageTracking;
 
@@ -35,6 +36,7 @@ public class ProxiedObjectPool<T> implements ObjectPool<T> {
 
     private final ObjectPool<T> pool;
     private final ProxySource<T> proxySource;
+    private final LazyActivation<T> lazyActivation;
 
 
     /**
@@ -44,8 +46,42 @@ public class ProxiedObjectPool<T> implements ObjectPool<T> {
      * @param proxySource The source of the proxy objects
      */
     public ProxiedObjectPool(final ObjectPool<T> pool, final ProxySource<T> proxySource) {
+        this(pool, proxySource, false);
+    }
+
+
+    /**
+     * Create a new proxied object pool that optionally defers the activation
+     * of borrowed objects until a method is first called on the proxy.
+     * Objects that are borrowed and returned without being used are then
+     * neither activated nor passivated. If activation fails on first use,
+     * the object is destroyed and the proxy wraps a replacement borrowed from
+     * the pool.
+     *
+     * @param pool  The object pool to wrap
+     * @param proxySource The source of the proxy objects
+     * @param lazyActivation {@code true} to activate objects when they are
+     *                       first used rather than when they are borrowed
+     *
+     * @throws IllegalArgumentException if {@code lazyActivation} is
+     *         {@code true} and the pool does not implement
+     *         {@link LazyActivation}
+     *
+     * @since 2.4.3
+     */
+    @SuppressWarnings("unchecked")
+    public ProxiedObjectPool(final ObjectPool<T> pool, final ProxySource<T> proxySource,
+            final boolean lazyActivation) {
         this.pool = pool;
         this.proxySource = proxySource;
+        if (!lazyActivation) {
+            this.lazyActivation = null;
+        } else if (pool instanceof LazyActivation) {
+            this.lazyActivation = (LazyActivation<T>) pool;
+        } else {
+            throw new IllegalArgumentException(
+                    "The pool does not support lazy activation");
+        }
     }
 
 
@@ -59,6 +95,11 @@ public class ProxiedObjectPool<T> implements ObjectPool<T> {
         if (pool instanceof UsageTracking) {
             usageTracking = (UsageTracking<T>) pool;
         }
+        if (lazyActivation != null) {
+            final T pooledObject = lazyActivation.borrowInactiveObject();
+            return proxySource.createProxy(pooledObject, usageTracking,
+                    lazyActivation);
+        }
         final T pooledObject = pool.borrowObject();
         final T proxy = proxySource.createProxy(pooledObject, usageTracking);
         return proxy;
@@ -68,6 +109,10 @@ public class ProxiedObjectPool<T> implements ObjectPool<T> {
     @Override
     public void returnObject(final T proxy) throws Exception {
         final T pooledObject = proxySource.resolveProxy(proxy);
+        if (pooledObject == null && proxySource.isActivationFailed(proxy)) {
+            // Already destroyed by the pool when the activation failed
+            return;
+        }
         pool.returnObject(pooledObject);
     }
 
@@ -75,6 +120,10 @@ public class ProxiedObjectPool<T> implements ObjectPool<T> {
     @Override
     public void invalidateObject(final T proxy) throws Exception {
         final T pooledObject = proxySource.resolveProxy(proxy);
+        if (pooledObject == null && proxySource.isActivationFailed(proxy)) {
+            // Already destroyed by the pool when the activation failed
+            return;
+        }
         pool.invalidateObject(pooledObject);
     }
 
@@ -120,6 +169,8 @@ public class ProxiedObjectPool<T> implements ObjectPool<T> {
         builder.append(pool);
         builder.append(", proxySource=");
         builder.append(proxySource);
+        builder.append(", lazyActivation=");
+        builder.append(lazyActivation != null);
         builder.append("]");
         return builder.toString();
     }
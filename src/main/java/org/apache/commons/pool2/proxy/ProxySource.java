@@ -16,6 +16,7 @@
  */
 package org.apache.commons.pool2.proxy;
 
+import org.apache.commons.pool2.LazyActivation;
 import org.apache.commons.pool2.UsageTracking;
 
 /**
@@ -40,6 +41,25 @@ interface ProxySource<T> {
      */
     T createProxy(T pooledObject, UsageTracking<T> usageTracking);
 
+    /**
+     * Create a new proxy object, wrapping the given pooled object which is
+     * activated when the proxy is first used.
+     *
+     * @param pooledObject  The object to wrap
+     * @param usageTracking The instance, if any (usually the object pool) to
+     *                      be provided with usage tracking information for this
+     *                      wrapped object
+     * @param lazyActivation The instance, if any (usually the object pool) to
+     *                      be used to activate the wrapped object when it is
+     *                      first used
+     *
+     * @return the new proxy object
+     *
+     * @since 2.4.3
+     */
+    T createProxy(T pooledObject, UsageTracking<T> usageTracking,
+            LazyActivation<T> lazyActivation);
+
     /**
      * Obtain the wrapped object from the given proxy.
      *
@@ -48,4 +68,17 @@ interface ProxySource<T> {
      * @return The pooled object wrapped by the given proxy
      */
     T resolveProxy(T proxy);
+
+    /**
+     * Determine whether the given proxy was disabled because the lazy
+     * activation of the object it wrapped failed, in which case the pool has
+     * already destroyed that object.
+     *
+     * @param proxy The proxy object
+     *
+     * @return {@code true} if the lazy activation of the wrapped object failed
+     *
+     * @since 2.4.3
+     */
+    boolean isActivationFailed(T proxy);
 }
@@ -21,7 +21,9 @@ import static org.junit.Assert.*;
 import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.SlotArrayObjectPool;
 import org.apache.commons.pool2.impl.SoftReferenceObjectPool;
+import org.apache.commons.pool2.impl.ThreadConfinedObjectPool;
 import org.apache.commons.pool2.PoolUtils;
 import org.junit.Test;
 
@@ -181,6 +183,10 @@ public abstract class TestObjectPool {
         }
         if (pool instanceof GenericObjectPool) {
             ((GenericObjectPool<Object>) pool).setTestOnBorrow(true);
+        } else if (pool instanceof SlotArrayObjectPool) {
+            ((SlotArrayObjectPool<Object>) pool).setTestOnBorrow(true);
+        } else if (pool instanceof ThreadConfinedObjectPool) {
+            ((ThreadConfinedObjectPool<Object>) pool).setTestOnBorrow(true);
         }
         final List<MethodCall> expectedMethods = new ArrayList<MethodCall>();
         Object obj;
@@ -31,6 +31,7 @@ import javax.management.ObjectName;
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.TrackedUse;
+import org.apache.commons.pool2.UsageTrackingHandles;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -285,6 +286,112 @@ public class TestAbandonedObjectPool {
         Assert.assertTrue(baos.toString().indexOf("Pooled object") >= 0);
     }
 
+    /**
+     * Objects borrowed before abandoned object removal is enabled must still
+     * be found.
+     */
+    @Test(timeout=60000)
+    public void testRemoveAbandonedEnabledAfterBorrow() throws Exception {
+        pool.setAbandonedConfig(null);
+        pool.setMaxTotal(1);
+        final PooledTestObject o1 = pool.borrowObject();
+
+        pool.setAbandonedConfig(abandonedConfig);
+        Thread.sleep(1200);
+        final PooledTestObject o2 = pool.borrowObject(5000);
+
+        Assert.assertTrue(o1.isDestroyed());
+        pool.returnObject(o2);
+    }
+
+    /**
+     * Objects that have been used since they were borrowed are only removed
+     * once they have not been used for the abandoned timeout.
+     */
+    @Test(timeout=60000)
+    public void testRemoveAbandonedAfterUse() throws Exception {
+        abandonedConfig.setUseUsageTracking(true);
+        pool.setAbandonedConfig(abandonedConfig);
+        pool.setMaxTotal(3);
+
+        final PooledTestObject o1 = pool.borrowObject();
+        final PooledTestObject o2 = pool.borrowObject();
+        Thread.sleep(700);
+        pool.use(o1);
+        Thread.sleep(700);
+
+        final PooledTestObject o3 = pool.borrowObject();
+        Assert.assertTrue(o2.isDestroyed());
+        Assert.assertFalse(o1.isDestroyed());
+
+        Thread.sleep(700);
+        final PooledTestObject o4 = pool.borrowObject();
+        Assert.assertTrue(o1.isDestroyed());
+        Assert.assertFalse(o3.isDestroyed());
+
+        pool.returnObject(o3);
+        pool.returnObject(o4);
+    }
+
+    /**
+     * Uses within the usage tracking granularity of the last recorded use are
+     * not recorded, whether they are reported directly or through a handle.
+     * The first use after a borrow is always recorded.
+     */
+    @Test(timeout=60000)
+    public void testUsageTrackingGranularity() throws Exception {
+        abandonedConfig.setUseUsageTracking(true);
+        abandonedConfig.setUsageTrackingGranularityMillis(5000);
+        pool.setAbandonedConfig(abandonedConfig);
+        pool.setMaxTotal(4);
+
+        final PooledTestObject o1 = pool.borrowObject();
+        final PooledTestObject o2 = pool.borrowObject();
+        final PooledTestObject o3 = pool.borrowObject();
+        final UsageTrackingHandles.Handle handle = pool.getUsageTrackingHandle(o1);
+        Assert.assertNotNull(handle);
+        handle.use();
+        pool.use(o2);
+        Thread.sleep(700);
+        handle.use();
+        pool.use(o2);
+        pool.use(o3);
+        Thread.sleep(700);
+
+        final PooledTestObject o4 = pool.borrowObject();
+        Assert.assertTrue(o1.isDestroyed());
+        Assert.assertTrue(o2.isDestroyed());
+        Assert.assertFalse(o3.isDestroyed());
+        pool.returnObject(o3);
+        pool.returnObject(o4);
+    }
+
+    /**
+     * A use reported directly right after a borrow is recorded even if the
+     * previous borrower used the object within the usage tracking
+     * granularity.
+     */
+    @Test(timeout=60000)
+    public void testUsageTrackingGranularityAfterReborrow() throws Exception {
+        abandonedConfig.setUseUsageTracking(true);
+        abandonedConfig.setUsageTrackingGranularityMillis(5000);
+        pool.setAbandonedConfig(abandonedConfig);
+        pool.setMaxTotal(2);
+
+        final PooledTestObject obj = pool.borrowObject();
+        pool.use(obj);
+        pool.returnObject(obj);
+        Assert.assertSame(obj, pool.borrowObject());
+        Thread.sleep(700);
+        pool.use(obj);
+        Thread.sleep(700);
+        // Not abandoned as the use after the second borrow was recorded
+        final PooledTestObject other = pool.borrowObject();
+        Assert.assertFalse(obj.isDestroyed());
+        pool.returnObject(obj);
+        pool.returnObject(other);
+    }
+
     class ConcurrentBorrower extends Thread {
         private final ArrayList<PooledTestObject> _borrowed;
 
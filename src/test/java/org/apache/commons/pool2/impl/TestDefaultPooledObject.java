@@ -17,7 +17,9 @@
 package org.apache.commons.pool2.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -28,6 +30,37 @@ import org.junit.Test;
 
 public class TestDefaultPooledObject {
 
+    @Test
+    public void testSoftenAndHarden() {
+        final Object obj = new Object();
+        final DefaultPooledObject<Object> dpo = new DefaultPooledObject<Object>(obj);
+        Assert.assertFalse(dpo.isSoft());
+        Assert.assertFalse(dpo.harden());
+        Assert.assertTrue(dpo.soften());
+        Assert.assertFalse(dpo.soften());
+        Assert.assertTrue(dpo.isSoft());
+        // Strongly reachable from this test so can not have been reclaimed
+        Assert.assertSame(obj, dpo.getObject());
+        Assert.assertTrue(dpo.harden());
+        Assert.assertFalse(dpo.isSoft());
+        Assert.assertSame(obj, dpo.getObject());
+    }
+
+    @Test
+    public void testReclaimedObjectLookup() {
+        final Object obj = new Object();
+        final DefaultPooledObject<Object> dpo = new DefaultPooledObject<Object>(obj);
+        final Map<BaseGenericObjectPool.IdentityWrapper<Object>, Object> map =
+                new HashMap<BaseGenericObjectPool.IdentityWrapper<Object>, Object>();
+        map.put(BaseGenericObjectPool.IdentityWrapper.forPooledObject(dpo), dpo);
+        Assert.assertTrue(dpo.soften());
+        final int hash = dpo.getSoftObjectIdentityHash();
+        Assert.assertEquals(System.identityHashCode(obj), hash);
+        // Found without the wrapped object, as once it has been reclaimed
+        Assert.assertSame(dpo, map.remove(
+                BaseGenericObjectPool.IdentityWrapper.forReclaimedObject(dpo, hash)));
+    }
+
     /**
      * JIRA: POOL-279
      * @throws Exception
@@ -133,4 +133,55 @@ public class TestDefaultPooledObjectInfo {
 
         Assert.assertTrue(lastBorrowTrace.startsWith(AbandonedObjectCreatedException.class.getName()));
     }
+
+    @Test
+    public void testGetLastBorrowTraceCallerClassesOnly() throws Exception {
+        final AbandonedConfig abandonedConfig = new AbandonedConfig();
+        abandonedConfig.setLogAbandoned(true);
+        abandonedConfig.setRequireFullStackTrace(false);
+        final GenericObjectPool<String> pool = new GenericObjectPool<String>(
+                new SimpleFactory(),
+                new GenericObjectPoolConfig(),
+                abandonedConfig);
+
+        pool.borrowObject();
+
+        final DefaultPooledObjectInfo s1Info = pool.listAllObjects().iterator().next();
+        final String lastBorrowTrace = s1Info.getLastBorrowTrace();
+
+        Assert.assertTrue(lastBorrowTrace, lastBorrowTrace.startsWith("Pooled object created"));
+        Assert.assertTrue(lastBorrowTrace, lastBorrowTrace.contains(
+                "\tat " + GenericObjectPool.class.getName() + System.getProperty("line.separator")));
+        Assert.assertTrue(lastBorrowTrace, lastBorrowTrace.contains(
+                "\tat " + TestDefaultPooledObjectInfo.class.getName() + System.getProperty("line.separator")));
+        Assert.assertFalse(lastBorrowTrace, lastBorrowTrace.contains(
+                DefaultPooledObject.class.getName()));
+        pool.close();
+    }
+
+    @Test
+    public void testGetLastBorrowTraceSampled() throws Exception {
+        final AbandonedConfig abandonedConfig = new AbandonedConfig();
+        abandonedConfig.setLogAbandoned(true);
+        abandonedConfig.setStackTraceSamplingInterval(2);
+        final GenericObjectPool<String> pool = new GenericObjectPool<String>(
+                new SimpleFactory(),
+                new GenericObjectPoolConfig(),
+                abandonedConfig);
+
+        String s1 = pool.borrowObject();
+        Assert.assertTrue(pool.listAllObjects().iterator().next()
+                .getLastBorrowTrace().startsWith(AbandonedObjectCreatedException.class.getName()));
+        pool.returnObject(s1);
+
+        // Second borrow of the same object is not sampled
+        s1 = pool.borrowObject();
+        Assert.assertEquals("", pool.listAllObjects().iterator().next().getLastBorrowTrace());
+        pool.returnObject(s1);
+
+        pool.borrowObject();
+        Assert.assertTrue(pool.listAllObjects().iterator().next()
+                .getLastBorrowTrace().startsWith(AbandonedObjectCreatedException.class.getName()));
+        pool.close();
+    }
 }
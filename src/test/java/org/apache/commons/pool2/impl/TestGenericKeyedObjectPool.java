@@ -21,6 +21,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -29,7 +30,12 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
@@ -47,6 +53,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 
 import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
 import org.apache.commons.pool2.KeyedObjectPool;
@@ -2288,6 +2295,559 @@ public class TestGenericKeyedObjectPool extends TestKeyedObjectPool {
     }
 
 
+    /**
+     * Idle instances within a key's guaranteed share must not be destroyed to
+     * make room for a key that is already beyond its share.
+     *
+     * @throws Exception May occur in some failure modes
+     */
+    @Test(timeout=60000)
+    public void testCapacityShareProtectsGuaranteedIdle() throws Exception {
+        pool.setMaxTotal(4);
+        pool.setMaxTotalPerKey(4);
+        pool.setBlockWhenExhausted(false);
+        pool.setCapacityShare("b", 2, 1);
+        assertEquals(2, pool.getGuaranteedShare("b"));
+        assertEquals(1, pool.getShareWeight("a"));
+
+        final String b1 = pool.borrowObject("b");
+        final String b2 = pool.borrowObject("b");
+        pool.returnObject("b", b1);
+        pool.returnObject("b", b2);
+
+        final String a1 = pool.borrowObject("a");
+        final String a2 = pool.borrowObject("a");
+        try {
+            pool.borrowObject("a");
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // Expected - "b" idle instances are within its share
+        }
+        assertEquals(2, pool.getNumIdle("b"));
+
+        // Without the share, clearOldest() frees the "b" idle instances
+        pool.removeCapacityShare("b");
+        final String a3 = pool.borrowObject("a");
+        assertEquals(1, pool.getNumIdle("b"));
+
+        pool.returnObject("a", a1);
+        pool.returnObject("a", a2);
+        pool.returnObject("a", a3);
+    }
+
+    /**
+     * A key below its guaranteed share reclaims capacity from a key beyond its
+     * share as instances are returned.
+     *
+     * @throws Exception May occur in some failure modes
+     */
+    @Test(timeout=60000)
+    public void testCapacityShareReclaimedOnReturn() throws Exception {
+        pool.setMaxTotal(2);
+        pool.setMaxTotalPerKey(2);
+        pool.setMaxWaitMillis(5000);
+        pool.setCapacityShare("b", 1, 1);
+
+        final String a1 = pool.borrowObject("a");
+        final String a2 = pool.borrowObject("a");
+
+        final WaitingTestThread thread = new WaitingTestThread(pool, "b", 100);
+        thread.start();
+        Thread.sleep(100);
+
+        pool.returnObject("a", a1);
+        thread.join();
+        assertEquals(null, thread._thrown);
+        assertEquals(0, pool.getNumIdle("a"));
+        assertEquals(1, pool.getNumActive("a"));
+
+        pool.returnObject("a", a2);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCapacityShareInvalidWeight() {
+        pool.setCapacityShare("a", 1, 0);
+    }
+
+    @Test(timeout=60000)
+    public void testKeyEquivalence() throws Exception {
+        pool.setKeyEquivalence(new KeyEquivalence<String>() {
+            @Override
+            public Collection<String> getEquivalentKeys(final String key) {
+                return Arrays.asList("a", "b", "c");
+            }
+        });
+        pool.addObject("b");
+        pool.addObject("c");
+        final String b0 = pool.borrowObject("b");
+        pool.addObject("b");
+
+        // "b" has an active instance so the idle instance of "c" is preferred
+        final String c = pool.borrowObject("a");
+        assertEquals("c1", c);
+        assertEquals(0, pool.getNumIdle("c"));
+        assertEquals(1, pool.getNumActive("c"));
+        assertEquals(0, pool.getNumActive("a"));
+
+        final String b = pool.borrowObject("a");
+        assertEquals("b2", b);
+
+        // No idle instances left so a new instance is created for "a"
+        final String a = pool.borrowObject("a");
+        assertEquals("a3", a);
+
+        // Returned under the requested key but associated with the origin key
+        pool.returnObject("a", c);
+        assertEquals(1, pool.getNumIdle("c"));
+        assertEquals(0, pool.getNumIdle("a"));
+        pool.invalidateObject("a", b);
+        assertEquals(1, pool.getNumActive("b"));
+        pool.returnObject("a", a);
+        assertEquals(1, pool.getNumIdle("a"));
+        pool.returnObject("b", b0);
+    }
+
+    @Test(timeout=60000)
+    public void testKeyLinger() throws Exception {
+        pool.setTimeBetweenEvictionRunsMillis(Long.MAX_VALUE);
+        pool.setKeyLingerTimeMillis(Long.MAX_VALUE);
+        final String a = pool.borrowObject("a");
+        pool.invalidateObject("a", a);
+        // The sub-pool of "a" is retained although it has no instances
+        assertTrue(pool.getNumActivePerKey().containsKey("a"));
+        pool.evict();
+        assertTrue(pool.getNumActivePerKey().containsKey("a"));
+
+        pool.setKeyLingerTimeMillis(1);
+        Thread.sleep(20);
+        pool.evict();
+        assertFalse(pool.getNumActivePerKey().containsKey("a"));
+
+        // Without the evictor sub-pools are removed immediately
+        pool.setTimeBetweenEvictionRunsMillis(-1);
+        pool.setKeyLingerTimeMillis(Long.MAX_VALUE);
+        final String b = pool.borrowObject("b");
+        pool.invalidateObject("b", b);
+        assertFalse(pool.getNumActivePerKey().containsKey("b"));
+    }
+
+    @Test(timeout=60000)
+    public void testMaxKeyIdleTime() throws Exception {
+        pool.setMaxKeyIdleTimeMillis(50);
+        pool.addObject("a");
+        pool.addObject("a");
+        pool.addObject("b");
+        final String b = pool.borrowObject("b");
+        Thread.sleep(100);
+        pool.evict();
+
+        // "a" has expired, "b" has an instance checked out
+        assertEquals(0, pool.getNumIdle("a"));
+        assertEquals(2, pool.getDestroyedCount());
+        assertFalse(pool.getNumActivePerKey().containsKey("a"));
+        assertEquals(1, pool.getNumActive("b"));
+        pool.returnObject("b", b);
+        pool.evict();
+        assertEquals(1, pool.getNumIdle("b"));
+    }
+
+    @Test(timeout=60000)
+    public void testParallelEviction() throws Exception {
+        pool.setEvictionConcurrency(3);
+        pool.setNumTestsPerEvictionRun(2);
+        pool.setMinEvictableIdleTimeMillis(50);
+        final String[] keys = { "a", "b", "c", "d", "e" };
+        for (final String key : keys) {
+            for (int i = 0; i < 3; i++) {
+                pool.addObject(key);
+            }
+        }
+        Thread.sleep(100);
+        pool.evict();
+
+        // numTestsPerEvictionRun applies to each key
+        for (final String key : keys) {
+            assertEquals(1, pool.getNumIdle(key));
+        }
+        EvictionRunStats stats = pool.getLastEvictionRunStats();
+        assertEquals(5, stats.getKeyCount());
+        assertEquals(10, stats.getTestedCount());
+        assertEquals(10, stats.getDestroyedCount());
+        assertEquals(10, pool.getDestroyedByEvictorCount());
+
+        pool.setMinIdlePerKey(3);
+        pool.ensureMinIdle();
+        for (final String key : keys) {
+            assertEquals(3, pool.getNumIdle(key));
+        }
+        stats = pool.getLastMinIdleRunStats();
+        assertEquals(5, stats.getKeyCount());
+        assertEquals(10, stats.getCreatedCount());
+
+        final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        final CompositeData data = (CompositeData) mbs.getAttribute(
+                pool.getJmxName(), "LastMinIdleRunStats");
+        assertEquals(Integer.valueOf(10), data.get("createdCount"));
+    }
+
+    @Test(timeout=60000)
+    public void testEvictionRunStats() throws Exception {
+        assertNull(pool.getLastEvictionRunStats());
+        pool.setMinEvictableIdleTimeMillis(50);
+        pool.setNumTestsPerEvictionRun(3);
+        pool.addObject("a");
+        pool.addObject("b");
+        Thread.sleep(100);
+        pool.evict();
+        final EvictionRunStats stats = pool.getLastEvictionRunStats();
+        assertEquals(2, stats.getKeyCount());
+        assertEquals(2, stats.getTestedCount());
+        assertEquals(2, stats.getDestroyedCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidEvictionConcurrency() {
+        pool.setEvictionConcurrency(0);
+    }
+
+    @Test(timeout=60000)
+    public void testMinIdleDirtyKeys() throws Exception {
+        pool.setMinIdlePerKey(2);
+        pool.addObject("a");
+        pool.addObject("a");
+        pool.addObject("b");
+        pool.addObject("b");
+        // All keys are examined after minIdlePerKey has been set
+        pool.ensureMinIdle();
+        assertEquals(2, pool.getLastMinIdleRunStats().getKeyCount());
+        assertEquals(0, pool.getLastMinIdleRunStats().getCreatedCount());
+
+        // Only the key that was borrowed from is examined
+        final String a = pool.borrowObject("a");
+        pool.ensureMinIdle();
+        assertEquals(1, pool.getLastMinIdleRunStats().getKeyCount());
+        assertEquals(1, pool.getLastMinIdleRunStats().getCreatedCount());
+        assertEquals(2, pool.getNumIdle("a"));
+
+        pool.ensureMinIdle();
+        assertEquals(0, pool.getLastMinIdleRunStats().getKeyCount());
+        pool.returnObject("a", a);
+    }
+
+    @Test(timeout=60000)
+    public void testMinIdleDirtyKeysAfterFailure() throws Exception {
+        pool.setMinIdlePerKey(1);
+        pool.addObject("a");
+        pool.addObject("b");
+        pool.ensureMinIdle();
+        final String a = pool.borrowObject("a");
+        final String b = pool.borrowObject("b");
+        factory.exceptionOnCreate = true;
+        try {
+            pool.ensureMinIdle();
+            fail("Expected exception");
+        } catch (final Exception e) {
+            // expected
+        }
+        // Every key is still marked after the failed run
+        factory.exceptionOnCreate = false;
+        pool.ensureMinIdle();
+        assertEquals(2, pool.getLastMinIdleRunStats().getKeyCount());
+        assertEquals(1, pool.getNumIdle("a"));
+        assertEquals(1, pool.getNumIdle("b"));
+        pool.returnObject("a", a);
+        pool.returnObject("b", b);
+    }
+
+    @Test(timeout=60000)
+    public void testReplenishMinIdleImmediately() throws Exception {
+        pool.setMinIdlePerKey(2);
+        pool.setReplenishMinIdleImmediately(true);
+        final String a = pool.borrowObject("a");
+        while (pool.getNumIdle("a") < 2) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, pool.getCreatedCount());
+        pool.returnObject("a", a);
+    }
+
+    @Test(timeout=60000)
+    public void testKeyStatistics() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            pool.returnObject("a", pool.borrowObject("a"));
+        }
+        factory.setMakeLatency(60);
+        pool.returnObject("b", pool.borrowObject("b"));
+        factory.setMakeLatency(0);
+
+        final KeyStatistics a = pool.getKeyStatistics("a");
+        assertEquals("a", a.getKey());
+        assertEquals(3, a.getBorrowedCount());
+        assertEquals(1, a.getCreatedCount());
+        assertNull(pool.getKeyStatistics("c"));
+
+        final List<KeyStatistics> slowest = pool.getTopKeysByCreateTime(1);
+        assertEquals(1, slowest.size());
+        assertEquals("b", slowest.get(0).getKey());
+        assertTrue(slowest.get(0).getP99CreateTimeMillis() >= 50);
+        assertTrue(slowest.get(0).getP99BorrowWaitTimeMillis() >= 50);
+        assertEquals("b", pool.getTopKeysByBorrowWaitTime(2).get(0).getKey());
+
+        // Keep "a" in the pool while its other objects are destroyed
+        final String active = pool.borrowObject("a");
+        pool.addObject("a");
+        pool.setTestOnBorrow(true);
+        factory.setValidationEnabled(true);
+        factory.setValid(false);
+        try {
+            pool.borrowObject("a");
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // expected
+        }
+        final KeyStatistics failed =
+                pool.getTopKeysByBorrowValidationFailures(1).get(0);
+        assertEquals("a", failed.getKey());
+        assertEquals(2, failed.getDestroyedByBorrowValidationCount());
+        assertEquals(2, failed.getDestroyedCount());
+
+        final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        final CompositeData[] top = (CompositeData[]) mbs.invoke(
+                pool.getJmxName(), "getTopKeysByCreateTime",
+                new Object[] { Integer.valueOf(1) }, new String[] { "int" });
+        assertEquals("b", top[0].get("key"));
+        pool.returnObject("a", active);
+    }
+
+    @Test(timeout=60000)
+    public void testLockStatistics() throws Exception {
+        final GenericKeyedObjectPoolConfig config =
+                new GenericKeyedObjectPoolConfig();
+        config.setLockStatisticsSamplingInterval(1);
+        pool.close();
+        pool = new GenericKeyedObjectPool<String, String>(factory, config);
+        assertEquals(1, pool.getLockStatisticsSamplingInterval());
+
+        final String a = pool.borrowObject("a");
+        pool.returnObject("b", pool.borrowObject("b"));
+        pool.returnObject("a", a);
+
+        final Map<String,LockStatistics> byName =
+                new HashMap<String,LockStatistics>();
+        for (final LockStatistics stats : pool.getLockStatistics()) {
+            assertEquals(stats.getAcquisitionCount(), stats.getSampledCount());
+            byName.put(stats.getName(), stats);
+        }
+        // Each borrow registers and each return deregisters the key
+        final LockStatistics keyLock = byName.get("keyLock");
+        assertTrue(keyLock.getAcquisitionCount() >= 2);
+        assertTrue(keyLock.getHoldTimeNanos() >= 0);
+        assertEquals(4, byName.get("makeObjectCountLock").getAcquisitionCount());
+        assertTrue(byName.get("idleObjects").getAcquisitionCount() >= 4);
+
+        pool.setLockStatisticsSamplingInterval(0);
+        pool.returnObject("a", pool.borrowObject("a"));
+        for (final LockStatistics stats : pool.getLockStatistics()) {
+            assertEquals(0, stats.getSamplingInterval());
+            assertEquals(byName.get(stats.getName()).getAcquisitionCount(),
+                    stats.getAcquisitionCount());
+        }
+    }
+
+    @Test(timeout=60000)
+    public void testCallSiteStatistics() throws Exception {
+        pool.setCallSiteSamplingInterval(2);
+        final String held = pool.borrowObject("a", "slow");
+        Thread.sleep(100);
+        pool.returnObject("a", held);
+        pool.returnObject("b", pool.borrowObject("b", "fast"));
+        // Only one of these is sampled
+        pool.returnObject("a", pool.borrowObject("a"));
+        pool.returnObject("a", pool.borrowObject("a"));
+
+        final List<CallSiteStatistics> top = pool.listTopCallSitesByHoldTime(10);
+        assertEquals(3, top.size());
+        assertEquals("slow", top.get(0).getName());
+        assertTrue(top.get(0).getTotalHoldTimeMillis() >= 50);
+        final String caller = getClass().getName() + ".testCallSiteStatistics";
+        boolean sampled = false;
+        for (final CallSiteStatistics stats : top) {
+            if (stats.getName().equals(caller)) {
+                assertEquals(1, stats.getBorrowCount());
+                sampled = true;
+            }
+        }
+        assertTrue(sampled);
+        assertEquals(2, pool.getCallSiteSamplingInterval());
+    }
+
+    @Test(timeout=60000)
+    public void testFlightRecorder() throws Exception {
+        final GenericKeyedObjectPoolConfig config =
+                new GenericKeyedObjectPoolConfig();
+        config.setFlightRecorderSize(16);
+        config.setMaxTotalPerKey(1);
+        config.setMaxWaitMillis(10);
+        pool.close();
+        pool = new GenericKeyedObjectPool<String, String>(factory, config);
+        assertEquals(16, pool.getFlightRecorderSize());
+
+        final String a = pool.borrowObject("a");
+        try {
+            pool.borrowObject("a");
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // expected
+        }
+        pool.returnObject("a", a);
+
+        final List<PoolEvent> events = pool.listRecentEvents();
+        assertEquals(4, events.size());
+        assertEquals(PoolEvent.Type.CREATE, events.get(0).getType());
+        assertEquals(PoolEvent.Type.BORROW, events.get(1).getType());
+        assertEquals(PoolEvent.Type.TIMEOUT, events.get(2).getType());
+        assertEquals(PoolEvent.Type.RETURN, events.get(3).getType());
+        for (final PoolEvent event : events) {
+            assertEquals("a", event.getKey());
+        }
+        assertEquals(0, events.get(2).getObjectIdentity());
+        assertEquals(3, pool.listEventsBeforeLastTimeout().size());
+    }
+
+    @Test(timeout=60000)
+    public void testVisitKeys() throws Exception {
+        final String a1 = pool.borrowObject("a");
+        final String b1 = pool.borrowObject("b");
+        final String b2 = pool.borrowObject("b");
+        pool.addObject("c");
+
+        final Map<String,Integer> counts = new HashMap<String,Integer>();
+        pool.visitKeys(new KeyVisitor<String>() {
+            @Override
+            public boolean visit(final String key, final int numActive,
+                    final int numIdle, final int numWaiters) {
+                counts.put(key, Integer.valueOf(numActive * 10 + numIdle));
+                return true;
+            }
+        });
+        assertEquals(Integer.valueOf(10), counts.get("a"));
+        assertEquals(Integer.valueOf(20), counts.get("b"));
+        assertEquals(Integer.valueOf(1), counts.get("c"));
+
+        final Map<String,Integer> top = pool.listTopKeysByNumActive(2);
+        assertEquals(2, top.size());
+        assertEquals("b", top.keySet().iterator().next());
+        assertEquals(Integer.valueOf(2), top.get("b"));
+        assertEquals(Integer.valueOf(1), top.get("a"));
+
+        final AtomicInteger visited = new AtomicInteger(0);
+        pool.visitAllObjects(new KeyedPooledObjectVisitor<String,String>() {
+            @Override
+            public boolean visit(final String key, final PooledObject<String> p) {
+                assertTrue(p.getObject().startsWith(key));
+                visited.incrementAndGet();
+                return true;
+            }
+        });
+        assertEquals(4, visited.get());
+
+        int listed = 0;
+        for (int offset = 0; offset < 4; offset += 3) {
+            for (final List<DefaultPooledObjectInfo> list :
+                    pool.listObjects(offset, 3).values()) {
+                listed += list.size();
+            }
+        }
+        assertEquals(4, listed);
+
+        pool.returnObject("a", a1);
+        pool.returnObject("b", b1);
+        pool.returnObject("b", b2);
+    }
+
+    @Test(timeout=60000)
+    public void testSoftReferenceIdleObjects() throws Exception {
+        final List<DefaultPooledObject<Object>> wrappers =
+                new ArrayList<DefaultPooledObject<Object>>();
+        final GenericKeyedObjectPool<String, Object> softPool =
+                new GenericKeyedObjectPool<String, Object>(
+                        new BaseKeyedPooledObjectFactory<String, Object>() {
+            @Override
+            public Object create(final String key) {
+                return new Object();
+            }
+            @Override
+            public PooledObject<Object> wrap(final Object value) {
+                final DefaultPooledObject<Object> p =
+                        new DefaultPooledObject<Object>(value);
+                wrappers.add(p);
+                return p;
+            }
+        });
+        try {
+            softPool.setSoftReferenceIdleObjects(true);
+            softPool.setMinIdlePerKey(1);
+            softPool.setTestWhileIdle(true);
+            softPool.setNumTestsPerEvictionRun(4);
+
+            final Object a1 = softPool.borrowObject("a");
+            final Object a2 = softPool.borrowObject("a");
+            final Object b1 = softPool.borrowObject("b");
+            softPool.returnObject("a", a1);
+            softPool.returnObject("a", a2);
+            softPool.returnObject("b", b1);
+            assertEquals(3, softPool.getNumIdle());
+            // Only the object beyond minIdlePerKey for "a" is softly held
+            assertEquals(1, countSoft(wrappers));
+
+            softPool.evict();
+            assertEquals(3, softPool.getNumIdle());
+            assertEquals(1, countSoft(wrappers));
+
+            final Object a3 = softPool.borrowObject("a");
+            final Object a4 = softPool.borrowObject("a");
+            assertTrue(a3 == a1 || a3 == a2);
+            assertTrue(a4 == a1 || a4 == a2);
+            assertEquals(0, countSoft(wrappers));
+            softPool.returnObject("a", a3);
+            softPool.returnObject("a", a4);
+            assertEquals(1, countSoft(wrappers));
+
+            softPool.clear("a");
+            assertEquals(1, softPool.getNumIdle());
+            assertEquals(2, softPool.getDestroyedCount());
+            assertEquals(0, countSoft(wrappers));
+        } finally {
+            softPool.close();
+        }
+    }
+
+    private static int countSoft(final List<DefaultPooledObject<Object>> wrappers) {
+        int count = 0;
+        for (final DefaultPooledObject<Object> p : wrappers) {
+            if (p.isSoft()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test(timeout=60000)
+    public void testStatisticsSnapshot() throws Exception {
+        final String a = pool.borrowObject("a");
+        pool.addObject("a");
+        pool.addObject("b");
+        final PoolStatistics stats = pool.getStatisticsSnapshot();
+        assertEquals(1, stats.getNumActive());
+        assertEquals(2, stats.getNumIdle());
+        assertEquals(3, stats.getCreatedCount());
+        assertEquals(3, pool.getStatisticsSnapshot(true).getCreatedCount());
+        pool.returnObject("a", a);
+        assertEquals(0, pool.getStatisticsSnapshot(true).getCreatedCount());
+        assertEquals(1, pool.getStatisticsSnapshot().getReturnedCount());
+    }
+
+
     private static class DummyFactory
             extends BaseKeyedPooledObjectFactory<Object,Object> {
         @Override
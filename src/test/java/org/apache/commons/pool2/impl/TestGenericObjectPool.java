@@ -27,18 +27,23 @@ import static org.junit.Assert.fail;
 import java.lang.management.ManagementFactory;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.ObjectPool;
@@ -2501,6 +2506,306 @@ public class TestGenericObjectPool extends TestBaseObjectPool {
         Assert.assertEquals(0, pool.getNumIdle());
     }
 
+    @Test(timeout=60000)
+    public void testVisitAllObjects() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            pool.addObject();
+        }
+        final String active = pool.borrowObject();
+        final AtomicInteger visited = new AtomicInteger(0);
+        pool.visitAllObjects(new PooledObjectVisitor<String>() {
+            @Override
+            public boolean visit(final PooledObject<String> p) {
+                return visited.incrementAndGet() < 3;
+            }
+        });
+        assertEquals(3, visited.get());
+
+        final Set<DefaultPooledObjectInfo> first = pool.listObjects(0, 3);
+        final Set<DefaultPooledObjectInfo> second = pool.listObjects(3, 3);
+        assertEquals(3, first.size());
+        assertEquals(2, second.size());
+        final Set<String> names = new HashSet<String>();
+        for (final DefaultPooledObjectInfo info : first) {
+            names.add(info.getPooledObjectToString());
+        }
+        for (final DefaultPooledObjectInfo info : second) {
+            names.add(info.getPooledObjectToString());
+        }
+        assertEquals(5, names.size());
+        assertEquals(0, pool.listObjects(5, 3).size());
+        pool.returnObject(active);
+    }
+
+    @Test(timeout=60000)
+    public void testStatisticsSnapshot() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            pool.returnObject(pool.borrowObject());
+        }
+        final String active = pool.borrowObject();
+        pool.addObject();
+
+        PoolStatistics stats = pool.getStatisticsSnapshot();
+        assertEquals(1, stats.getNumActive());
+        assertEquals(1, stats.getNumIdle());
+        assertEquals(0, stats.getNumWaiters());
+        assertEquals(4, stats.getBorrowedCount());
+        assertEquals(3, stats.getReturnedCount());
+        assertEquals(2, stats.getCreatedCount());
+        assertEquals(0, stats.getIntervalMillis());
+
+        // The first delta covers the lifetime of the pool
+        stats = pool.getStatisticsSnapshot(true);
+        assertEquals(4, stats.getBorrowedCount());
+        pool.returnObject(active);
+        pool.returnObject(pool.borrowObject());
+        stats = pool.getStatisticsSnapshot(true);
+        assertEquals(1, stats.getBorrowedCount());
+        assertEquals(2, stats.getReturnedCount());
+        assertEquals(0, stats.getCreatedCount());
+        assertEquals(0, stats.getNumActive());
+        assertEquals(2, stats.getNumIdle());
+
+        final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        final CompositeData data = (CompositeData) mbs.getAttribute(
+                pool.getJmxName(), "StatisticsSnapshot");
+        assertEquals(Long.valueOf(5), data.get("borrowedCount"));
+        final CompositeData delta = (CompositeData) mbs.invoke(
+                pool.getJmxName(), "getStatisticsSnapshot",
+                new Object[] { Boolean.TRUE }, new String[] { "boolean" });
+        assertEquals(Long.valueOf(0), delta.get("borrowedCount"));
+    }
+
+    @Test(timeout=60000)
+    public void testConcurrentStatisticsDeltas() throws Exception {
+        final AtomicLong borrowed = new AtomicLong(0);
+        final AtomicBoolean negative = new AtomicBoolean(false);
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 500; j++) {
+                            pool.returnObject(pool.borrowObject());
+                            final PoolStatistics stats =
+                                    pool.getStatisticsSnapshot(true);
+                            if (stats.getBorrowedCount() < 0 ||
+                                    stats.getReturnedCount() < 0) {
+                                negative.set(true);
+                            }
+                            borrowed.addAndGet(stats.getBorrowedCount());
+                        }
+                    } catch (final Exception e) {
+                        negative.set(true);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(negative.get());
+        // The deltas account for every borrow exactly once
+        assertEquals(2000, borrowed.get() +
+                pool.getStatisticsSnapshot(true).getBorrowedCount());
+    }
+
+    @Test(timeout=60000)
+    public void testLockStatistics() throws Exception {
+        pool.returnObject(pool.borrowObject());
+        for (final LockStatistics stats : pool.getLockStatistics()) {
+            assertEquals(0, stats.getSamplingInterval());
+            assertEquals(0, stats.getAcquisitionCount());
+        }
+
+        pool.setLockStatisticsSamplingInterval(1);
+        for (int i = 0; i < 3; i++) {
+            pool.returnObject(pool.borrowObject());
+        }
+        pool.returnObject(pool.borrowObject());
+        final String a = pool.borrowObject();
+        final String b = pool.borrowObject();
+        pool.returnObject(a);
+        pool.returnObject(b);
+        pool.evict();
+
+        final Map<String,LockStatistics> byName =
+                new HashMap<String,LockStatistics>();
+        for (final LockStatistics stats : pool.getLockStatistics()) {
+            assertEquals(1, stats.getSamplingInterval());
+            assertEquals(stats.getAcquisitionCount(), stats.getSampledCount());
+            assertTrue(stats.getContendedCount() <= stats.getSampledCount());
+            byName.put(stats.getName(), stats);
+        }
+        assertTrue(byName.get("idleObjects").getAcquisitionCount() >= 12);
+        // One creation needs the lock twice
+        assertEquals(2, byName.get("makeObjectCountLock").getAcquisitionCount());
+        assertEquals(1, byName.get("evictionLock").getAcquisitionCount());
+        assertEquals(0, byName.get("closeLock").getAcquisitionCount());
+
+        pool.setLockStatisticsSamplingInterval(4);
+        final long acquisitions =
+                byName.get("idleObjects").getAcquisitionCount();
+        final long sampled = byName.get("idleObjects").getSampledCount();
+        for (int i = 0; i < 20; i++) {
+            pool.returnObject(pool.borrowObject());
+        }
+        for (final LockStatistics stats : pool.getLockStatistics()) {
+            if (stats.getName().equals("idleObjects")) {
+                final long newAcquisitions =
+                        stats.getAcquisitionCount() - acquisitions;
+                assertTrue(newAcquisitions >= 40);
+                assertEquals(newAcquisitions / 4,
+                        stats.getSampledCount() - sampled, 1);
+            }
+        }
+
+        final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(Integer.valueOf(4), mbs.getAttribute(pool.getJmxName(),
+                "LockStatisticsSamplingInterval"));
+        final CompositeData[] data = (CompositeData[]) mbs.getAttribute(
+                pool.getJmxName(), "LockStatistics");
+        assertEquals(pool.getLockStatistics().size(), data.length);
+    }
+
+    @Test(timeout=60000)
+    public void testFlightRecorder() throws Exception {
+        assertEquals(0, pool.getFlightRecorderSize());
+        pool.returnObject(pool.borrowObject());
+        assertEquals(0, pool.listRecentEvents().size());
+
+        pool.setFlightRecorderSize(4);
+        pool.setMaxTotal(1);
+        pool.setMaxWaitMillis(10);
+        final String obj = pool.borrowObject();
+        try {
+            pool.borrowObject();
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // expected
+        }
+        List<PoolEvent> events = pool.listEventsBeforeLastTimeout();
+        assertEquals(2, events.size());
+        assertEquals(PoolEvent.Type.BORROW, events.get(0).getType());
+        assertEquals(System.identityHashCode(obj),
+                events.get(0).getObjectIdentity());
+        assertEquals(Thread.currentThread().getId(),
+                events.get(0).getThreadId());
+        assertEquals(PoolEvent.Type.TIMEOUT, events.get(1).getType());
+        assertTrue(events.get(1).getDurationMillis() >= 10);
+        assertNull(events.get(1).getKey());
+
+        pool.returnObject(obj);
+        pool.invalidateObject(pool.borrowObject());
+        pool.borrowObject();
+        // Only the four most recent events are retained
+        events = pool.listRecentEvents();
+        assertEquals(4, events.size());
+        assertEquals(PoolEvent.Type.BORROW, events.get(0).getType());
+        assertEquals(PoolEvent.Type.DESTROY, events.get(1).getType());
+        assertEquals(PoolEvent.Type.CREATE, events.get(2).getType());
+        assertEquals(PoolEvent.Type.BORROW, events.get(3).getType());
+        for (int i = 1; i < events.size(); i++) {
+            assertEquals(events.get(i - 1).getSequence() + 1,
+                    events.get(i).getSequence());
+        }
+        // The captured events are unaffected
+        assertEquals(2, pool.listEventsBeforeLastTimeout().size());
+
+        final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        final CompositeData[] data = (CompositeData[]) mbs.invoke(
+                pool.getJmxName(), "listRecentEvents", null, null);
+        assertEquals(4, data.length);
+        assertEquals("BORROW", data[3].get("type"));
+
+        pool.setFlightRecorderSize(0);
+        assertEquals(0, pool.listRecentEvents().size());
+    }
+
+    @Test(timeout=60000)
+    public void testCallSiteStatistics() throws Exception {
+        assertEquals(0, pool.getCallSiteSamplingInterval());
+        pool.returnObject(pool.borrowObject("ignored"));
+        assertEquals(0, pool.listTopCallSitesByHoldTime(10).size());
+
+        pool.setCallSiteSamplingInterval(1);
+        final String held = pool.borrowObject("slow");
+        Thread.sleep(100);
+        pool.returnObject(held);
+        pool.returnObject(pool.borrowObject("fast"));
+        pool.invalidateObject(pool.borrowObject("fast"));
+        pool.returnObject(pool.borrowObject());
+
+        List<CallSiteStatistics> top = pool.listTopCallSitesByHoldTime(10);
+        assertEquals(3, top.size());
+        assertEquals("slow", top.get(0).getName());
+        assertEquals("slow", top.get(0).getStack());
+        assertEquals(1, top.get(0).getBorrowCount());
+        assertEquals(1, top.get(0).getHoldCount());
+        assertTrue(top.get(0).getTotalHoldTimeMillis() >= 50);
+        assertEquals(1, pool.listTopCallSitesByHoldTime(1).size());
+        final String caller = getClass().getName() + ".testCallSiteStatistics";
+        boolean sampled = false;
+        for (final CallSiteStatistics stats : top) {
+            if (stats.getName().equals("fast")) {
+                // Invalidated objects count as held
+                assertEquals(2, stats.getBorrowCount());
+                assertEquals(2, stats.getHoldCount());
+            } else if (stats.getName().equals(caller)) {
+                assertTrue(stats.getStack(), stats.getStack().endsWith(";" + caller));
+                sampled = true;
+            }
+        }
+        assertTrue(sampled);
+
+        pool.setMaxTotal(1);
+        final String obj = pool.borrowObject("holder");
+        final Thread returner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e) {
+                    // ignore
+                }
+                pool.returnObject(obj);
+            }
+        };
+        returner.start();
+        pool.returnObject(pool.borrowObject("waiter"));
+        returner.join();
+        top = pool.listTopCallSitesByWaitTime(10);
+        assertEquals("waiter", top.get(0).getName());
+        assertTrue(top.get(0).getMaxWaitTimeMillis() >= 50);
+        assertTrue(findCollapsedStackTotal(
+                pool.listCallSiteWaitTimeStacks(), "waiter") >= 50);
+        assertTrue(findCollapsedStackTotal(
+                pool.listCallSiteHoldTimeStacks(), "slow") >= 50);
+
+        final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        final CompositeData[] data = (CompositeData[]) mbs.invoke(
+                pool.getJmxName(), "listTopCallSitesByHoldTime",
+                new Object[] { Integer.valueOf(2) }, new String[] { "int" });
+        assertEquals(2, data.length);
+
+        pool.setCallSiteSamplingInterval(0);
+        assertEquals(0, pool.listTopCallSitesByWaitTime(10).size());
+        assertEquals(0, pool.listCallSiteHoldTimeStacks().size());
+    }
+
+    private static long findCollapsedStackTotal(final List<String> lines,
+            final String stack) {
+        for (final String line : lines) {
+            if (line.startsWith(stack + " ")) {
+                return Long.parseLong(line.substring(stack.length() + 1));
+            }
+        }
+        fail("No collapsed stack " + stack + " in " + lines);
+        return -1;
+    }
+
     private static final class DummyFactory
             extends BasePooledObjectFactory<Object> {
         @Override
@@ -2571,6 +2876,85 @@ public class TestGenericObjectPool extends TestBaseObjectPool {
         }
     }
 
+    @Test(timeout=60000)
+    public void testSoftReferenceIdleObjects() throws Exception {
+        final WrapperRecordingFactory factory = new WrapperRecordingFactory();
+        final GenericObjectPool<Object> softPool =
+                new GenericObjectPool<Object>(factory);
+        try {
+            assertFalse(softPool.getSoftReferenceIdleObjects());
+            softPool.setSoftReferenceIdleObjects(true);
+            softPool.setMinIdle(1);
+            softPool.setTestWhileIdle(true);
+            softPool.setNumTestsPerEvictionRun(3);
+
+            final Set<Object> objects = new HashSet<Object>();
+            final Object[] borrowed = new Object[3];
+            for (int i = 0; i < 3; i++) {
+                borrowed[i] = softPool.borrowObject();
+                objects.add(borrowed[i]);
+            }
+            for (int i = 0; i < 3; i++) {
+                softPool.returnObject(borrowed[i]);
+            }
+            assertEquals(3, softPool.getNumIdle());
+            // Objects beyond minIdle are softly held
+            assertEquals(2, factory.countSoft());
+
+            // Testing while idle does not change how the objects are held
+            softPool.evict();
+            assertEquals(3, softPool.getNumIdle());
+            assertEquals(2, factory.countSoft());
+
+            // Objects are strongly held again when borrowed
+            for (int i = 0; i < 3; i++) {
+                borrowed[i] = softPool.borrowObject();
+                assertTrue(objects.contains(borrowed[i]));
+            }
+            assertEquals(0, factory.countSoft());
+            assertEquals(3, softPool.getCreatedCount());
+            for (int i = 0; i < 3; i++) {
+                softPool.returnObject(borrowed[i]);
+            }
+
+            softPool.clear();
+            assertEquals(0, softPool.getNumIdle());
+            assertEquals(3, softPool.getDestroyedCount());
+        } finally {
+            softPool.close();
+        }
+    }
+
+    /**
+     * Factory that keeps the wrappers it creates so that tests can see how
+     * the pool holds the wrapped objects.
+     */
+    static final class WrapperRecordingFactory
+            extends BasePooledObjectFactory<Object> {
+        private final List<DefaultPooledObject<Object>> wrappers =
+                new ArrayList<DefaultPooledObject<Object>>();
+        @Override
+        public Object create() throws Exception {
+            return new Object();
+        }
+        @Override
+        public synchronized PooledObject<Object> wrap(final Object value) {
+            final DefaultPooledObject<Object> p =
+                    new DefaultPooledObject<Object>(value);
+            wrappers.add(p);
+            return p;
+        }
+        synchronized int countSoft() {
+            int count = 0;
+            for (final DefaultPooledObject<Object> p : wrappers) {
+                if (p.isSoft()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
     @Test
     public void testFailingFactoryDoesNotBlockThreads() throws Exception {
 
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @version $Revision$
+ */
+public class TestHierarchicalKeyedObjectPool {
+
+    /**
+     * Keys of the form "dc/host/db" with the ancestors "dc" and "dc/host".
+     */
+    private static class PathHierarchy implements KeyHierarchy<String> {
+        @Override
+        public List<?> getAncestors(final String key) {
+            final List<String> result = new ArrayList<String>();
+            int pos = key.indexOf('/');
+            while (pos > 0) {
+                result.add(key.substring(0, pos));
+                pos = key.indexOf('/', pos + 1);
+            }
+            return result;
+        }
+    }
+
+    private HierarchicalKeyedObjectPool<String,String> pool = null;
+
+    @Before
+    public void setUp() {
+        pool = new HierarchicalKeyedObjectPool<String,String>(
+                new TestGenericKeyedObjectPool.SimpleFactory<String>(),
+                new PathHierarchy());
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testMaxTotalPerNode() throws Exception {
+        pool.setBlockWhenExhausted(false);
+        pool.setMaxTotalPerNode("dc1/host1", 2);
+        pool.setMaxTotalPerNode("dc1", 3);
+
+        final String a = pool.borrowObject("dc1/host1/a");
+        final String b = pool.borrowObject("dc1/host1/b");
+        try {
+            pool.borrowObject("dc1/host1/c");
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // Expected - host limit reached
+        }
+        final String c = pool.borrowObject("dc1/host2/c");
+        try {
+            pool.borrowObject("dc1/host3/d");
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // Expected - data centre limit reached
+        }
+        final String d = pool.borrowObject("dc2/host1/d");
+
+        assertEquals(3, pool.getNumTotalPerNode("dc1"));
+        assertEquals(2, pool.getNumTotalPerNode("dc1/host1"));
+        assertEquals(1, pool.getNumTotalPerNode("dc2"));
+
+        pool.invalidateObject("dc1/host1/a", a);
+        assertEquals(2, pool.getNumTotalPerNode("dc1"));
+        assertEquals(1, pool.getNumTotalPerNode("dc1/host1"));
+
+        pool.returnObject("dc1/host1/b", b);
+        pool.returnObject("dc1/host2/c", c);
+        pool.returnObject("dc2/host1/d", d);
+    }
+
+    @Test(timeout=60000)
+    public void testIdleInstanceBelowFullNodeIsDestroyed() throws Exception {
+        pool.setBlockWhenExhausted(false);
+        pool.setMaxTotalPerNode("dc1", 1);
+
+        pool.returnObject("dc1/host1/a", pool.borrowObject("dc1/host1/a"));
+        assertEquals(1, pool.getNumIdle("dc1/host1/a"));
+
+        final String b = pool.borrowObject("dc1/host2/b");
+        assertEquals(0, pool.getNumIdle("dc1/host1/a"));
+        assertEquals(1, pool.getNumTotalPerNode("dc1"));
+        pool.returnObject("dc1/host2/b", b);
+    }
+
+    @Test(timeout=60000)
+    public void testWaiterServedByCapacityReleasedBelowNode() throws Exception {
+        pool.setMaxWaitMillis(5000);
+        pool.setMaxTotalPerNode("dc1", 1);
+
+        final String a = pool.borrowObject("dc1/host1/a");
+        final BorrowThread thread = new BorrowThread("dc1/host2/b");
+        thread.start();
+        Thread.sleep(100);
+
+        pool.invalidateObject("dc1/host1/a", a);
+        thread.join();
+        assertNull(thread.thrown);
+        assertEquals(1, pool.getNumTotalPerNode("dc1"));
+        pool.returnObject("dc1/host2/b", thread.borrowed);
+    }
+
+    @Test(timeout=60000)
+    public void testWaiterServedByIdleInstanceBelowFullNode() throws Exception {
+        pool.setMaxWaitMillis(5000);
+        pool.setMaxTotalPerNode("dc1", 1);
+
+        final String a = pool.borrowObject("dc1/host1/a");
+        final BorrowThread thread = new BorrowThread("dc1/host2/b");
+        thread.start();
+        Thread.sleep(100);
+
+        // The node stays full but the idle instance can make room
+        pool.returnObject("dc1/host1/a", a);
+        thread.join();
+        assertNull(thread.thrown);
+        assertEquals(0, pool.getNumIdle("dc1/host1/a"));
+        assertEquals(1, pool.getNumTotalPerNode("dc1"));
+        pool.returnObject("dc1/host2/b", thread.borrowed);
+    }
+
+    private class BorrowThread extends Thread {
+        private final String key;
+        private volatile String borrowed;
+        private volatile Exception thrown;
+
+        public BorrowThread(final String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            try {
+                borrowed = pool.borrowObject(key);
+            } catch (final Exception e) {
+                thrown = e;
+            }
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorNullHierarchy() {
+        new HierarchicalKeyedObjectPool<String,String>(
+                new TestGenericKeyedObjectPool.SimpleFactory<String>(), null);
+    }
+}
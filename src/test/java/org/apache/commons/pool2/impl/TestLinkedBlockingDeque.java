@@ -507,4 +507,52 @@ public class TestLinkedBlockingDeque {
 
         iter.next();
     }
+
+    @Test(timeout=10000)
+    public void testTakeWaiters() throws Exception {
+        deque = new LinkedBlockingDeque<Integer>();
+        assertFalse(deque.hasTakeWaiters());
+        final Thread taker = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    deque.takeFirst();
+                } catch (final InterruptedException e) {
+                    // Ignore
+                }
+            }
+        };
+        taker.start();
+        final Thread poller = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    deque.pollLast(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    // Ignore
+                }
+            }
+        };
+        poller.start();
+        while (deque.getTakeQueueLength() < 2) {
+            Thread.sleep(10);
+        }
+        assertTrue(deque.hasTakeWaiters());
+
+        // The signalled thread no longer counts as waiting
+        deque.add(ONE);
+        assertEquals(1, deque.getTakeQueueLength());
+        while (deque.size() > 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, deque.getTakeQueueLength());
+
+        deque.add(TWO);
+        deque.add(THREE);
+        poller.join();
+        taker.join();
+        assertEquals(1, deque.size());
+        assertEquals(0, deque.getTakeQueueLength());
+        assertFalse(deque.hasTakeWaiters());
+    }
 }
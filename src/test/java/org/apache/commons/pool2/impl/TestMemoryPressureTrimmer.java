@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.commons.pool2.impl.TestGenericKeyedObjectPool.SimpleFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMemoryPressureTrimmer {
+
+    private GenericObjectPool<String> pool = null;
+    private GenericKeyedObjectPool<String, String> keyedPool = null;
+    private MemoryPressureTrimmer trimmer = null;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new GenericObjectPool<String>(
+                new TestGenericObjectPool.SimpleFactory());
+        keyedPool = new GenericKeyedObjectPool<String, String>(
+                new SimpleFactory<String>());
+        // Thresholds that will not be reached while testing
+        trimmer = new MemoryPressureTrimmer(1, 1, -1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        trimmer.close();
+        pool.close();
+        keyedPool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testTrimOnPressure() throws Exception {
+        pool.setMinIdle(2);
+        for (int i = 0; i < 6; i++) {
+            pool.addObject();
+        }
+        keyedPool.setMinIdlePerKey(1);
+        for (int i = 0; i < 3; i++) {
+            keyedPool.addObject("a");
+            keyedPool.addObject("b");
+        }
+        trimmer.register(pool);
+        trimmer.register(keyedPool);
+
+        trimmer.check();
+        assertFalse(trimmer.isUnderPressure());
+        assertEquals(6, pool.getNumIdle());
+
+        trimmer.pressure();
+        assertTrue(trimmer.isUnderPressure());
+        assertEquals(2, pool.getNumIdle());
+        assertEquals(2, keyedPool.getNumIdle());
+        assertEquals(4, pool.getDestroyedCount());
+        assertEquals(4, keyedPool.getDestroyedCount());
+        assertEquals(8, trimmer.getDestroyedCount());
+        assertEquals(1, trimmer.getPressureCount());
+
+        // Returned objects are only kept idle up to minIdle
+        final String[] objects = new String[4];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = pool.borrowObject();
+        }
+        for (final String object : objects) {
+            pool.returnObject(object);
+        }
+        assertEquals(2, pool.getNumIdle());
+
+        // Normal maxIdle once the pressure subsides
+        trimmer.relief();
+        assertFalse(trimmer.isUnderPressure());
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = pool.borrowObject();
+        }
+        for (final String object : objects) {
+            pool.returnObject(object);
+        }
+        assertEquals(4, pool.getNumIdle());
+    }
+
+    @Test(timeout=60000)
+    public void testRegisterUnderPressure() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            pool.addObject();
+        }
+        trimmer.pressure();
+        trimmer.register(pool);
+        assertEquals(0, pool.getNumIdle());
+        trimmer.unregister(pool);
+        pool.returnObject(pool.borrowObject());
+        assertEquals(1, pool.getNumIdle());
+    }
+
+    @Test
+    public void testOccupancy() {
+        final double occupancy = trimmer.getOccupancy();
+        assertTrue(occupancy >= 0 && occupancy <= 1);
+    }
+
+    @Test
+    public void testInvalidThresholds() {
+        try {
+            new MemoryPressureTrimmer(0, 0, -1);
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new MemoryPressureTrimmer(0.5, 0.8, -1);
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
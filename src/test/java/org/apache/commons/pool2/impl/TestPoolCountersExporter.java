@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import org.apache.commons.pool2.impl.TestGenericObjectPool.SimpleFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestPoolCountersExporter {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GenericObjectPool<String> pool = null;
+    private PoolCountersExporter exporter = null;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new GenericObjectPool<String>(new SimpleFactory());
+        exporter = new PoolCountersExporter(folder.getRoot(), -1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        exporter.close();
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testPublish() throws Exception {
+        final File file = exporter.register(pool);
+        assertTrue(file.getName().endsWith(PoolCountersExporter.FILE_EXTENSION));
+        final PoolCountersReader reader = new PoolCountersReader(file);
+        assertEquals(pool.getJmxName().toString(), reader.getName());
+        assertEquals(reader.getCounterNames().size(), reader.read().length);
+        assertEquals(Long.valueOf(0), reader.readAll().get("borrowedCount"));
+
+        final String active = pool.borrowObject();
+        pool.returnObject(pool.borrowObject());
+        pool.addObject();
+        // Values only change when published
+        assertEquals(Long.valueOf(0), reader.readAll().get("borrowedCount"));
+        exporter.publish();
+
+        final Map<String,Long> values = reader.readAll();
+        assertEquals(Long.valueOf(2), values.get("borrowedCount"));
+        assertEquals(Long.valueOf(1), values.get("returnedCount"));
+        assertEquals(Long.valueOf(3), values.get("createdCount"));
+        assertEquals(Long.valueOf(1), values.get("numActive"));
+        assertEquals(Long.valueOf(2), values.get("numIdle"));
+        long buckets = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            buckets += values.get("borrowWaitTimeBucket" + i).longValue();
+        }
+        assertEquals(2, buckets);
+        assertTrue(reader.getLastUpdateTime() > 0);
+
+        // A closed pool is updated one last time and then dropped
+        pool.returnObject(active);
+        pool.close();
+        exporter.publish();
+        assertEquals(Long.valueOf(0), reader.readAll().get("numActive"));
+        exporter.unregister(pool);
+        exporter.register(pool, "closed");
+    }
+
+    @Test(timeout=60000)
+    public void testHistogramOnlyWhileRegistered() throws Exception {
+        final LatencyHistogram histogram = pool.getBorrowWaitTimeHistogram();
+        pool.returnObject(pool.borrowObject());
+        assertEquals(0, histogram.getCount());
+        exporter.register(pool);
+        pool.returnObject(pool.borrowObject());
+        assertEquals(1, histogram.getCount());
+        exporter.unregister(pool);
+        pool.returnObject(pool.borrowObject());
+        assertEquals(1, histogram.getCount());
+        assertEquals(3, pool.getBorrowedCount());
+    }
+
+    @Test(timeout=60000)
+    public void testPeriodicPublish() throws Exception {
+        exporter.close();
+        exporter = new PoolCountersExporter(folder.getRoot(), 10);
+        final PoolCountersReader reader =
+                new PoolCountersReader(exporter.register(pool, "pool 1"));
+        assertEquals("pool 1", reader.getName());
+        pool.returnObject(pool.borrowObject());
+        while (reader.readAll().get("returnedCount").longValue() == 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test(timeout=60000)
+    public void testInterruptedUpdate() throws Exception {
+        final File file = exporter.register(pool);
+        final PoolCountersReader reader = new PoolCountersReader(file);
+        reader.read();
+        // Leave the update sequence odd as a writer that died would
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(PoolCountersLayout.SEQUENCE_OFFSET);
+            final int low = raf.read();
+            raf.seek(PoolCountersLayout.SEQUENCE_OFFSET);
+            raf.write(low | 1);
+        } finally {
+            raf.close();
+        }
+        try {
+            reader.read();
+            fail("Expected IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout=60000)
+    public void testRegister() throws Exception {
+        final File file = exporter.register(pool, "a:b");
+        pool.returnObject(pool.borrowObject());
+        exporter.publish();
+        final PoolCountersReader reader = new PoolCountersReader(file);
+        try {
+            exporter.register(pool, "a:b");
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            exporter.register(pool, "b");
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        // Both names map to the same file
+        final GenericObjectPool<String> other =
+                new GenericObjectPool<String>(new SimpleFactory());
+        try {
+            exporter.register(other, "a_b");
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        } finally {
+            other.close();
+        }
+        // The counters of the registered pool are untouched
+        assertEquals("a:b", reader.getName());
+        assertEquals(Long.valueOf(1), reader.readAll().get("borrowedCount"));
+        try {
+            new PoolCountersReader(folder.newFile("other.counters"));
+            fail("Expected IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.ObjectPool;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.TestBaseObjectPool;
+import org.junit.Test;
+
+public class TestSlotArrayObjectPool extends TestBaseObjectPool {
+
+    @Override
+    protected ObjectPool<String> makeEmptyPool(final int cap) {
+        return new SlotArrayObjectPool<String>(new SimpleFactory(), Math.max(cap, 8));
+    }
+
+    @Override
+    protected ObjectPool<Object> makeEmptyPool(final PooledObjectFactory<Object> factory) {
+        return new SlotArrayObjectPool<Object>(factory, 8);
+    }
+
+    @Override
+    protected Object getNthObject(final int n) {
+        return String.valueOf(n);
+    }
+
+    @Override
+    protected boolean isLifo() {
+        return false;
+    }
+
+    @Override
+    protected boolean isFifo() {
+        return false;
+    }
+
+    @Test(timeout=60000)
+    public void testExhausted() throws Exception {
+        final SlotArrayObjectPool<String> pool =
+                new SlotArrayObjectPool<String>(new SimpleFactory(), 2);
+        final String obj1 = pool.borrowObject();
+        final String obj2 = pool.borrowObject();
+        try {
+            pool.borrowObject();
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // expected
+        }
+
+        pool.setCreateWhenExhausted(true);
+        final String unpooled = pool.borrowObject();
+        assertEquals(3, pool.getNumActive());
+        assertEquals(3, pool.getCreatedCount());
+        pool.returnObject(unpooled);
+        assertEquals(2, pool.getNumActive());
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(1, pool.getDestroyedCount());
+        // Objects the pool did not hand out are rejected
+        try {
+            pool.returnObject(unpooled);
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        try {
+            pool.invalidateObject("foreign");
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        assertEquals(2, pool.getNumActive());
+        assertEquals(1, pool.getDestroyedCount());
+
+        pool.returnObject(obj1);
+        try {
+            pool.returnObject(obj1);
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        pool.returnObject(obj2);
+        assertEquals(2, pool.getNumIdle());
+        pool.close();
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(3, pool.getDestroyedCount());
+    }
+
+    /**
+     * Objects are matched to their slots by identity.
+     */
+    @Test(timeout=60000)
+    public void testEqualObjects() throws Exception {
+        final SlotArrayObjectPool<StringBuilder> pool =
+                new SlotArrayObjectPool<StringBuilder>(new EqualObjectFactory(), 4);
+        final StringBuilder obj1 = pool.borrowObject();
+        final StringBuilder obj2 = pool.borrowObject();
+        assertNotSame(obj1, obj2);
+        pool.invalidateObject(obj2);
+        pool.returnObject(obj1);
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+        assertSame(obj1, pool.borrowObject());
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testTestOnBorrow() throws Exception {
+        final AtomicBoolean valid = new AtomicBoolean(true);
+        final SlotArrayObjectPool<StringBuilder> pool =
+                new SlotArrayObjectPool<StringBuilder>(new EqualObjectFactory() {
+            @Override
+            public boolean validateObject(final PooledObject<StringBuilder> p) {
+                return valid.get();
+            }
+        }, 4);
+        pool.setTestOnBorrow(true);
+        final StringBuilder obj = pool.borrowObject();
+        pool.returnObject(obj);
+        valid.set(false);
+        try {
+            pool.borrowObject();
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // expected
+        }
+        // The idle object and the new object were both destroyed
+        assertEquals(2, pool.getDestroyedCount());
+        assertEquals(0, pool.getNumIdle());
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testTrackTimestamps() throws Exception {
+        final List<DefaultPooledObject<StringBuilder>> wrappers =
+                new ArrayList<DefaultPooledObject<StringBuilder>>();
+        final SlotArrayObjectPool<StringBuilder> pool =
+                new SlotArrayObjectPool<StringBuilder>(new EqualObjectFactory() {
+            @Override
+            public PooledObject<StringBuilder> wrap(final StringBuilder value) {
+                final DefaultPooledObject<StringBuilder> p =
+                        new DefaultPooledObject<StringBuilder>(value);
+                wrappers.add(p);
+                return p;
+            }
+        }, 4);
+        pool.returnObject(pool.borrowObject());
+        assertEquals(0, wrappers.get(0).getBorrowedCount());
+
+        pool.setTrackTimestamps(true);
+        pool.returnObject(pool.borrowObject());
+        assertEquals(1, wrappers.get(0).getBorrowedCount());
+        assertTrue(wrappers.get(0).getLastReturnTime() >=
+                wrappers.get(0).getLastBorrowTime());
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testConcurrentBorrowAndReturn() throws Exception {
+        final SlotArrayObjectPool<StringBuilder> pool =
+                new SlotArrayObjectPool<StringBuilder>(new EqualObjectFactory(), 4);
+        pool.setThreadAffine(true);
+        pool.setCreateWhenExhausted(true);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10000; j++) {
+                            final StringBuilder obj = pool.borrowObject();
+                            if (obj.length() != 0) {
+                                failed.set(true);
+                            }
+                            obj.append('x');
+                            obj.setLength(0);
+                            pool.returnObject(obj);
+                        }
+                    } catch (final Exception e) {
+                        failed.set(true);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(!failed.get());
+        assertEquals(0, pool.getNumActive());
+        assertTrue(pool.getNumIdle() <= 4);
+        assertEquals(pool.getCreatedCount() - pool.getDestroyedCount(),
+                pool.getNumIdle());
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testReturnWhileReturning() throws Exception {
+        final CountDownLatch passivating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean block = new AtomicBoolean(false);
+        final SlotArrayObjectPool<String> pool = new SlotArrayObjectPool<String>(
+                new SimpleFactory() {
+                    @Override
+                    public void passivateObject(final PooledObject<String> p)
+                            throws Exception {
+                        if (block.get()) {
+                            passivating.countDown();
+                            release.await();
+                        }
+                    }
+                }, 1);
+        final String obj = pool.borrowObject();
+        block.set(true);
+        final Thread returner = new Thread() {
+            @Override
+            public void run() {
+                pool.returnObject(obj);
+            }
+        };
+        returner.start();
+        passivating.await();
+        try {
+            pool.returnObject(obj);
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        try {
+            pool.invalidateObject(obj);
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        release.countDown();
+        returner.join();
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(0, pool.getNumActive());
+        assertEquals(0, pool.getDestroyedCount());
+        pool.close();
+    }
+
+    private static class SimpleFactory extends BasePooledObjectFactory<String> {
+        int counter = 0;
+        @Override
+        public String create() {
+            return String.valueOf(counter++);
+        }
+        @Override
+        public PooledObject<String> wrap(final String value) {
+            return new DefaultPooledObject<String>(value);
+        }
+    }
+
+    /**
+     * Creates objects that are all equal to each other.
+     */
+    private static class EqualObjectFactory
+            extends BasePooledObjectFactory<StringBuilder> {
+        @Override
+        public StringBuilder create() {
+            return new StringBuilder();
+        }
+        @Override
+        public PooledObject<StringBuilder> wrap(final StringBuilder value) {
+            return new DefaultPooledObject<StringBuilder>(value);
+        }
+        @Override
+        public boolean validateObject(final PooledObject<StringBuilder> p) {
+            return true;
+        }
+    }
+}
@@ -16,11 +16,18 @@
  */
 package org.apache.commons.pool2.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.TestBaseObjectPool;
+import org.junit.Test;
 
 /**
  * @version $Revision$
@@ -53,6 +60,82 @@ public class TestSoftReferenceObjectPool extends TestBaseObjectPool {
     }
 
 
+    /**
+     * Objects are tracked by identity so objects that are equal are still
+     * distinct pooled objects.
+     */
+    @Test(timeout=60000)
+    public void testEqualObjects() throws Exception {
+        final SoftReferenceObjectPool<String> pool =
+                new SoftReferenceObjectPool<String>(new EqualObjectFactory());
+        final String obj1 = pool.borrowObject();
+        final String obj2 = pool.borrowObject();
+        assertEquals(obj1, obj2);
+        assertNotSame(obj1, obj2);
+        assertEquals(2, pool.getNumActive());
+
+        pool.returnObject(obj1);
+        pool.invalidateObject(obj2);
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+        assertSame(obj1, pool.borrowObject());
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testConcurrentBorrowAndReturn() throws Exception {
+        final SoftReferenceObjectPool<String> pool =
+                new SoftReferenceObjectPool<String>(new EqualObjectFactory());
+        pool.setTimeBetweenCleanerRunsMillis(10);
+        final AtomicInteger failures = new AtomicInteger(0);
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 1000; j++) {
+                            final String obj = pool.borrowObject();
+                            if (j % 10 == 0) {
+                                pool.invalidateObject(obj);
+                            } else {
+                                pool.returnObject(obj);
+                            }
+                        }
+                    } catch (final Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+        assertEquals(0, pool.getNumActive());
+        final int idle = pool.getNumIdle();
+        for (int i = 0; i < idle; i++) {
+            pool.borrowObject();
+        }
+        assertEquals(idle, pool.getNumActive());
+        pool.close();
+        assertEquals(-1, pool.getTimeBetweenCleanerRunsMillis());
+    }
+
+
+    private static class EqualObjectFactory extends BasePooledObjectFactory<String> {
+        @Override
+        public String create() {
+            return new String("pooled");
+        }
+        @Override
+        public PooledObject<String> wrap(final String value) {
+            return new DefaultPooledObject<String>(value);
+        }
+    }
+
+
     private static class SimpleFactory extends BasePooledObjectFactory<String>  {
         int counter = 0;
         @Override
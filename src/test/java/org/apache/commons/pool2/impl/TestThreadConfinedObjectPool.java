@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.MBeanServer;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.ObjectPool;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.TestBaseObjectPool;
+import org.junit.Test;
+
+public class TestThreadConfinedObjectPool extends TestBaseObjectPool {
+
+    @Override
+    protected ObjectPool<String> makeEmptyPool(final int cap) {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        pool.setMaxTotal(cap);
+        pool.setMaxIdle(cap);
+        return pool;
+    }
+
+    @Override
+    protected ObjectPool<Object> makeEmptyPool(final PooledObjectFactory<Object> factory) {
+        return new ThreadConfinedObjectPool<Object>(factory);
+    }
+
+    @Override
+    protected Object getNthObject(final int n) {
+        return String.valueOf(n);
+    }
+
+    @Override
+    protected boolean isLifo() {
+        return true;
+    }
+
+    @Override
+    protected boolean isFifo() {
+        return false;
+    }
+
+    @Test(timeout=60000)
+    public void testExhausted() throws Exception {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        pool.setMaxTotal(2);
+        final String obj1 = pool.borrowObject();
+        final String obj2 = pool.borrowObject();
+        try {
+            pool.borrowObject();
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // expected
+        }
+        pool.returnObject(obj1);
+        assertSame(obj1, pool.borrowObject());
+        pool.invalidateObject(obj1);
+        // The permit of the destroyed object can be used again
+        pool.returnObject(pool.borrowObject());
+        pool.returnObject(obj2);
+        assertEquals(2, pool.getNumIdle());
+        assertEquals(3, pool.getCreatedCount());
+        assertEquals(1, pool.getDestroyedCount());
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testReturnFromOtherThread() throws Exception {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        pool.setStatisticsBatchSize(1);
+        final String obj1 = pool.borrowObject();
+        final String obj2 = pool.borrowObject();
+        final AtomicReference<String> otherThreadObj = new AtomicReference<String>();
+        final Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pool.returnObject(obj1);
+                    pool.invalidateObject(obj2);
+                    // Objects are not shared with other threads
+                    otherThreadObj.set(pool.borrowObject());
+                } catch (final Exception e) {
+                    // Leaves otherThreadObj null
+                }
+            }
+        };
+        other.start();
+        other.join();
+        assertTrue(otherThreadObj.get() != null);
+        assertNotSame(obj1, otherThreadObj.get());
+        assertNotSame(obj2, otherThreadObj.get());
+        // Handed over objects are active until the owner processes them
+        assertEquals(3, pool.getNumActive());
+        assertEquals(0, pool.getNumIdle());
+
+        assertSame(obj1, pool.borrowObject());
+        assertEquals(2, pool.getNumActive());
+        assertEquals(1, pool.getDestroyedCount());
+        pool.returnObject(obj1);
+        assertEquals(4, pool.getBorrowedCount());
+        assertEquals(2, pool.getReturnedCount());
+
+        // The other thread has terminated, its object is destroyed on return
+        pool.returnObject(otherThreadObj.get());
+        assertEquals(2, pool.getDestroyedCount());
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+        pool.close();
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(3, pool.getDestroyedCount());
+    }
+
+    @Test(timeout=60000)
+    public void testMaxIdlePerThread() throws Exception {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        pool.setMaxIdle(1);
+        final String obj1 = pool.borrowObject();
+        final String obj2 = pool.borrowObject();
+        pool.returnObject(obj1);
+        pool.returnObject(obj2);
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(1, pool.getDestroyedCount());
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testShortLivedThreads() throws Exception {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        for (int i = 0; i < 10; i++) {
+            final Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        pool.returnObject(pool.borrowObject());
+                    } catch (final Exception e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            t.start();
+            t.join();
+        }
+        // Terminated threads are reaped once maxTotal has been reached
+        assertEquals(null, failure.get());
+        assertEquals(10, pool.getCreatedCount());
+        assertEquals(8, pool.getDestroyedCount());
+        assertEquals(2, pool.getNumIdle());
+        pool.evict();
+        assertEquals(10, pool.getDestroyedCount());
+        assertEquals(0, pool.getNumIdle());
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testCloseWithIdleObjectsOfOtherThreads() throws Exception {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        final CountDownLatch closed = new CountDownLatch(1);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final IdleThread borrower = new IdleThread(pool, closed) {
+            @Override
+            void afterClose() {
+                try {
+                    pool.borrowObject();
+                } catch (final Exception e) {
+                    failure.set(e);
+                }
+            }
+        };
+        final IdleThread quiet = new IdleThread(pool, closed);
+        borrower.start();
+        quiet.start();
+        borrower.idle.await();
+        quiet.idle.await();
+        pool.close();
+        // Live threads keep their idle objects until they use the pool
+        assertEquals(2, pool.getNumIdle());
+        assertEquals(0, pool.getDestroyedCount());
+        closed.countDown();
+        borrower.join();
+        quiet.join();
+        assertTrue(failure.get() instanceof IllegalStateException);
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(1, pool.getDestroyedCount());
+        // A thread that terminated without using the pool again
+        pool.clear();
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(2, pool.getDestroyedCount());
+    }
+
+    @Test(timeout=60000)
+    public void testStatisticsBatches() throws Exception {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        assertEquals(ThreadConfinedObjectPool.DEFAULT_STATISTICS_BATCH_SIZE,
+                pool.getStatisticsBatchSize());
+        pool.setStatisticsBatchSize(4);
+        for (int i = 0; i < 7; i++) {
+            pool.returnObject(pool.borrowObject());
+        }
+        assertEquals(4, pool.getBorrowedCount());
+        assertEquals(4, pool.getReturnedCount());
+        pool.returnObject(pool.borrowObject());
+        assertEquals(8, pool.getBorrowedCount());
+        assertEquals(8, pool.getStatisticsSnapshot().getReturnedCount());
+        try {
+            pool.setStatisticsBatchSize(0);
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testStatisticsOfPartialBatches() throws Exception {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        for (int i = 0; i < 3; i++) {
+            pool.returnObject(pool.borrowObject());
+        }
+        assertEquals(0, pool.getBorrowedCount());
+        pool.clear();
+        assertEquals(3, pool.getBorrowedCount());
+        assertEquals(3, pool.getReturnedCount());
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pool.returnObject(pool.borrowObject());
+                    pool.returnObject(pool.borrowObject());
+                } catch (final Exception e) {
+                    // Detected by the counts
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        // Reaps the terminated thread
+        pool.clear();
+        assertEquals(5, pool.getBorrowedCount());
+        assertEquals(5, pool.getReturnedCount());
+        pool.returnObject(pool.borrowObject());
+        pool.close();
+        assertEquals(6, pool.getBorrowedCount());
+        assertEquals(6, pool.getReturnedCount());
+    }
+
+    @Test(timeout=60000)
+    public void testInvalidateIdle() throws Exception {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        pool.setMaxTotal(1);
+        final String obj = pool.borrowObject();
+        pool.returnObject(obj);
+        try {
+            pool.invalidateObject(obj);
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, pool.getDestroyedCount());
+        assertSame(obj, pool.borrowObject());
+        assertEquals(1, pool.getNumActive());
+        try {
+            pool.borrowObject();
+            fail("Expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // expected
+        }
+        pool.invalidateObject(obj);
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getDestroyedCount());
+        pool.close();
+    }
+
+    @Test(timeout=60000)
+    public void testJmxRegistration() throws Exception {
+        final ThreadConfinedObjectPool<String> pool =
+                new ThreadConfinedObjectPool<String>(new SimpleFactory());
+        final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(mbs.isRegistered(pool.getJmxName()));
+        pool.returnObject(pool.borrowObject());
+        assertEquals(Integer.valueOf(1),
+                mbs.getAttribute(pool.getJmxName(), "NumIdle"));
+        pool.close();
+        assertTrue(!mbs.isRegistered(pool.getJmxName()));
+    }
+
+    /**
+     * Leaves an idle object in the pool and waits for the pool to be closed.
+     */
+    private static class IdleThread extends Thread {
+        private final ObjectPool<String> pool;
+        private final CountDownLatch closed;
+        private final CountDownLatch idle = new CountDownLatch(1);
+
+        IdleThread(final ObjectPool<String> pool, final CountDownLatch closed) {
+            this.pool = pool;
+            this.closed = closed;
+        }
+
+        @Override
+        public void run() {
+            try {
+                pool.returnObject(pool.borrowObject());
+                idle.countDown();
+                closed.await();
+            } catch (final Exception e) {
+                return;
+            }
+            afterClose();
+        }
+
+        void afterClose() {
+            // Does not use the pool again
+        }
+    }
+
+    private static class SimpleFactory extends BasePooledObjectFactory<String> {
+        private int counter = 0;
+        @Override
+        public synchronized String create() {
+            return String.valueOf(counter++);
+        }
+        @Override
+        public PooledObject<String> wrap(final String value) {
+            return new DefaultPooledObject<String>(value);
+        }
+    }
+}
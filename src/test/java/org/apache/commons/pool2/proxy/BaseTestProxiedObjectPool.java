@@ -18,15 +18,18 @@ package org.apache.commons.pool2.proxy;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.PooledObject;
-import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.AbandonedConfig;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
 import org.apache.commons.pool2.impl.GenericObjectPool;
@@ -38,8 +41,11 @@ import org.junit.Test;
 public abstract class BaseTestProxiedObjectPool {
 
     private static final String DATA1 = "data1";
+    private static final String DATA2 = "data2";
     private static final int ABANDONED_TIMEOUT_SECS = 3;
 
+    private GenericObjectPool<TestObject> innerPool = null;
+    private TestObjectFactory factory = null;
     private ObjectPool<TestObject> pool = null;
     private StringWriter log = null;
 
@@ -58,10 +64,9 @@ public abstract class BaseTestProxiedObjectPool {
         final GenericObjectPoolConfig config = new GenericObjectPoolConfig();
         config.setMaxTotal(3);
 
-        final PooledObjectFactory<TestObject> factory = new TestObjectFactory();
+        factory = new TestObjectFactory();
 
-        final ObjectPool<TestObject> innerPool =
-                new GenericObjectPool<TestObject>(factory, config, abandonedConfig);
+        innerPool = new GenericObjectPool<TestObject>(factory, config, abandonedConfig);
 
         pool = new ProxiedObjectPool<TestObject>(innerPool, getproxySource());
     }
@@ -99,6 +104,29 @@ public abstract class BaseTestProxiedObjectPool {
     }
 
 
+    @Test
+    public void testMultipleProxies() throws Exception {
+        final TestObject obj1 = pool.borrowObject();
+        final TestObject obj2 = pool.borrowObject();
+        assertNotSame(obj1, obj2);
+
+        obj1.setData(DATA1);
+        obj2.setData(DATA2);
+        assertEquals(DATA1, obj1.getData());
+        assertEquals(DATA2, obj2.getData());
+
+        pool.returnObject(obj1);
+        assertEquals(DATA2, obj2.getData());
+        try {
+            obj1.getData();
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        pool.returnObject(obj2);
+    }
+
+
     @Test(expected=IllegalStateException.class)
     public void testAccessAfterInvalidate() throws Exception {
         final TestObject obj = pool.borrowObject();
@@ -137,6 +165,124 @@ public abstract class BaseTestProxiedObjectPool {
     }
 
 
+    @Test
+    public void testLazyActivation() throws Exception {
+        final ObjectPool<TestObject> lazyPool =
+                new ProxiedObjectPool<TestObject>(innerPool, getproxySource(), true);
+
+        // Borrowed and returned without being used
+        TestObject obj = lazyPool.borrowObject();
+        lazyPool.returnObject(obj);
+        assertEquals(0, factory.activateCount.get());
+        assertEquals(0, factory.passivateCount.get());
+
+        obj = lazyPool.borrowObject();
+        assertEquals(0, factory.activateCount.get());
+        obj.setData(DATA1);
+        assertEquals(DATA1, obj.getData());
+        assertEquals(1, factory.activateCount.get());
+        lazyPool.returnObject(obj);
+        assertEquals(1, factory.passivateCount.get());
+        assertEquals(1, innerPool.getNumIdle());
+        assertEquals(0, innerPool.getNumActive());
+    }
+
+
+    @Test
+    public void testLazyActivationFailure() throws Exception {
+        final ObjectPool<TestObject> lazyPool =
+                new ProxiedObjectPool<TestObject>(innerPool, getproxySource(), true);
+
+        innerPool.addObject();
+        final TestObject obj = lazyPool.borrowObject();
+        factory.failNextActivation.set(true);
+
+        // The idle object fails to activate and is replaced
+        obj.setData(DATA1);
+        assertEquals(DATA1, obj.getData());
+        assertEquals(1, innerPool.getDestroyedCount());
+        assertEquals(2, innerPool.getCreatedCount());
+        assertEquals(1, innerPool.getNumActive());
+
+        lazyPool.returnObject(obj);
+        assertEquals(0, innerPool.getNumActive());
+        assertEquals(1, innerPool.getNumIdle());
+    }
+
+
+    @Test
+    public void testLazyActivationFailureOfNewObject() throws Exception {
+        final ObjectPool<TestObject> lazyPool =
+                new ProxiedObjectPool<TestObject>(innerPool, getproxySource(), true);
+
+        final TestObject obj = lazyPool.borrowObject();
+        factory.failNextActivation.set(true);
+
+        // A newly created object that fails to activate is not replaced
+        try {
+            obj.setData(DATA1);
+            fail("Expected activation failure");
+        } catch (final Exception e) {
+            // expected
+        }
+        assertEquals(1, innerPool.getDestroyedCount());
+        assertEquals(0, innerPool.getNumActive());
+        try {
+            obj.getData();
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+
+        // The proxy can still be returned or invalidated
+        lazyPool.returnObject(obj);
+        lazyPool.invalidateObject(obj);
+        assertEquals(1, innerPool.getDestroyedCount());
+        assertEquals(0, innerPool.getNumIdle());
+    }
+
+
+    @Test
+    public void testReturnTwice() throws Exception {
+        final GenericObjectPool<TestObject> plainPool =
+                new GenericObjectPool<TestObject>(factory);
+        final ObjectPool<TestObject> eagerPool =
+                new ProxiedObjectPool<TestObject>(plainPool, getproxySource());
+        final ObjectPool<TestObject> lazyPool =
+                new ProxiedObjectPool<TestObject>(plainPool, getproxySource(), true);
+        try {
+            for (final ObjectPool<TestObject> proxiedPool : new ObjectPool[] { eagerPool, lazyPool }) {
+                final TestObject obj = proxiedPool.borrowObject();
+                obj.setData(DATA1);
+                proxiedPool.returnObject(obj);
+                try {
+                    proxiedPool.returnObject(obj);
+                    fail("Expected IllegalStateException");
+                } catch (final IllegalStateException e) {
+                    // expected
+                }
+                try {
+                    proxiedPool.invalidateObject(obj);
+                    fail("Expected IllegalStateException");
+                } catch (final IllegalStateException e) {
+                    // expected
+                }
+            }
+            assertEquals(1, plainPool.getNumIdle());
+        } finally {
+            plainPool.close();
+        }
+    }
+
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testLazyActivationUnsupported() throws Exception {
+        final ObjectPool<TestObject> lazyPool =
+                new ProxiedObjectPool<TestObject>(innerPool, getproxySource(), true);
+        new ProxiedObjectPool<TestObject>(lazyPool, getproxySource(), true);
+    }
+
+
     @Test
     public void testPassThroughMethods01() throws Exception {
         assertEquals(0, pool.getNumActive());
@@ -163,6 +309,10 @@ public abstract class BaseTestProxiedObjectPool {
     private static class TestObjectFactory extends
             BasePooledObjectFactory<TestObject> {
 
+        private final AtomicInteger activateCount = new AtomicInteger(0);
+        private final AtomicInteger passivateCount = new AtomicInteger(0);
+        private final AtomicBoolean failNextActivation = new AtomicBoolean(false);
+
         @Override
         public TestObject create() throws Exception {
             return new TestObjectImpl();
@@ -171,6 +321,17 @@ public abstract class BaseTestProxiedObjectPool {
         public PooledObject<TestObject> wrap(final TestObject value) {
             return new DefaultPooledObject<TestObject>(value);
         }
+        @Override
+        public void activateObject(final PooledObject<TestObject> p) throws Exception {
+            if (failNextActivation.getAndSet(false)) {
+                throw new Exception("Activation failed");
+            }
+            activateCount.incrementAndGet();
+        }
+        @Override
+        public void passivateObject(final PooledObject<TestObject> p) throws Exception {
+            passivateCount.incrementAndGet();
+        }
     }
 
 
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.pool2.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TestProxiedObjectPoolWithGeneratedProxy
+        extends BaseTestProxiedObjectPool {
+
+    @Override
+    protected ProxySource<TestObject> getproxySource() {
+        return new GeneratedProxySource<TestObject>(this.getClass().getClassLoader(),
+                new Class<?>[] { TestObject.class });
+    }
+
+
+    @Test
+    public void testPrimitivesAndExceptions() throws Exception {
+        final GeneratedProxySource<Calculator> source =
+                new GeneratedProxySource<Calculator>(getClass().getClassLoader(),
+                        new Class<?>[] { Calculator.class });
+        final Calculator calculator = new CalculatorImpl();
+        final Calculator proxy = source.createProxy(calculator, null);
+
+        assertEquals(6.5d, proxy.add(1, 2L, 3.5d), 0d);
+        assertEquals(calculator.toString(), proxy.toString());
+        assertEquals(calculator.hashCode(), proxy.hashCode());
+        try {
+            proxy.fail();
+            fail("Expected IOException");
+        } catch (final IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+
+        assertSame(calculator, source.resolveProxy(proxy));
+        try {
+            proxy.add(1, 2L, 3d);
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testClassRejected() {
+        new GeneratedProxySource<Object>(getClass().getClassLoader(),
+                new Class<?>[] { CalculatorImpl.class });
+    }
+
+
+    public static interface Calculator {
+        double add(int a, long b, double c);
+        void fail() throws IOException;
+    }
+
+
+    private static class CalculatorImpl implements Calculator {
+
+        @Override
+        public double add(final int a, final long b, final double c) {
+            return a + b + c;
+        }
+
+        @Override
+        public void fail() throws IOException {
+            throw new IOException("failed");
+        }
+    }
+}